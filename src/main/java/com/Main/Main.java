@@ -5,11 +5,13 @@ import com.data_management.DataStorage;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.Arrays;
 
 public class Main {
     public static void main(String[] args) throws IOException, URISyntaxException {
         if (args.length > 0 && args[0].equals("DataStorage")) {
-            DataStorage.main(new String[]{});
+            // e.g. "DataStorage --transport inmemory" for the all-in-one pipeline
+            DataStorage.main(Arrays.copyOfRange(args, 1, args.length));
         } else {
             HealthDataSimulator.main(new String[]{});
         }
@@ -9,7 +9,10 @@ import com.alerts.Factory.ECGAlertFactory;
 import com.alerts.Strategy.*;
 import com.data_management.DataStorage;
 import com.data_management.Patient;
-import com.data_management.PatientRecord;
+import com.data_management.RecordCursor;
+import com.data_management.SignalRegistry;
+import com.data_management.TimeSeries;
+import com.util.IntObjectMap;
 
 import java.util.*;
 
@@ -21,7 +24,12 @@ import java.util.*;
  */
 public class AlertGenerator {
 
-    private final Map<String, AlertStrategy> alertStrategies;
+    // indexed by signal ID, null for signals without a strategy
+    private AlertStrategy[] alertStrategies = new AlertStrategy[SignalRegistry.size()];
+    // strategies that read several signals of a patient at once, merged by timestamp
+    private final List<CombinedStrategy> combinedStrategies = new ArrayList<>();
+    // what evaluateData(Patient) has evaluated so far, per patient
+    private final IntObjectMap<Evaluated> evaluated = new IntObjectMap<>();
 
     /**
      * Constructs an {@code AlertGenerator} with a specified {@code DataStorage}.
@@ -32,16 +40,26 @@ public class AlertGenerator {
     public AlertGenerator() {
 
         // Initialize all available strategies
-        alertStrategies = new HashMap<>();
-        alertStrategies.put("BloodPressureSystolic", new BloodPressureStrategy("Systolic"));
-        alertStrategies.put("BloodPressureDiastolic", new BloodPressureStrategy("Diastolic"));
-        alertStrategies.put("HeartRate", new HeartRateStrategy());  // Assuming ECG data is managed by HeartRateStrategy
-        alertStrategies.put("BloodSaturation", new OxygenSaturationStrategy());
-        alertStrategies.put("HypotensiveHypoxemia", new HypotensiveHypoxemiaStrategy());
-        alertStrategies.put("ECG", new ECGStrategy());
+        setStrategy(SignalRegistry.SYSTOLIC_PRESSURE, new BloodPressureStrategy("Systolic"));
+        setStrategy(SignalRegistry.DIASTOLIC_PRESSURE, new BloodPressureStrategy("Diastolic"));
+        setStrategy(SignalRegistry.HEART_RATE, new HeartRateStrategy());  // Assuming ECG data is managed by HeartRateStrategy
+        setStrategy(SignalRegistry.SATURATION, new OxygenSaturationStrategy());
+        setStrategy(SignalRegistry.ECG, new ECGStrategy());
+        setStrategy(new HypotensiveHypoxemiaStrategy(), SignalRegistry.SYSTOLIC_PRESSURE, SignalRegistry.SATURATION);
 
     }
 
+    private void setStrategy(int signalId, AlertStrategy strategy) {
+        if (signalId >= alertStrategies.length) {
+            alertStrategies = Arrays.copyOf(alertStrategies, signalId + 1);
+        }
+        alertStrategies[signalId] = strategy;
+    }
+
+    private void setStrategy(AlertStrategy strategy, int... signalIds) {
+        combinedStrategies.add(new CombinedStrategy(strategy, signalIds));
+    }
+
     /**
      * Evaluates the specified patient's data to determine if any alert conditions
      * are met. If a condition is met, an alert is triggered via the
@@ -50,19 +68,289 @@ public class AlertGenerator {
      * alert
      * will be triggered.
      *
+     * Each record type with a strategy is read through a cursor over its series, so evaluating a
+     * patient creates no records. Only the readings that arrived since the previous call for the
+     * patient are evaluated, together with the few earlier ones the strategies compare them with, so
+     * a condition is reported once, when its reading arrives, and not again on every later call.
+     * What has been evaluated is tracked per signal by position rather than by time, so a reading
+     * with the same timestamp as one already evaluated is still evaluated once. A late reading,
+     * inserted among readings already evaluated, is evaluated once with the readings before it; the
+     * readings after it are not evaluated again. Up to {@link TimeSeries#LATE_ARRIVAL_HISTORY} late
+     * readings of a series are told apart between two calls. What has been evaluated refers to the
+     * patient's series, so the patient must be the one kept by the storage, not a copy loaded for the
+     * call such as the patients of {@code MappedDataStorage}.
+     *
      * @param patient the patient data to evaluate for alert conditions
      */
     public void evaluateData(Patient patient) {
-        List<PatientRecord> records = patient.getRecords();
-
-        for (PatientRecord record : records) {
-            AlertStrategy strategy = alertStrategies.get(record.getRecordType());
-            if (strategy != null) {
-                Alert alert = strategy.checkAlert(Collections.singletonList(record), patient.getId());
-                if (alert != null) {
-                    triggerAlert(alert);
+        Evaluated state = evaluated.computeIfAbsent(patient.getId(), id -> new Evaluated());
+        synchronized (state) {
+            List<TimeSeries> allSeries = patient.getAllSeries();
+            Window[] windows = new Window[allSeries.size()];
+            for (int i = 0; i < windows.length; i++) {
+                TimeSeries series = allSeries.get(i);
+                windows[i] = Window.after(series, state.of(series.getSignalId()));
+            }
+            evaluate(patient, windows);
+            for (Window window : windows) {
+                state.evaluated(window);
+            }
+        }
+    }
+
+    /**
+     * Evaluates the readings of a patient from a point in time on, such as the readings that just
+     * arrived. Each strategy also reads the few earlier readings it compares them with, see
+     * {@link AlertStrategy#contextSize()}, so the cost does not grow with the patient's history.
+     * Nothing is remembered between calls, so readings in overlapping ranges are evaluated again;
+     * {@link #evaluateData(Patient)} evaluates each reading once.
+     *
+     * @param patient the patient data to evaluate for alert conditions
+     * @param since   the timestamp of the earliest reading to evaluate
+     */
+    public void evaluateData(Patient patient, long since) {
+        List<TimeSeries> allSeries = patient.getAllSeries();
+        Window[] windows = new Window[allSeries.size()];
+        for (int i = 0; i < windows.length; i++) {
+            windows[i] = Window.since(allSeries.get(i), since);
+        }
+        evaluate(patient, windows);
+    }
+
+    private void evaluate(Patient patient, Window[] windows) {
+        int patientId = patient.getId();
+        for (Window window : windows) {
+            int signalId = window.series.getSignalId();
+            AlertStrategy strategy = signalId < alertStrategies.length ? alertStrategies[signalId] : null;
+            if (strategy == null) {
+                continue;
+            }
+            // each run of new readings with the readings before it, so earlier runs are not reported again
+            for (int run = 0; run < window.runStarts.length; run++) {
+                int from = Math.max(0, window.runStarts[run] - strategy.contextSize());
+                check(strategy, window.view.cursor(from, window.runEnds[run]), patientId);
+            }
+        }
+        for (CombinedStrategy combined : combinedStrategies) {
+            int contextSize = combined.strategy.contextSize();
+            RecordCursor[] cursors = new RecordCursor[combined.signalIds.length];
+            boolean hasNew = false;
+            for (int i = 0; i < cursors.length; i++) {
+                Window window = Window.of(windows, combined.signalIds[i]);
+                if (window == null) {
+                    cursors[i] = RecordCursor.of(Collections.emptyList());
+                } else {
+                    hasNew |= window.first < window.view.size();
+                    int size = window.view.size();
+                    cursors[i] = window.view.cursor(Math.max(0, window.first - contextSize), size);
                 }
             }
+            if (hasNew) {
+                check(combined.strategy, RecordCursor.merge(cursors), patientId);
+            }
+            for (int signalId : combined.signalIds) {
+                Window late = Window.of(windows, signalId);
+                if (late != null) {
+                    for (int position : late.late) {
+                        check(combined.strategy, combinedUpTo(combined, windows, late, position), patientId);
+                    }
+                }
+            }
+        }
+    }
+
+    // the readings of the combined signals up to a late reading, the late reading last
+    private static RecordCursor combinedUpTo(CombinedStrategy combined, Window[] windows, Window late, int position) {
+        int contextSize = combined.strategy.contextSize();
+        long timestamp = late.view.timestampAt(position);
+        RecordCursor[] cursors = new RecordCursor[combined.signalIds.length];
+        int next = 0;
+        for (int signalId : combined.signalIds) {
+            Window window = Window.of(windows, signalId);
+            if (window != null && window != late) {
+                int end = upperBound(window.view, timestamp);
+                cursors[next++] = window.view.cursor(Math.max(0, end - contextSize), end);
+            }
+        }
+        // on equal timestamps the earlier cursor comes first
+        cursors[next++] = late.view.cursor(Math.max(0, position - contextSize), position + 1);
+        return RecordCursor.merge(Arrays.copyOf(cursors, next));
+    }
+
+    private void check(AlertStrategy strategy, RecordCursor records, int patientId) {
+        Alert alert = strategy.checkAlert(records, patientId);
+        if (alert != null) {
+            triggerAlert(alert);
+        }
+    }
+
+    private static int lowerBound(TimeSeries.View view, long timestamp) {
+        int low = 0;
+        int high = view.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (view.timestampAt(mid) < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int upperBound(TimeSeries.View view, long timestamp) {
+        return timestamp == Long.MAX_VALUE ? view.size() : lowerBound(view, timestamp + 1);
+    }
+
+    /**
+     * The readings of one series at the time of an evaluation, and the positions of those to evaluate:
+     * the readings from {@code first} on, and the late readings inserted before it.
+     */
+    private static final class Window {
+        private static final int[] NONE = new int[0];
+
+        final TimeSeries series;
+        final TimeSeries.View view;
+        final int first;
+        // positions of late readings before first, ascending
+        final int[] late;
+        // the late arrivals the view holds
+        final long lateArrivals;
+        // the late readings and the readings from first on, in runs of adjacent positions
+        final int[] runStarts;
+        final int[] runEnds;
+
+        private Window(TimeSeries series, TimeSeries.View view, int first, int[] late, long lateArrivals) {
+            this.series = series;
+            this.view = view;
+            this.first = first;
+            this.late = late;
+            this.lateArrivals = lateArrivals;
+            int[] starts = new int[late.length + 1];
+            int[] ends = new int[late.length + 1];
+            int runs = 0;
+            for (int position : late) {
+                if (runs > 0 && ends[runs - 1] == position) {
+                    ends[runs - 1]++;
+                } else {
+                    starts[runs] = position;
+                    ends[runs++] = position + 1;
+                }
+            }
+            if (first < view.size()) {
+                if (runs > 0 && ends[runs - 1] == first) {
+                    ends[runs - 1] = view.size();
+                } else {
+                    starts[runs] = first;
+                    ends[runs++] = view.size();
+                }
+            }
+            this.runStarts = Arrays.copyOf(starts, runs);
+            this.runEnds = Arrays.copyOf(ends, runs);
+        }
+
+        static Window since(TimeSeries series, long since) {
+            TimeSeries.View view = series.snapshot();
+            return new Window(series, view, lowerBound(view, since), NONE, 0);
+        }
+
+        // the readings that arrived after those seen, or all of them if seen is null
+        static Window after(TimeSeries series, Seen seen) {
+            long arrivals;
+            TimeSeries.View view;
+            // a view and the late arrivals it holds
+            do {
+                arrivals = series.getLateArrivalCount();
+                view = series.snapshot();
+            } while (arrivals != series.getLateArrivalCount());
+            if (seen == null) {
+                return new Window(series, view, 0, NONE, arrivals);
+            }
+            // readings with the newest timestamp seen arrived after the ones seen, in arrival order
+            int first = Math.min(lowerBound(view, seen.newest) + seen.atNewest, upperBound(view, seen.newest));
+            long[] timestamps = series.getLateArrivals(seen.lateArrivals, arrivals);
+            Arrays.sort(timestamps);
+            int[] late = new int[timestamps.length];
+            int count = 0;
+            for (int i = 0; i < timestamps.length; ) {
+                long timestamp = timestamps[i];
+                int equal = 1;
+                while (i + equal < timestamps.length && timestamps[i + equal] == timestamp) {
+                    equal++;
+                }
+                // late readings at or after the newest one seen are among the readings from first on
+                if (timestamp < seen.newest) {
+                    // a late reading goes after the stored readings with the same timestamp
+                    int low = lowerBound(view, timestamp);
+                    int high = upperBound(view, timestamp);
+                    for (int position = Math.max(low, high - equal); position < high; position++) {
+                        late[count++] = position;
+                    }
+                }
+                i += equal;
+            }
+            return new Window(series, view, first, Arrays.copyOf(late, count), arrivals);
+        }
+
+        static Window of(Window[] windows, int signalId) {
+            for (Window window : windows) {
+                if (window.series.getSignalId() == signalId) {
+                    return window;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * How far one series of a patient has been evaluated: the newest timestamp, how many readings with
+     * that timestamp, and how many late arrivals.
+     */
+    private static final class Seen {
+        long newest = Long.MIN_VALUE;
+        int atNewest;
+        long lateArrivals;
+    }
+
+    /**
+     * What has been evaluated of each signal of one patient.
+     */
+    private static final class Evaluated {
+        private Seen[] signals = new Seen[0];
+
+        Seen of(int signalId) {
+            return signalId < signals.length ? signals[signalId] : null;
+        }
+
+        void evaluated(Window window) {
+            int signalId = window.series.getSignalId();
+            if (signalId >= signals.length) {
+                signals = Arrays.copyOf(signals, signalId + 1);
+            }
+            Seen seen = signals[signalId];
+            if (seen == null) {
+                seen = new Seen();
+                signals[signalId] = seen;
+            }
+            seen.lateArrivals = window.lateArrivals;
+            TimeSeries.View view = window.view;
+            if (!view.isEmpty()) {
+                seen.newest = view.timestampAt(view.size() - 1);
+                seen.atNewest = view.size() - lowerBound(view, seen.newest);
+            }
+        }
+    }
+
+    /**
+     * A strategy and the signals it reads.
+     */
+    private static final class CombinedStrategy {
+        final AlertStrategy strategy;
+        final int[] signalIds;
+
+        CombinedStrategy(AlertStrategy strategy, int[] signalIds) {
+            this.strategy = strategy;
+            this.signalIds = signalIds;
         }
     }
 
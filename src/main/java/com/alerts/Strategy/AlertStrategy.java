@@ -1,17 +1,64 @@
 package com.alerts.Strategy;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import com.alerts.Alert;
 import com.data_management.PatientRecord;
+import com.data_management.RecordCursor;
 
 public interface AlertStrategy {
 
     /**
      * Determines whether an alert should be triggered
+     * <p>
+     * The records are expected in timestamp order, as the storage returns them. A list that is out of
+     * order is sorted into a copy first; the list itself is never modified, so read-only views can be
+     * passed.
      *
-     * @param records List of patient records for a specific measurement type
+     * @param records List of patient records for a specific measurement type, ordered by timestamp
      * @param patientId ID of the patient
      * @return An Alert if a condition is met, or null if no alert is needed
      */
-    Alert checkAlert(List<PatientRecord> records, int patientId);
+    default Alert checkAlert(List<PatientRecord> records, int patientId) {
+        return checkAlert(RecordCursor.of(inTimestampOrder(records)), patientId);
+    }
+
+    /**
+     * Returns the records in timestamp order: the list itself if it already is, which takes one pass,
+     * or else a sorted copy
+     *
+     * @param records the records
+     * @return the records ordered by timestamp
+     */
+    static List<PatientRecord> inTimestampOrder(List<PatientRecord> records) {
+        for (int i = 1; i < records.size(); i++) {
+            if (records.get(i).getTimestamp() < records.get(i - 1).getTimestamp()) {
+                List<PatientRecord> sorted = new ArrayList<>(records);
+                sorted.sort(Comparator.comparingLong(PatientRecord::getTimestamp));
+                return sorted;
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Determines whether an alert should be triggered, reading the records through a cursor so
+     * that no records are created
+     *
+     * @param records Cursor over patient records for a specific measurement type, ordered by timestamp
+     * @param patientId ID of the patient
+     * @return An Alert if a condition is met, or null if no alert is needed
+     */
+    Alert checkAlert(RecordCursor records, int patientId);
+
+    /**
+     * Returns how many readings before the first new one the strategy compares the new readings
+     * with, so that only recent readings need to be evaluated
+     *
+     * @return the number of earlier readings the strategy needs
+     */
+    default int contextSize() {
+        return 0;
+    }
 }
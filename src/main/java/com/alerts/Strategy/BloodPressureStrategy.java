@@ -3,10 +3,7 @@ package com.alerts.Strategy;
 import com.alerts.Alert;
 import com.alerts.Factory.AlertFactory;
 import com.alerts.Factory.BloodPressureAlertFactory;
-import com.data_management.PatientRecord;
-
-import java.util.Comparator;
-import java.util.List;
+import com.data_management.RecordCursor;
 
 public class BloodPressureStrategy implements AlertStrategy {
 
@@ -20,27 +17,35 @@ public class BloodPressureStrategy implements AlertStrategy {
     }
 
     @Override
-    public Alert checkAlert(List<PatientRecord> records, int patientId) {
-        if (records.size() < 3) return null;
-
-        records.sort(Comparator.comparingLong(PatientRecord::getTimestamp));
-
-        for (int i = 0; i <= records.size() - 3; i++) {
-            double v1 = records.get(i).getMeasurementValue();
-            double v2 = records.get(i + 1).getMeasurementValue();
-            double v3 = records.get(i + 2).getMeasurementValue();
-
-            boolean up = v2 - v1 > 10 && v3 - v2 > 10;
-            boolean down = v1 - v2 > 10 && v2 - v3 > 10;
-
-            if (up || down) {
-                String message = type + " Blood Pressure " + (up ? "rising" : "falling") + " trend";
-                return alertFactory.createAlert(
-                        String.valueOf(patientId),
-                        message,
-                        records.get(i + 2).getTimestamp()
-                );
+    public int contextSize() {
+        return 2;
+    }
+
+    @Override
+    public Alert checkAlert(RecordCursor records, int patientId) {
+        // the last two values before the current one
+        double v1 = 0;
+        double v2 = 0;
+        int seen = 0;
+
+        while (records.next()) {
+            double v3 = records.value();
+
+            if (++seen >= 3) {
+                boolean up = v2 - v1 > 10 && v3 - v2 > 10;
+                boolean down = v1 - v2 > 10 && v2 - v3 > 10;
+
+                if (up || down) {
+                    String message = type + " Blood Pressure " + (up ? "rising" : "falling") + " trend";
+                    return alertFactory.createAlert(
+                            String.valueOf(patientId),
+                            message,
+                            records.timestamp()
+                    );
+                }
             }
+            v1 = v2;
+            v2 = v3;
         }
 
         return null;
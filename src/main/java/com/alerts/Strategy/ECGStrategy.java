@@ -3,15 +3,12 @@ package com.alerts.Strategy;
 import com.alerts.Alert;
 import com.alerts.Factory.ECGAlertFactory;
 import com.alerts.Factory.AlertFactory;
-import com.data_management.PatientRecord;
-
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
+import com.data_management.RecordCursor;
 
 public class ECGStrategy implements AlertStrategy {
 
+    private static final int WINDOW_SIZE = 5;
+
     private final AlertFactory alertFactory;
 
     public ECGStrategy() {
@@ -19,35 +16,38 @@ public class ECGStrategy implements AlertStrategy {
     }
 
     @Override
-    public Alert checkAlert(List<PatientRecord> records, int patientId) {
-        if (records.isEmpty()) return null;
-
-        // Sort records by timestamp to ensure chronological order
-        records = new ArrayList<>(records);
-        records.sort(Comparator.comparingLong(PatientRecord::getTimestamp));
-
-
-        int windowSize = 5;
-        if (records.size() < windowSize) return null;
-
-        for (int i = windowSize; i < records.size(); i++) {
-            // Calculate the average of the previous `windowSize` records
-            double sum = 0;
-            for (int j = i - windowSize; j < i; j++) {
-                sum += records.get(j).getMeasurementValue();
-            }
-            double average = sum / windowSize;
-
-            double currentECG = records.get(i).getMeasurementValue();
+    public int contextSize() {
+        return WINDOW_SIZE;
+    }
 
-            // Check if the current ECG value is significantly higher than the average (1.5 times)
-            if (currentECG > average * 1.5) {
-                return alertFactory.createAlert(
-                        String.valueOf(patientId),
-                        "Abnormal ECG peak detected",
-                        records.get(i).getTimestamp()
-                );
+    @Override
+    public Alert checkAlert(RecordCursor records, int patientId) {
+        // the previous WINDOW_SIZE values, oldest overwritten first
+        double[] window = new double[WINDOW_SIZE];
+        int seen = 0;
+
+        while (records.next()) {
+            double currentECG = records.value();
+
+            if (seen >= WINDOW_SIZE) {
+                // Calculate the average of the previous `WINDOW_SIZE` records
+                double sum = 0;
+                for (double previous : window) {
+                    sum += previous;
+                }
+                double average = sum / WINDOW_SIZE;
+
+                // Check if the current ECG value is significantly higher than the average (1.5 times)
+                if (currentECG > average * 1.5) {
+                    return alertFactory.createAlert(
+                            String.valueOf(patientId),
+                            "Abnormal ECG peak detected",
+                            records.timestamp()
+                    );
+                }
             }
+            window[seen % WINDOW_SIZE] = currentECG;
+            seen++;
         }
 
         return null;
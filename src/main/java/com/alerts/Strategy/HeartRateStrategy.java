@@ -3,11 +3,7 @@ package com.alerts.Strategy;
 import com.alerts.Alert;
 import com.alerts.Factory.AlertFactory;
 import com.alerts.Factory.ECGAlertFactory;
-import com.data_management.PatientRecord;
-
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
+import com.data_management.RecordCursor;
 
 public class HeartRateStrategy implements AlertStrategy {
 
@@ -18,18 +14,26 @@ public class HeartRateStrategy implements AlertStrategy {
     }
 
     @Override
-    public Alert checkAlert(List<PatientRecord> records, int patientId) {
-        if (records.isEmpty()) return null;
-
-        PatientRecord latest = Collections.max(records, Comparator.comparingLong(PatientRecord::getTimestamp));
-        double value = latest.getMeasurementValue();
+    public Alert checkAlert(RecordCursor records, int patientId) {
+        // the reading with the latest timestamp; the first one on ties
+        boolean found = false;
+        long latestTimestamp = 0;
+        double value = 0;
+        while (records.next()) {
+            if (!found || records.timestamp() > latestTimestamp) {
+                found = true;
+                latestTimestamp = records.timestamp();
+                value = records.value();
+            }
+        }
+        if (!found) return null;
 
         if (value < 60 || value > 100) {
             String condition = value < 60 ? "Bradycardia (low heart rate)" : "Tachycardia (high heart rate)";
             return alertFactory.createAlert(
                     String.valueOf(patientId),
                     condition,
-                    latest.getTimestamp()
+                    latestTimestamp
             );
         }
 
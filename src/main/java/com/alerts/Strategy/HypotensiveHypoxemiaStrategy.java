@@ -3,11 +3,8 @@ package com.alerts.Strategy;
 import com.alerts.Alert;
 import com.alerts.Factory.AlertFactory;
 import com.alerts.Factory.BloodPressureAlertFactory;
-import com.alerts.Factory.BloodOxygenAlertFactory;
-import com.data_management.PatientRecord;
-
-import java.util.List;
-import java.util.stream.Collectors;
+import com.data_management.RecordCursor;
+import com.data_management.SignalRegistry;
 
 public class HypotensiveHypoxemiaStrategy implements AlertStrategy {
 
@@ -18,36 +15,43 @@ public class HypotensiveHypoxemiaStrategy implements AlertStrategy {
     }
 
     @Override
-    public Alert checkAlert(List<PatientRecord> records, int patientId) {
-        List<PatientRecord> systolicRecords = getSystolicBPRecords(records);
-        List<PatientRecord> oxygenRecords = getOxygenSaturationRecords(records);
+    public int contextSize() {
+        // the latest systolic and oxygen readings before the new ones still count
+        return 1;
+    }
 
-        if (systolicRecords.isEmpty() || oxygenRecords.isEmpty()) return null;
+    @Override
+    public Alert checkAlert(RecordCursor records, int patientId) {
+        // the last systolic and oxygen readings
+        boolean hasSystolic = false;
+        boolean hasOxygen = false;
+        double latestSystolic = 0;
+        double latestOxygen = 0;
+        long systolicTimestamp = 0;
+        long oxygenTimestamp = 0;
+
+        while (records.next()) {
+            if (records.signalId() == SignalRegistry.SYSTOLIC_PRESSURE) {
+                hasSystolic = true;
+                latestSystolic = records.value();
+                systolicTimestamp = records.timestamp();
+            } else if (records.signalId() == SignalRegistry.SATURATION) {
+                hasOxygen = true;
+                latestOxygen = records.value();
+                oxygenTimestamp = records.timestamp();
+            }
+        }
 
-        PatientRecord latestSystolic = systolicRecords.get(systolicRecords.size() - 1);
-        PatientRecord latestOxygen = oxygenRecords.get(oxygenRecords.size() - 1);
+        if (!hasSystolic || !hasOxygen) return null;
 
-        if (latestSystolic.getMeasurementValue() < 90 && latestOxygen.getMeasurementValue() < 92) {
+        if (latestSystolic < 90 && latestOxygen < 92) {
             return bpAlertFactory.createAlert(
                     String.valueOf(patientId),
                     "Hypotensive Hypoxemia Alert",
-                    Math.max(latestSystolic.getTimestamp(), latestOxygen.getTimestamp())
+                    Math.max(systolicTimestamp, oxygenTimestamp)
             );
         }
 
         return null;
     }
-
-    private List<PatientRecord> getSystolicBPRecords(List<PatientRecord> records) {
-        return records.stream()
-                .filter(record -> "Blood Pressure".equals(record.getRecordType()))
-                .collect(Collectors.toList());
-    }
-
-
-    private List<PatientRecord> getOxygenSaturationRecords(List<PatientRecord> records) {
-        return records.stream()
-                .filter(record -> "Oxygen Saturation".equals(record.getRecordType()))
-                .collect(Collectors.toList());
-    }
 }
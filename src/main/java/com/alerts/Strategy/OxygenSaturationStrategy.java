@@ -4,9 +4,9 @@ import com.alerts.Alert;
 import com.alerts.Factory.AlertFactory;
 import com.alerts.Factory.BloodOxygenAlertFactory;
 import com.data_management.PatientRecord;
+import com.data_management.RecordCursor;
+import com.data_management.SignalRegistry;
 
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -21,24 +21,46 @@ public class OxygenSaturationStrategy implements AlertStrategy {
     @Override
     public Alert checkAlert(List<PatientRecord> records, int patientId) {
         records = records.stream()
-                .filter(r -> r.getPatientId() == patientId && "Oxygen Saturation".equals(r.getRecordType()))
-                .sorted(Comparator.comparingLong(PatientRecord::getTimestamp))
+                .filter(r -> r.getPatientId() == patientId && r.getSignalId() == SignalRegistry.SATURATION)
                 .collect(Collectors.toList());
 
-        for (int i = 1; i < records.size(); i++) {
-            double previous = records.get(i - 1).getMeasurementValue();
-            double current = records.get(i).getMeasurementValue();
-            long timeDiff = records.get(i).getTimestamp() - records.get(i - 1).getTimestamp();
+        return checkAlert(RecordCursor.of(AlertStrategy.inTimestampOrder(records)), patientId);
+    }
+
+    @Override
+    public int contextSize() {
+        return 1;
+    }
 
-            // Detect rapid drop (> 5% in < 2000 ms)
-            if (previous - current > 5 && timeDiff < 2000) {
-                return alertFactory.createAlert(String.valueOf(patientId), "Rapid drop in oxygen saturation", records.get(i).getTimestamp());
+    @Override
+    public Alert checkAlert(RecordCursor records, int patientId) {
+        boolean first = true;
+        double previous = 0;
+        long previousTimestamp = 0;
+
+        while (records.next()) {
+            if (records.patientId() != patientId || records.signalId() != SignalRegistry.SATURATION) {
+                continue;
             }
+            double current = records.value();
+            long timestamp = records.timestamp();
+
+            if (!first) {
+                long timeDiff = timestamp - previousTimestamp;
+
+                // Detect rapid drop (> 5% in < 2000 ms)
+                if (previous - current > 5 && timeDiff < 2000) {
+                    return alertFactory.createAlert(String.valueOf(patientId), "Rapid drop in oxygen saturation", timestamp);
+                }
 
-            // Also detect dangerously low value
-            if (current < 90) {
-                return alertFactory.createAlert(String.valueOf(patientId), "Low oxygen saturation", records.get(i).getTimestamp());
+                // Also detect dangerously low value
+                if (current < 90) {
+                    return alertFactory.createAlert(String.valueOf(patientId), "Low oxygen saturation", timestamp);
+                }
             }
+            first = false;
+            previous = current;
+            previousTimestamp = timestamp;
         }
 
         return null;
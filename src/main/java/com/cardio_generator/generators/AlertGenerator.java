@@ -3,6 +3,7 @@ package com.cardio_generator.generators;
 import java.util.Random;
 
 import com.cardio_generator.outputs.OutputStrategy;
+import com.util.IntObjectMap;
 
 /**
  * Generates simulated alert data for patients, representing triggered or resolved alerts.
@@ -12,15 +13,15 @@ public class AlertGenerator implements PatientDataGenerator {
 
     public static final Random randomGenerator = new Random(System.currentTimeMillis()); // Added seed
     // edit: AlertStates -> alertStates for lowerCamelCase
-    private boolean[] alertStates; // false = resolved, true = pressed
+    private final IntObjectMap<Boolean> alertStates; // false or absent = resolved, true = pressed
 
     /**
      * Constructs a new {@code AlertGenerator} for the specified number of patients.
      *
-     * @param patientCount The number of patients to simulate.
+     * @param patientCount The number of patients expected; patients with any ID can be simulated.
      */
     public AlertGenerator(int patientCount) {
-        alertStates = new boolean[patientCount + 1];
+        alertStates = new IntObjectMap<>(patientCount);
     }
 
     /**
@@ -33,9 +34,9 @@ public class AlertGenerator implements PatientDataGenerator {
     @Override
     public void generate(int patientId, OutputStrategy outputStrategy) {
         try {
-            if (alertStates[patientId]) {
+            if (Boolean.TRUE.equals(alertStates.get(patientId))) {
                 if (randomGenerator.nextDouble() < 0.9) { // 90% chance to resolve
-                    alertStates[patientId] = false;
+                    alertStates.put(patientId, false);
                     // Output the alert
                     outputStrategy.output(patientId, System.currentTimeMillis(), "Alert", "resolved");
                 }
@@ -46,7 +47,7 @@ public class AlertGenerator implements PatientDataGenerator {
                 boolean alertTriggered = randomGenerator.nextDouble() < p;
 
                 if (alertTriggered) {
-                    alertStates[patientId] = true;
+                    alertStates.put(patientId, true);
                     // Output the alert
                     outputStrategy.output(patientId, System.currentTimeMillis(), "Alert", "triggered");
                 }
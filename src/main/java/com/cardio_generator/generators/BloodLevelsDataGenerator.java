@@ -3,40 +3,34 @@ package com.cardio_generator.generators;
 import java.util.Random;
 
 import com.cardio_generator.outputs.OutputStrategy;
+import com.util.IntObjectMap;
 
 public class BloodLevelsDataGenerator implements PatientDataGenerator {
     private static final Random random = new Random(System.currentTimeMillis()); // Added seed
-    private final double[] baselineCholesterol;
-    private final double[] baselineWhiteCells;
-    private final double[] baselineRedCells;
+    // cholesterol, white cell and red cell baselines per patient, created on a patient's first reading
+    private final IntObjectMap<double[]> baselines;
 
     public BloodLevelsDataGenerator(int patientCount) {
-        // Initialize arrays to store baseline values for each patient
-        baselineCholesterol = new double[patientCount + 1];
-        baselineWhiteCells = new double[patientCount + 1];
-        baselineRedCells = new double[patientCount + 1];
-
-        // Generate baseline values for each patient
-        for (int i = 1; i <= patientCount; i++) {
-            baselineCholesterol[i] = 150 + random.nextDouble() * 50; // Initial random baseline
-            baselineWhiteCells[i] = 4 + random.nextDouble() * 6; // Initial random baseline
-            baselineRedCells[i] = 4.5 + random.nextDouble() * 1.5; // Initial random baseline
-        }
+        baselines = new IntObjectMap<>(patientCount);
     }
 
     @Override
     public void generate(int patientId, OutputStrategy outputStrategy) {
         try {
+            double[] baseline = baselines.computeIfAbsent(patientId, id -> new double[]{
+                    150 + random.nextDouble() * 50, // Initial random baseline
+                    4 + random.nextDouble() * 6, // Initial random baseline
+                    4.5 + random.nextDouble() * 1.5}); // Initial random baseline
+
             // Generate values around the baseline for realism
-            double cholesterol = baselineCholesterol[patientId] + (random.nextDouble() - 0.5) * 10; // Small variation
-            double whiteCells = baselineWhiteCells[patientId] + (random.nextDouble() - 0.5) * 1; // Small variation
-            double redCells = baselineRedCells[patientId] + (random.nextDouble() - 0.5) * 0.2; // Small variation
+            double cholesterol = baseline[0] + (random.nextDouble() - 0.5) * 10; // Small variation
+            double whiteCells = baseline[1] + (random.nextDouble() - 0.5) * 1; // Small variation
+            double redCells = baseline[2] + (random.nextDouble() - 0.5) * 0.2; // Small variation
 
             // Output the generated values
-            outputStrategy.output(patientId, System.currentTimeMillis(), "Cholesterol", Double.toString(cholesterol));
-            outputStrategy.output(patientId, System.currentTimeMillis(), "WhiteBloodCells",
-                    Double.toString(whiteCells));
-            outputStrategy.output(patientId, System.currentTimeMillis(), "RedBloodCells", Double.toString(redCells));
+            outputStrategy.output(patientId, System.currentTimeMillis(), "Cholesterol", cholesterol);
+            outputStrategy.output(patientId, System.currentTimeMillis(), "WhiteBloodCells", whiteCells);
+            outputStrategy.output(patientId, System.currentTimeMillis(), "RedBloodCells", redCells);
         } catch (Exception e) {
             System.err.println("An error occurred while generating blood levels data for patient " + patientId);
             e.printStackTrace(); // This will print the stack trace to help identify where the error occurred.
@@ -3,22 +3,16 @@ package com.cardio_generator.generators;
 import java.util.Random;
 
 import com.cardio_generator.outputs.OutputStrategy;
+import com.util.IntObjectMap;
 
 public class BloodPressureDataGenerator implements PatientDataGenerator {
     private static final Random random = new Random(System.currentTimeMillis()); // Added seed
 
-    private int[] lastSystolicValues;
-    private int[] lastDiastolicValues;
+    // last systolic and diastolic value per patient, created on a patient's first reading
+    private final IntObjectMap<int[]> lastValues;
 
     public BloodPressureDataGenerator(int patientCount) {
-        lastSystolicValues = new int[patientCount + 1];
-        lastDiastolicValues = new int[patientCount + 1];
-
-        // Initialize with baseline values for each patient
-        for (int i = 1; i <= patientCount; i++) {
-            lastSystolicValues[i] = 110 + random.nextInt(20); // Random baseline between 110 and 130
-            lastDiastolicValues[i] = 70 + random.nextInt(15); // Random baseline between 70 and 85
-        }
+        lastValues = new IntObjectMap<>(patientCount);
     }
 
     @Override
@@ -26,18 +20,21 @@ public class BloodPressureDataGenerator implements PatientDataGenerator {
         try {
             int systolicVariation = random.nextInt(5) - 2; // -2, -1, 0, 1, or 2
             int diastolicVariation = random.nextInt(5) - 2;
-            int newSystolicValue = lastSystolicValues[patientId] + systolicVariation;
-            int newDiastolicValue = lastDiastolicValues[patientId] + diastolicVariation;
+            int[] last = lastValues.computeIfAbsent(patientId, id -> new int[]{
+                    110 + random.nextInt(20), // Random baseline between 110 and 130
+                    70 + random.nextInt(15)}); // Random baseline between 70 and 85
+            int newSystolicValue = last[0] + systolicVariation;
+            int newDiastolicValue = last[1] + diastolicVariation;
             // Ensure the blood pressure stays within a realistic and safe range
             newSystolicValue = Math.min(Math.max(newSystolicValue, 90), 180);
             newDiastolicValue = Math.min(Math.max(newDiastolicValue, 60), 120);
-            lastSystolicValues[patientId] = newSystolicValue;
-            lastDiastolicValues[patientId] = newDiastolicValue;
+            last[0] = newSystolicValue;
+            last[1] = newDiastolicValue;
 
             outputStrategy.output(patientId, System.currentTimeMillis(), "SystolicPressure",
-                    Double.toString(newSystolicValue));
+                    (double) newSystolicValue);
             outputStrategy.output(patientId, System.currentTimeMillis(), "DiastolicPressure",
-                    Double.toString(newDiastolicValue));
+                    (double) newDiastolicValue);
         } catch (Exception e) {
             System.err.println("An error occurred while generating blood pressure data for patient " + patientId);
             e.printStackTrace(); // This will print the stack trace to help identify where the error occurred.
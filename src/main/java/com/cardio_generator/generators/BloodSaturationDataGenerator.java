@@ -3,6 +3,7 @@ package com.cardio_generator.generators;
 import java.util.Random;
 
 import com.cardio_generator.outputs.OutputStrategy;
+import com.util.IntObjectMap;
 
 /**
  * Generates simulated blood saturation data for patients.
@@ -10,21 +11,17 @@ import com.cardio_generator.outputs.OutputStrategy;
  */
 public class BloodSaturationDataGenerator implements PatientDataGenerator {
     private static final Random random = new Random(System.currentTimeMillis()); // Added seed
-    private int[] lastSaturationValues;
+    // last value per patient, created on a patient's first reading so any patient ID works
+    private final IntObjectMap<int[]> lastSaturationValues;
 
     /**
      * Constructs a new {@code BloodSaturationDataGenerator} for the specified number of patients.
-     * Initializes each patient with a random baseline saturation value between 95% and 100%.
+     * Each patient starts with a random baseline saturation value between 95% and 100%.
      *
-     * @param patientCount The number of patients to simulate.
+     * @param patientCount The number of patients expected; patients with any ID can be simulated.
      */
     public BloodSaturationDataGenerator(int patientCount) {
-        lastSaturationValues = new int[patientCount + 1];
-
-        // Initialize with baseline saturation values for each patient
-        for (int i = 1; i <= patientCount; i++) {
-            lastSaturationValues[i] = 95 + random.nextInt(6); // Initializes with a value between 95 and 100
-        }
+        lastSaturationValues = new IntObjectMap<>(patientCount);
     }
 
     /**
@@ -39,11 +36,13 @@ public class BloodSaturationDataGenerator implements PatientDataGenerator {
         try {
             // Simulate blood saturation values
             int variation = random.nextInt(3) - 1; // -1, 0, or 1 to simulate small fluctuations
-            int newSaturationValue = lastSaturationValues[patientId] + variation;
+            int[] lastSaturationValue = lastSaturationValues.computeIfAbsent(patientId,
+                    id -> new int[]{95 + random.nextInt(6)}); // Initializes with a value between 95 and 100
+            int newSaturationValue = lastSaturationValue[0] + variation;
 
             // Ensure the saturation stays within a realistic and healthy range
             newSaturationValue = Math.min(Math.max(newSaturationValue, 90), 100);
-            lastSaturationValues[patientId] = newSaturationValue;
+            lastSaturationValue[0] = newSaturationValue;
             outputStrategy.output(patientId, System.currentTimeMillis(), "Saturation",
                     Double.toString(newSaturationValue) + "%");
         } catch (Exception e) {
@@ -3,27 +3,27 @@ package com.cardio_generator.generators;
 import java.util.Random;
 
 import com.cardio_generator.outputs.OutputStrategy;
+import com.util.IntObjectMap;
 
 public class ECGDataGenerator implements PatientDataGenerator {
     private static final Random random = new Random(System.currentTimeMillis()); // Added seed
-    private double[] lastEcgValues;
+    // last ECG value per patient, created on a patient's first reading
+    private final IntObjectMap<double[]> lastEcgValues;
     private static final double PI = Math.PI;
 
     public ECGDataGenerator(int patientCount) {
-        lastEcgValues = new double[patientCount + 1];
-        // Initialize the last ECG value for each patient
-        for (int i = 1; i <= patientCount; i++) {
-            lastEcgValues[i] = 0; // Initial ECG value can be set to 0
-        }
+        lastEcgValues = new IntObjectMap<>(patientCount);
     }
 
     @Override
     public void generate(int patientId, OutputStrategy outputStrategy) {
         // TODO Check how realistic this data is and make it more realistic if necessary
         try {
-            double ecgValue = simulateEcgWaveform(patientId, lastEcgValues[patientId]);
-            outputStrategy.output(patientId, System.currentTimeMillis(), "ECG", Double.toString(ecgValue));
-            lastEcgValues[patientId] = ecgValue;
+            // Initial ECG value can be set to 0
+            double[] lastEcgValue = lastEcgValues.computeIfAbsent(patientId, id -> new double[1]);
+            double ecgValue = simulateEcgWaveform(patientId, lastEcgValue[0]);
+            outputStrategy.output(patientId, System.currentTimeMillis(), "ECG", ecgValue);
+            lastEcgValue[0] = ecgValue;
         } catch (Exception e) {
             System.err.println("An error occurred while generating ECG data for patient " + patientId);
             e.printStackTrace(); // This will print the stack trace to help identify where the error occurred.
@@ -0,0 +1,174 @@
+package com.cardio_generator.outputs;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * An implementation of {@link OutputStrategy} that hands readings to a consumer in the same JVM.
+ * <p>
+ * Readings are written into a bounded, lock-free ring buffer of primitive columns that any number of
+ * generator threads can write to concurrently and one consumer (usually a
+ * {@link com.data_management.InMemoryDataReader}) drains. Numeric readings never go through text
+ * formatting or a socket. When the buffer is full, producers wait for the consumer to catch up.
+ * Text readings are parsed once on the way in; readings that are not numeric, such as alert states,
+ * are dropped and counted.
+ */
+public class InMemoryOutputStrategy implements OutputStrategy {
+
+    /** Default number of readings the buffer can hold. */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private final int mask;
+    // per-slot sequence numbers: a slot is writable at sequence == position and readable at position + 1
+    private final AtomicLongArray sequences;
+    private final int[] patientIds;
+    private final long[] timestamps;
+    private final double[] values;
+    private final String[] labels;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    // only touched by the consumer thread
+    private long head;
+
+    /**
+     * Constructs a new InMemoryOutputStrategy with the default capacity.
+     */
+    public InMemoryOutputStrategy() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a new InMemoryOutputStrategy.
+     *
+     * @param capacity the number of readings the buffer can hold, rounded up to a power of two
+     */
+    public InMemoryOutputStrategy(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        mask = size - 1;
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        patientIds = new int[size];
+        timestamps = new long[size];
+        values = new double[size];
+        labels = new String[size];
+    }
+
+    /**
+     * Parses the text value and queues it as a numeric reading.
+     * Percent signs are stripped; non-numeric values are dropped.
+     *
+     * @param patientId The ID of the patient.
+     * @param timestamp The timestamp of the data.
+     * @param label     The label describing the data type.
+     * @param data      The data value.
+     */
+    @Override
+    public void output(int patientId, long timestamp, String label, String data) {
+        double value;
+        try {
+            value = Double.parseDouble(data.trim().replace("%", ""));
+        } catch (NumberFormatException | NullPointerException e) {
+            dropped.incrementAndGet();
+            return;
+        }
+        output(patientId, timestamp, label, value);
+    }
+
+    /**
+     * Queues a numeric reading, waiting for free space if the buffer is full.
+     *
+     * @param patientId The ID of the patient.
+     * @param timestamp The timestamp of the data.
+     * @param label     The label describing the data type.
+     * @param value     The numeric value.
+     */
+    @Override
+    public void output(int patientId, long timestamp, String label, double value) {
+        while (!offer(patientId, timestamp, label, value)) {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Tries to queue a reading without waiting.
+     *
+     * @return {@code false} if the buffer is full
+     */
+    public boolean offer(int patientId, long timestamp, String label, double value) {
+        long position;
+        int index;
+        while (true) {
+            position = tail.get();
+            index = (int) (position & mask);
+            long available = sequences.get(index) - position;
+            if (available == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (available < 0) {
+                // the consumer has not freed this slot yet
+                return false;
+            }
+            // another producer claimed the slot first, try the next one
+        }
+        patientIds[index] = patientId;
+        timestamps[index] = timestamp;
+        values[index] = value;
+        labels[index] = label;
+        // publishes the slot contents to the consumer
+        sequences.set(index, position + 1);
+        return true;
+    }
+
+    /**
+     * Removes up to {@code max} queued readings and passes them to the sink.
+     * Must only be called from one consumer thread at a time.
+     *
+     * @param sink receives each reading
+     * @param max  the maximum number of readings to drain
+     * @return the number of readings drained
+     */
+    public int drain(ReadingSink sink, int max) {
+        int drained = 0;
+        while (drained < max) {
+            int index = (int) (head & mask);
+            if (sequences.get(index) != head + 1) {
+                break;
+            }
+            sink.accept(patientIds[index], values[index], labels[index], timestamps[index]);
+            labels[index] = null;
+            // hands the slot back to the producers for the next lap
+            sequences.set(index, head + mask + 1);
+            head++;
+            drained++;
+        }
+        return drained;
+    }
+
+    /**
+     * Returns the number of text readings that were dropped because they were not numeric.
+     *
+     * @return the number of dropped readings
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Receives readings drained from the buffer.
+     */
+    @FunctionalInterface
+    public interface ReadingSink {
+        /**
+         * Accepts one reading.
+         *
+         * @param patientId        the ID of the patient
+         * @param measurementValue the value of the reading
+         * @param label            the type of the reading
+         * @param timestamp        the timestamp of the reading
+         */
+        void accept(int patientId, double measurementValue, String label, long timestamp);
+    }
+}
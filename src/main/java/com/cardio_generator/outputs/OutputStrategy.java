@@ -14,4 +14,18 @@ public interface OutputStrategy {
      * @param data      The data value to output.
      */
     void output(int patientId, long timestamp, String label, String data);
+
+    /**
+     * Outputs a numeric reading for a patient.
+     * Strategies that can carry the value without formatting it override this; by default the value
+     * is formatted with {@link Double#toString(double)} and passed to the text variant.
+     *
+     * @param patientId The ID of the patient.
+     * @param timestamp The timestamp of the data.
+     * @param label     A label describing the type of data.
+     * @param value     The numeric value to output.
+     */
+    default void output(int patientId, long timestamp, String label, double value) {
+        output(patientId, timestamp, label, Double.toString(value));
+    }
 }
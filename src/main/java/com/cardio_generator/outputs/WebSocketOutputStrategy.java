@@ -1,35 +1,65 @@
 package com.cardio_generator.outputs;
 
 import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
 import org.java_websocket.server.WebSocketServer;
 
 import java.net.InetSocketAddress;
 import java.util.IllegalFormatException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Implementation of {@link OutputStrategy} that broadcasts patient data to all connected WebSocket clients.
  * <p>
  * This strategy formats patient data into a string and sends it via a WebSocket server.
- * Each message is sent in the format:
+ * Each message is prefixed with a sequence number that is unique within the stream,
+ * so clients can detect lost messages:
  * <pre>
- * patientId,timestamp,label,data
+ * sequence,patientId,timestamp,label,data
  * </pre>
  * Example:
  * <pre>
- * 5,1744113766180,HeartRate,85.0
+ * 42,5,1744113766180,HeartRate,85.0
  * </pre>
+ * On connect the server sends {@code STREAM,<streamId>} to identify the stream. A reconnecting
+ * client may send the header {@value #RESUME_HEADER}{@code : <streamId>,<lastSequence>} with its
+ * handshake to get the messages it missed replayed, as long as they are still in the replay buffer.
+ * The replay is sent before the connection receives any live message, so the client sees the
+ * sequence in order.
  */
 public class WebSocketOutputStrategy implements OutputStrategy {
 
-    private final WebSocketServer server;
+    /** Number of recent messages kept for replay to reconnecting clients. */
+    public static final int DEFAULT_REPLAY_CAPACITY = 4096;
+    /** Handshake header through which a reconnecting client asks for a replay. */
+    public static final String RESUME_HEADER = "X-Resume";
+
+    private final SimpleWebSocketServer server;
 
     /**
      * Constructs a new WebSocketOutputStrategy and starts a WebSocket server on the specified port.
      *
-     * @param port the port number to start the WebSocket server on
+     * @param port the port number to start the WebSocket server on, or 0 for any free port
      */
     public WebSocketOutputStrategy(int port) {
-        server = new SimpleWebSocketServer(new InetSocketAddress(port));
+        this(port, DEFAULT_REPLAY_CAPACITY);
+    }
+
+    /**
+     * Constructs a new WebSocketOutputStrategy with a replay buffer of the given size
+     * and starts a WebSocket server on the specified port.
+     *
+     * @param port           the port number to start the WebSocket server on, or 0 for any free port
+     * @param replayCapacity the number of recent messages kept for replay
+     */
+    public WebSocketOutputStrategy(int port, int replayCapacity) {
+        server = new SimpleWebSocketServer(new InetSocketAddress(port), new ReplayBuffer(replayCapacity));
+        // lets a restarted server bind the port again while old connections are in TIME_WAIT
+        server.setReuseAddr(true);
         System.out.println("WebSocket server created on port: " + port + ", listening for connections...");
         server.start();
     }
@@ -44,29 +74,90 @@ public class WebSocketOutputStrategy implements OutputStrategy {
      */
     @Override
     public void output(int patientId, long timestamp, String label, String data) {
-        String message;
+        String payload;
         try {
             // Format the message
-            message = String.format("%d,%d,%s,%s", patientId, timestamp, label, data);
+            payload = String.format("%d,%d,%s,%s", patientId, timestamp, label, data);
         } catch (IllegalFormatException | NullPointerException ex) {
             // catch any formatting errors
             System.err.println("Error occurred while formatting message: " + ex.getMessage());
             ex.printStackTrace();
             return;
         }
-        // send the message to all clients
-        for (WebSocket conn : server.getConnections()) {
-            try {
-                // make sure the connection is open before sending
-                if (conn.isOpen()) {
-                    conn.send(message);
-                } else {
-                    System.err.println("Error: WebSocket connection is closed, skipping send.");
-                }
-            } catch (Exception ex) {
-                System.err.println("Error occurred while broadcasting message to connection " + conn.getRemoteSocketAddress() + ": " + ex.getMessage());
-                ex.printStackTrace();
+        ReplayBuffer buffer = server.replayBuffer;
+        // numbering, buffering and sending happen under one lock so every client sees the sequence in order
+        synchronized (buffer) {
+            String message = buffer.append(payload);
+            // send the message to all clients that have received their replay
+            for (WebSocket conn : server.live) {
+                send(conn, message);
+            }
+        }
+    }
+
+    /**
+     * Returns the sequence number of the last message sent on this stream.
+     *
+     * @return the last sequence number, or 0 if nothing has been sent yet
+     */
+    public long getLastSequence() {
+        synchronized (server.replayBuffer) {
+            return server.replayBuffer.lastSequence;
+        }
+    }
+
+    /**
+     * Waits until the server is listening.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of the timeout
+     * @return {@code true} if the server started within the timeout
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public boolean awaitStarted(long timeout, TimeUnit unit) throws InterruptedException {
+        return server.started.await(timeout, unit);
+    }
+
+    /**
+     * Returns the port the server listens on, which is only known for port 0 once it has started.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return server.getPort();
+    }
+
+    /**
+     * Returns the number of connections that receive live messages.
+     *
+     * @return the number of live connections
+     */
+    public int getLiveConnectionCount() {
+        synchronized (server.replayBuffer) {
+            return server.live.size();
+        }
+    }
+
+    /**
+     * Returns the identifier of this stream. It changes whenever a new strategy is started,
+     * so clients can tell a restarted server from a resumed one.
+     *
+     * @return the stream identifier
+     */
+    public long getStreamId() {
+        return server.replayBuffer.streamId;
+    }
+
+    private static void send(WebSocket conn, String message) {
+        try {
+            // make sure the connection is open before sending
+            if (conn.isOpen()) {
+                conn.send(message);
+            } else {
+                System.err.println("Error: WebSocket connection is closed, skipping send.");
             }
+        } catch (Exception ex) {
+            System.err.println("Error occurred while broadcasting message to connection " + conn.getRemoteSocketAddress() + ": " + ex.getMessage());
         }
     }
 
@@ -79,30 +170,110 @@ public class WebSocketOutputStrategy implements OutputStrategy {
         return server;
     }
 
+    /**
+     * Fixed-size ring of the most recently sent messages, indexed by sequence number.
+     * All access is guarded by the buffer's monitor.
+     */
+    private static class ReplayBuffer {
+        private final long streamId = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+        private final String[] messages;
+        private long lastSequence;
+
+        ReplayBuffer(int capacity) {
+            if (capacity < 1) {
+                throw new IllegalArgumentException("Replay capacity must be positive: " + capacity);
+            }
+            messages = new String[capacity];
+        }
+
+        /**
+         * Numbers the payload with the next sequence number and remembers it for replay.
+         *
+         * @return the framed message
+         */
+        String append(String payload) {
+            String message = (++lastSequence) + "," + payload;
+            messages[(int) (lastSequence % messages.length)] = message;
+            return message;
+        }
+
+        /**
+         * Sends every buffered message newer than {@code fromSequence} to the connection.
+         */
+        void replay(WebSocket conn, long fromSequence) {
+            long first = Math.max(fromSequence + 1, lastSequence - messages.length + 1);
+            first = Math.max(first, 1);
+            for (long seq = first; seq <= lastSequence; seq++) {
+                send(conn, messages[(int) (seq % messages.length)]);
+            }
+        }
+    }
+
     /**
      * Inner class that represents a simple WebSocket server for broadcasting messages.
-     * Handles basic events.
+     * Handles basic events and resume requests from reconnecting clients.
      */
     private static class SimpleWebSocketServer extends WebSocketServer {
 
+        private final ReplayBuffer replayBuffer;
+        // connections that receive live messages; guarded by the replay buffer
+        private final Set<WebSocket> live = new LinkedHashSet<>();
+        private final CountDownLatch started = new CountDownLatch(1);
+
         /**
          * Constructs the server on the given socket address.
          *
-         * @param address the socket address to bind the server to
+         * @param address      the socket address to bind the server to
+         * @param replayBuffer the buffer of recent messages used to serve resume requests
          */
-        public SimpleWebSocketServer(InetSocketAddress address) {
+        public SimpleWebSocketServer(InetSocketAddress address, ReplayBuffer replayBuffer) {
             super(address);
+            this.replayBuffer = replayBuffer;
         }
 
         /**
          * Called when a new client connection is established.
+         * Tells the client which stream it is connected to, replays the messages it asked for and
+         * only then adds it to the live connections, all under the replay buffer's lock, so no live
+         * message overtakes the replay.
          *
          * @param conn      the new WebSocket connection
          * @param handshake the handshake data from the client
          */
         @Override
-        public void onOpen(WebSocket conn, org.java_websocket.handshake.ClientHandshake handshake) {
+        public void onOpen(WebSocket conn, ClientHandshake handshake) {
             System.out.println("New connection: " + conn.getRemoteSocketAddress());
+            long resumeAfter = resumePosition(handshake);
+            synchronized (replayBuffer) {
+                send(conn, "STREAM," + replayBuffer.streamId);
+                if (resumeAfter >= 0) {
+                    replayBuffer.replay(conn, resumeAfter);
+                }
+                live.add(conn);
+            }
+        }
+
+        /**
+         * Reads the {@value #RESUME_HEADER} header of a handshake.
+         *
+         * @return the last sequence number the client received on this stream, or -1 if there is
+         *         nothing to replay
+         */
+        private long resumePosition(ClientHandshake handshake) {
+            if (!handshake.hasFieldValue(RESUME_HEADER)) {
+                return -1;
+            }
+            String value = handshake.getFieldValue(RESUME_HEADER);
+            String[] parts = value.split(",");
+            try {
+                if (parts.length == 2 && Long.parseLong(parts[0].trim()) == replayBuffer.streamId) {
+                    return Long.parseLong(parts[1].trim());
+                }
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid resume request: " + value);
+            }
+            // the client was talking to a different server instance, nothing to replay
+            return -1;
         }
 
         /**
@@ -116,6 +287,9 @@ public class WebSocketOutputStrategy implements OutputStrategy {
         @Override
         public void onClose(WebSocket conn, int code, String reason, boolean remote) {
             System.out.println("Closed connection: " + conn.getRemoteSocketAddress());
+            synchronized (replayBuffer) {
+                live.remove(conn);
+            }
         }
 
         /**
@@ -146,6 +320,7 @@ public class WebSocketOutputStrategy implements OutputStrategy {
         @Override
         public void onStart() {
             System.out.println("Server started successfully");
+            started.countDown();
         }
     }
 }
@@ -1,36 +1,103 @@
 package com.cardio_generator.websocket;
 
+import com.cardio_generator.outputs.WebSocketOutputStrategy;
+import com.data_management.DataBatch;
 import com.data_management.DataStorage;
 import org.java_websocket.client.WebSocketClient;
 import org.java_websocket.handshake.ServerHandshake;
 
 import java.net.URI;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * A simple WebSocket client that connects to a WebSocket server and listens for patient data.
  * <p>
  * Message Format:
  * <pre>
- * patientId, timestamp, label, value
+ * [sequence,] patientId, timestamp, label, value
  * </pre>
  * Example:
  * <pre>
  * 12, 1744113766180, HeartRate, 85.0
  * </pre>
- * Parsed data is stored into the provided {@link DataStorage} instance.
+ * When the server numbers its messages, the client keeps track of the last sequence number it
+ * has seen, counts gaps in the sequence and asks the server to replay missed messages after a
+ * reconnect, through the {@value WebSocketOutputStrategy#RESUME_HEADER} handshake header. Parsed data is collected into a {@link DataBatch} and handed to the client's batch sink
+ * (by default the storage's {@link DataStorage#addPatientData(DataBatch)}) when the batch is full or at
+ * most {@link #FLUSH_DELAY_MILLIS} after its first reading arrived.
  */
 public class SimpleWebSocketClient extends WebSocketClient {
 
-    private final DataStorage dataStorage;
+    /** Maximum number of readings buffered before they are handed to the sink. */
+    public static final int MAX_BATCH_SIZE = 512;
+    /** Maximum time a reading waits in the batch before it is handed to the sink. */
+    public static final long FLUSH_DELAY_MILLIS = 10;
+
+    private final Consumer<DataBatch> batchSink;
+    // runs this client's delayed flushes; its thread exits when idle, so a discarded client leaves nothing behind
+    private final ScheduledThreadPoolExecutor flushExecutor = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread thread = new Thread(r, "websocket-batch-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // readings are collected in pending while the sink works on the other batch; both guarded by batchLock
+    private final Object batchLock = new Object();
+    private DataBatch pending = new DataBatch(MAX_BATCH_SIZE);
+    private DataBatch spare = new DataBatch(MAX_BATCH_SIZE);
+    // serializes the calls to the sink, so batches are handed over in arrival order
+    private final Object sinkLock = new Object();
+    private volatile Runnable disconnectHandler;
+
+    // sequence tracking, only written from the websocket thread
+    private long streamId;
+    private volatile long lastSequence;
+    private volatile long gapCount;
+    private volatile long missedMessages;
 
     /**
-     * Constructs a SimpleWebSocketClient with the specified server URI and data storage reference
+     * Constructs a SimpleWebSocketClient that stores into the shared {@link DataStorage} instance.
      *
      * @param serverUri    the URI of the WebSocket server to connect to
      */
     public SimpleWebSocketClient(URI serverUri) {
+        this(serverUri, DataStorage.getInstance());
+    }
+
+    /**
+     * Constructs a SimpleWebSocketClient with the specified server URI and data storage reference
+     *
+     * @param serverUri    the URI of the WebSocket server to connect to
+     * @param dataStorage  the storage received data is added to
+     */
+    public SimpleWebSocketClient(URI serverUri, DataStorage dataStorage) {
+        this(serverUri, dataStorage::addPatientData);
+    }
+
+    /**
+     * Constructs a SimpleWebSocketClient that hands every completed batch to the given sink.
+     * The batch is cleared and reused after the sink returns, so a sink that keeps it must copy it.
+     *
+     * @param serverUri    the URI of the WebSocket server to connect to
+     * @param batchSink    receives the parsed readings
+     */
+    public SimpleWebSocketClient(URI serverUri, Consumer<DataBatch> batchSink) {
         super(serverUri);
-        this.dataStorage = DataStorage.getInstance();
+        this.batchSink = batchSink;
+        flushExecutor.setKeepAliveTime(1, TimeUnit.SECONDS);
+        flushExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Sets a handler that is run whenever the connection is closed or a connection attempt fails.
+     * Used by {@link com.data_management.WebSocketDataReader} to schedule reconnects.
+     *
+     * @param disconnectHandler the handler to run, or {@code null} to remove it
+     */
+    public void setDisconnectHandler(Runnable disconnectHandler) {
+        this.disconnectHandler = disconnectHandler;
     }
 
     /**
@@ -52,25 +119,133 @@ public class SimpleWebSocketClient extends WebSocketClient {
         System.out.println("Received: " + message);
         try {
             // splits message into parts based on commas
-            String[] parts = message.split(",", 4);
-            if (parts.length != 4) {
+            String[] parts = message.split(",");
+            if (parts.length == 2 && parts[0].equals("STREAM")) {
+                onStreamAnnounced(Long.parseLong(parts[1].trim()));
+                return;
+            }
+            if (parts.length != 4 && parts.length != 5) {
                 System.err.println("Invalid message format: " + message);
                 return;
             }
+            int offset = 0;
+            if (parts.length == 5) {
+                if (!acceptSequence(Long.parseLong(parts[0].trim()))) {
+                    return;
+                }
+                offset = 1;
+            }
             // parses each part into respective variables
-            int patientId = Integer.parseInt(parts[0].trim());
-            long timestamp = Long.parseLong(parts[1].trim());
-            String label = parts[2].trim();
-            String rawValue = parts[3].trim().replace("%", "");
+            int patientId = Integer.parseInt(parts[offset].trim());
+            long timestamp = Long.parseLong(parts[offset + 1].trim());
+            String label = parts[offset + 2].trim();
+            String rawValue = parts[offset + 3].trim().replace("%", "");
             double measurementValue = Double.parseDouble(rawValue);
-            // adds the data to the storage
-            dataStorage.addPatientData(patientId, measurementValue, label, timestamp);
+            // adds the data to the pending batch
+            enqueue(patientId, measurementValue, label, timestamp);
         } catch (Exception e) {
             System.err.println("Failed to parse message: " + message);
             e.printStackTrace();
         }
     }
 
+    private void enqueue(int patientId, double measurementValue, String label, long timestamp) {
+        boolean full;
+        synchronized (batchLock) {
+            pending.add(patientId, measurementValue, label, timestamp);
+            full = pending.size() >= MAX_BATCH_SIZE;
+            if (!full && pending.size() == 1) {
+                // first reading of a new batch, make sure it does not wait longer than the flush delay
+                flushExecutor.schedule(this::flush, FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full) {
+            flush();
+        }
+    }
+
+    /**
+     * Hands all buffered readings to the batch sink. The sink is called without holding the lock that
+     * guards the buffer, so readings keep arriving while a slow sink blocks.
+     */
+    public void flush() {
+        synchronized (sinkLock) {
+            DataBatch ready;
+            synchronized (batchLock) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                ready = pending;
+                pending = spare;
+            }
+            try {
+                batchSink.accept(ready);
+            } finally {
+                ready.clear();
+                synchronized (batchLock) {
+                    spare = ready;
+                }
+            }
+        }
+    }
+
+    /**
+     * Handles the stream announcement sent by the server on connect. A different stream id
+     * means the server was restarted, so the old sequence numbers no longer apply.
+     */
+    private void onStreamAnnounced(long announcedStreamId) {
+        if (announcedStreamId != streamId) {
+            streamId = announcedStreamId;
+            lastSequence = 0;
+        }
+    }
+
+    /**
+     * Checks a message's sequence number against the last one seen and records any gap.
+     *
+     * @return {@code false} if the message is a duplicate that was already processed
+     */
+    private boolean acceptSequence(long sequence) {
+        if (lastSequence > 0 && sequence <= lastSequence) {
+            return false;
+        }
+        long expected = lastSequence + 1;
+        if (lastSequence > 0 && sequence > expected) {
+            gapCount++;
+            missedMessages += sequence - expected;
+            System.err.println("Sequence gap detected: expected " + expected + " but received " + sequence
+                    + " (" + (sequence - expected) + " messages lost)");
+        }
+        lastSequence = sequence;
+        return true;
+    }
+
+    /**
+     * Returns the sequence number of the last message received.
+     *
+     * @return the last sequence number, or 0 if no numbered message has been received
+     */
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Returns how many gaps have been detected in the message sequence.
+     *
+     * @return the number of gaps
+     */
+    public long getGapCount() {
+        return gapCount;
+    }
+
+    /**
+     * Returns the total number of messages that were skipped over by detected gaps.
+     *
+     * @return the number of lost messages
+     */
+    public long getMissedMessages() {
+        return missedMessages;
+    }
 
     /**
      * Called when the WebSocket connection is closed.
@@ -82,6 +257,15 @@ public class SimpleWebSocketClient extends WebSocketClient {
     @Override
     public void onClose(int code, String reason, boolean remote) {
         System.out.println("WebSocket connection closed: " + reason);
+        flush();
+        if (streamId != 0 && lastSequence > 0) {
+            // the next handshake asks the server to resume after the last message received
+            addHeader(WebSocketOutputStrategy.RESUME_HEADER, streamId + "," + lastSequence);
+        }
+        Runnable handler = disconnectHandler;
+        if (handler != null) {
+            handler.run();
+        }
     }
 
     /**
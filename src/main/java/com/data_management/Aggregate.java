@@ -0,0 +1,101 @@
+package com.data_management;
+
+/**
+ * Summarizes the readings of one signal within a time bucket: their count, minimum, maximum and sum.
+ */
+public class Aggregate {
+    private final long bucketStart;
+    private final long resolution;
+    private final int count;
+    private final double min;
+    private final double max;
+    private final double sum;
+
+    /**
+     * Constructs a new aggregate.
+     *
+     * @param bucketStart the start of the bucket, in milliseconds since the Unix epoch
+     * @param resolution  the length of the bucket, in milliseconds
+     * @param count       the number of readings in the bucket
+     * @param min         the smallest reading
+     * @param max         the largest reading
+     * @param sum         the sum of the readings
+     */
+    public Aggregate(long bucketStart, long resolution, int count, double min, double max, double sum) {
+        this.bucketStart = bucketStart;
+        this.resolution = resolution;
+        this.count = count;
+        this.min = min;
+        this.max = max;
+        this.sum = sum;
+    }
+
+    /**
+     * Returns the start of the bucket.
+     *
+     * @return the start, in milliseconds since the Unix epoch
+     */
+    public long getBucketStart() {
+        return bucketStart;
+    }
+
+    /**
+     * Returns the length of the bucket.
+     *
+     * @return the length, in milliseconds
+     */
+    public long getResolution() {
+        return resolution;
+    }
+
+    /**
+     * Returns the number of readings in the bucket.
+     *
+     * @return the count
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the smallest reading in the bucket.
+     *
+     * @return the minimum
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * Returns the largest reading in the bucket.
+     *
+     * @return the maximum
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * Returns the sum of the readings in the bucket.
+     *
+     * @return the sum
+     */
+    public double getSum() {
+        return sum;
+    }
+
+    /**
+     * Returns the mean of the readings in the bucket.
+     *
+     * @return the average
+     */
+    public double getAverage() {
+        return sum / count;
+    }
+
+    @Override
+    public String toString() {
+        return "Aggregate[start=" + bucketStart + ", resolution=" + resolution + ", count=" + count
+                + ", min=" + min + ", max=" + max + ", avg=" + getAverage() + "]";
+    }
+}
@@ -0,0 +1,102 @@
+package com.data_management;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+
+/**
+ * Publishes batches of readings to any number of {@link Flow.Subscriber}s with demand-based
+ * backpressure.
+ * <p>
+ * Each subscriber gets its own bounded buffer. When a subscriber falls behind and its buffer is full,
+ * {@link #publish(DataBatch)} blocks, which in turn stops the reader from consuming its source. A slow
+ * subscriber therefore throttles the source instead of letting unread batches pile up on the heap.
+ * Subscribers receive copies of the published batches and must treat them as read-only.
+ */
+public class BatchPublisher implements Flow.Publisher<DataBatch>, AutoCloseable {
+
+    /** Default number of batches buffered per subscriber before the source is throttled. */
+    public static final int DEFAULT_BUFFER_CAPACITY = 256;
+
+    // delivers batches to subscribers; daemon threads so an open stream does not keep the JVM alive
+    private static final ExecutorService DELIVERY_EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "batch-delivery");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final SubmissionPublisher<DataBatch> publisher;
+
+    /**
+     * Constructs a publisher with the default per-subscriber buffer capacity.
+     */
+    public BatchPublisher() {
+        this(DEFAULT_BUFFER_CAPACITY);
+    }
+
+    /**
+     * Constructs a publisher with the given per-subscriber buffer capacity.
+     *
+     * @param bufferCapacity the number of batches buffered per subscriber, rounded up to a power of two
+     */
+    public BatchPublisher(int bufferCapacity) {
+        this.publisher = new SubmissionPublisher<>(DELIVERY_EXECUTOR, bufferCapacity);
+    }
+
+    /**
+     * Registers a subscriber. It only receives batches published after it subscribed.
+     *
+     * @param subscriber the subscriber
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super DataBatch> subscriber) {
+        publisher.subscribe(subscriber);
+    }
+
+    /**
+     * Publishes a copy of the batch to every subscriber. Blocks while any subscriber's buffer is full.
+     * Empty batches are ignored, and so are batches published while no subscriber is registered.
+     * The caller may clear and reuse the batch afterwards.
+     *
+     * @param batch the readings to publish
+     * @return {@code true} if the batch was handed to at least one subscriber
+     */
+    public boolean publish(DataBatch batch) {
+        if (batch.isEmpty() || !publisher.hasSubscribers()) {
+            return false;
+        }
+        publisher.submit(batch.copy());
+        return true;
+    }
+
+    /**
+     * Hands a batch to every subscriber without copying it and without blocking. Subscribers whose
+     * buffer is full do not receive it. The caller must not modify the batch afterwards.
+     *
+     * @param batch the readings to publish
+     * @return the number of subscribers the batch was dropped for
+     */
+    int offer(DataBatch batch) {
+        int lag = publisher.offer(batch, (subscriber, dropped) -> false);
+        return lag < 0 ? -lag : 0;
+    }
+
+    /**
+     * Returns whether any subscriber is registered.
+     *
+     * @return {@code true} if the publisher has subscribers
+     */
+    public boolean hasSubscribers() {
+        return publisher.hasSubscribers();
+    }
+
+    /**
+     * Completes the stream. Subscribers receive the remaining buffered batches followed by
+     * {@code onComplete}.
+     */
+    @Override
+    public void close() {
+        publisher.close();
+    }
+}
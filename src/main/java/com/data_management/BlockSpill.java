@@ -0,0 +1,258 @@
+package com.data_management;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Keeps sealed {@link GorillaBlock}s on local disk instead of the heap.
+ * <p>
+ * Blocks are appended to segment files of up to {@link #SEGMENT_BYTES} bytes and a series keeps a
+ * {@link Ref} in their place, which holds the block's first and last timestamp so range queries can
+ * still locate chunks without reading the disk. A block is read back when a query reaches its chunk.
+ * <p>
+ * The series releases a block when retention drops its chunk or late readings rebuild it, but views
+ * taken before may still hold the reference and read the block. Space on disk is therefore never
+ * truncated or reused: a segment is deleted once every reference into it has been garbage
+ * collected, so a reachable reference always reads the bytes it was written with. Released blocks
+ * leave {@link #getSpilledBytes()} right away and the disk after the next collections.
+ * <p>
+ * Spilled blocks are a cache tier and not durable: the segments are deleted when the spill is
+ * opened again, and the journal is what survives a restart. Writes are serialized; reads use
+ * positional reads and may run on any number of threads.
+ */
+final class BlockSpill implements Closeable {
+
+    /** Size at which a segment is closed and a new one started. */
+    static final long SEGMENT_BYTES = 64L << 20;
+
+    // frees the space of references that are no longer reachable
+    private static final Cleaner CLEANER = Cleaner.create(task -> {
+        Thread thread = new Thread(task, "spill-cleaner");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Path directory;
+    private Segment current;
+    private int nextSegment;
+    private long spilledBlocks;
+    private long spilledBytes;
+
+    /**
+     * Opens a spill in a directory, deleting the segments a previous run left there.
+     *
+     * @param directory the spill directory; created if missing
+     * @throws IOException if the directory cannot be prepared
+     */
+    BlockSpill(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory, "spill-*.dat")) {
+            for (Path file : stale) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Writes a block to disk.
+     *
+     * @param block the block
+     * @return the reference to keep in place of the block
+     */
+    synchronized Ref write(GorillaBlock block) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) block.getCompressedBytes() + 32);
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                block.writeTo(out);
+            }
+            if (current == null || current.length >= SEGMENT_BYTES) {
+                current = new Segment(directory.resolve(String.format("spill-%08d.dat", nextSegment++)));
+            }
+            Segment segment = current;
+            long offset = segment.length;
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                segment.channel.write(buffer, offset + buffer.position());
+            }
+            segment.length += bytes.size();
+            segment.live++;
+            spilledBlocks++;
+            spilledBytes += bytes.size();
+            Space space = new Space(this, segment, bytes.size());
+            Ref ref = new Ref(space, offset, block.getFirstTimestamp(), block.getLastTimestamp());
+            CLEANER.register(ref, space);
+            return ref;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not spill a block to " + directory, e);
+        }
+    }
+
+    private synchronized void release(Space space) {
+        if (!space.released) {
+            space.released = true;
+            spilledBlocks--;
+            spilledBytes -= space.length;
+        }
+    }
+
+    // called once the reference to the block can no longer be reached, so nothing reads it anymore
+    private synchronized void free(Space space) {
+        release(space);
+        Segment segment = space.segment;
+        if (--segment.live == 0) {
+            if (segment == current) {
+                // the next block starts a new segment; this one is never written again
+                current = null;
+            }
+            segment.delete();
+        }
+    }
+
+    /**
+     * Returns the number of blocks on disk that have not been released.
+     *
+     * @return the block count
+     */
+    synchronized long getSpilledBlocks() {
+        return spilledBlocks;
+    }
+
+    /**
+     * Returns the size of the blocks on disk that have not been released.
+     *
+     * @return the size in bytes
+     */
+    synchronized long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    /**
+     * Closes and deletes all segments. Blocks spilled to them can no longer be read.
+     */
+    @Override
+    public synchronized void close() {
+        current = null;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "spill-*.dat")) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not delete spill segments in " + directory + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * The place of a spilled block on disk, with the timestamps needed to search the series.
+     */
+    static final class Ref {
+        private final Space space;
+        private final long offset;
+        private final long firstTimestamp;
+        private final long lastTimestamp;
+
+        private Ref(Space space, long offset, long firstTimestamp, long lastTimestamp) {
+            this.space = space;
+            this.offset = offset;
+            this.firstTimestamp = firstTimestamp;
+            this.lastTimestamp = lastTimestamp;
+        }
+
+        long getFirstTimestamp() {
+            return firstTimestamp;
+        }
+
+        long getLastTimestamp() {
+            return lastTimestamp;
+        }
+
+        /**
+         * Reads the block back from disk. Works until the spill is closed, also after the block was
+         * released.
+         *
+         * @return the block
+         * @throws UncheckedIOException if the block cannot be read
+         */
+        GorillaBlock load() {
+            Segment segment = space.segment;
+            ByteBuffer buffer = ByteBuffer.allocate(space.length);
+            try {
+                while (buffer.hasRemaining()) {
+                    if (segment.channel.read(buffer, offset + buffer.position()) < 0) {
+                        throw new IOException("Spill segment ends early: " + segment.file);
+                    }
+                }
+                return GorillaBlock.readFrom(new DataInputStream(new ByteArrayInputStream(buffer.array())));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read a spilled block from " + segment.file, e);
+            }
+        }
+
+        /**
+         * Marks the block as no longer needed by the series. Its space is freed once this reference
+         * is no longer reachable.
+         */
+        void release() {
+            space.spill.release(space);
+        }
+    }
+
+    /**
+     * The space of one block in a segment. Kept apart from the {@link Ref}, which the cleaner must not
+     * reach, so the space can be freed after the reference is collected.
+     */
+    private static final class Space implements Runnable {
+        final BlockSpill spill;
+        final Segment segment;
+        final int length;
+        // guarded by the spill
+        boolean released;
+
+        Space(BlockSpill spill, Segment segment, int length) {
+            this.spill = spill;
+            this.segment = segment;
+            this.length = length;
+        }
+
+        @Override
+        public void run() {
+            spill.free(this);
+        }
+    }
+
+    private static final class Segment {
+        final Path file;
+        final FileChannel channel;
+        // guarded by the spill
+        long length;
+        // blocks whose reference is still reachable
+        int live;
+
+        Segment(Path file) throws IOException {
+            this.file = file;
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+        }
+
+        void delete() {
+            try {
+                channel.close();
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                System.err.println("Could not delete spill segment " + file + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.data_management;
+
+import java.util.Arrays;
+import java.util.concurrent.Flow;
+
+/**
+ * Passes the readings added to a storage on to its {@link ChangeSubscription}s.
+ * <p>
+ * The subscriptions are kept in a copy-on-write array, so publishing reads a single field and,
+ * without subscribers, costs nothing more. Each ingested batch is published once: subscriptions to
+ * every reading share one copy of it and the others each get a batch of their matching readings.
+ * A batch is published after it has been applied and outside the patient locks, so concurrent
+ * writers can publish their batches in a different order than they applied them.
+ * <p>
+ * Listeners, such as a {@link QueryCache}, are told about each reading synchronously on the ingest
+ * thread, after it has been stored and before {@code addPatientData} returns.
+ */
+class ChangeFeed {
+
+    /**
+     * Told about every reading added to the storage, on the thread that added it.
+     */
+    interface Listener {
+        void appended(int patientId, int signalId, long timestamp);
+    }
+
+    private static final ChangeSubscription[] NONE = new ChangeSubscription[0];
+    private static final Listener[] NO_LISTENERS = new Listener[0];
+
+    private volatile ChangeSubscription[] subscriptions = NONE;
+    private volatile Listener[] listeners = NO_LISTENERS;
+
+    ChangeSubscription subscribe(boolean allPatients, int patientId, String recordType, int bufferCapacity,
+                                 Flow.Subscriber<? super DataBatch> subscriber) {
+        ChangeSubscription subscription =
+                new ChangeSubscription(this, allPatients, patientId, recordType, bufferCapacity, subscriber);
+        synchronized (this) {
+            ChangeSubscription[] current = subscriptions;
+            ChangeSubscription[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = subscription;
+            subscriptions = updated;
+        }
+        return subscription;
+    }
+
+    synchronized void remove(ChangeSubscription subscription) {
+        ChangeSubscription[] current = subscriptions;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == subscription) {
+                ChangeSubscription[] updated = new ChangeSubscription[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                subscriptions = updated.length == 0 ? NONE : updated;
+                return;
+            }
+        }
+    }
+
+    synchronized void addListener(Listener listener) {
+        Listener[] current = listeners;
+        Listener[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = listener;
+        listeners = updated;
+    }
+
+    synchronized void removeListener(Listener listener) {
+        Listener[] current = listeners;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == listener) {
+                Listener[] updated = new Listener[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                listeners = updated.length == 0 ? NO_LISTENERS : updated;
+                return;
+            }
+        }
+    }
+
+    boolean hasSubscribers() {
+        return subscriptions.length > 0;
+    }
+
+    void publish(int patientId, double measurementValue, int signalId, long timestamp) {
+        for (Listener listener : listeners) {
+            listener.appended(patientId, signalId, timestamp);
+        }
+        ChangeSubscription[] current = subscriptions;
+        if (current.length == 0) {
+            return;
+        }
+        DataBatch batch = null;
+        for (ChangeSubscription subscription : current) {
+            if (subscription.matches(patientId, signalId)) {
+                if (batch == null) {
+                    batch = new DataBatch(1);
+                    batch.add(patientId, measurementValue, signalId, timestamp);
+                }
+                subscription.deliver(batch);
+            }
+        }
+    }
+
+    void publish(int[] patientIds, double[] measurementValues, int[] signals, long[] timestamps, int length) {
+        Listener[] currentListeners = listeners;
+        if (currentListeners.length > 0) {
+            for (int i = 0; i < length; i++) {
+                for (Listener listener : currentListeners) {
+                    listener.appended(patientIds[i], signals[i], timestamps[i]);
+                }
+            }
+        }
+        ChangeSubscription[] current = subscriptions;
+        if (current.length == 0 || length == 0) {
+            return;
+        }
+        DataBatch all = null;
+        for (ChangeSubscription subscription : current) {
+            if (subscription.matchesAll()) {
+                if (all == null) {
+                    all = new DataBatch(length);
+                    System.arraycopy(patientIds, 0, all.patientIds, 0, length);
+                    System.arraycopy(measurementValues, 0, all.values, 0, length);
+                    System.arraycopy(signals, 0, all.signals, 0, length);
+                    System.arraycopy(timestamps, 0, all.timestamps, 0, length);
+                    all.size = length;
+                }
+                subscription.deliver(all);
+                continue;
+            }
+            DataBatch matching = null;
+            for (int i = 0; i < length; i++) {
+                if (subscription.matches(patientIds[i], signals[i])) {
+                    if (matching == null) {
+                        matching = new DataBatch(16);
+                    }
+                    matching.add(patientIds[i], measurementValues[i], signals[i], timestamps[i]);
+                }
+            }
+            if (matching != null) {
+                subscription.deliver(matching);
+            }
+        }
+    }
+}
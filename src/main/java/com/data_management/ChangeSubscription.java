@@ -0,0 +1,105 @@
+package com.data_management;
+
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A registration for the readings added to a {@link DataStorage}, made with one of its
+ * {@code subscribe} methods.
+ * <p>
+ * The subscriber receives a {@link DataBatch} for each ingested batch that holds matching readings,
+ * on a delivery thread. A batch is published after its readings are stored, so they are visible to
+ * queries when it arrives. Publishing happens outside the patient locks: the batches of one writer
+ * arrive in the order they were added, but batches added concurrently by several writers, or by the
+ * shards of a {@link ShardedDataStorage}, can arrive in a different order than they were stored.
+ * <p>
+ * Each subscription buffers a bounded number of batches. Ingest never waits for a subscriber: when
+ * the buffer is full the batch is dropped for this subscription and counted in
+ * {@link #getDroppedBatches()}, so a slow dashboard cannot stall the storage. A subscriber that must
+ * see every reading subscribes with {@link #UNBOUNDED_BUFFER_CAPACITY} instead. Delivered batches
+ * are shared between subscribers and must be treated as read-only.
+ * <p>
+ * Closing the subscription stops the notifications; the subscriber receives the batches still
+ * buffered followed by {@code onComplete}.
+ */
+public class ChangeSubscription implements AutoCloseable {
+
+    /** Default number of batches buffered per subscription before batches are dropped. */
+    public static final int DEFAULT_BUFFER_CAPACITY = 256;
+
+    /**
+     * Buffer capacity with which no batch is dropped. The buffer grows while batches wait, so a
+     * subscriber that keeps falling behind fills the heap instead of losing readings.
+     */
+    public static final int UNBOUNDED_BUFFER_CAPACITY = Integer.MAX_VALUE;
+
+    private final ChangeFeed feed;
+    private final boolean allPatients;
+    private final int patientId;
+    // null for all signals
+    private final String recordType;
+    // -1 until a reading of the record type has been stored; racy but safe, resolving is idempotent
+    private int signalId;
+    private final BatchPublisher publisher;
+    private final AtomicLong droppedBatches = new AtomicLong();
+
+    ChangeSubscription(ChangeFeed feed, boolean allPatients, int patientId, String recordType, int bufferCapacity,
+                       Flow.Subscriber<? super DataBatch> subscriber) {
+        this.feed = feed;
+        this.allPatients = allPatients;
+        this.patientId = patientId;
+        this.recordType = recordType;
+        this.signalId = recordType == null ? -1 : SignalRegistry.idOf(recordType);
+        this.publisher = new BatchPublisher(bufferCapacity);
+        publisher.subscribe(subscriber);
+    }
+
+    /**
+     * Returns whether this subscription receives every reading.
+     */
+    boolean matchesAll() {
+        return allPatients && recordType == null;
+    }
+
+    boolean matches(int readingPatientId, int readingSignalId) {
+        return (allPatients || readingPatientId == patientId) && (recordType == null || readingSignalId == signalId());
+    }
+
+    // subscribing does not register the record type, so it is resolved once readings of it are stored
+    private int signalId() {
+        int id = signalId;
+        if (id < 0) {
+            id = SignalRegistry.idOf(recordType);
+            signalId = id;
+        }
+        return id;
+    }
+
+    void deliver(DataBatch batch) {
+        try {
+            if (publisher.offer(batch) > 0) {
+                droppedBatches.incrementAndGet();
+            }
+        } catch (IllegalStateException e) {
+            // closed while the batch was being published
+        }
+    }
+
+    /**
+     * Returns the number of batches dropped because the subscriber's buffer was full.
+     *
+     * @return the number of dropped batches
+     */
+    public long getDroppedBatches() {
+        return droppedBatches.get();
+    }
+
+    /**
+     * Stops the notifications and completes the subscriber's stream.
+     */
+    @Override
+    public void close() {
+        feed.remove(this);
+        publisher.close();
+    }
+}
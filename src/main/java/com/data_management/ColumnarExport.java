@@ -0,0 +1,288 @@
+package com.data_management;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes the series of a {@link DataStorage} to a directory in a columnar, block-compressed layout
+ * for offline analysis, and reads them back.
+ * <p>
+ * An export is a set of part files named {@code part-NNNN.col}, written in parallel, one per thread.
+ * Each series is written whole to one part, so readers can process the parts independently. All
+ * numbers are big-endian, as written by {@link DataOutputStream}:
+ * <pre>
+ * part   := magic:int("CCX1") seriesCount:int series*
+ * series := patientId:int recordType:utf readings:long blockCount:int block*
+ * block  := min:double max:double count:int firstTimestamp:long lastTimestamp:long
+ *           words:int bits:long[words]
+ * </pre>
+ * A block holds up to {@link TimeSeries#CHUNK_SIZE} readings in timestamp order, compressed as a
+ * {@link GorillaBlock}; sealed blocks of the storage are written as they are. Its count, time bounds
+ * and value bounds come before the compressed bits, so a reader looking for a time or value range
+ * can skip a block without decoding it. The value bounds leave out NaN readings; a block of NaN
+ * readings only has a minimum of positive and a maximum of negative infinity.
+ */
+final class ColumnarExport {
+
+    private static final int MAGIC = 0x43435831; // "CCX1"
+    private static final int BATCH_SIZE = 1 << 14;
+
+    private ColumnarExport() {
+    }
+
+    static Path partFile(Path directory, int part) {
+        return directory.resolve(String.format("part-%04d.col", part));
+    }
+
+    /**
+     * Writes an export, replacing an earlier export in the directory. The parts are written to a new
+     * directory next to it, which takes the directory's place once every part is complete, so an
+     * export that fails leaves the earlier one as it was.
+     *
+     * @param directory the export directory; created if missing, and must hold nothing but part files
+     * @param series    the series to write, one non-empty view each
+     * @param threads   the number of part files to write at once
+     * @return the number of readings written
+     * @throws IOException if a part cannot be written, or the directory holds other files
+     */
+    static long write(Path directory, List<TimeSeries.View> series, int threads) throws IOException {
+        Path target = directory.toAbsolutePath();
+        if (Files.exists(target)) {
+            checkOnlyParts(target);
+        }
+        Files.createDirectories(target.getParent());
+        Path staging = Files.createTempDirectory(target.getParent(), "." + target.getFileName() + "-export-");
+        long readings;
+        try {
+            int partCount = Math.max(1, Math.min(threads, series.size()));
+            List<List<TimeSeries.View>> parts = new ArrayList<>();
+            for (int i = 0; i < partCount; i++) {
+                parts.add(new ArrayList<>());
+            }
+            for (int i = 0; i < series.size(); i++) {
+                parts.get(i % partCount).add(series.get(i));
+            }
+            List<Callable<Long>> tasks = new ArrayList<>();
+            for (int i = 0; i < partCount; i++) {
+                Path file = partFile(staging, i);
+                List<TimeSeries.View> part = parts.get(i);
+                tasks.add(() -> writePart(file, part));
+            }
+            readings = runAll("export", tasks);
+        } catch (IOException | RuntimeException e) {
+            try {
+                deleteDirectory(staging);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        replace(target, staging);
+        return readings;
+    }
+
+    private static long writePart(Path file, List<TimeSeries.View> series) throws IOException {
+        long readings = 0;
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(series.size());
+            GorillaBlock.Cursor cursor = null;
+            for (TimeSeries.View view : series) {
+                PatientRecord first = view.get(0);
+                // sealed blocks are written as they are, only the readings around them are encoded
+                List<GorillaBlock> blocks = view.blocks();
+                out.writeInt(first.getPatientId());
+                out.writeUTF(first.getRecordType());
+                out.writeLong(view.size());
+                out.writeInt(blocks.size());
+                for (GorillaBlock block : blocks) {
+                    if (cursor == null) {
+                        cursor = new GorillaBlock.Cursor(block);
+                    } else {
+                        cursor.reset(block);
+                    }
+                    // comparisons skip NaN, which Math.min and Math.max would return
+                    double min = Double.POSITIVE_INFINITY;
+                    double max = Double.NEGATIVE_INFINITY;
+                    while (cursor.next()) {
+                        double value = cursor.value();
+                        if (value < min) {
+                            min = value;
+                        }
+                        if (value > max) {
+                            max = value;
+                        }
+                    }
+                    out.writeDouble(min);
+                    out.writeDouble(max);
+                    block.writeTo(out);
+                }
+                readings += view.size();
+            }
+        }
+        return readings;
+    }
+
+    private static void checkOnlyParts(Path directory) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (!(name.startsWith("part-") && name.endsWith(".col"))) {
+                    throw new IOException("Not an export directory, it holds " + file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Puts a complete export in place of the earlier one. The earlier one is moved aside first, so
+     * it is still there, next to the directory, if the new one cannot be moved in.
+     */
+    private static void replace(Path target, Path staging) throws IOException {
+        if (!Files.exists(target)) {
+            Files.move(staging, target, StandardCopyOption.ATOMIC_MOVE);
+            return;
+        }
+        Path earlier = staging.resolveSibling(staging.getFileName() + "-earlier");
+        Files.move(target, earlier, StandardCopyOption.ATOMIC_MOVE);
+        try {
+            Files.move(staging, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.move(earlier, target, StandardCopyOption.ATOMIC_MOVE);
+            deleteDirectory(staging);
+            throw e;
+        }
+        deleteDirectory(earlier);
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * Adds the readings of every part in an export to a storage, reading the parts in parallel.
+     * Each series is in a single part, so the readings of a patient and signal are added in order.
+     *
+     * @param directory the export directory
+     * @param storage   the storage to add the readings to
+     * @param threads   the number of parts to read at once
+     * @return the number of readings read
+     * @throws IOException if a part cannot be read or is not a complete part
+     */
+    static long read(Path directory, DataStorage storage, int threads) throws IOException {
+        List<Callable<Long>> tasks = new ArrayList<>();
+        for (Path file : parts(directory)) {
+            tasks.add(() -> readPart(file, storage));
+        }
+        if (tasks.isEmpty()) {
+            throw new IOException("No export in " + directory);
+        }
+        return runAll("import", tasks, threads);
+    }
+
+    private static long readPart(Path file, DataStorage storage) throws IOException {
+        long readings = 0;
+        DataBatch batch = new DataBatch(BATCH_SIZE);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not an export part: " + file);
+            }
+            int seriesCount = in.readInt();
+            GorillaBlock.Cursor cursor = null;
+            for (int s = 0; s < seriesCount; s++) {
+                int patientId = in.readInt();
+                int signalId = SignalRegistry.register(in.readUTF());
+                in.readLong();
+                int blocks = in.readInt();
+                for (int b = 0; b < blocks; b++) {
+                    // value bounds, for readers that filter
+                    in.readDouble();
+                    in.readDouble();
+                    GorillaBlock block = GorillaBlock.readFrom(in);
+                    if (cursor == null) {
+                        cursor = new GorillaBlock.Cursor(block);
+                    } else {
+                        cursor.reset(block);
+                    }
+                    while (cursor.next()) {
+                        batch.add(patientId, cursor.value(), signalId, cursor.timestamp());
+                        if (batch.size() == BATCH_SIZE) {
+                            storage.addPatientData(batch);
+                            batch.clear();
+                        }
+                    }
+                    readings += block.size();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            storage.addPatientData(batch);
+        }
+        return readings;
+    }
+
+    private static List<Path> parts(Path directory) throws IOException {
+        List<Path> parts = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return parts;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "part-*.col")) {
+            for (Path file : files) {
+                parts.add(file);
+            }
+        }
+        parts.sort(null);
+        return parts;
+    }
+
+    private static long runAll(String name, List<Callable<Long>> tasks) throws IOException {
+        return runAll(name, tasks, tasks.size());
+    }
+
+    private static long runAll(String name, List<Callable<Long>> tasks, int threads) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, tasks.size())), task -> {
+            Thread thread = new Thread(task, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            long total = 0;
+            for (Future<Long> future : executor.invokeAll(tasks)) {
+                total += future.get();
+            }
+            return total;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Could not " + name + " series", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted during " + name);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
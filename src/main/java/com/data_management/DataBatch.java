@@ -0,0 +1,181 @@
+package com.data_management;
+
+import java.util.Arrays;
+
+/**
+ * A reusable batch of readings stored as parallel primitive arrays, used to add many
+ * readings to {@link DataStorage} in one call.
+ * <p>
+ * A reader typically keeps one batch, fills it with {@link #add}, passes it to
+ * {@link DataStorage#addPatientData(DataBatch)} and then {@link #clear()}s it for the next
+ * round, so steady-state ingestion does not allocate per reading. Record types are resolved to
+ * {@link SignalRegistry} IDs as readings are added.
+ * A batch is not thread-safe. Batches handed out by a {@link BatchPublisher} are copies that
+ * subscribers must treat as read-only.
+ */
+public class DataBatch {
+
+    private static final int DEFAULT_CAPACITY = 256;
+
+    int[] patientIds;
+    double[] values;
+    int[] signals;
+    long[] timestamps;
+    int size;
+
+    /**
+     * Constructs an empty batch with a default initial capacity.
+     */
+    public DataBatch() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty batch with the given initial capacity. The batch grows as needed.
+     *
+     * @param capacity the initial number of readings the batch can hold
+     */
+    public DataBatch(int capacity) {
+        capacity = Math.max(1, capacity);
+        patientIds = new int[capacity];
+        values = new double[capacity];
+        signals = new int[capacity];
+        timestamps = new long[capacity];
+    }
+
+    /**
+     * Appends a reading to the batch.
+     *
+     * @param patientId        the unique identifier of the patient
+     * @param measurementValue the value of the health metric being recorded
+     * @param recordType       the type of record, e.g., "HeartRate"
+     * @param timestamp        the time of the measurement, in milliseconds since the Unix epoch
+     */
+    public void add(int patientId, double measurementValue, String recordType, long timestamp) {
+        add(patientId, measurementValue, SignalRegistry.register(recordType), timestamp);
+    }
+
+    /**
+     * Appends a reading of an already resolved signal to the batch.
+     *
+     * @param patientId        the unique identifier of the patient
+     * @param measurementValue the value of the health metric being recorded
+     * @param signalId         the signal ID of the reading, see {@link SignalRegistry}
+     * @param timestamp        the time of the measurement, in milliseconds since the Unix epoch
+     */
+    public void add(int patientId, double measurementValue, int signalId, long timestamp) {
+        if (size == patientIds.length) {
+            grow();
+        }
+        patientIds[size] = patientId;
+        values[size] = measurementValue;
+        signals[size] = signalId;
+        timestamps[size] = timestamp;
+        size++;
+    }
+
+    /**
+     * Returns the number of readings in the batch.
+     *
+     * @return the batch size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns whether the batch holds no readings.
+     *
+     * @return {@code true} if the batch is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns a copy of this batch sized to its contents.
+     *
+     * @return a new batch with the same readings
+     */
+    public DataBatch copy() {
+        DataBatch copy = new DataBatch(size);
+        System.arraycopy(patientIds, 0, copy.patientIds, 0, size);
+        System.arraycopy(values, 0, copy.values, 0, size);
+        System.arraycopy(signals, 0, copy.signals, 0, size);
+        System.arraycopy(timestamps, 0, copy.timestamps, 0, size);
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * Removes all readings so the batch can be refilled. The arrays are kept.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Returns the patient ID of the reading at the given position.
+     *
+     * @param index the position in the batch
+     * @return the patient ID
+     */
+    public int getPatientId(int index) {
+        return patientIds[checkIndex(index)];
+    }
+
+    /**
+     * Returns the measurement value of the reading at the given position.
+     *
+     * @param index the position in the batch
+     * @return the measurement value
+     */
+    public double getMeasurementValue(int index) {
+        return values[checkIndex(index)];
+    }
+
+    /**
+     * Returns the record type of the reading at the given position.
+     *
+     * @param index the position in the batch
+     * @return the record type
+     */
+    public String getRecordType(int index) {
+        return SignalRegistry.nameOf(signals[checkIndex(index)]);
+    }
+
+    /**
+     * Returns the signal ID of the reading at the given position.
+     *
+     * @param index the position in the batch
+     * @return the signal ID
+     */
+    public int getSignalId(int index) {
+        return signals[checkIndex(index)];
+    }
+
+    /**
+     * Returns the timestamp of the reading at the given position.
+     *
+     * @param index the position in the batch
+     * @return the timestamp
+     */
+    public long getTimestamp(int index) {
+        return timestamps[checkIndex(index)];
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for batch of size " + size);
+        }
+        return index;
+    }
+
+    private void grow() {
+        int capacity = patientIds.length * 2;
+        patientIds = Arrays.copyOf(patientIds, capacity);
+        values = Arrays.copyOf(values, capacity);
+        signals = Arrays.copyOf(signals, capacity);
+        timestamps = Arrays.copyOf(timestamps, capacity);
+    }
+}
@@ -1,16 +1,28 @@
 package com.data_management;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 
 import com.alerts.AlertGenerator;
 import com.cardio_generator.generators.*;
+import com.cardio_generator.outputs.InMemoryOutputStrategy;
+import com.cardio_generator.outputs.OutputStrategy;
 import com.cardio_generator.outputs.WebSocketOutputStrategy;
+import com.util.IntObjectMap;
 
 /**
  * Manages storage and retrieval of patient data within a healthcare monitoring
@@ -19,15 +31,50 @@ import com.cardio_generator.outputs.WebSocketOutputStrategy;
  * patient IDs.
  */
 public class DataStorage {
+    /** How often readings added one at a time are committed to the journal, in milliseconds. */
+    public static final long JOURNAL_COMMIT_MILLIS = 50;
+    /** How often the heap and the age of sealed blocks are checked once spilling is enabled, in milliseconds. */
+    public static final long SPILL_CHECK_MILLIS = 1000;
+
     private static DataStorage instance;
-    private final Map<Integer, Patient> patientMap;
+    // scratch space for grouping batches by patient, one per ingest thread
+    private static final ThreadLocal<long[]> BATCH_ORDER = ThreadLocal.withInitial(() -> new long[256]);
+    // scratch space for resolving the record types of array batches, one per ingest thread
+    private static final ThreadLocal<int[]> BATCH_SIGNALS = ThreadLocal.withInitial(() -> new int[256]);
+    // keyed by the unboxed patient ID, so looking up a patient on ingest does not allocate
+    private final IntObjectMap<Patient> patientMap;
+    // finds the patients with readings of a signal in a time bucket, for queries across patients
+    private final SignalIndex signalIndex = new SignalIndex();
+    private final Map<String, RetentionPolicy> retentionPolicies = new ConcurrentHashMap<>();
+    private volatile RetentionPolicy defaultRetention = RetentionPolicy.UNLIMITED;
+    private ScheduledExecutorService retentionSweeper;
+    // ingest holds the read lock while logging and applying a reading; a checkpoint holds the write lock
+    private final ReadWriteLock journalLock = new ReentrantReadWriteLock();
+    private final Object checkpointMonitor = new Object();
+    private volatile WriteAheadLog journal;
+    private Path journalDirectory;
+    private ScheduledExecutorService journalExecutor;
+    private volatile BlockSpill spill;
+    private volatile SpillPolicy spillPolicy;
+    private ScheduledExecutorService spillExecutor;
+    // whether the heap reached the high watermark and is not below the low one yet; guarded by this
+    private boolean heapSpilling;
+    // the heap usage the last spill for the heap acted on; guarded by this
+    private double spilledAtHeapUsage = Double.NaN;
+    // notifies subscribers of added readings; shared with the shards of a sharded storage
+    final ChangeFeed changeFeed;
 
     /**
      * Constructs a new instance of DataStorage, initializing the underlying storage
      * structure.
      */
     public DataStorage() {
-        this.patientMap = new ConcurrentHashMap<>();
+        this(new ChangeFeed());
+    }
+
+    DataStorage(ChangeFeed changeFeed) {
+        this.patientMap = new IntObjectMap<>();
+        this.changeFeed = changeFeed;
     }
     /**
      * Gets the instance of DataStorage. Makes one if instance is null.
@@ -53,8 +100,121 @@ public class DataStorage {
      *                         milliseconds since the Unix epoch
      */
     public void addPatientData(int patientId, double measurementValue, String recordType, long timestamp) {
-        Patient patient = patientMap.computeIfAbsent(patientId, Patient::new);
-        patient.addRecord(measurementValue, recordType, timestamp);
+        addPatientData(patientId, measurementValue, SignalRegistry.register(recordType), timestamp);
+    }
+
+    /**
+     * Adds a reading of an already resolved signal to the storage.
+     *
+     * @param patientId        the unique identifier of the patient
+     * @param measurementValue the value of the health metric being recorded
+     * @param signalId         the signal ID of the reading, see {@link SignalRegistry}
+     * @param timestamp        the time at which the measurement was taken, in
+     *                         milliseconds since the Unix epoch
+     */
+    public void addPatientData(int patientId, double measurementValue, int signalId, long timestamp) {
+        WriteAheadLog wal = journal;
+        if (wal == null) {
+            patientMap.computeIfAbsent(patientId, this::newPatient).addRecord(measurementValue, signalId, timestamp);
+        } else {
+            Lock lock = journalLock.readLock();
+            lock.lock();
+            try {
+                wal.append(patientId, measurementValue, signalId, timestamp);
+                patientMap.computeIfAbsent(patientId, this::newPatient)
+                        .addRecord(measurementValue, signalId, timestamp);
+            } finally {
+                lock.unlock();
+            }
+        }
+        changeFeed.publish(patientId, measurementValue, signalId, timestamp);
+    }
+
+    /**
+     * Adds a batch of readings to the storage.
+     * The readings are grouped by patient so each patient is looked up once and receives
+     * its run of records in a single append. Readings of the same patient keep their order.
+     *
+     * @param batch the readings to add; the batch is not modified and can be cleared and
+     *              reused by the caller afterwards
+     */
+    public void addPatientData(DataBatch batch) {
+        addAll(batch.patientIds, batch.values, batch.signals, batch.timestamps, batch.size);
+    }
+
+    /**
+     * Adds readings given as parallel arrays to the storage.
+     * The readings are grouped by patient so each patient is looked up once and receives
+     * its run of records in a single append. Readings of the same patient keep their order.
+     *
+     * @param patientIds        the patient of each reading
+     * @param measurementValues the value of each reading
+     * @param recordTypes       the type of each reading
+     * @param timestamps        the time of each reading, in milliseconds since the Unix epoch
+     * @param length            the number of readings to take from the start of the arrays
+     */
+    public void addPatientData(int[] patientIds, double[] measurementValues, String[] recordTypes,
+                               long[] timestamps, int length) {
+        int[] signals = BATCH_SIGNALS.get();
+        if (signals.length < length) {
+            signals = new int[Math.max(length, signals.length * 2)];
+            BATCH_SIGNALS.set(signals);
+        }
+        for (int i = 0; i < length; i++) {
+            signals[i] = SignalRegistry.register(recordTypes[i]);
+        }
+        addAll(patientIds, measurementValues, signals, timestamps, length);
+    }
+
+    private void addAll(int[] patientIds, double[] measurementValues, int[] signals, long[] timestamps, int length) {
+        if (length == 0) {
+            return;
+        }
+        WriteAheadLog wal = journal;
+        if (wal == null) {
+            addGrouped(patientIds, measurementValues, signals, timestamps, length);
+            changeFeed.publish(patientIds, measurementValues, signals, timestamps, length);
+            return;
+        }
+        long position = 0;
+        Lock lock = journalLock.readLock();
+        lock.lock();
+        try {
+            for (int i = 0; i < length; i++) {
+                position = wal.append(patientIds[i], measurementValues[i], signals[i], timestamps[i]);
+            }
+            addGrouped(patientIds, measurementValues, signals, timestamps, length);
+        } finally {
+            lock.unlock();
+        }
+        // a batch is durable when this returns; concurrent batches share the disk sync
+        wal.commit(position);
+        changeFeed.publish(patientIds, measurementValues, signals, timestamps, length);
+    }
+
+    private void addGrouped(int[] patientIds, double[] measurementValues, int[] signals, long[] timestamps,
+                            int length) {
+        long[] order = BATCH_ORDER.get();
+        if (order.length < length) {
+            order = new long[Math.max(length, order.length * 2)];
+            BATCH_ORDER.set(order);
+        }
+        // sort (patientId, index) pairs packed into longs; the index in the low bits keeps the sort stable
+        for (int i = 0; i < length; i++) {
+            order[i] = ((long) patientIds[i] << 32) | i;
+        }
+        Arrays.sort(order, 0, length);
+        int runStart = 0;
+        while (runStart < length) {
+            int patientId = (int) (order[runStart] >> 32);
+            int runEnd = runStart + 1;
+            while (runEnd < length && (int) (order[runEnd] >> 32) == patientId) {
+                runEnd++;
+            }
+            Patient patient = patientMap.computeIfAbsent(patientId, this::newPatient);
+            patient.addRecords(order, runStart, runEnd, measurementValues, signals, timestamps);
+            runStart = runEnd;
+        }
     }
 
     /**
@@ -68,23 +228,748 @@ public class DataStorage {
      * @param endTime   the end of the time range, in milliseconds since the Unix
      *                  epoch
      * @return a list of PatientRecord objects that fall within the specified time
-     *         range
+     *         range, ordered by timestamp
      */
     public List<PatientRecord> getRecords(int patientId, long startTime, long endTime) {
         Patient patient = patientMap.get(patientId);
         if (patient != null) {
-            return patient.getRecords();
+            return patient.getRecords(startTime, endTime);
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Retrieves the records of one type for a specific patient, filtered by a time range.
+     * The range is found by binary search and the returned list is a read-only view of the
+     * stored data, so a short window costs the same however much history the patient has.
+     *
+     * @param patientId  the unique identifier of the patient
+     * @param recordType the record type, e.g. "ECG"
+     * @param startTime  the start of the time range, in milliseconds since the Unix epoch
+     * @param endTime    the end of the time range, in milliseconds since the Unix epoch
+     * @return the records that fall within the range, ordered by timestamp
+     */
+    public List<PatientRecord> getRecords(int patientId, String recordType, long startTime, long endTime) {
+        Patient patient = patientMap.get(patientId);
+        if (patient != null) {
+            return patient.getRecords(recordType, startTime, endTime);
         }
         return new ArrayList<>();
     }
 
+    /**
+     * Returns a cursor over the records of a specific patient within a time range, ordered by
+     * timestamp. Unlike {@link #getRecords(int, long, long)} no list and no {@link PatientRecord}
+     * objects are created, so scanning long histories does not allocate per record.
+     *
+     * @param patientId the unique identifier of the patient
+     * @param startTime the start of the time range, in milliseconds since the Unix epoch
+     * @param endTime   the end of the time range, in milliseconds since the Unix epoch
+     * @return a cursor positioned before the first record
+     */
+    public RecordCursor cursor(int patientId, long startTime, long endTime) {
+        Patient patient = getPatient(patientId);
+        return patient != null ? patient.cursor(startTime, endTime) : RecordCursor.of(new ArrayList<>());
+    }
+
+    /**
+     * Returns a cursor over the records of one type for a specific patient within a time range,
+     * ordered by timestamp, without creating any {@link PatientRecord} objects.
+     *
+     * @param patientId  the unique identifier of the patient
+     * @param recordType the record type, e.g. "ECG"
+     * @param startTime  the start of the time range, in milliseconds since the Unix epoch
+     * @param endTime    the end of the time range, in milliseconds since the Unix epoch
+     * @return a cursor positioned before the first record
+     */
+    public RecordCursor cursor(int patientId, String recordType, long startTime, long endTime) {
+        Patient patient = getPatient(patientId);
+        return patient != null ? patient.cursor(recordType, startTime, endTime) : RecordCursor.of(new ArrayList<>());
+    }
+
+    /**
+     * Summarizes the records of one type for a specific patient in buckets of the given length,
+     * e.g. the minimum, maximum and average heart rate per minute. Answered from the rollups kept
+     * on ingest where possible, so long trend queries do not touch the raw records.
+     *
+     * @param patientId  the unique identifier of the patient
+     * @param recordType the record type, e.g. "HeartRate"
+     * @param startTime  the start of the time range, in milliseconds since the Unix epoch
+     * @param endTime    the end of the time range, in milliseconds since the Unix epoch
+     * @param resolution the length of a bucket, in milliseconds
+     * @return the non-empty buckets that start within the range, ordered by time
+     */
+    public List<Aggregate> getAggregates(int patientId, String recordType, long startTime, long endTime,
+                                         long resolution) {
+        Patient patient = patientMap.get(patientId);
+        if (patient != null) {
+            return patient.getAggregates(recordType, startTime, endTime, resolution);
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Returns a stored patient.
+     *
+     * @param patientId the unique identifier of the patient
+     * @return the patient, or {@code null} if the storage holds no records of the patient
+     */
+    public Patient getPatient(int patientId) {
+        return patientMap.get(patientId);
+    }
+
+    /**
+     * Computes the count, minimum, maximum, mean, standard deviation and 50th, 95th and 99th
+     * percentiles of a patient's readings of one type within a time range. Blocks of readings inside
+     * the range contribute precomputed summaries with mergeable percentile sketches, so the readings
+     * are neither copied nor sorted.
+     *
+     * @param patientId  the unique identifier of the patient
+     * @param recordType the record type, e.g. "HeartRate"
+     * @param startTime  the start of the time range, in milliseconds since the Unix epoch
+     * @param endTime    the end of the time range, in milliseconds since the Unix epoch
+     * @return the statistics; empty if the patient has no readings of that type in the range
+     */
+    public WindowStats getStats(int patientId, String recordType, long startTime, long endTime) {
+        Patient patient = patientMap.get(patientId);
+        if (patient != null) {
+            return patient.getStats(recordType, startTime, endTime);
+        }
+        return new WindowStats.Accumulator().toStats();
+    }
+
+    /**
+     * Computes the statistics of {@link #getStats(int, String, long, long)} for every patient with
+     * readings of a type within a time range. The patients are found through the index of
+     * {@link #findPatients}.
+     *
+     * @param recordType the record type, e.g. "HeartRate"
+     * @param startTime  the start of the time range, in milliseconds since the Unix epoch
+     * @param endTime    the end of the time range, in milliseconds since the Unix epoch
+     * @return the statistics by patient ID, in ascending order of ID
+     */
+    public SortedMap<Integer, WindowStats> getStatsByPatient(String recordType, long startTime, long endTime) {
+        SortedMap<Integer, WindowStats> stats = new TreeMap<>();
+        for (int patientId : findPatients(recordType, startTime, endTime,
+                Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY)) {
+            stats.put(patientId, getStats(patientId, recordType, startTime, endTime));
+        }
+        return stats;
+    }
+
+    /**
+     * Finds the patients with at least one reading of a record type in a time range whose value lies
+     * in a value range, e.g. all patients with a Saturation reading below 92 in the last 10 minutes.
+     * Answered from an index kept on ingest: only patients with readings in the range, and values
+     * there that could match, are looked at, and only their readings in the range are read.
+     *
+     * @param recordType the record type, e.g. "Saturation"
+     * @param startTime  the start of the time range, in milliseconds since the Unix epoch
+     * @param endTime    the end of the time range, in milliseconds since the Unix epoch
+     * @param minValue   the lowest matching value, inclusive
+     * @param maxValue   the highest matching value, inclusive
+     * @return the IDs of the matching patients, in ascending order
+     */
+    public List<Integer> findPatients(String recordType, long startTime, long endTime,
+                                      double minValue, double maxValue) {
+        return signalIndex.findPatients(SignalRegistry.idOf(recordType), startTime, endTime,
+                minValue, maxValue, patientMap::get);
+    }
+
+    /**
+     * Retrieves the records of one type of all patients in a time range, e.g. every Cholesterol
+     * reading today. Answered from the same index as {@link #findPatients}.
+     *
+     * @param recordType the record type, e.g. "Cholesterol"
+     * @param startTime  the start of the time range, in milliseconds since the Unix epoch
+     * @param endTime    the end of the time range, in milliseconds since the Unix epoch
+     * @return the records, grouped into time buckets in ascending order and, within a bucket,
+     *         ordered by patient and timestamp
+     */
+    public List<PatientRecord> getPopulationRecords(String recordType, long startTime, long endTime) {
+        return getPopulationRecords(recordType, startTime, endTime, Double.NEGATIVE_INFINITY,
+                Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Retrieves the records of one type of all patients in a time range whose value lies in a value range.
+     *
+     * @param recordType the record type, e.g. "Saturation"
+     * @param startTime  the start of the time range, in milliseconds since the Unix epoch
+     * @param endTime    the end of the time range, in milliseconds since the Unix epoch
+     * @param minValue   the lowest matching value, inclusive
+     * @param maxValue   the highest matching value, inclusive
+     * @return the matching records, ordered as by {@link #getPopulationRecords(String, long, long)}
+     */
+    public List<PatientRecord> getPopulationRecords(String recordType, long startTime, long endTime,
+                                                    double minValue, double maxValue) {
+        return signalIndex.getRecords(SignalRegistry.idOf(recordType), startTime, endTime,
+                minValue, maxValue, patientMap::get);
+    }
+
+    /**
+     * Returns a patient's latest reading of a record type, as kept on ingest; answering does not
+     * search the patient's records.
+     *
+     * @param patientId  the unique identifier of the patient
+     * @param recordType the record type, e.g. "HeartRate"
+     * @return the reading with the latest timestamp, or {@code null} if there is none
+     */
+    public PatientRecord getLatest(int patientId, String recordType) {
+        int signalId = SignalRegistry.idOf(recordType);
+        Patient patient = signalId < 0 ? null : getPatient(patientId);
+        return patient == null ? null : patient.getLatest(signalId);
+    }
+
+    /**
+     * Passes the latest reading of every signal of every patient to a visitor, e.g. to fill a
+     * central station's board of current vitals. Reads the live values in place: nothing is copied
+     * and ingest is not blocked. Each reading is consistent, but readings added while this runs may
+     * or may not be seen.
+     *
+     * @param visitor receives the readings
+     */
+    public void forEachLatest(LatestValues.Visitor visitor) {
+        forEachPatient(patient -> patient.forEachLatest(visitor));
+    }
+
+    /**
+     * Registers a subscriber for every reading added to the storage from now on.
+     * See {@link ChangeSubscription} for how the readings are delivered.
+     *
+     * @param subscriber receives batches of the added readings
+     * @return the subscription, to be closed when the subscriber is no longer interested
+     */
+    public ChangeSubscription subscribe(Flow.Subscriber<? super DataBatch> subscriber) {
+        return changeFeed.subscribe(true, 0, null, ChangeSubscription.DEFAULT_BUFFER_CAPACITY, subscriber);
+    }
+
+    /**
+     * Registers a subscriber for every reading added to the storage from now on, with the given
+     * buffer. Pass {@link ChangeSubscription#UNBOUNDED_BUFFER_CAPACITY} for a subscriber that must not
+     * miss a reading.
+     *
+     * @param subscriber     receives batches of the added readings
+     * @param bufferCapacity the number of batches buffered before batches are dropped
+     * @return the subscription, to be closed when the subscriber is no longer interested
+     */
+    public ChangeSubscription subscribe(Flow.Subscriber<? super DataBatch> subscriber, int bufferCapacity) {
+        return changeFeed.subscribe(true, 0, null, bufferCapacity, subscriber);
+    }
+
+    /**
+     * Registers a subscriber for the readings of one patient added to the storage from now on.
+     *
+     * @param patientId  the unique identifier of the patient
+     * @param subscriber receives batches of the patient's added readings
+     * @return the subscription, to be closed when the subscriber is no longer interested
+     */
+    public ChangeSubscription subscribeToPatient(int patientId, Flow.Subscriber<? super DataBatch> subscriber) {
+        return changeFeed.subscribe(false, patientId, null, ChangeSubscription.DEFAULT_BUFFER_CAPACITY, subscriber);
+    }
+
+    /**
+     * Registers a subscriber for the readings of one record type, of all patients, added to the
+     * storage from now on.
+     *
+     * @param recordType the record type, e.g. "ECG"
+     * @param subscriber receives batches of the added readings of the type
+     * @return the subscription, to be closed when the subscriber is no longer interested
+     */
+    public ChangeSubscription subscribeToSignal(String recordType, Flow.Subscriber<? super DataBatch> subscriber) {
+        return changeFeed.subscribe(true, 0, recordType,
+                ChangeSubscription.DEFAULT_BUFFER_CAPACITY, subscriber);
+    }
+
+    private Patient newPatient(int patientId) {
+        return new Patient(patientId, this::getRetentionPolicy, signalIndex);
+    }
+
+    /**
+     * Sets how long the records of a type are kept, e.g. 15 minutes of ECG or 7 days of
+     * Cholesterol. Applies to new records right away; older records are dropped as new ones
+     * arrive or when the retention sweeper runs.
+     *
+     * @param recordType the record type
+     * @param policy     the retention policy
+     */
+    public void setRetentionPolicy(String recordType, RetentionPolicy policy) {
+        retentionPolicies.put(SignalRegistry.nameOf(SignalRegistry.register(recordType)), policy);
+    }
+
+    /**
+     * Sets the retention policy of record types without a policy of their own.
+     * The default keeps all records.
+     *
+     * @param policy the retention policy
+     */
+    public void setDefaultRetentionPolicy(RetentionPolicy policy) {
+        defaultRetention = policy;
+    }
+
+    /**
+     * Returns the retention policy of a record type.
+     *
+     * @param recordType the record type
+     * @return the policy set for the type, or the default policy
+     */
+    public RetentionPolicy getRetentionPolicy(String recordType) {
+        int signalId = SignalRegistry.idOf(recordType);
+        return signalId < 0 ? defaultRetention
+                : retentionPolicies.getOrDefault(SignalRegistry.nameOf(signalId), defaultRetention);
+    }
+
+    /**
+     * Drops the records of all patients that fall outside their retention policy,
+     * measuring their age from the current time.
+     */
+    public void sweepRetention() {
+        long now = System.currentTimeMillis();
+        for (Patient patient : patientMap.values()) {
+            patient.applyRetention(now);
+        }
+        for (int signalId = 0; signalId < SignalRegistry.size(); signalId++) {
+            long maxAge = getRetentionPolicy(SignalRegistry.nameOf(signalId)).getMaxAgeMillis();
+            if (maxAge < now) {
+                signalIndex.dropBefore(signalId, now - maxAge);
+            }
+        }
+    }
+
+    /**
+     * Starts sweeping expired records in the background at a fixed rate.
+     * This catches series that stopped receiving records, which are otherwise only
+     * trimmed when new records arrive.
+     *
+     * @param period the time between sweeps
+     * @param unit   the unit of the period
+     */
+    public synchronized void startRetentionSweeper(long period, TimeUnit unit) {
+        if (retentionSweeper != null) {
+            return;
+        }
+        retentionSweeper = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "retention-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        retentionSweeper.scheduleAtFixedRate(() -> {
+            try {
+                sweepRetention();
+            } catch (RuntimeException e) {
+                System.err.println("Retention sweep failed: " + e.getMessage());
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Stops the retention sweeper if it is running.
+     */
+    public synchronized void stopRetentionSweeper() {
+        if (retentionSweeper != null) {
+            retentionSweeper.shutdownNow();
+            retentionSweeper = null;
+        }
+    }
+
+    /**
+     * Starts moving sealed blocks of older readings to disk segments in a directory, as the policy
+     * describes. The policy is checked every {@link #SPILL_CHECK_MILLIS} milliseconds in the background.
+     * <p>
+     * Queries are unaffected: a spilled block is read back from disk when a query's range reaches it,
+     * so range queries, cursors, aggregates and statistics return readings from the heap and from disk
+     * together. The newest one to two thousand readings of each series are never spilled. The segments
+     * are not a journal and do not survive a restart, see {@link #openJournal} for durability.
+     * After {@link #stopSpilling()}, spilling can be enabled again with another policy; the storage
+     * keeps using the directory it first spilled to.
+     *
+     * @param directory the spill directory; created if missing, and emptied of segments left by
+     *                  an earlier run
+     * @param policy    when to spill
+     * @throws IOException if the directory cannot be prepared
+     */
+    public synchronized void enableSpill(Path directory, SpillPolicy policy) throws IOException {
+        if (spillExecutor != null) {
+            throw new IllegalStateException("Spilling is already enabled");
+        }
+        openSpill(directory, policy);
+        spillExecutor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "spill");
+            thread.setDaemon(true);
+            return thread;
+        });
+        spillExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                spillBlocks();
+            } catch (RuntimeException e) {
+                System.err.println("Spill failed: " + e.getMessage());
+            }
+        }, SPILL_CHECK_MILLIS, SPILL_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    void openSpill(Path directory, SpillPolicy policy) throws IOException {
+        openSpillDirectory(directory);
+        spillPolicy = policy;
+    }
+
+    void openSpillDirectory(Path directory) throws IOException {
+        if (spill == null) {
+            spill = new BlockSpill(directory);
+        }
+    }
+
+    /**
+     * Spills the sealed blocks the spill policy selects now, measuring their age from the current
+     * time. Called in the background while spilling is enabled; does nothing otherwise.
+     *
+     * @return the number of readings spilled
+     */
+    public long spillBlocks() {
+        SpillPolicy policy = spillPolicy;
+        if (policy == null) {
+            return 0;
+        }
+        long cutoff = spillCutoff(policy);
+        return cutoff == Long.MIN_VALUE ? 0 : spillBefore(cutoff);
+    }
+
+    /**
+     * Returns the timestamp before which blocks are spilled now: the policy's age cutoff or, while
+     * the heap is between the watermarks on its way down, further ahead, so that the oldest blocks
+     * that make up the heap above the low watermark are spilled too. The heap is only measured again
+     * after a garbage collection, so a measurement that was already acted on is not acted on twice.
+     */
+    private synchronized long spillCutoff(SpillPolicy policy) {
+        long cutoff = policy.ageCutoff(System.currentTimeMillis());
+        if (!policy.watchesHeap()) {
+            return cutoff;
+        }
+        double usage = SpillPolicy.heapUsage();
+        heapSpilling = usage >= policy.getHeapWatermark() || (heapSpilling && usage > policy.getLowWatermark());
+        if (heapSpilling && usage != spilledAtHeapUsage) {
+            spilledAtHeapUsage = usage;
+            long excess = (long) ((usage - policy.getLowWatermark()) * Runtime.getRuntime().maxMemory());
+            cutoff = Math.max(cutoff, spillCandidates().cutoffFor(excess));
+        }
+        return cutoff;
+    }
+
+    /**
+     * Returns the sealed blocks that are still in the heap.
+     */
+    SpillCandidates spillCandidates() {
+        SpillCandidates candidates = new SpillCandidates();
+        for (Patient patient : patientMap.values()) {
+            patient.addSpillCandidates(candidates);
+        }
+        return candidates;
+    }
+
+    /**
+     * Spills the sealed blocks whose readings are all older than the cutoff. Each patient's blocks are
+     * written to disk without holding the patient's lock.
+     *
+     * @param cutoff the timestamp before which blocks are spilled
+     * @return the number of readings spilled
+     */
+    long spillBefore(long cutoff) {
+        long readings = 0;
+        for (PendingSpill pending : collectSpill(cutoff)) {
+            pending.write();
+            readings += pending.getPatient().installSpill(pending);
+        }
+        return readings;
+    }
+
+    /**
+     * Chooses the blocks to spill of every patient that has any.
+     *
+     * @param cutoff the timestamp before which blocks are spilled
+     * @return the blocks of each patient, to be written and then installed
+     */
+    List<PendingSpill> collectSpill(long cutoff) {
+        BlockSpill target = spill;
+        List<PendingSpill> pending = new ArrayList<>();
+        if (target == null) {
+            return pending;
+        }
+        for (Patient patient : patientMap.values()) {
+            PendingSpill patientSpill = patient.collectSpill(target, cutoff);
+            if (!patientSpill.isEmpty()) {
+                pending.add(patientSpill);
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Puts written blocks in place.
+     *
+     * @param pending the blocks of patients of this storage, written to disk
+     * @return the number of readings spilled
+     */
+    long installSpill(List<PendingSpill> pending) {
+        long readings = 0;
+        for (PendingSpill patientSpill : pending) {
+            readings += patientSpill.getPatient().installSpill(patientSpill);
+        }
+        return readings;
+    }
+
+    /**
+     * Stops spilling further blocks. Blocks already on disk stay there and remain readable.
+     */
+    public synchronized void stopSpilling() {
+        if (spillExecutor != null) {
+            spillExecutor.shutdownNow();
+            spillExecutor = null;
+        }
+        spillPolicy = null;
+        heapSpilling = false;
+        spilledAtHeapUsage = Double.NaN;
+    }
+
+    /**
+     * Returns the size of the blocks currently spilled to disk.
+     *
+     * @return the size in bytes, or 0 if spilling was never enabled
+     */
+    public long getSpilledBytes() {
+        BlockSpill target = spill;
+        return target == null ? 0 : target.getSpilledBytes();
+    }
+
+    /**
+     * Recovers the records kept in a journal directory and starts logging new records to it.
+     * <p>
+     * The latest snapshot in the directory is loaded and the log written after it is replayed,
+     * split by patient across one thread per processor. From then on every record added is
+     * appended to the log before it is stored. Batches are durable once
+     * {@link #addPatientData(DataBatch)} returns; records added one at a time are committed
+     * every {@link #JOURNAL_COMMIT_MILLIS} milliseconds. Call {@link #checkpoint()} or
+     * {@link #startCheckpoints} to write snapshots, which keep the log and the recovery time short.
+     *
+     * @param directory the journal directory; created if missing
+     * @return the number of records recovered
+     * @throws IOException if the journal cannot be read or the log cannot be opened
+     */
+    public synchronized long openJournal(Path directory) throws IOException {
+        if (journal != null) {
+            throw new IllegalStateException("A journal is already open");
+        }
+        long start = System.nanoTime();
+        List<Long> snapshots = StorageSnapshot.snapshots(directory);
+        long firstSegment = snapshots.isEmpty() ? 0 : snapshots.get(snapshots.size() - 1);
+        long recovered = 0;
+        try (ParallelReplay replay = new ParallelReplay(this, Runtime.getRuntime().availableProcessors())) {
+            if (!snapshots.isEmpty()) {
+                recovered += StorageSnapshot.read(StorageSnapshot.snapshotFile(directory, firstSegment), replay);
+            }
+            for (long segment : WriteAheadLog.segments(directory)) {
+                if (segment >= firstSegment) {
+                    recovered += WriteAheadLog.replay(WriteAheadLog.segmentFile(directory, segment), replay);
+                }
+            }
+            replay.finish();
+        } catch (ExecutionException e) {
+            throw new IOException("Could not apply recovered records", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while recovering records");
+        }
+        System.out.printf("Recovered %d records from %s in %d ms%n", recovered, directory,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        journalDirectory = directory;
+        journal = new WriteAheadLog(directory);
+        journalExecutor = Executors.newScheduledThreadPool(2, task -> {
+            Thread thread = new Thread(task, "journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        WriteAheadLog wal = journal;
+        journalExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                wal.commit();
+            } catch (RuntimeException e) {
+                System.err.println("Journal commit failed: " + e.getMessage());
+            }
+        }, JOURNAL_COMMIT_MILLIS, JOURNAL_COMMIT_MILLIS, TimeUnit.MILLISECONDS);
+        return recovered;
+    }
+
+    /**
+     * Writes a snapshot of all records to the journal and deletes the log and snapshots it replaces.
+     * Ingest only pauses while the log switches to a new segment; the snapshot itself is written
+     * from immutable views while new records keep arriving.
+     *
+     * @throws IOException if the snapshot cannot be written
+     */
+    public void checkpoint() throws IOException {
+        synchronized (checkpointMonitor) {
+            WriteAheadLog wal;
+            Path directory;
+            synchronized (this) {
+                wal = journal;
+                directory = journalDirectory;
+            }
+            if (wal == null) {
+                throw new IllegalStateException("No journal is open");
+            }
+            long segment;
+            Map<Integer, List<TimeSeries.View>> series = new HashMap<>();
+            Lock lock = journalLock.writeLock();
+            lock.lock();
+            try {
+                segment = wal.rotate();
+                for (Patient patient : patientMap.values()) {
+                    List<TimeSeries.View> views = new ArrayList<>();
+                    for (TimeSeries typeSeries : patient.getAllSeries()) {
+                        TimeSeries.View view = typeSeries.snapshot();
+                        if (!view.isEmpty()) {
+                            views.add(view);
+                        }
+                    }
+                    if (!views.isEmpty()) {
+                        series.put(patient.getId(), views);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            StorageSnapshot.write(directory, segment, series);
+            wal.deleteSegmentsBefore(segment);
+            StorageSnapshot.deleteSnapshotsBefore(directory, segment);
+        }
+    }
+
+    /**
+     * Starts writing snapshots to the journal in the background at a fixed rate.
+     *
+     * @param period the time between snapshots
+     * @param unit   the unit of the period
+     */
+    public synchronized void startCheckpoints(long period, TimeUnit unit) {
+        if (journalExecutor == null) {
+            throw new IllegalStateException("No journal is open");
+        }
+        journalExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                checkpoint();
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Checkpoint failed: " + e.getMessage());
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Commits the pending records to the journal and stops logging. Does nothing if no journal is open.
+     *
+     * @throws IOException if the log cannot be written
+     */
+    public synchronized void closeJournal() throws IOException {
+        if (journal == null) {
+            return;
+        }
+        journalExecutor.shutdownNow();
+        journalExecutor = null;
+        WriteAheadLog wal = journal;
+        Lock lock = journalLock.writeLock();
+        lock.lock();
+        try {
+            journal = null;
+        } finally {
+            lock.unlock();
+        }
+        wal.close();
+    }
+
+    /**
+     * Writes every series to a directory in a columnar, block-compressed layout for offline analysis,
+     * with one part file per processor written in parallel. Each block of up to
+     * {@link TimeSeries#CHUNK_SIZE} readings carries its time and value bounds; the layout is
+     * described in {@code ColumnarExport}. The parts are written next to the directory and take its
+     * place once complete, so an earlier export in the directory is replaced as a whole, and stays as
+     * it was if the export fails. Records added while the export runs may or may not be included.
+     *
+     * @param directory the export directory; created if missing, and must hold nothing but part files
+     * @return the number of records written
+     * @throws IOException if the export cannot be written
+     */
+    public long exportColumnar(Path directory) throws IOException {
+        List<TimeSeries.View> series = Collections.synchronizedList(new ArrayList<>());
+        forEachPatient(patient -> {
+            for (TimeSeries typeSeries : patient.getAllSeries()) {
+                TimeSeries.View view = typeSeries.snapshot();
+                if (!view.isEmpty()) {
+                    series.add(view);
+                }
+            }
+        });
+        List<TimeSeries.View> ordered = new ArrayList<>(series);
+        ordered.sort(Comparator.comparingInt((TimeSeries.View view) -> view.get(0).getPatientId())
+                .thenComparingInt(view -> view.get(0).getSignalId()));
+        return ColumnarExport.write(directory, ordered, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Adds the records of an export written by {@link #exportColumnar} to this storage, reading the
+     * part files in parallel. The records are added like any other batch, so they are journaled,
+     * indexed and published to subscribers.
+     *
+     * @param directory the export directory
+     * @return the number of records read
+     * @throws IOException if the directory holds no export or a part cannot be read
+     */
+    public long importColumnar(Path directory) throws IOException {
+        return ColumnarExport.read(directory, this, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Estimates the heap used by all stored records.
+     *
+     * @return the estimated size in bytes
+     */
+    public long estimateMemoryBytes() {
+        long bytes = 0;
+        for (Patient patient : patientMap.values()) {
+            bytes += patient.estimateMemoryBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the number of records currently stored for all patients.
+     *
+     * @return the number of records
+     */
+    public long getRecordCount() {
+        long count = 0;
+        for (Patient patient : patientMap.values()) {
+            for (TimeSeries series : patient.getAllSeries()) {
+                count += series.size();
+            }
+        }
+        return count;
+    }
+
     /**
      * Retrieves a collection of all patients stored in the data storage.
      *
      * @return a list of all patients
      */
     public List<Patient> getAllPatients() {
-        return new ArrayList<>(patientMap.values());
+        return patientMap.values();
+    }
+
+    /**
+     * Passes every stored patient to an action, without copying the patient list first.
+     * Patients added while this runs may or may not be visited.
+     *
+     * @param action the action to run for each patient
+     */
+    public void forEachPatient(Consumer<Patient> action) {
+        patientMap.forEach(action);
     }
 
     /**
@@ -93,17 +978,63 @@ public class DataStorage {
      */
     public void clear() {
         patientMap.clear();
+        signalIndex.clear();
     }
 
 
     /**
      * The main method for the DataStorage class.
      * Initializes the system, reads data into storage, and continuously monitors
-     * and evaluates patient data using a websocket server pipeline.
+     * and evaluates patient data.
+     * <p>
+     * By default the generators stream to a websocket server on port 8887 and a websocket client
+     * reads the data back. With {@code --transport inmemory} the generators write to an
+     * {@link InMemoryOutputStrategy} that is drained directly into the storage, without sockets
+     * or text encoding.
      * 
-     * @param args command line arguments
+     * With {@code --journal <directory>} the records are logged to the directory and recovered
+     * from it on the next start. With {@code --shards <n>} the records are kept in a
+     * {@link ShardedDataStorage} with {@code n} shards, which also evaluates the alerts in parallel;
+     * it cannot be combined with {@code --journal}.
+     * With {@code --spill <directory>} blocks older than an hour are moved to the directory, and once
+     * the heap is 80% full after a collection, the oldest sealed blocks are moved until it is 70% full. With {@code --allowed-lateness <ms>} the
+     * readings of the stream are stored in timestamp order through a {@link ReorderBuffer}; readings
+     * arriving later than that are counted and logged, not stored.
+     * Alerts are evaluated for a patient whenever new readings of the patient arrive, through a
+     * subscription to the storage, instead of for all patients on a timer. Only the readings not
+     * evaluated before are evaluated, together with the few earlier ones the alert strategies compare
+     * them with.
+     *
+     * @param args command line arguments, optionally {@code --transport websocket|inmemory},
+     *             {@code --journal <directory>}, {@code --shards <n>}, {@code --spill <directory>}
+     *             and {@code --allowed-lateness <ms>}
      */
     public static void main(String[] args) throws IOException {
+        String transport = "websocket";
+        Path journalDirectory = null;
+        Path spillDirectory = null;
+        int shards = 0;
+        long allowedLateness = -1;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--transport") && i + 1 < args.length) {
+                transport = args[++i];
+            } else if (args[i].equals("--journal") && i + 1 < args.length) {
+                journalDirectory = Paths.get(args[++i]);
+            } else if (args[i].equals("--shards") && i + 1 < args.length) {
+                shards = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--spill") && i + 1 < args.length) {
+                spillDirectory = Paths.get(args[++i]);
+            } else if (args[i].equals("--allowed-lateness") && i + 1 < args.length) {
+                allowedLateness = Long.parseLong(args[++i]);
+            } else {
+                System.err.println("Unknown option '" + args[i] + "'");
+            }
+        }
+        if (journalDirectory != null && shards > 0) {
+            System.err.println("--journal cannot be combined with --shards: sharded storage does not support a journal");
+            return;
+        }
+
         // DataReader is not defined in this scope, should be initialized appropriately.
         // DataStorage storage = new DataStorage();
 
@@ -123,13 +1054,83 @@ public class DataStorage {
         // Initialize the AlertGenerator
         AlertGenerator alertGenerator = new AlertGenerator();
 
-        // Start WebSocket Server
-        WebSocketOutputStrategy strategy = new WebSocketOutputStrategy(8887);
-        DataStorage dataStorage = DataStorage.getInstance();
+        DataStorage dataStorage = shards > 0 ? new ShardedDataStorage(shards) : DataStorage.getInstance();
+        // high-rate signals only need to be kept for recent alerts, lab values for trends
+        dataStorage.setRetentionPolicy("ECG", RetentionPolicy.ofDuration(15, TimeUnit.MINUTES));
+        dataStorage.setRetentionPolicy("Saturation", RetentionPolicy.ofDuration(1, TimeUnit.HOURS));
+        dataStorage.setDefaultRetentionPolicy(RetentionPolicy.ofDuration(7, TimeUnit.DAYS));
+        dataStorage.startRetentionSweeper(1, TimeUnit.MINUTES);
+        if (journalDirectory != null) {
+            dataStorage.openJournal(journalDirectory);
+            dataStorage.startCheckpoints(5, TimeUnit.MINUTES);
+        }
+        if (spillDirectory != null) {
+            dataStorage.enableSpill(spillDirectory, SpillPolicy.of(0.8, 1, TimeUnit.HOURS));
+        }
+        OutputStrategy strategy;
+        StreamingDataReader reader;
+        if (transport.equals("inmemory")) {
+            // Hand readings straight from the generators to the storage
+            InMemoryOutputStrategy inMemoryStrategy = new InMemoryOutputStrategy();
+            strategy = inMemoryStrategy;
+            reader = new InMemoryDataReader(inMemoryStrategy);
+        } else {
+            if (!transport.equals("websocket")) {
+                System.err.println("Unknown transport '" + transport + "'. Using websocket.");
+            }
+            // Start WebSocket Server
+            strategy = new WebSocketOutputStrategy(8887);
+            // Connect to the WebSocket as a client to receive data in real-time
+            reader = new WebSocketDataReader("ws://localhost:8887");
+        }
+        // evaluate the readings each patient received to check for conditions that may trigger alerts;
+        // the buffer is unbounded so that no reading goes unchecked
+        dataStorage.subscribe(new Flow.Subscriber<DataBatch>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(Long.MAX_VALUE);
+            }
 
-        // Connect to the WebSocket as a client to receive data in real-time
-        DataReader reader = new WebSocketDataReader("ws://localhost:8887");
-        reader.readData(dataStorage);  // Starts the client inside
+            @Override
+            public void onNext(DataBatch batch) {
+                // the generator remembers what it has evaluated of each patient, so readings of
+                // batches that arrive out of order or were already covered are not evaluated twice
+                // getPatient is a lookup of the stored patient here; MappedDataStorage would load a copy
+                Set<Integer> patients = new HashSet<>();
+                for (int i = 0; i < batch.size(); i++) {
+                    patients.add(batch.getPatientId(i));
+                }
+                for (int patientId : patients) {
+                    Patient patient = dataStorage.getPatient(patientId);
+                    if (patient != null) {
+                        alertGenerator.evaluateData(patient);
+                    }
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                System.err.println("Alert evaluation stopped: " + throwable.getMessage());
+                subscription.cancel();
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        }, ChangeSubscription.UNBOUNDED_BUFFER_CAPACITY);
+
+        if (allowedLateness >= 0) {
+            // late readings would be stored out of order, so they only go to the log
+            long lateness = allowedLateness;
+            ReorderBuffer reorderBuffer = new ReorderBuffer(lateness, late -> System.err.println(
+                    late.size() + " readings arrived more than " + lateness + " ms late and were not stored"));
+            reader.readData(dataStorage, reorderBuffer);  // Starts the client inside
+        } else {
+            reader.readData(dataStorage);  // Starts the client inside
+        }
 
 
         int patientCount = 5; // Can be any value
@@ -150,12 +1151,7 @@ public class DataStorage {
                 bloodPressureDataGenerator.generate(i, strategy);
                 bloodLevelsDataGenerator.generate(i, strategy);
             }
-
-            // evaluate all patients' data to check for conditions that may trigger alerts
-            for (Patient patient : dataStorage.getAllPatients()) {
-                alertGenerator.evaluateData(patient);
-            }
-
         }, 0, 5, TimeUnit.SECONDS);
+
     }
 }
@@ -0,0 +1,160 @@
+package com.data_management;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link Flow.Subscriber} that adds every received batch to a {@link DataStorage}.
+ * It requests a small number of batches up front and one more after each stored batch,
+ * so it never has more than that number of batches outstanding.
+ * <p>
+ * Given a {@link ReorderBuffer}, it stores the readings of the stream in timestamp order: each batch
+ * goes through the buffer and only the readings the watermark has passed are stored. The rest are
+ * stored when later batches move the watermark past them, when the stream ends, or when no batch has
+ * arrived for the idle timeout, so a paused stream does not keep its last readings from storage
+ * and from the alerts.
+ */
+public class DataStorageSubscriber implements Flow.Subscriber<DataBatch> {
+
+    private static final int PREFETCH = 16;
+
+    private final DataStorage dataStorage;
+    private final ReorderBuffer reorderBuffer;
+    private final DataBatch released = new DataBatch();
+    private final CountDownLatch completed = new CountDownLatch(1);
+    private final long idleFlushMillis;
+    private Flow.Subscription subscription;
+    private ScheduledExecutorService idleFlusher;
+    // when the latest batch arrived, in System.nanoTime(); guarded by this
+    private long lastBatchNanos;
+
+    /**
+     * Constructs a subscriber that stores batches into the given storage.
+     *
+     * @param dataStorage the storage to populate
+     */
+    public DataStorageSubscriber(DataStorage dataStorage) {
+        this(dataStorage, null);
+    }
+
+    /**
+     * Constructs a subscriber that stores batches into the given storage in timestamp order. The
+     * readings held back are stored once no batch has arrived for the buffer's allowed lateness.
+     *
+     * @param dataStorage   the storage to populate
+     * @param reorderBuffer the buffer that orders the readings of this stream, or {@code null} to
+     *                      store batches as they arrive
+     */
+    public DataStorageSubscriber(DataStorage dataStorage, ReorderBuffer reorderBuffer) {
+        this(dataStorage, reorderBuffer, reorderBuffer == null ? 0 : reorderBuffer.getAllowedLatenessMillis());
+    }
+
+    /**
+     * Constructs a subscriber that stores batches into the given storage in timestamp order.
+     *
+     * @param dataStorage     the storage to populate
+     * @param reorderBuffer   the buffer that orders the readings of this stream, or {@code null} to
+     *                        store batches as they arrive
+     * @param idleFlushMillis how long no batch must arrive before the readings held back are stored,
+     *                        in milliseconds of processing time; 0 to hold them until later batches
+     *                        or the end of the stream release them. They are stored within twice
+     *                        that time.
+     */
+    public DataStorageSubscriber(DataStorage dataStorage, ReorderBuffer reorderBuffer, long idleFlushMillis) {
+        if (idleFlushMillis < 0) {
+            throw new IllegalArgumentException("Idle flush time must not be negative: " + idleFlushMillis);
+        }
+        this.dataStorage = dataStorage;
+        this.reorderBuffer = reorderBuffer;
+        this.idleFlushMillis = idleFlushMillis;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        if (reorderBuffer != null && idleFlushMillis > 0) {
+            idleFlusher = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "reorder-idle-flush");
+                thread.setDaemon(true);
+                return thread;
+            });
+            idleFlusher.scheduleWithFixedDelay(this::flushIfIdle, idleFlushMillis, idleFlushMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+        subscription.request(PREFETCH);
+    }
+
+    @Override
+    public void onNext(DataBatch batch) {
+        if (reorderBuffer == null) {
+            dataStorage.addPatientData(batch);
+        } else {
+            synchronized (this) {
+                lastBatchNanos = System.nanoTime();
+                reorderBuffer.add(batch, released);
+                storeReleased();
+            }
+        }
+        subscription.request(1);
+    }
+
+    private synchronized void flushIfIdle() {
+        try {
+            if (reorderBuffer.size() > 0
+                    && System.nanoTime() - lastBatchNanos >= TimeUnit.MILLISECONDS.toNanos(idleFlushMillis)) {
+                flush();
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Idle flush failed: " + e.getMessage());
+        }
+    }
+
+    private void storeReleased() {
+        if (!released.isEmpty()) {
+            dataStorage.addPatientData(released);
+            released.clear();
+        }
+    }
+
+    private synchronized void flush() {
+        if (reorderBuffer != null) {
+            reorderBuffer.flush(released);
+            storeReleased();
+        }
+    }
+
+    private void finish() {
+        if (idleFlusher != null) {
+            idleFlusher.shutdownNow();
+        }
+        flush();
+        completed.countDown();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        System.err.println("Data stream failed: " + throwable.getMessage());
+        throwable.printStackTrace();
+        finish();
+    }
+
+    @Override
+    public void onComplete() {
+        finish();
+    }
+
+    /**
+     * Waits until the stream has completed and every batch has been stored.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of the timeout
+     * @return {@code true} if the stream completed within the timeout
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+        return completed.await(timeout, unit);
+    }
+}
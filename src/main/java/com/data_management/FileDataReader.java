@@ -17,6 +17,9 @@ import java.io.IOException;
  */
 public class FileDataReader implements DataReader {
 
+    /** Number of parsed readings collected before they are handed to the storage. */
+    private static final int BATCH_SIZE = 4096;
+
     private final String outputDir;
 
     /**
@@ -43,6 +46,7 @@ public class FileDataReader implements DataReader {
         // Grabs all the files in the directory
         File[] files = dir.listFiles((d, name) -> name.endsWith(".txt") || name.endsWith(".csv"));
         if (files == null) return;
+        DataBatch batch = new DataBatch(BATCH_SIZE);
         // Parses each one
         for (File file : files) {
             try (BufferedReader br = new BufferedReader(new FileReader(file))) {
@@ -60,8 +64,12 @@ public class FileDataReader implements DataReader {
                         String rawValue = parts[3].split(":")[1].trim().replace("%", "");
                         double measurementValue = Double.parseDouble(rawValue);
 
-                        storage.addPatientData(patientId, measurementValue, measurementType, timestamp);
-                    } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                        batch.add(patientId, measurementValue, measurementType, timestamp);
+                        if (batch.size() == BATCH_SIZE) {
+                            storage.addPatientData(batch);
+                            batch.clear();
+                        }
+                    } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
                         continue;
                     }
                 }
@@ -69,5 +77,6 @@ public class FileDataReader implements DataReader {
                 e.printStackTrace();
             }
         }
+        storage.addPatientData(batch);
     }
 }
@@ -0,0 +1,350 @@
+package com.data_management;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * An immutable, compressed block of readings, encoded as in Facebook's Gorilla time series database.
+ * <p>
+ * Timestamps are stored as delta-of-deltas: readings at a steady rate cost one bit each, small jitter
+ * a few more. Values are XORed with the previous value and only the bits that differ are stored, so a
+ * repeated value costs one bit and values close to each other, such as saturation percentages or
+ * blood pressure that moves in small steps, cost a dozen or so. Blocks are read sequentially with a
+ * {@link Cursor}, which decodes without allocating.
+ */
+public final class GorillaBlock {
+
+    private static final int BYTES_PER_READING = Long.BYTES + Double.BYTES;
+
+    private final long[] bits;
+    private final int count;
+    private final long firstTimestamp;
+    private final long lastTimestamp;
+
+    private GorillaBlock(long[] bits, int count, long firstTimestamp, long lastTimestamp) {
+        this.bits = bits;
+        this.count = count;
+        this.firstTimestamp = firstTimestamp;
+        this.lastTimestamp = lastTimestamp;
+    }
+
+    /**
+     * Compresses readings taken from parallel arrays.
+     *
+     * @param timestamps the timestamps, in ascending order
+     * @param values     the values
+     * @param from       the index of the first reading
+     * @param count      the number of readings, at least one
+     * @return the compressed block
+     */
+    public static GorillaBlock encode(long[] timestamps, double[] values, int from, int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("A block needs at least one reading");
+        }
+        BitWriter out = new BitWriter(count);
+        long previousTimestamp = timestamps[from];
+        long previousDelta = 0;
+        long previousBits = Double.doubleToRawLongBits(values[from]);
+        int previousLeading = -1;
+        int previousTrailing = 0;
+        out.write(previousTimestamp, 64);
+        out.write(previousBits, 64);
+
+        for (int i = from + 1; i < from + count; i++) {
+            long delta = timestamps[i] - previousTimestamp;
+            long deltaOfDelta = delta - previousDelta;
+            if (deltaOfDelta == 0) {
+                out.write(0, 1);
+            } else if (deltaOfDelta >= -63 && deltaOfDelta <= 64) {
+                out.write(0b10, 2);
+                out.write(deltaOfDelta + 63, 7);
+            } else if (deltaOfDelta >= -255 && deltaOfDelta <= 256) {
+                out.write(0b110, 3);
+                out.write(deltaOfDelta + 255, 9);
+            } else if (deltaOfDelta >= -2047 && deltaOfDelta <= 2048) {
+                out.write(0b1110, 4);
+                out.write(deltaOfDelta + 2047, 12);
+            } else {
+                out.write(0b1111, 4);
+                out.write(deltaOfDelta, 64);
+            }
+            previousTimestamp = timestamps[i];
+            previousDelta = delta;
+
+            long valueBits = Double.doubleToRawLongBits(values[i]);
+            long xor = valueBits ^ previousBits;
+            if (xor == 0) {
+                out.write(0, 1);
+            } else {
+                int leading = Math.min(31, Long.numberOfLeadingZeros(xor));
+                int trailing = Long.numberOfTrailingZeros(xor);
+                if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+                    // the changed bits fit in the previous window
+                    out.write(0b10, 2);
+                    out.write(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+                } else {
+                    int meaningful = 64 - leading - trailing;
+                    out.write(0b11, 2);
+                    out.write(leading, 5);
+                    // 64 meaningful bits wraps to 0
+                    out.write(meaningful, 6);
+                    out.write(xor >>> trailing, meaningful);
+                    previousLeading = leading;
+                    previousTrailing = trailing;
+                }
+            }
+            previousBits = valueBits;
+        }
+        return new GorillaBlock(out.toArray(), count, timestamps[from], timestamps[from + count - 1]);
+    }
+
+    /**
+     * Returns the number of readings in the block.
+     *
+     * @return the number of readings
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the timestamp of the first reading.
+     *
+     * @return the first timestamp
+     */
+    public long getFirstTimestamp() {
+        return firstTimestamp;
+    }
+
+    /**
+     * Returns the timestamp of the last reading.
+     *
+     * @return the last timestamp
+     */
+    public long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    /**
+     * Returns the heap used by the compressed data.
+     *
+     * @return the size in bytes
+     */
+    public long getCompressedBytes() {
+        return 16L + Long.BYTES * (long) bits.length;
+    }
+
+    /**
+     * Returns how many times smaller the block is than the same readings in plain
+     * {@code long[]} and {@code double[]} arrays.
+     *
+     * @return the compression ratio
+     */
+    public double getCompressionRatio() {
+        return (double) BYTES_PER_READING * count / getCompressedBytes();
+    }
+
+    /**
+     * Decodes the whole block into arrays.
+     *
+     * @param timestamps receives the timestamps, from index 0
+     * @param values     receives the values, from index 0
+     */
+    public void decode(long[] timestamps, double[] values) {
+        Cursor cursor = new Cursor(this);
+        for (int i = 0; cursor.next(); i++) {
+            timestamps[i] = cursor.timestamp();
+            values[i] = cursor.value();
+        }
+    }
+
+    /**
+     * Writes the block in a form {@link #readFrom} can read back.
+     *
+     * @param out the stream to write to
+     * @throws IOException if the stream cannot be written
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(count);
+        out.writeLong(firstTimestamp);
+        out.writeLong(lastTimestamp);
+        out.writeInt(bits.length);
+        for (long word : bits) {
+            out.writeLong(word);
+        }
+    }
+
+    /**
+     * Reads a block written by {@link #writeTo}.
+     *
+     * @param in the stream to read from
+     * @return the block
+     * @throws IOException if the stream cannot be read or does not hold a block
+     */
+    static GorillaBlock readFrom(DataInput in) throws IOException {
+        int count = in.readInt();
+        long firstTimestamp = in.readLong();
+        long lastTimestamp = in.readLong();
+        int words = in.readInt();
+        if (count <= 0 || words < 2) {
+            throw new IOException("Invalid block of " + count + " readings in " + words + " words");
+        }
+        long[] bits = new long[words];
+        for (int i = 0; i < words; i++) {
+            bits[i] = in.readLong();
+        }
+        return new GorillaBlock(bits, count, firstTimestamp, lastTimestamp);
+    }
+
+    /**
+     * Reads the readings of a block in order. A cursor can be reset to another block, so one instance
+     * can decode any number of blocks without allocating.
+     */
+    public static final class Cursor {
+        private GorillaBlock block;
+        private int position;
+        private int remaining;
+        private long timestamp;
+        private long delta;
+        private long valueBits;
+        private int leading;
+        private int trailing;
+
+        /**
+         * Constructs a cursor positioned before the first reading of the block.
+         *
+         * @param block the block to read
+         */
+        public Cursor(GorillaBlock block) {
+            reset(block);
+        }
+
+        /**
+         * Positions the cursor before the first reading of a block.
+         *
+         * @param block the block to read
+         */
+        public void reset(GorillaBlock block) {
+            this.block = block;
+            position = 0;
+            remaining = block.count;
+            delta = 0;
+            leading = 0;
+            trailing = 0;
+        }
+
+        /**
+         * Moves to the next reading.
+         *
+         * @return {@code false} if there are no more readings
+         */
+        public boolean next() {
+            if (remaining == 0) {
+                return false;
+            }
+            if (remaining-- == block.count) {
+                timestamp = read(64);
+                valueBits = read(64);
+                return true;
+            }
+
+            long deltaOfDelta;
+            if (read(1) == 0) {
+                deltaOfDelta = 0;
+            } else if (read(1) == 0) {
+                deltaOfDelta = read(7) - 63;
+            } else if (read(1) == 0) {
+                deltaOfDelta = read(9) - 255;
+            } else if (read(1) == 0) {
+                deltaOfDelta = read(12) - 2047;
+            } else {
+                deltaOfDelta = read(64);
+            }
+            delta += deltaOfDelta;
+            timestamp += delta;
+
+            if (read(1) != 0) {
+                if (read(1) != 0) {
+                    leading = (int) read(5);
+                    int meaningful = (int) read(6);
+                    if (meaningful == 0) {
+                        meaningful = 64;
+                    }
+                    trailing = 64 - leading - meaningful;
+                }
+                valueBits ^= read(64 - leading - trailing) << trailing;
+            }
+            return true;
+        }
+
+        /**
+         * Returns the timestamp of the current reading.
+         *
+         * @return the timestamp
+         */
+        public long timestamp() {
+            return timestamp;
+        }
+
+        /**
+         * Returns the value of the current reading.
+         *
+         * @return the value
+         */
+        public double value() {
+            return Double.longBitsToDouble(valueBits);
+        }
+
+        private long read(int length) {
+            long[] words = block.bits;
+            int word = position >>> 6;
+            int free = 64 - (position & 63);
+            long result;
+            if (length <= free) {
+                result = words[word] >>> (free - length);
+            } else {
+                result = (words[word] << (length - free)) | (words[word + 1] >>> (64 - length + free));
+            }
+            position += length;
+            return length == 64 ? result : result & ((1L << length) - 1);
+        }
+    }
+
+    /**
+     * Appends bits to a growable array of words, most significant bit first.
+     */
+    private static final class BitWriter {
+        private long[] words;
+        private int length;
+
+        BitWriter(int readings) {
+            // two header words plus about two bits per reading; grows if the data is noisier
+            words = new long[2 + readings / 32 + 1];
+        }
+
+        void write(long value, int bits) {
+            if (bits == 0) {
+                return;
+            }
+            int word = length >>> 6;
+            if (word + 1 >= words.length) {
+                words = Arrays.copyOf(words, words.length * 2);
+            }
+            long masked = bits == 64 ? value : value & ((1L << bits) - 1);
+            int free = 64 - (length & 63);
+            if (bits <= free) {
+                words[word] |= masked << (free - bits);
+            } else {
+                words[word] |= masked >>> (bits - free);
+                words[word + 1] |= masked << (64 - bits + free);
+            }
+            length += bits;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(words, (length + 63) >>> 6);
+        }
+    }
+}
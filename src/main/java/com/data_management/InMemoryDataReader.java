@@ -0,0 +1,107 @@
+package com.data_management;
+
+import com.cardio_generator.outputs.InMemoryOutputStrategy;
+
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reads patient data directly from an {@link InMemoryOutputStrategy} running in the same JVM.
+ * <p>
+ * A background thread drains the strategy's buffer into a reusable {@link DataBatch} and publishes
+ * each batch to the reader's subscribers. Together with the strategy this gives an all-in-one pipeline
+ * from the generators to {@link DataStorage} without sockets or text encoding.
+ */
+public class InMemoryDataReader implements StreamingDataReader {
+
+    /** Maximum number of readings published in one batch. */
+    public static final int MAX_BATCH_SIZE = 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final InMemoryOutputStrategy source;
+    private final BatchPublisher publisher = new BatchPublisher();
+    private final DataBatch batch = new DataBatch(MAX_BATCH_SIZE);
+    private final InMemoryOutputStrategy.ReadingSink sink = batch::add;
+    private volatile boolean running;
+    private volatile long recordsRead;
+    private Thread readerThread;
+
+    /**
+     * Constructs a new InMemoryDataReader for the given strategy.
+     *
+     * @param source the output strategy the generators write to
+     */
+    public InMemoryDataReader(InMemoryOutputStrategy source) {
+        this.source = source;
+    }
+
+    @Override
+    public Flow.Publisher<DataBatch> getPublisher() {
+        return publisher;
+    }
+
+    /**
+     * Starts draining the strategy in the background.
+     */
+    @Override
+    public void start() {
+        running = true;
+        readerThread = new Thread(this::readLoop, "in-memory-data-reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    /**
+     * Drains what is left in the buffer, stops the reader thread and completes the stream.
+     */
+    @Override
+    public void close() {
+        running = false;
+        if (readerThread != null) {
+            LockSupport.unpark(readerThread);
+            try {
+                readerThread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of readings published so far. Readings read while no subscriber was
+     * registered are discarded and not counted.
+     *
+     * @return the number of readings read
+     */
+    public long getRecordsRead() {
+        return recordsRead;
+    }
+
+    private void readLoop() {
+        try {
+            while (running) {
+                if (drainOnce() == 0) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            }
+            // pick up readings written before close()
+            while (drainOnce() > 0) {
+                // keep draining
+            }
+        } finally {
+            publisher.close();
+        }
+    }
+
+    private int drainOnce() {
+        int drained = source.drain(sink, MAX_BATCH_SIZE);
+        if (drained > 0) {
+            if (publisher.publish(batch)) {
+                recordsRead += drained;
+            }
+            batch.clear();
+        }
+        return drained;
+    }
+}
@@ -0,0 +1,121 @@
+package com.data_management;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * The latest reading of each signal of one patient, readable without locking.
+ * <p>
+ * Each signal has a cell of three longs: a sequence number, the timestamp and the value's bits.
+ * The patient's lock serializes writers; a writer makes the sequence odd, writes the reading and
+ * makes the sequence even again. Readers read the sequence, the reading and the sequence once more,
+ * and retry if the two differ or a write was in progress. Reads therefore neither block ingest nor
+ * allocate, and never see a timestamp from one reading with the value of another.
+ * <p>
+ * A cell keeps the reading with the latest timestamp, so a late reading does not replace a newer one.
+ * Cells are not subject to retention: the latest reading stays available after its series dropped it.
+ */
+public final class LatestValues {
+
+    /**
+     * Receives latest readings, see {@link DataStorage#forEachLatest(Visitor)}.
+     */
+    @FunctionalInterface
+    public interface Visitor {
+        /**
+         * Called once per patient and signal with that signal's latest reading.
+         *
+         * @param patientId        the unique identifier of the patient
+         * @param signalId         the signal ID, see {@link SignalRegistry}
+         * @param timestamp        the time of the reading, in milliseconds since the Unix epoch
+         * @param measurementValue the value of the reading
+         */
+        void visit(int patientId, int signalId, long timestamp, double measurementValue);
+    }
+
+    private static final VarHandle CELLS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final int CELL_SIZE = 3;
+
+    // indexed by signal ID times CELL_SIZE; replaced by a larger copy when a new signal arrives
+    private volatile long[] cells = new long[0];
+
+    // callers hold the patient's lock
+    void update(int signalId, long timestamp, double measurementValue) {
+        long[] current = cells;
+        int base = signalId * CELL_SIZE;
+        if (base >= current.length) {
+            current = Arrays.copyOf(current, base + CELL_SIZE);
+            cells = current;
+        }
+        long sequence = current[base];
+        if (sequence != 0 && timestamp < current[base + 1]) {
+            return;
+        }
+        CELLS.setOpaque(current, base, sequence + 1);
+        VarHandle.storeStoreFence();
+        CELLS.setOpaque(current, base + 1, timestamp);
+        CELLS.setOpaque(current, base + 2, Double.doubleToRawLongBits(measurementValue));
+        CELLS.setRelease(current, base, sequence + 2);
+    }
+
+    /**
+     * Returns the latest reading of a signal.
+     *
+     * @param patientId the patient the readings belong to
+     * @param signalId  the signal ID
+     * @return the reading, or {@code null} if the patient has no readings of the signal
+     */
+    PatientRecord get(int patientId, int signalId) {
+        long[] current = cells;
+        int base = signalId * CELL_SIZE;
+        if (signalId < 0 || base >= current.length) {
+            return null;
+        }
+        while (true) {
+            long sequence = (long) CELLS.getAcquire(current, base);
+            if (sequence == 0) {
+                return null;
+            }
+            if ((sequence & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            long timestamp = (long) CELLS.getOpaque(current, base + 1);
+            long bits = (long) CELLS.getOpaque(current, base + 2);
+            VarHandle.loadLoadFence();
+            if ((long) CELLS.getOpaque(current, base) == sequence) {
+                return new PatientRecord(patientId, Double.longBitsToDouble(bits), signalId, timestamp);
+            }
+        }
+    }
+
+    /**
+     * Passes the latest reading of each signal to a visitor.
+     *
+     * @param patientId the patient the readings belong to
+     * @param visitor   receives the readings
+     */
+    void forEach(int patientId, Visitor visitor) {
+        long[] current = cells;
+        for (int base = 0; base < current.length; base += CELL_SIZE) {
+            while (true) {
+                long sequence = (long) CELLS.getAcquire(current, base);
+                if (sequence == 0) {
+                    break;
+                }
+                if ((sequence & 1) != 0) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                long timestamp = (long) CELLS.getOpaque(current, base + 1);
+                long bits = (long) CELLS.getOpaque(current, base + 2);
+                VarHandle.loadLoadFence();
+                if ((long) CELLS.getOpaque(current, base) == sequence) {
+                    visitor.visit(patientId, base / CELL_SIZE, timestamp, Double.longBitsToDouble(bits));
+                    break;
+                }
+            }
+        }
+    }
+}
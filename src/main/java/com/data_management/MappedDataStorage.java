@@ -0,0 +1,278 @@
+package com.data_management;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A {@link DataStorage} that keeps its records off the Java heap, in a {@link MappedSegmentStore}.
+ * <p>
+ * Records survive a restart: opening a storage on a directory that already holds segments makes
+ * their records available right away, without reading them into memory. Queries read the mapped
+ * segments directly, and the latest reading of each signal is kept on append.
+ * <p>
+ * {@link #getPatient(int)}, {@link #getAllPatients()} and {@link #forEachPatient(Consumer)} are
+ * expensive here: there are no heap patients, so each call reads the whole history of the patients
+ * it returns from the segments and builds new {@link Patient} objects from it. They keep code that
+ * works on whole patients working, but are meant for tools and tests, not for paths that run on every
+ * reading. Such paths read the records they need through {@link #cursor(int, String, long, long)},
+ * {@link #getLatest(int, String)} or {@link #forEachLatest(LatestValues.Visitor)} instead. Alert
+ * evaluation with {@code AlertGenerator.evaluateData(Patient)} in particular needs the storage's own,
+ * long-lived patients to remember what it has evaluated, and so does not work on this storage.
+ * {@link #exportColumnar(Path)} visits every patient and is expensive for the same reason.
+ * <p>
+ * Retention policies are not applied to mapped records.
+ */
+public class MappedDataStorage extends DataStorage implements Closeable {
+    private final MappedSegmentStore store;
+
+    /**
+     * Opens a storage on a directory with the default segment layout.
+     *
+     * @param directory the directory holding the segment files; created if missing
+     * @throws IOException if the directory or an existing segment cannot be opened
+     */
+    public MappedDataStorage(Path directory) throws IOException {
+        this(new MappedSegmentStore(directory));
+    }
+
+    /**
+     * Constructs a storage on top of an opened segment store.
+     *
+     * @param store the segment store
+     */
+    public MappedDataStorage(MappedSegmentStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public void addPatientData(int patientId, double measurementValue, String recordType, long timestamp) {
+        addPatientData(patientId, measurementValue, SignalRegistry.register(recordType), timestamp);
+    }
+
+    @Override
+    public void addPatientData(int patientId, double measurementValue, int signalId, long timestamp) {
+        store.append(patientId, measurementValue, SignalRegistry.nameOf(signalId), timestamp);
+        changeFeed.publish(patientId, measurementValue, signalId, timestamp);
+    }
+
+    @Override
+    public void addPatientData(int[] patientIds, double[] measurementValues, String[] recordTypes,
+                               long[] timestamps, int length) {
+        int[] signals = new int[length];
+        for (int i = 0; i < length; i++) {
+            signals[i] = SignalRegistry.register(recordTypes[i]);
+            store.append(patientIds[i], measurementValues[i], SignalRegistry.nameOf(signals[i]), timestamps[i]);
+        }
+        changeFeed.publish(patientIds, measurementValues, signals, timestamps, length);
+    }
+
+    @Override
+    public void addPatientData(DataBatch batch) {
+        for (int i = 0; i < batch.size; i++) {
+            store.append(batch.patientIds[i], batch.values[i], SignalRegistry.nameOf(batch.signals[i]),
+                    batch.timestamps[i]);
+        }
+        changeFeed.publish(batch.patientIds, batch.values, batch.signals, batch.timestamps, batch.size);
+    }
+
+    @Override
+    public List<PatientRecord> getRecords(int patientId, long startTime, long endTime) {
+        return store.query(patientId, null, startTime, endTime);
+    }
+
+    @Override
+    public List<PatientRecord> getRecords(int patientId, String recordType, long startTime, long endTime) {
+        return store.query(patientId, recordType, startTime, endTime);
+    }
+
+    /**
+     * Returns a cursor over the records of a query on the mapped segments. The query itself still
+     * reads the records into a list.
+     */
+    @Override
+    public RecordCursor cursor(int patientId, long startTime, long endTime) {
+        return RecordCursor.of(store.query(patientId, null, startTime, endTime));
+    }
+
+    @Override
+    public RecordCursor cursor(int patientId, String recordType, long startTime, long endTime) {
+        return RecordCursor.of(store.query(patientId, recordType, startTime, endTime));
+    }
+
+    /**
+     * Summarizes the records of one type for a specific patient in buckets of the given length.
+     * Mapped records have no rollups, so the buckets are computed from the records in the range.
+     */
+    @Override
+    public List<Aggregate> getAggregates(int patientId, String recordType, long startTime, long endTime,
+                                         long resolution) {
+        List<Aggregate> result = new ArrayList<>();
+        Rollup.Accumulator accumulator = new Rollup.Accumulator(resolution, result);
+        for (PatientRecord record : store.query(patientId, recordType, startTime, endTime)) {
+            double value = record.getMeasurementValue();
+            accumulator.add(record.getTimestamp(), 1, value, value, value);
+        }
+        accumulator.flush();
+        return result;
+    }
+
+    /**
+     * Computes statistics of a patient's readings. Mapped records have no block summaries, so the
+     * readings in the range are visited.
+     */
+    @Override
+    public WindowStats getStats(int patientId, String recordType, long startTime, long endTime) {
+        WindowStats.Accumulator accumulator = new WindowStats.Accumulator();
+        for (PatientRecord record : store.query(patientId, recordType, startTime, endTime)) {
+            accumulator.add(record.getMeasurementValue());
+        }
+        return accumulator.toStats();
+    }
+
+    /**
+     * Finds the patients with a matching reading. Mapped records have no value index, so every
+     * patient's readings in the range are read.
+     */
+    @Override
+    public List<Integer> findPatients(String recordType, long startTime, long endTime,
+                                      double minValue, double maxValue) {
+        List<Integer> patients = new ArrayList<>();
+        for (int patientId : store.getPatientIds()) {
+            for (PatientRecord record : store.query(patientId, recordType, startTime, endTime)) {
+                double value = record.getMeasurementValue();
+                if (value >= minValue && value <= maxValue) {
+                    patients.add(patientId);
+                    break;
+                }
+            }
+        }
+        return patients;
+    }
+
+    /**
+     * Retrieves the matching records of all patients. Mapped records have no value index, so every
+     * patient's readings in the range are read.
+     */
+    @Override
+    public List<PatientRecord> getPopulationRecords(String recordType, long startTime, long endTime,
+                                                    double minValue, double maxValue) {
+        List<PatientRecord> records = new ArrayList<>();
+        for (int patientId : store.getPatientIds()) {
+            for (PatientRecord record : store.query(patientId, recordType, startTime, endTime)) {
+                double value = record.getMeasurementValue();
+                if (value >= minValue && value <= maxValue) {
+                    records.add(record);
+                }
+            }
+        }
+        records.sort(SignalIndex.recordOrder());
+        return records;
+    }
+
+    /**
+     * Returns a patient's latest reading of a record type, as kept by the segment store on append;
+     * answering does not read the segments.
+     */
+    @Override
+    public PatientRecord getLatest(int patientId, String recordType) {
+        int signalId = SignalRegistry.idOf(recordType);
+        return signalId < 0 ? null : store.getLatest(patientId, signalId);
+    }
+
+    /**
+     * Passes the latest reading of every signal of every patient to a visitor. The readings are kept
+     * by the segment store on append, so no patient is loaded from the segments.
+     */
+    @Override
+    public void forEachLatest(LatestValues.Visitor visitor) {
+        store.forEachLatest(visitor);
+    }
+
+    @Override
+    public long getRecordCount() {
+        return store.getRecordCount();
+    }
+
+    /**
+     * Loads every patient's records from the mapped segments into new {@link Patient} objects.
+     * Expensive: every stored reading is read and copied onto the heap on each call.
+     * Changes to the returned patients are not written back.
+     *
+     * @return a list of all patients
+     */
+    @Override
+    public List<Patient> getAllPatients() {
+        List<Patient> patients = new ArrayList<>();
+        for (int patientId : store.getPatientIds()) {
+            patients.add(loadPatient(patientId));
+        }
+        return patients;
+    }
+
+    /**
+     * Loads a patient's records from the mapped segments into a new {@link Patient}.
+     * Expensive: the patient's whole history is read and copied onto the heap on each call, and the
+     * patient returned is a different object each time. Changes to it are not written back.
+     *
+     * @param patientId the unique identifier of the patient
+     * @return the patient, or {@code null} if the storage holds no records of the patient
+     */
+    @Override
+    public Patient getPatient(int patientId) {
+        List<PatientRecord> records = store.query(patientId, null, Long.MIN_VALUE, Long.MAX_VALUE);
+        return records.isEmpty() ? null : toPatient(patientId, records);
+    }
+
+    private Patient loadPatient(int patientId) {
+        return toPatient(patientId, store.query(patientId, null, Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    private static Patient toPatient(int patientId, List<PatientRecord> records) {
+        Patient patient = new Patient(patientId);
+        for (PatientRecord record : records) {
+            patient.addRecord(record.getMeasurementValue(), record.getSignalId(), record.getTimestamp());
+        }
+        return patient;
+    }
+
+    /**
+     * Loads each patient's records from the mapped segments into a new {@link Patient} and passes it
+     * to an action. Expensive: every stored reading is read and copied onto the heap on each call,
+     * though only one patient is loaded at a time.
+     */
+    @Override
+    public void forEachPatient(Consumer<Patient> action) {
+        for (int patientId : store.getPatientIds()) {
+            action.accept(loadPatient(patientId));
+        }
+    }
+
+    /**
+     * Does nothing: mapped records are already kept on disk, so there are no blocks to spill.
+     */
+    @Override
+    public synchronized void enableSpill(Path directory, SpillPolicy policy) {
+        // nothing to move
+    }
+
+    /**
+     * Removes all records, deleting the segment files.
+     */
+    @Override
+    public void clear() {
+        super.clear();
+        store.clear();
+    }
+
+    /**
+     * Writes all records to disk and releases the mapped segments. Records cannot be added afterwards.
+     */
+    @Override
+    public void close() {
+        store.close();
+    }
+}
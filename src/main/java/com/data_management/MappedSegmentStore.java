@@ -0,0 +1,534 @@
+package com.data_management;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.util.IntObjectMap;
+
+/**
+ * Stores readings off the Java heap in memory-mapped files.
+ * <p>
+ * Readings are split by patient ID shard and by time window, and each (shard, window) pair is written
+ * to one or more segment files of fixed capacity. A segment holds its readings as columns: patient IDs,
+ * timestamps, values and record type IDs. Record types are stored once in a small dictionary file.
+ * Queries scan the columns of the matching segments directly in the mapped buffers, so neither the heap
+ * nor the garbage collector grows with the history; the operating system's page cache decides what
+ * stays in memory. Each segment keeps a small heap index of the positions of every patient's readings,
+ * so a query only reads the readings of the patient it asks for.
+ * <p>
+ * Opening a store maps the segments already in its directory and builds their indexes from the patient
+ * ID column, without loading the other columns. The number of readings in a segment is kept in its
+ * header and updated after each reading is written.
+ * <p>
+ * The latest reading of each patient's signals is kept in a {@link LatestValues} on the heap, updated on
+ * append and rebuilt when existing segments are opened, so it is answered without reading any segment.
+ * <p>
+ * Writes to a shard are serialized; queries can run concurrently with them.
+ */
+public class MappedSegmentStore implements Closeable {
+
+    /** Default number of patient ID shards. */
+    public static final int DEFAULT_SHARDS = 16;
+    /** Default length of a segment's time window: one hour. */
+    public static final long DEFAULT_WINDOW_MILLIS = 3_600_000L;
+    /** Default number of readings per segment file. */
+    public static final int DEFAULT_SEGMENT_CAPACITY = 1 << 18;
+
+    private static final int MAGIC = 0x43534547; // "CSEG"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int COUNT_OFFSET = 12;
+    private static final String TYPES_FILE = "types.txt";
+    private static final Pattern SEGMENT_NAME = Pattern.compile("seg-(\\d+)-(-?\\d+)-(\\d+)\\.dat");
+
+    private final Path directory;
+    private final int shards;
+    private final long windowMillis;
+    private final int segmentCapacity;
+    // per shard: window start -> segments of that window, oldest first
+    private final List<NavigableMap<Long, List<Segment>>> segments = new ArrayList<>();
+    private final Map<String, Short> typeIds = new HashMap<>();
+    private volatile String[] typeNames = new String[0];
+    private final Set<Integer> patientIds = new ConcurrentSkipListSet<>();
+    // updated under the lock of the patient's shard, which serializes the writers of each patient
+    private final IntObjectMap<LatestValues> latest = new IntObjectMap<>();
+    private volatile boolean closed;
+
+    /**
+     * Opens a store with the default shard count, window and segment capacity.
+     *
+     * @param directory the directory holding the segment files; created if missing
+     * @throws IOException if the directory or an existing segment cannot be opened
+     */
+    public MappedSegmentStore(Path directory) throws IOException {
+        this(directory, DEFAULT_SHARDS, DEFAULT_WINDOW_MILLIS, DEFAULT_SEGMENT_CAPACITY);
+    }
+
+    /**
+     * Opens a store. An existing store must be opened with the same shard count and window.
+     *
+     * @param directory       the directory holding the segment files; created if missing
+     * @param shards          the number of patient ID shards
+     * @param windowMillis    the length of a segment's time window, in milliseconds
+     * @param segmentCapacity the number of readings per segment file
+     * @throws IOException if the directory or an existing segment cannot be opened
+     */
+    public MappedSegmentStore(Path directory, int shards, long windowMillis, int segmentCapacity) throws IOException {
+        if (shards <= 0 || windowMillis <= 0 || segmentCapacity <= 0) {
+            throw new IllegalArgumentException("Shards, window and capacity must be positive");
+        }
+        this.directory = directory;
+        this.shards = shards;
+        this.windowMillis = windowMillis;
+        // keeps the long columns 8-byte aligned
+        this.segmentCapacity = (segmentCapacity + 7) & ~7;
+        for (int i = 0; i < shards; i++) {
+            segments.add(new TreeMap<>());
+        }
+        Files.createDirectories(directory);
+        loadTypes();
+        mapExistingSegments();
+    }
+
+    private void loadTypes() throws IOException {
+        Path file = directory.resolve(TYPES_FILE);
+        if (Files.exists(file)) {
+            List<String> names = Files.readAllLines(file, StandardCharsets.UTF_8);
+            for (int i = 0; i < names.size(); i++) {
+                typeIds.put(names.get(i), (short) i);
+            }
+            typeNames = names.toArray(new String[0]);
+        }
+    }
+
+    private void mapExistingSegments() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "seg-*.dat")) {
+            for (Path file : files) {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (!matcher.matches()) {
+                    continue;
+                }
+                int shard = Integer.parseInt(matcher.group(1));
+                if (shard >= shards) {
+                    throw new IOException("Segment " + file + " does not fit a store with " + shards + " shards");
+                }
+                Segment segment = Segment.open(file);
+                segment.collectPatientIds(patientIds);
+                segment.collectLatest(this);
+                segments.get(shard).computeIfAbsent(Long.parseLong(matcher.group(2)), window -> new ArrayList<>())
+                        .add(segment);
+            }
+        }
+        for (NavigableMap<Long, List<Segment>> shard : segments) {
+            for (List<Segment> window : shard.values()) {
+                window.sort(Comparator.comparingInt(segment -> segment.sequence));
+            }
+        }
+    }
+
+    /**
+     * Appends a reading.
+     *
+     * @param patientId        the ID of the patient
+     * @param measurementValue the value of the reading
+     * @param recordType       the type of the reading
+     * @param timestamp        the time of the reading, in milliseconds since the Unix epoch
+     * @throws UncheckedIOException if a new segment file cannot be created
+     * @throws IllegalStateException if the store has been closed
+     */
+    public void append(int patientId, double measurementValue, String recordType, long timestamp) {
+        // aliases of a signal share one dictionary entry
+        int signalId = SignalRegistry.register(recordType);
+        short type = typeId(SignalRegistry.nameOf(signalId));
+        int shard = Math.floorMod(patientId, shards);
+        long window = Math.floorDiv(timestamp, windowMillis) * windowMillis;
+        NavigableMap<Long, List<Segment>> shardSegments = segments.get(shard);
+        synchronized (shardSegments) {
+            if (closed) {
+                throw new IllegalStateException("The segment store is closed");
+            }
+            List<Segment> windowSegments = shardSegments.get(window);
+            Segment segment = windowSegments == null ? null : windowSegments.get(windowSegments.size() - 1);
+            if (segment == null || segment.isFull()) {
+                int sequence = segment == null ? 0 : segment.sequence + 1;
+                try {
+                    segment = Segment.create(directory.resolve(
+                            "seg-" + shard + "-" + window + "-" + sequence + ".dat"), segmentCapacity, sequence);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not create segment", e);
+                }
+                // copy-on-write so queries can iterate the list without the lock
+                List<Segment> grown = windowSegments == null ? new ArrayList<>() : new ArrayList<>(windowSegments);
+                grown.add(segment);
+                shardSegments.put(window, grown);
+            }
+            segment.append(patientId, timestamp, measurementValue, type);
+            latestValues(patientId).update(signalId, timestamp, measurementValue);
+        }
+        patientIds.add(patientId);
+    }
+
+    private short typeId(String recordType) {
+        synchronized (typeIds) {
+            Short id = typeIds.get(recordType);
+            if (id != null) {
+                return id;
+            }
+            if (typeIds.size() >= Short.MAX_VALUE) {
+                throw new IllegalStateException("Too many record types");
+            }
+            try {
+                Files.write(directory.resolve(TYPES_FILE), (recordType + "\n").getBytes(StandardCharsets.UTF_8),
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not record type " + recordType, e);
+            }
+            short newId = (short) typeIds.size();
+            typeIds.put(recordType, newId);
+            String[] names = Arrays.copyOf(typeNames, newId + 1);
+            names[newId] = recordType;
+            typeNames = names;
+            return newId;
+        }
+    }
+
+    /**
+     * Retrieves the readings of a patient in a time range.
+     *
+     * @param patientId  the ID of the patient
+     * @param recordType the record type to return, or {@code null} for all types
+     * @param startTime  the start of the range, inclusive
+     * @param endTime    the end of the range, inclusive
+     * @return the readings, ordered by timestamp
+     */
+    public List<PatientRecord> query(int patientId, String recordType, long startTime, long endTime) {
+        List<PatientRecord> records = new ArrayList<>();
+        if (startTime > endTime) {
+            return records;
+        }
+        int type = -1;
+        if (recordType != null) {
+            int signalId = SignalRegistry.idOf(recordType);
+            if (signalId < 0) {
+                return records;
+            }
+            Short id;
+            synchronized (typeIds) {
+                id = typeIds.get(SignalRegistry.nameOf(signalId));
+            }
+            if (id == null) {
+                return records;
+            }
+            type = id;
+        }
+        NavigableMap<Long, List<Segment>> shardSegments = segments.get(Math.floorMod(patientId, shards));
+        List<List<Segment>> windows;
+        synchronized (shardSegments) {
+            // the window holding the start time is the last one starting at or before it
+            Long firstWindow = shardSegments.floorKey(startTime);
+            windows = new ArrayList<>(shardSegments.subMap(
+                    firstWindow == null ? Long.MIN_VALUE : firstWindow, true, endTime, true).values());
+        }
+        for (List<Segment> window : windows) {
+            for (Segment segment : window) {
+                segment.collect(patientId, type, startTime, endTime, this, records);
+            }
+        }
+        records.sort(Comparator.comparingLong(PatientRecord::getTimestamp));
+        return records;
+    }
+
+    private LatestValues latestValues(int patientId) {
+        return latest.computeIfAbsent(patientId, id -> new LatestValues());
+    }
+
+    /**
+     * Returns a patient's latest reading of a signal, without reading the segments.
+     *
+     * @param patientId the ID of the patient
+     * @param signalId  the signal ID, see {@link SignalRegistry}
+     * @return the reading with the latest timestamp, or {@code null} if there is none
+     */
+    public PatientRecord getLatest(int patientId, int signalId) {
+        LatestValues values = latest.get(patientId);
+        return values == null ? null : values.get(patientId, signalId);
+    }
+
+    /**
+     * Passes the latest reading of every signal of every patient to a visitor, without reading the
+     * segments. Readings appended while this runs may or may not be seen.
+     *
+     * @param visitor receives the readings
+     */
+    public void forEachLatest(LatestValues.Visitor visitor) {
+        for (int patientId : patientIds) {
+            LatestValues values = latest.get(patientId);
+            if (values != null) {
+                values.forEach(patientId, visitor);
+            }
+        }
+    }
+
+    /**
+     * Returns the IDs of all patients with stored readings.
+     *
+     * @return the patient IDs, in ascending order
+     */
+    public Set<Integer> getPatientIds() {
+        return new TreeSet<>(patientIds);
+    }
+
+    /**
+     * Returns the number of stored readings.
+     *
+     * @return the number of readings
+     */
+    public long getRecordCount() {
+        long count = 0;
+        for (Segment segment : allSegments()) {
+            count += segment.count;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of segment files.
+     *
+     * @return the number of segments
+     */
+    public int getSegmentCount() {
+        return allSegments().size();
+    }
+
+    private List<Segment> allSegments() {
+        List<Segment> all = new ArrayList<>();
+        for (NavigableMap<Long, List<Segment>> shard : segments) {
+            synchronized (shard) {
+                for (List<Segment> window : shard.values()) {
+                    all.addAll(window);
+                }
+            }
+        }
+        return all;
+    }
+
+    /**
+     * Removes every reading: the segment files are deleted and the store starts out empty again.
+     * Queries running at the same time may still return readings of the removed segments.
+     *
+     * @throws UncheckedIOException if a segment file cannot be deleted
+     */
+    public void clear() {
+        for (NavigableMap<Long, List<Segment>> shard : segments) {
+            synchronized (shard) {
+                for (List<Segment> window : shard.values()) {
+                    for (Segment segment : window) {
+                        try {
+                            Files.deleteIfExists(segment.file);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException("Could not delete segment " + segment.file, e);
+                        }
+                    }
+                }
+                shard.clear();
+            }
+        }
+        patientIds.clear();
+        latest.clear();
+    }
+
+    /**
+     * Writes all mapped changes to disk and drops the store's references to the mapped segments, so
+     * the mappings are released once queries still reading them have finished. Readings cannot be
+     * appended afterwards.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (NavigableMap<Long, List<Segment>> shard : segments) {
+            synchronized (shard) {
+                for (List<Segment> window : shard.values()) {
+                    for (Segment segment : window) {
+                        segment.buffer.force();
+                    }
+                }
+                shard.clear();
+            }
+        }
+        patientIds.clear();
+        latest.clear();
+    }
+
+    /**
+     * One segment file: a header followed by the patient ID, timestamp, value and type columns.
+     */
+    private static final class Segment {
+        final Path file;
+        final MappedByteBuffer buffer;
+        final int capacity;
+        final int sequence;
+        private final int timestampsOffset;
+        private final int valuesOffset;
+        private final int typesOffset;
+        // positions of each patient's readings, in the order they were written
+        private final IntObjectMap<Positions> byPatient = new IntObjectMap<>();
+        // published after a reading is written and indexed; only the writer increments it
+        volatile int count;
+
+        private Segment(Path file, MappedByteBuffer buffer, int capacity, int sequence, int count) {
+            this.file = file;
+            this.buffer = buffer;
+            this.capacity = capacity;
+            this.sequence = sequence;
+            this.timestampsOffset = HEADER_BYTES + Integer.BYTES * capacity;
+            this.valuesOffset = timestampsOffset + Long.BYTES * capacity;
+            this.typesOffset = valuesOffset + Double.BYTES * capacity;
+            for (int i = 0; i < count; i++) {
+                byPatient.computeIfAbsent(buffer.getInt(HEADER_BYTES + Integer.BYTES * i), id -> new Positions())
+                        .add(i);
+            }
+            this.count = count;
+        }
+
+        static long fileSize(int capacity) {
+            return HEADER_BYTES + (long) capacity * (Integer.BYTES + Long.BYTES + Double.BYTES + Short.BYTES);
+        }
+
+        static Segment create(Path file, int capacity, int sequence) throws IOException {
+            MappedByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize(capacity));
+            }
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, capacity);
+            buffer.putInt(COUNT_OFFSET, 0);
+            buffer.putInt(16, sequence);
+            return new Segment(file, buffer, capacity, sequence, 0);
+        }
+
+        static Segment open(Path file) throws IOException {
+            MappedByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                if (channel.size() < HEADER_BYTES) {
+                    throw new IOException("Segment " + file + " is truncated");
+                }
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            }
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not a segment file: " + file);
+            }
+            int capacity = buffer.getInt(8);
+            if (buffer.capacity() < fileSize(capacity)) {
+                throw new IOException("Segment " + file + " is truncated");
+            }
+            int count = Math.min(buffer.getInt(COUNT_OFFSET), capacity);
+            return new Segment(file, buffer, capacity, buffer.getInt(16), count);
+        }
+
+        boolean isFull() {
+            return count == capacity;
+        }
+
+        void append(int patientId, long timestamp, double value, short type) {
+            int index = count;
+            buffer.putInt(HEADER_BYTES + Integer.BYTES * index, patientId);
+            buffer.putLong(timestampsOffset + Long.BYTES * index, timestamp);
+            buffer.putDouble(valuesOffset + Double.BYTES * index, value);
+            buffer.putShort(typesOffset + Short.BYTES * index, type);
+            buffer.putInt(COUNT_OFFSET, index + 1);
+            byPatient.computeIfAbsent(patientId, id -> new Positions()).add(index);
+            count = index + 1;
+        }
+
+        void collect(int patientId, int type, long startTime, long endTime, MappedSegmentStore store,
+                     List<PatientRecord> into) {
+            Positions positions = byPatient.get(patientId);
+            if (positions == null) {
+                return;
+            }
+            // the count first: every type a counted reading refers to is in the names read after it
+            int readings = count;
+            String[] names = store.typeNames;
+            int size = positions.size;
+            int[] indexes = positions.indexes;
+            for (int k = 0; k < size; k++) {
+                int i = indexes[k];
+                if (i >= readings) {
+                    break;
+                }
+                long timestamp = buffer.getLong(timestampsOffset + Long.BYTES * i);
+                if (timestamp < startTime || timestamp > endTime) {
+                    continue;
+                }
+                short recordType = buffer.getShort(typesOffset + Short.BYTES * i);
+                if (type >= 0 && recordType != type) {
+                    continue;
+                }
+                double value = buffer.getDouble(valuesOffset + Double.BYTES * i);
+                into.add(new PatientRecord(patientId, value, names[recordType], timestamp));
+            }
+        }
+
+        // only while the store is being opened, before any append
+        void collectLatest(MappedSegmentStore store) {
+            int readings = count;
+            String[] names = store.typeNames;
+            for (int i = 0; i < readings; i++) {
+                short type = buffer.getShort(typesOffset + Short.BYTES * i);
+                store.latestValues(buffer.getInt(HEADER_BYTES + Integer.BYTES * i)).update(
+                        SignalRegistry.register(names[type]),
+                        buffer.getLong(timestampsOffset + Long.BYTES * i),
+                        buffer.getDouble(valuesOffset + Double.BYTES * i));
+            }
+        }
+
+        void collectPatientIds(Set<Integer> into) {
+            int readings = count;
+            for (int i = 0; i < readings; i++) {
+                into.add(buffer.getInt(HEADER_BYTES + Integer.BYTES * i));
+            }
+        }
+    }
+
+    /**
+     * The positions of one patient's readings in a segment, ascending. Appended to by the writer only;
+     * the array is published before the size, so a reader that reads the size first sees them all.
+     */
+    private static final class Positions {
+        volatile int[] indexes = new int[8];
+        volatile int size;
+
+        void add(int index) {
+            int[] current = indexes;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, size * 2);
+                indexes = current;
+            }
+            current[size] = index;
+            size = size + 1;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.data_management;
+
+/**
+ * Merges several cursors, each ordered by timestamp, into one. Each cursor is advanced one ahead, so
+ * picking the next record compares the buffered timestamps of a handful of series. On equal
+ * timestamps the earlier cursor comes first.
+ */
+final class MergeCursor implements RecordCursor {
+    private final RecordCursor[] cursors;
+    private final boolean[] pending;
+    private RecordCursor current;
+    private boolean started;
+
+    MergeCursor(RecordCursor[] cursors) {
+        this.cursors = cursors;
+        this.pending = new boolean[cursors.length];
+    }
+
+    @Override
+    public boolean next() {
+        if (!started) {
+            started = true;
+            for (int i = 0; i < cursors.length; i++) {
+                pending[i] = cursors[i].next();
+            }
+        } else if (current != null) {
+            for (int i = 0; i < cursors.length; i++) {
+                if (cursors[i] == current) {
+                    pending[i] = current.next();
+                    break;
+                }
+            }
+        }
+        current = null;
+        for (int i = 0; i < cursors.length; i++) {
+            // strictly earlier, so the older series wins ties
+            if (pending[i] && (current == null || cursors[i].timestamp() < current.timestamp())) {
+                current = cursors[i];
+            }
+        }
+        return current != null;
+    }
+
+    @Override
+    public int patientId() {
+        return current.patientId();
+    }
+
+    @Override
+    public int signalId() {
+        return current.signalId();
+    }
+
+    @Override
+    public long timestamp() {
+        return current.timestamp();
+    }
+
+    @Override
+    public double value() {
+        return current.value();
+    }
+}
@@ -0,0 +1,82 @@
+package com.data_management;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Applies readings read from a snapshot or log to a {@link DataStorage} on several threads.
+ * <p>
+ * Patients are split into shards by ID and each shard is applied by its own single thread, so
+ * readings of the same patient are applied in the order they were read while different shards
+ * proceed in parallel. Readings are handed over in batches, so the thread reading the files
+ * only fills arrays.
+ */
+final class ParallelReplay implements WriteAheadLog.ReadingConsumer, AutoCloseable {
+
+    private static final int BATCH_SIZE = 1 << 14;
+
+    private final DataStorage storage;
+    private final ExecutorService[] shards;
+    private final DataBatch[] batches;
+    private final List<Future<?>> pending = new ArrayList<>();
+
+    ParallelReplay(DataStorage storage, int shardCount) {
+        this.storage = storage;
+        this.shards = new ExecutorService[shardCount];
+        this.batches = new DataBatch[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            int shard = i;
+            shards[i] = Executors.newSingleThreadExecutor(task -> {
+                Thread thread = new Thread(task, "recovery-" + shard);
+                thread.setDaemon(true);
+                return thread;
+            });
+            batches[i] = new DataBatch(BATCH_SIZE);
+        }
+    }
+
+    @Override
+    public void accept(int patientId, double measurementValue, String recordType, long timestamp) {
+        int shard = Math.floorMod(patientId, shards.length);
+        DataBatch batch = batches[shard];
+        batch.add(patientId, measurementValue, recordType, timestamp);
+        if (batch.size() == BATCH_SIZE) {
+            submit(shard);
+        }
+    }
+
+    private void submit(int shard) {
+        DataBatch batch = batches[shard];
+        batches[shard] = new DataBatch(BATCH_SIZE);
+        pending.add(shards[shard].submit(() -> storage.addPatientData(batch)));
+    }
+
+    /**
+     * Applies the remaining readings and waits until every shard is done.
+     *
+     * @throws ExecutionException   if applying a batch failed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void finish() throws ExecutionException, InterruptedException {
+        for (int shard = 0; shard < shards.length; shard++) {
+            if (!batches[shard].isEmpty()) {
+                submit(shard);
+            }
+        }
+        for (Future<?> future : pending) {
+            future.get();
+        }
+        pending.clear();
+    }
+
+    @Override
+    public void close() {
+        for (ExecutorService shard : shards) {
+            shard.shutdownNow();
+        }
+    }
+}
@@ -1,27 +1,67 @@
 package com.data_management;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Function;
 
 /**
  * Represents a patient and manages their medical records.
  * This class stores patient-specific data, allowing for the addition and
  * retrieval
  * of medical records based on specified criteria.
+ * <p>
+ * Readings are stored per record type in a columnar {@link TimeSeries}. The
+ * {@link PatientRecord} objects returned by the {@code getRecords} methods are
+ * created on demand.
+ * <p>
+ * Writers are serialized per patient, so several ingest threads may add records to the same patient.
+ * Readers do not lock: they see every record that was added before they started and never a partially
+ * written one.
  */
 public class Patient {
     private int patientId;
-    private List<PatientRecord> patientRecords;
+    private final Function<String, RetentionPolicy> retention;
+    // copy-on-write so readers can iterate without locking; a patient only has a handful of record types
+    private volatile TimeSeries[] series = new TimeSeries[0];
+    // the same series indexed by signal ID, null where the patient has no readings; also copy-on-write
+    private volatile TimeSeries[] bySignal = new TimeSeries[0];
+    private final LatestValues latest = new LatestValues();
+    // null when the patient is not part of a storage's index
+    private final SignalIndex.Writer indexWriter;
 
     /**
      * Constructs a new Patient with a specified ID.
-     * Initializes an empty list of patient records.
+     * Initializes an empty set of patient records.
      *
      * @param patientId the unique identifier for the patient
      */
     public Patient(int patientId) {
+        this(patientId, recordType -> RetentionPolicy.UNLIMITED);
+    }
+
+    /**
+     * Constructs a new Patient whose records are kept according to per-type retention policies.
+     *
+     * @param patientId the unique identifier for the patient
+     * @param retention returns the retention policy of a record type
+     */
+    public Patient(int patientId, Function<String, RetentionPolicy> retention) {
+        this(patientId, retention, null);
+    }
+
+    /**
+     * Constructs a new Patient that also adds its readings to a storage's index.
+     *
+     * @param patientId the unique identifier for the patient
+     * @param retention returns the retention policy of a record type
+     * @param index     the index to update on append, or {@code null}
+     */
+    Patient(int patientId, Function<String, RetentionPolicy> retention, SignalIndex index) {
         this.patientId = patientId;
-        this.patientRecords = new ArrayList<>();
+        this.retention = retention;
+        this.indexWriter = index == null ? null : index.writer(patientId);
     }
 
     /**
@@ -36,8 +76,23 @@ public class Patient {
      *                         milliseconds since UNIX epoch
      */
     public void addRecord(double measurementValue, String recordType, long timestamp) {
-        PatientRecord record = new PatientRecord(this.patientId, measurementValue, recordType, timestamp);
-        this.patientRecords.add(record);
+        addRecord(measurementValue, SignalRegistry.register(recordType), timestamp);
+    }
+
+    /**
+     * Adds a new record of an already resolved signal.
+     *
+     * @param measurementValue the measurement value to store in the record
+     * @param signalId         the signal ID of the record, see {@link SignalRegistry}
+     * @param timestamp        the time at which the measurement was taken, in
+     *                         milliseconds since UNIX epoch
+     */
+    public synchronized void addRecord(double measurementValue, int signalId, long timestamp) {
+        seriesFor(signalId).append(timestamp, measurementValue);
+        latest.update(signalId, timestamp, measurementValue);
+        if (indexWriter != null) {
+            indexWriter.add(signalId, timestamp, measurementValue);
+        }
     }
 
     /**
@@ -48,30 +103,269 @@ public class Patient {
      * @param record    record with all relevant information.
      */
     public void addRecord(PatientRecord record) {
-        this.patientRecords.add(record);
+        addRecord(record.getMeasurementValue(), record.getSignalId(), record.getTimestamp());
+    }
+
+    /**
+     * Appends a run of readings taken from parallel arrays in one operation.
+     * Used by {@link DataStorage} for batch ingestion.
+     *
+     * @param order       packed (patientId, index) pairs; the low 32 bits of each entry
+     *                    select the reading in the value arrays
+     * @param from        the first entry of {@code order} to append, inclusive
+     * @param to          the last entry of {@code order} to append, exclusive
+     * @param values      the measurement values
+     * @param signals     the signal IDs
+     * @param timestamps  the timestamps
+     */
+    synchronized void addRecords(long[] order, int from, int to, double[] values, int[] signals, long[] timestamps) {
+        for (int k = from; k < to; k++) {
+            int i = (int) order[k];
+            seriesFor(signals[i]).append(timestamps[i], values[i]);
+            latest.update(signals[i], timestamps[i], values[i]);
+            if (indexWriter != null) {
+                indexWriter.add(signals[i], timestamps[i], values[i]);
+            }
+        }
+    }
+
+    // callers hold the lock
+    private TimeSeries seriesFor(int signalId) {
+        TimeSeries[] indexed = bySignal;
+        if (signalId < indexed.length && indexed[signalId] != null) {
+            return indexed[signalId];
+        }
+        String recordType = SignalRegistry.nameOf(signalId);
+        TimeSeries created = new TimeSeries(patientId, recordType, retention.apply(recordType));
+        TimeSeries[] grown = Arrays.copyOf(series, series.length + 1);
+        grown[grown.length - 1] = created;
+        series = grown;
+        indexed = Arrays.copyOf(indexed, Math.max(indexed.length, signalId + 1));
+        indexed[signalId] = created;
+        bySignal = indexed;
+        return created;
     }
 
     /**
      * Retrieves a list of PatientRecord objects for this patient that fall within a
      * specified time range.
      * The method filters records based on the start and end times provided.
+     * Each series finds the range by binary search, so only the records in the range are created.
      *
      * @return a list of PatientRecord objects that fall within the specified time
-     *         range
+     *         range, ordered by timestamp
      */
     public List<PatientRecord> getRecords(long startTime, long endTime) {
+        RecordCursor cursor = cursor(startTime, endTime);
         List<PatientRecord> filteredRecords = new ArrayList<>();
-        for (PatientRecord record : patientRecords) {
-            long timestamp = record.getTimestamp();
-            if (timestamp >= startTime && timestamp <= endTime) {
-                filteredRecords.add(record);
-            }
+        while (cursor.next()) {
+            filteredRecords.add(cursor.toRecord());
         }
         return filteredRecords;
     }
 
+    /**
+     * Returns a cursor over this patient's records of all types within a time range, ordered by
+     * timestamp; on equal timestamps the type recorded first comes first. No records are created.
+     *
+     * @param startTime the start of the range, inclusive
+     * @param endTime   the end of the range, inclusive
+     * @return a cursor positioned before the first record
+     */
+    public RecordCursor cursor(long startTime, long endTime) {
+        TimeSeries[] current = series;
+        if (current.length == 1) {
+            return current[0].range(startTime, endTime).cursor();
+        }
+        RecordCursor[] cursors = new RecordCursor[current.length];
+        for (int i = 0; i < current.length; i++) {
+            cursors[i] = current[i].range(startTime, endTime).cursor();
+        }
+        return new MergeCursor(cursors);
+    }
+
+    /**
+     * Returns a cursor over this patient's records of one type within a time range, ordered by
+     * timestamp. No records are created.
+     *
+     * @param recordType the record type, e.g. "ECG"
+     * @param startTime  the start of the range, inclusive
+     * @param endTime    the end of the range, inclusive
+     * @return a cursor positioned before the first record
+     */
+    public RecordCursor cursor(String recordType, long startTime, long endTime) {
+        TimeSeries typeSeries = getSeries(recordType);
+        return typeSeries == null ? RecordCursor.of(Collections.emptyList())
+                : typeSeries.range(startTime, endTime).cursor();
+    }
+
+    /**
+     * Retrieves all records of this patient, ordered by timestamp.
+     * The list is a copy created on each call; adding to it does not add records to the patient.
+     * Use {@link #addRecord(PatientRecord)} to add records.
+     *
+     * @return a list of all PatientRecord objects of this patient
+     */
     public List<PatientRecord> getRecords() {
-        return patientRecords;
+        return getRecords(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Retrieves the records of one type that fall within a time range.
+     * The returned list is a read-only view of the stored data and is not copied.
+     *
+     * @param recordType the record type, e.g. "ECG"
+     * @param startTime  the start of the range, inclusive
+     * @param endTime    the end of the range, inclusive
+     * @return the records, ordered by timestamp
+     */
+    public List<PatientRecord> getRecords(String recordType, long startTime, long endTime) {
+        TimeSeries typeSeries = getSeries(recordType);
+        return typeSeries == null ? Collections.emptyList() : typeSeries.range(startTime, endTime);
+    }
+
+    /**
+     * Summarizes the records of one type in buckets of the given length.
+     *
+     * @param recordType the record type, e.g. "ECG"
+     * @param startTime  the start of the range, inclusive
+     * @param endTime    the end of the range, inclusive
+     * @param resolution the length of a bucket, in milliseconds
+     * @return the non-empty buckets that start within the range, ordered by time
+     * @see TimeSeries#aggregate(long, long, long)
+     */
+    public List<Aggregate> getAggregates(String recordType, long startTime, long endTime, long resolution) {
+        TimeSeries typeSeries = getSeries(recordType);
+        return typeSeries == null ? new ArrayList<>() : typeSeries.aggregate(startTime, endTime, resolution);
+    }
+
+    /**
+     * Computes statistics of this patient's readings of one type within a time range.
+     *
+     * @param recordType the record type, e.g. "HeartRate"
+     * @param startTime  the start of the time range, inclusive
+     * @param endTime    the end of the time range, inclusive
+     * @return the statistics; empty if the patient has no readings of that type in the range
+     */
+    public WindowStats getStats(String recordType, long startTime, long endTime) {
+        TimeSeries typeSeries = getSeries(recordType);
+        return typeSeries == null ? new WindowStats.Accumulator().toStats() : typeSeries.stats(startTime, endTime);
+    }
+
+    /**
+     * Returns the series holding this patient's readings of the given type.
+     *
+     * @param recordType the record type, e.g. "ECG"
+     * @return the series, or {@code null} if the patient has no readings of that type
+     */
+    public TimeSeries getSeries(String recordType) {
+        int signalId = SignalRegistry.idOf(recordType);
+        return signalId < 0 ? null : getSeries(signalId);
+    }
+
+    /**
+     * Returns the series holding this patient's readings of the given signal.
+     *
+     * @param signalId the signal ID, see {@link SignalRegistry}
+     * @return the series, or {@code null} if the patient has no readings of that signal
+     */
+    public TimeSeries getSeries(int signalId) {
+        TimeSeries[] indexed = bySignal;
+        return signalId >= 0 && signalId < indexed.length ? indexed[signalId] : null;
+    }
+
+    /**
+     * Returns this patient's latest reading of a signal, without locking or searching its series.
+     *
+     * @param signalId the signal ID, see {@link SignalRegistry}
+     * @return the reading with the latest timestamp, or {@code null} if the patient has no readings
+     *         of the signal
+     */
+    public PatientRecord getLatest(int signalId) {
+        return latest.get(patientId, signalId);
+    }
+
+    /**
+     * Passes this patient's latest reading of each signal to a visitor, without locking or allocating.
+     *
+     * @param visitor receives the readings
+     */
+    public void forEachLatest(LatestValues.Visitor visitor) {
+        latest.forEach(patientId, visitor);
+    }
+
+    /**
+     * Returns all series of this patient, one per record type.
+     *
+     * @return an unmodifiable list of the series, in the order they were created
+     */
+    public List<TimeSeries> getAllSeries() {
+        return Collections.unmodifiableList(Arrays.asList(series));
+    }
+
+    /**
+     * Chooses the sealed blocks of this patient's series whose readings are all older than the cutoff,
+     * to be written to disk with {@link PendingSpill#write()} without holding this patient's lock and
+     * put in place with {@link #installSpill}. Queries keep returning their readings throughout,
+     * reading them back from disk once they are spilled.
+     *
+     * @param spill  where to write the blocks
+     * @param cutoff the timestamp before which blocks are spilled
+     * @return the blocks to spill
+     */
+    synchronized PendingSpill collectSpill(BlockSpill spill, long cutoff) {
+        PendingSpill pending = new PendingSpill(this, spill);
+        for (TimeSeries typeSeries : series) {
+            pending.add(typeSeries, typeSeries.spillable(cutoff));
+        }
+        return pending;
+    }
+
+    /**
+     * Puts the written blocks of a pending spill in place of the blocks in the heap.
+     *
+     * @param pending blocks collected from this patient and written to disk
+     * @return the number of readings spilled
+     */
+    synchronized int installSpill(PendingSpill pending) {
+        return pending.install();
+    }
+
+    /**
+     * Adds the sealed blocks of this patient's series that are still in the heap to the candidates.
+     *
+     * @param candidates receives the blocks
+     */
+    synchronized void addSpillCandidates(SpillCandidates candidates) {
+        for (TimeSeries typeSeries : series) {
+            typeSeries.addSpillCandidates(candidates);
+        }
+    }
+
+    /**
+     * Refreshes the retention policy of each series and drops the records that fall outside it,
+     * measuring their age from the given time.
+     *
+     * @param now the reference time, in milliseconds since the Unix epoch
+     */
+    public synchronized void applyRetention(long now) {
+        for (TimeSeries typeSeries : series) {
+            typeSeries.setRetentionPolicy(retention.apply(typeSeries.getRecordType()));
+            typeSeries.applyRetention(now);
+        }
+    }
+
+    /**
+     * Estimates the heap used by this patient's stored readings.
+     *
+     * @return the estimated size in bytes
+     */
+    public long estimateMemoryBytes() {
+        long bytes = 0;
+        for (TimeSeries typeSeries : series) {
+            bytes += typeSeries.estimateMemoryBytes();
+        }
+        return bytes;
     }
 
     public int getId() {
@@ -8,10 +8,13 @@ package com.data_management;
  * pressure),
  * the measurement value, and the exact timestamp when the measurement was
  * taken.
+ * <p>
+ * The record type is kept as a signal ID from the {@link SignalRegistry}, so records whose
+ * labels are aliases of the same signal have the same type.
  */
 public class PatientRecord {
     private int patientId;
-    private String recordType; // Example: ECG, blood pressure, etc.
+    private int signalId; // Example: ECG, blood pressure, etc.
     private double measurementValue; // Example: heart rate
     private long timestamp;
 
@@ -26,9 +29,22 @@ public class PatientRecord {
      *                         milliseconds since epoch
      */
     public PatientRecord(int patientId, double measurementValue, String recordType, long timestamp) {
+        this(patientId, measurementValue, SignalRegistry.register(recordType), timestamp);
+    }
+
+    /**
+     * Constructs a new patient record of an already resolved signal.
+     *
+     * @param patientId        the unique identifier for the patient
+     * @param measurementValue the numerical value of the recorded measurement
+     * @param signalId         the signal ID of the measurement, see {@link SignalRegistry}
+     * @param timestamp        the time at which the measurement was recorded, in
+     *                         milliseconds since epoch
+     */
+    public PatientRecord(int patientId, double measurementValue, int signalId, long timestamp) {
         this.patientId = patientId;
         this.measurementValue = measurementValue;
-        this.recordType = recordType;
+        this.signalId = signalId;
         this.timestamp = timestamp;
     }
 
@@ -60,11 +76,22 @@ public class PatientRecord {
     }
 
     /**
-     * Returns the type of record (e.g., "ECG", "Blood Pressure").
+     * Returns the type of record (e.g., "ECG", "BloodPressureSystolic").
+     * This is the canonical name of the signal, which may differ from the label
+     * the record was created with.
      * 
      * @return the record type
      */
     public String getRecordType() {
-        return recordType;
+        return SignalRegistry.nameOf(signalId);
+    }
+
+    /**
+     * Returns the signal ID of the record type.
+     * 
+     * @return the signal ID, see {@link SignalRegistry}
+     */
+    public int getSignalId() {
+        return signalId;
     }
 }
@@ -0,0 +1,77 @@
+package com.data_management;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sealed blocks of one patient on their way to disk. They are chosen under the patient's lock,
+ * written without holding it, so ingest for the patient does not wait for the disk, and then put in
+ * place of the blocks under the lock again.
+ */
+final class PendingSpill {
+
+    private final Patient patient;
+    private final BlockSpill spill;
+    private final List<TimeSeries> series = new ArrayList<>();
+    private final List<List<GorillaBlock>> blocks = new ArrayList<>();
+    private final List<BlockSpill.Ref[]> refs = new ArrayList<>();
+
+    PendingSpill(Patient patient, BlockSpill spill) {
+        this.patient = patient;
+        this.spill = spill;
+    }
+
+    Patient getPatient() {
+        return patient;
+    }
+
+    void add(TimeSeries typeSeries, List<GorillaBlock> seriesBlocks) {
+        if (!seriesBlocks.isEmpty()) {
+            series.add(typeSeries);
+            blocks.add(seriesBlocks);
+        }
+    }
+
+    boolean isEmpty() {
+        return series.isEmpty();
+    }
+
+    /**
+     * Writes the blocks to disk. Holds no lock but the spill's own.
+     */
+    void write() {
+        try {
+            for (List<GorillaBlock> seriesBlocks : blocks) {
+                BlockSpill.Ref[] seriesRefs = new BlockSpill.Ref[seriesBlocks.size()];
+                refs.add(seriesRefs);
+                for (int i = 0; i < seriesRefs.length; i++) {
+                    seriesRefs[i] = spill.write(seriesBlocks.get(i));
+                }
+            }
+        } catch (RuntimeException e) {
+            // none of them is put in place
+            for (BlockSpill.Ref[] seriesRefs : refs) {
+                for (BlockSpill.Ref ref : seriesRefs) {
+                    if (ref != null) {
+                        ref.release();
+                    }
+                }
+            }
+            refs.clear();
+            throw e;
+        }
+    }
+
+    /**
+     * Puts the written blocks in place. Must be called by the patient's writer.
+     *
+     * @return the number of readings spilled
+     */
+    int install() {
+        int readings = 0;
+        for (int i = 0; i < refs.size(); i++) {
+            readings += series.get(i).spilled(blocks.get(i), refs.get(i));
+        }
+        return readings;
+    }
+}
@@ -0,0 +1,176 @@
+package com.data_management;
+
+import java.util.Arrays;
+
+/**
+ * A mergeable sketch of a distribution of values that answers quantile queries with a bounded
+ * relative error, after the DDSketch design.
+ * <p>
+ * Values are counted in logarithmically sized bins: bin {@code i} holds the values in
+ * {@code (gamma^(i-1), gamma^i]}, with {@code gamma = (1 + a) / (1 - a)} for the relative accuracy
+ * {@code a}. A quantile is answered by walking the bins up to the requested rank and returning the
+ * bin's midpoint, which is within {@code a} of the true value relative to it. Negative values use a
+ * second set of bins and values too close to zero to index are counted as zero. Two sketches merge by
+ * adding their bin counts, so the sketches of blocks combine into the sketch of a window exactly as if
+ * its values had been added one by one, and no raw values are ever kept or sorted.
+ * <p>
+ * The bins of each sign are a dense array over the range of indexes seen, which stays short for
+ * vital signs: heart rates from 30 to 250 take about 110 bins. Not thread-safe.
+ */
+final class QuantileSketch {
+
+    /** Relative accuracy of the quantiles. */
+    static final double RELATIVE_ACCURACY = 0.01;
+
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+    // values of smaller magnitude are counted as zero
+    private static final double MIN_INDEXABLE = 1e-9;
+
+    private final Bins positive = new Bins();
+    private final Bins negative = new Bins();
+    private long zeroCount;
+    private long count;
+
+    /**
+     * Adds a value. NaN is ignored.
+     *
+     * @param value the value
+     */
+    void add(double value) {
+        if (value > MIN_INDEXABLE) {
+            positive.add(index(value), 1);
+        } else if (value < -MIN_INDEXABLE) {
+            negative.add(index(-value), 1);
+        } else if (value == value) {
+            zeroCount++;
+        } else {
+            return;
+        }
+        count++;
+    }
+
+    /**
+     * Adds the values counted by another sketch.
+     *
+     * @param other the sketch to merge into this one; not modified
+     */
+    void merge(QuantileSketch other) {
+        positive.merge(other.positive);
+        negative.merge(other.negative);
+        zeroCount += other.zeroCount;
+        count += other.count;
+    }
+
+    /**
+     * Returns a copy of this sketch.
+     *
+     * @return the copy
+     */
+    QuantileSketch copy() {
+        QuantileSketch copy = new QuantileSketch();
+        copy.merge(this);
+        return copy;
+    }
+
+    /**
+     * Returns the number of values added.
+     *
+     * @return the count
+     */
+    long getCount() {
+        return count;
+    }
+
+    /**
+     * Estimates the value at a quantile.
+     *
+     * @param quantile the quantile, from 0 to 1
+     * @return the estimated value, or NaN if the sketch is empty
+     */
+    double quantile(double quantile) {
+        if (quantile < 0 || quantile > 1) {
+            throw new IllegalArgumentException("Quantile must be between 0 and 1: " + quantile);
+        }
+        if (count == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) (quantile * (count - 1));
+        // the most negative values come first, in the negative bins with the highest index
+        long seen = 0;
+        for (int i = negative.counts.length - 1; i >= 0; i--) {
+            seen += negative.counts[i];
+            if (seen > rank) {
+                return -value(negative.offset + i);
+            }
+        }
+        seen += zeroCount;
+        if (seen > rank) {
+            return 0;
+        }
+        for (int i = 0; i < positive.counts.length; i++) {
+            seen += positive.counts[i];
+            if (seen > rank) {
+                return value(positive.offset + i);
+            }
+        }
+        return value(positive.offset + positive.counts.length - 1);
+    }
+
+    /**
+     * Estimates the heap used by the sketch.
+     *
+     * @return the estimated size in bytes
+     */
+    long estimateMemoryBytes() {
+        // the sketch, two bin objects and their arrays
+        return 40 + 2 * (24 + 16) + 8L * (positive.counts.length + negative.counts.length);
+    }
+
+    private static int index(double magnitude) {
+        return (int) Math.ceil(Math.log(magnitude) / LOG_GAMMA);
+    }
+
+    private static double value(int index) {
+        // the midpoint of the bin in relative terms
+        return 2 * Math.pow(GAMMA, index) / (GAMMA + 1);
+    }
+
+    /**
+     * The counts of a contiguous range of bin indexes.
+     */
+    private static final class Bins {
+        private static final long[] EMPTY = new long[0];
+
+        long[] counts = EMPTY;
+        // the bin index of counts[0]
+        int offset;
+
+        void add(int index, long added) {
+            if (counts.length == 0) {
+                counts = new long[1];
+                offset = index;
+            } else if (index < offset) {
+                long[] grown = new long[counts.length + offset - index];
+                System.arraycopy(counts, 0, grown, offset - index, counts.length);
+                counts = grown;
+                offset = index;
+            } else if (index >= offset + counts.length) {
+                counts = Arrays.copyOf(counts, index - offset + 1);
+            }
+            counts[index - offset] += added;
+        }
+
+        void merge(Bins other) {
+            if (other.counts.length == 0) {
+                return;
+            }
+            // make room for the whole range first, so the loop below does not grow the array repeatedly
+            add(other.offset, 0);
+            add(other.offset + other.counts.length - 1, 0);
+            for (int i = 0; i < other.counts.length; i++) {
+                counts[other.offset + i - offset] += other.counts[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package com.data_management;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import com.util.IntObjectMap;
+
+/**
+ * Caches the results of range, aggregate and statistics queries on a {@link DataStorage}, for
+ * dashboards that ask the same windowed questions many times per second.
+ * <p>
+ * The cache holds at most a given number of records in total, counting each record, aggregate bucket
+ * or statistics summary as one, and evicts the least recently used results first. An entry stays valid
+ * until a reading is added whose patient, signal and timestamp fall inside the entry's window; readings
+ * outside every cached window, which is most of them for closed windows, only cost a lock-free lookup
+ * on the ingest thread. A query that misses registers its window before asking the storage, so a
+ * reading that arrives while it runs keeps its result from being cached.
+ * <p>
+ * Windows must be reused to be hit: a dashboard should align "the last 5 minutes" to, for example,
+ * whole seconds rather than ask with the current millisecond. Cached lists are read-only. Readings
+ * dropped by retention after a result was cached are still part of it until it is evicted or
+ * invalidated. Readings added to a {@link Patient} directly, bypassing the storage, are not noticed.
+ */
+public class QueryCache implements AutoCloseable {
+
+    private static final int RECORDS = 0;
+    private static final int AGGREGATES = 1;
+    private static final int STATS = 2;
+    // signal of a query over all record types
+    private static final int ALL_SIGNALS = -1;
+
+    private final DataStorage storage;
+    private final long maxWeight;
+    private final ChangeFeed.Listener listener = this::appended;
+    // guarded by this; in access order, least recently used first
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // the cached and loading entries of each patient, read by the ingest threads without locking
+    private final IntObjectMap<PatientEntries> byPatient = new IntObjectMap<>();
+    private long weight;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    /**
+     * Constructs a cache in front of a storage and starts following its appends.
+     *
+     * @param storage    the storage to query
+     * @param maxRecords the number of records, aggregate buckets and summaries the cache may hold
+     */
+    public QueryCache(DataStorage storage, long maxRecords) {
+        if (maxRecords <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+        this.storage = storage;
+        this.maxWeight = maxRecords;
+        storage.changeFeed.addListener(listener);
+    }
+
+    /**
+     * Returns the result of {@link DataStorage#getRecords(int, long, long)}, from the cache if possible.
+     *
+     * @param patientId the unique identifier of the patient
+     * @param startTime the start of the time range, in milliseconds since the Unix epoch
+     * @param endTime   the end of the time range, in milliseconds since the Unix epoch
+     * @return a read-only list of the records in the range, ordered by timestamp
+     */
+    public List<PatientRecord> getRecords(int patientId, long startTime, long endTime) {
+        return lookup(new Key(RECORDS, patientId, ALL_SIGNALS, startTime, endTime, 0),
+                () -> Collections.unmodifiableList(storage.getRecords(patientId, startTime, endTime)));
+    }
+
+    /**
+     * Returns the result of {@link DataStorage#getRecords(int, String, long, long)}, from the cache if
+     * possible.
+     *
+     * @param patientId  the unique identifier of the patient
+     * @param recordType the record type, e.g. "ECG"
+     * @param startTime  the start of the time range, in milliseconds since the Unix epoch
+     * @param endTime    the end of the time range, in milliseconds since the Unix epoch
+     * @return a read-only list of the records in the range, ordered by timestamp
+     */
+    public List<PatientRecord> getRecords(int patientId, String recordType, long startTime, long endTime) {
+        return lookup(RECORDS, patientId, recordType, startTime, endTime, 0,
+                () -> Collections.unmodifiableList(storage.getRecords(patientId, recordType, startTime, endTime)));
+    }
+
+    /**
+     * Returns the result of {@link DataStorage#getAggregates}, from the cache if possible.
+     *
+     * @param patientId  the unique identifier of the patient
+     * @param recordType the record type, e.g. "HeartRate"
+     * @param startTime  the start of the time range, in milliseconds since the Unix epoch
+     * @param endTime    the end of the time range, in milliseconds since the Unix epoch
+     * @param resolution the length of a bucket, in milliseconds
+     * @return a read-only list of the non-empty buckets that start within the range, ordered by time
+     */
+    public List<Aggregate> getAggregates(int patientId, String recordType, long startTime, long endTime,
+                                         long resolution) {
+        return lookup(AGGREGATES, patientId, recordType, startTime, endTime, resolution,
+                () -> Collections.unmodifiableList(
+                        storage.getAggregates(patientId, recordType, startTime, endTime, resolution)));
+    }
+
+    /**
+     * Returns the result of {@link DataStorage#getStats}, from the cache if possible.
+     *
+     * @param patientId  the unique identifier of the patient
+     * @param recordType the record type, e.g. "HeartRate"
+     * @param startTime  the start of the time range, in milliseconds since the Unix epoch
+     * @param endTime    the end of the time range, in milliseconds since the Unix epoch
+     * @return the statistics of the readings in the range
+     */
+    public WindowStats getStats(int patientId, String recordType, long startTime, long endTime) {
+        return lookup(STATS, patientId, recordType, startTime, endTime, 0,
+                () -> storage.getStats(patientId, recordType, startTime, endTime));
+    }
+
+    private <T> T lookup(int kind, int patientId, String recordType, long startTime, long endTime, long resolution,
+                         Supplier<T> loader) {
+        int signalId = SignalRegistry.idOf(recordType);
+        if (signalId < 0) {
+            // nothing of the type has been stored yet; not cached, since the key would have no signal to invalidate it
+            return loader.get();
+        }
+        return lookup(new Key(kind, patientId, signalId, startTime, endTime, resolution), loader);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T lookup(Key key, Supplier<T> loader) {
+        Entry loading;
+        synchronized (this) {
+            Entry cached = entries.get(key);
+            if (cached != null) {
+                hits++;
+                return (T) cached.value;
+            }
+            misses++;
+            loading = new Entry(key);
+            register(loading);
+        }
+        T value = loader.get();
+        synchronized (this) {
+            if (loading.invalidated) {
+                // a reading inside the window arrived while the storage was queried
+                return value;
+            }
+            long entryWeight = value instanceof List ? Math.max(1, ((List<?>) value).size()) : 1;
+            if (entryWeight > maxWeight || entries.containsKey(key)) {
+                unregister(loading);
+                return value;
+            }
+            loading.value = value;
+            loading.weight = entryWeight;
+            entries.put(key, loading);
+            weight += entryWeight;
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (weight > maxWeight) {
+                Entry evicted = eldest.next();
+                eldest.remove();
+                weight -= evicted.weight;
+                unregister(evicted);
+                evictions++;
+            }
+        }
+        return value;
+    }
+
+    // called on the ingest thread after a reading was stored
+    private void appended(int patientId, int signalId, long timestamp) {
+        PatientEntries patient = byPatient.get(patientId);
+        if (patient == null) {
+            return;
+        }
+        for (Entry entry : patient.entries) {
+            if (entry.covers(signalId, timestamp)) {
+                invalidate(entry);
+            }
+        }
+    }
+
+    private synchronized void invalidate(Entry entry) {
+        if (entry.invalidated) {
+            return;
+        }
+        entry.invalidated = true;
+        unregister(entry);
+        if (entries.get(entry.key) == entry) {
+            entries.remove(entry.key);
+            weight -= entry.weight;
+            invalidations++;
+        }
+    }
+
+    // callers hold the lock
+    private void register(Entry entry) {
+        PatientEntries patient = byPatient.computeIfAbsent(entry.key.patientId, id -> new PatientEntries());
+        Entry[] current = patient.entries;
+        Entry[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = entry;
+        patient.entries = updated;
+    }
+
+    // callers hold the lock
+    private void unregister(Entry entry) {
+        PatientEntries patient = byPatient.get(entry.key.patientId);
+        Entry[] current = patient.entries;
+        List<Entry> remaining = new ArrayList<>(Arrays.asList(current));
+        remaining.remove(entry);
+        patient.entries = remaining.toArray(new Entry[0]);
+    }
+
+    /**
+     * Removes all cached results. The counters are kept.
+     */
+    public synchronized void clear() {
+        for (Entry entry : entries.values()) {
+            unregister(entry);
+        }
+        entries.clear();
+        weight = 0;
+    }
+
+    /**
+     * Returns the number of queries answered from the cache.
+     *
+     * @return the hit count
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of queries passed on to the storage.
+     *
+     * @return the miss count
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Returns the share of queries answered from the cache.
+     *
+     * @return the hit rate from 0 to 1, or 0 before the first query
+     */
+    public synchronized double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Returns the number of results evicted to make room for newer ones.
+     *
+     * @return the eviction count
+     */
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * Returns the number of cached results dropped because a reading arrived inside their window.
+     *
+     * @return the invalidation count
+     */
+    public synchronized long getInvalidationCount() {
+        return invalidations;
+    }
+
+    /**
+     * Returns the number of cached results.
+     *
+     * @return the entry count
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of records, aggregate buckets and summaries held.
+     *
+     * @return the cached weight
+     */
+    public synchronized long getCachedRecords() {
+        return weight;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("QueryCache{entries=%d, records=%d/%d, hits=%d, misses=%d, evictions=%d, invalidations=%d}",
+                entries.size(), weight, maxWeight, hits, misses, evictions, invalidations);
+    }
+
+    /**
+     * Stops following the storage's appends and removes all cached results.
+     */
+    @Override
+    public void close() {
+        storage.changeFeed.removeListener(listener);
+        clear();
+    }
+
+    private static final class Key {
+        final int kind;
+        final int patientId;
+        final int signalId;
+        final long startTime;
+        final long endTime;
+        final long resolution;
+
+        Key(int kind, int patientId, int signalId, long startTime, long endTime, long resolution) {
+            this.kind = kind;
+            this.patientId = patientId;
+            this.signalId = signalId;
+            this.startTime = startTime;
+            this.endTime = endTime;
+            this.resolution = resolution;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return kind == other.kind && patientId == other.patientId && signalId == other.signalId
+                    && startTime == other.startTime && endTime == other.endTime && resolution == other.resolution;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(kind, patientId, signalId, startTime, endTime, resolution);
+        }
+    }
+
+    private static final class Entry {
+        final Key key;
+        // set once the result is cached; guarded by the cache's lock
+        Object value;
+        long weight;
+        boolean invalidated;
+
+        Entry(Key key) {
+            this.key = key;
+        }
+
+        boolean covers(int signalId, long timestamp) {
+            return (key.signalId == ALL_SIGNALS || key.signalId == signalId)
+                    && timestamp >= key.startTime && timestamp <= key.endTime;
+        }
+    }
+
+    private static final class PatientEntries {
+        // copy-on-write; replaced under the cache's lock
+        volatile Entry[] entries = new Entry[0];
+    }
+}
@@ -0,0 +1,130 @@
+package com.data_management;
+
+import java.util.List;
+
+/**
+ * Walks through readings one at a time without creating a {@link PatientRecord} for each.
+ * <p>
+ * A cursor starts before the first reading; {@link #next()} moves it to the next one and the accessors
+ * return the fields of the reading it is on. The cursor is the only object involved, so scanning a
+ * million readings allocates nothing per reading. Cursors over stored readings read the columns of
+ * the series directly and, like {@link TimeSeries#range(long, long)}, see the readings that were stored
+ * when they were created. Call {@link #toRecord()} for a reading that must be kept.
+ * <pre>
+ * RecordCursor cursor = storage.cursor(patientId, "HeartRate", start, end);
+ * while (cursor.next()) {
+ *     sum += cursor.value();
+ * }
+ * </pre>
+ * Cursors are not thread-safe.
+ */
+public interface RecordCursor {
+
+    /**
+     * Moves to the next reading.
+     *
+     * @return {@code true} if the cursor is on a reading, {@code false} once the readings are exhausted
+     */
+    boolean next();
+
+    /**
+     * Returns the patient of the current reading.
+     *
+     * @return the unique identifier of the patient
+     */
+    int patientId();
+
+    /**
+     * Returns the signal of the current reading.
+     *
+     * @return the signal ID, see {@link SignalRegistry}
+     */
+    int signalId();
+
+    /**
+     * Returns the time of the current reading.
+     *
+     * @return the timestamp, in milliseconds since the Unix epoch
+     */
+    long timestamp();
+
+    /**
+     * Returns the value of the current reading.
+     *
+     * @return the measurement value
+     */
+    double value();
+
+    /**
+     * Creates a record of the current reading.
+     *
+     * @return a new record with the fields of the current reading
+     */
+    default PatientRecord toRecord() {
+        return new PatientRecord(patientId(), value(), signalId(), timestamp());
+    }
+
+    /**
+     * Returns a cursor over a list of records, in list order. Views returned by the storage are read
+     * from their columns; other lists only have their existing records read.
+     *
+     * @param records the records
+     * @return a cursor over the records
+     */
+    static RecordCursor of(List<PatientRecord> records) {
+        if (records instanceof TimeSeries.View) {
+            return ((TimeSeries.View) records).cursor();
+        }
+        return new RecordCursor() {
+            private int position = -1;
+            private PatientRecord current;
+
+            @Override
+            public boolean next() {
+                if (position + 1 >= records.size()) {
+                    position = records.size();
+                    current = null;
+                    return false;
+                }
+                current = records.get(++position);
+                return true;
+            }
+
+            @Override
+            public int patientId() {
+                return current.getPatientId();
+            }
+
+            @Override
+            public int signalId() {
+                return current.getSignalId();
+            }
+
+            @Override
+            public long timestamp() {
+                return current.getTimestamp();
+            }
+
+            @Override
+            public double value() {
+                return current.getMeasurementValue();
+            }
+
+            @Override
+            public PatientRecord toRecord() {
+                return current;
+            }
+        };
+    }
+
+    /**
+     * Returns a cursor over the readings of several cursors, each ordered by timestamp, merged by
+     * timestamp. On equal timestamps the reading of the earlier cursor comes first.
+     *
+     * @param cursors the cursors to merge, positioned before their first reading
+     * @return a cursor over the readings of all of them
+     */
+    static RecordCursor merge(RecordCursor... cursors) {
+        return cursors.length == 1 ? cursors[0] : new MergeCursor(cursors.clone());
+    }
+}
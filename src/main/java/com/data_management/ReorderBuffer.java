@@ -0,0 +1,251 @@
+package com.data_management;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Puts the readings of one stream back into timestamp order before they are stored.
+ * <p>
+ * The buffer tracks a watermark: the newest timestamp seen on the stream minus an allowed lateness.
+ * Readings newer than the watermark are held back in a small heap, and readings at or below it are
+ * released in timestamp order, readings with equal timestamps in arrival order. So a reading that
+ * arrives up to the allowed lateness behind newer ones is still released in its place. A reading older
+ * than one already released cannot be put in order anymore; it is counted and handed to the late
+ * channel instead of being released, for example a log or a separate store, so that everything
+ * downstream of the buffer sees its readings in order. When more readings are held back than the
+ * buffer's capacity, the oldest are released early.
+ * <p>
+ * The buffer only moves with the timestamps of the readings it is given; {@link #flush} releases the
+ * readings held back when the stream ends or pauses. A buffer belongs to one stream and is not
+ * thread-safe. {@link DataStorageSubscriber} uses one to store the batches of a
+ * {@link StreamingDataReader} in order, and flushes it when the stream has been idle for a while.
+ */
+public final class ReorderBuffer {
+
+    /** The number of readings held back by default. */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final long allowedLatenessMillis;
+    private final int capacity;
+    private final Consumer<DataBatch> lateReadings;
+
+    // a binary min-heap ordered by timestamp, then arrival
+    private long[] timestamps;
+    private long[] arrivals;
+    private int[] patientIds;
+    private int[] signals;
+    private double[] values;
+    private int size;
+    private long nextArrival;
+
+    private long newestTimestamp = Long.MIN_VALUE;
+    private long lastReleased = Long.MIN_VALUE;
+    private long reorderedCount;
+    private long lateCount;
+
+    /**
+     * Constructs a buffer holding back up to {@link #DEFAULT_CAPACITY} readings.
+     *
+     * @param allowedLatenessMillis how far behind the newest reading a reading may arrive and still be
+     *                              released in order, in milliseconds
+     * @param lateReadings          receives the readings that arrive later than that, one batch per
+     *                              call to {@link #add}
+     */
+    public ReorderBuffer(long allowedLatenessMillis, Consumer<DataBatch> lateReadings) {
+        this(allowedLatenessMillis, DEFAULT_CAPACITY, lateReadings);
+    }
+
+    /**
+     * Constructs a buffer.
+     *
+     * @param allowedLatenessMillis how far behind the newest reading a reading may arrive and still be
+     *                              released in order, in milliseconds
+     * @param capacity              the number of readings held back before the oldest are released early
+     * @param lateReadings          receives the readings that arrive later than that, one batch per
+     *                              call to {@link #add}
+     */
+    public ReorderBuffer(long allowedLatenessMillis, int capacity, Consumer<DataBatch> lateReadings) {
+        if (allowedLatenessMillis < 0) {
+            throw new IllegalArgumentException("Allowed lateness must not be negative: " + allowedLatenessMillis);
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.allowedLatenessMillis = allowedLatenessMillis;
+        this.capacity = capacity;
+        this.lateReadings = lateReadings;
+        int initial = Math.min(capacity, 256);
+        timestamps = new long[initial];
+        arrivals = new long[initial];
+        patientIds = new int[initial];
+        signals = new int[initial];
+        values = new double[initial];
+    }
+
+    /**
+     * Adds the readings of a batch and releases the readings the watermark has passed.
+     *
+     * @param batch    the readings that arrived; not modified
+     * @param released receives the released readings, in timestamp order
+     */
+    public void add(DataBatch batch, DataBatch released) {
+        DataBatch late = null;
+        for (int i = 0; i < batch.size; i++) {
+            if (size == capacity) {
+                release(released);
+            }
+            long timestamp = batch.timestamps[i];
+            if (timestamp < lastReleased) {
+                if (late == null) {
+                    late = new DataBatch(Math.max(16, batch.size - i));
+                }
+                late.add(batch.patientIds[i], batch.values[i], batch.signals[i], timestamp);
+                continue;
+            }
+            if (timestamp < newestTimestamp) {
+                reorderedCount++;
+            } else {
+                newestTimestamp = timestamp;
+            }
+            push(timestamp, batch.patientIds[i], batch.signals[i], batch.values[i]);
+        }
+        long watermark = getWatermark();
+        while (size > 0 && timestamps[0] <= watermark) {
+            release(released);
+        }
+        if (late != null) {
+            lateCount += late.size;
+            lateReadings.accept(late);
+        }
+    }
+
+    /**
+     * Releases every reading held back, for example when the stream ends. Readings arriving
+     * afterwards must not be older than the newest released one to be kept in order.
+     *
+     * @param released receives the released readings, in timestamp order
+     */
+    public void flush(DataBatch released) {
+        while (size > 0) {
+            release(released);
+        }
+    }
+
+    /**
+     * Returns the watermark: readings up to it have been released.
+     *
+     * @return the newest timestamp seen minus the allowed lateness, or {@link Long#MIN_VALUE} if no
+     *         reading has arrived yet
+     */
+    public long getWatermark() {
+        return newestTimestamp < Long.MIN_VALUE + allowedLatenessMillis
+                ? Long.MIN_VALUE : newestTimestamp - allowedLatenessMillis;
+    }
+
+    /**
+     * Returns the allowed lateness.
+     *
+     * @return the allowed lateness, in milliseconds
+     */
+    public long getAllowedLatenessMillis() {
+        return allowedLatenessMillis;
+    }
+
+    /**
+     * Returns the number of readings held back.
+     *
+     * @return the number of readings waiting for the watermark
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of readings that arrived out of order and were put back in order.
+     *
+     * @return the reordered reading count
+     */
+    public long getReorderedCount() {
+        return reorderedCount;
+    }
+
+    /**
+     * Returns the number of readings handed to the late channel.
+     *
+     * @return the late reading count
+     */
+    public long getLateCount() {
+        return lateCount;
+    }
+
+    private void push(long timestamp, int patientId, int signalId, double value) {
+        if (size == timestamps.length) {
+            int grown = Math.min(capacity, size * 2);
+            timestamps = Arrays.copyOf(timestamps, grown);
+            arrivals = Arrays.copyOf(arrivals, grown);
+            patientIds = Arrays.copyOf(patientIds, grown);
+            signals = Arrays.copyOf(signals, grown);
+            values = Arrays.copyOf(values, grown);
+        }
+        long arrival = nextArrival++;
+        int index = size++;
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!before(timestamp, arrival, parent)) {
+                break;
+            }
+            move(parent, index);
+            index = parent;
+        }
+        set(index, timestamp, arrival, patientId, signalId, value);
+    }
+
+    private void release(DataBatch released) {
+        long timestamp = timestamps[0];
+        released.add(patientIds[0], values[0], signals[0], timestamp);
+        lastReleased = timestamp;
+
+        // sift the last reading down from the root
+        int last = --size;
+        long lastTimestamp = timestamps[last];
+        long lastArrival = arrivals[last];
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && before(timestamps[child + 1], arrivals[child + 1], child)) {
+                child++;
+            }
+            if (!before(timestamps[child], arrivals[child], lastTimestamp, lastArrival)) {
+                break;
+            }
+            move(child, index);
+            index = child;
+        }
+        if (last > 0) {
+            set(index, lastTimestamp, lastArrival, patientIds[last], signals[last], values[last]);
+        }
+    }
+
+    private boolean before(long timestamp, long arrival, int other) {
+        return before(timestamp, arrival, timestamps[other], arrivals[other]);
+    }
+
+    private static boolean before(long timestamp, long arrival, long otherTimestamp, long otherArrival) {
+        return timestamp < otherTimestamp || (timestamp == otherTimestamp && arrival < otherArrival);
+    }
+
+    private void move(int from, int to) {
+        set(to, timestamps[from], arrivals[from], patientIds[from], signals[from], values[from]);
+    }
+
+    private void set(int index, long timestamp, long arrival, int patientId, int signalId, double value) {
+        timestamps[index] = timestamp;
+        arrivals[index] = arrival;
+        patientIds[index] = patientId;
+        signals[index] = signalId;
+        values[index] = value;
+    }
+}
@@ -0,0 +1,92 @@
+package com.data_management;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Describes how long the readings of a signal are kept in {@link DataStorage}.
+ * <p>
+ * A policy limits a series either by the age of its readings or by their number. Old readings are
+ * dropped a whole chunk of {@link TimeSeries#CHUNK_SIZE} readings at a time, so a series can hold up
+ * to one chunk more than the policy asks for.
+ */
+public final class RetentionPolicy {
+
+    /** Keeps all readings. */
+    public static final RetentionPolicy UNLIMITED = new RetentionPolicy(Long.MAX_VALUE, Integer.MAX_VALUE);
+
+    private final long maxAgeMillis;
+    private final int maxReadings;
+
+    private RetentionPolicy(long maxAgeMillis, int maxReadings) {
+        this.maxAgeMillis = maxAgeMillis;
+        this.maxReadings = maxReadings;
+    }
+
+    /**
+     * Creates a policy that keeps the readings of the given time window, counted back from the newest
+     * reading or, when the retention sweeper runs, from the current time.
+     *
+     * @param duration the length of the window
+     * @param unit     the unit of the duration
+     * @return the policy
+     */
+    public static RetentionPolicy ofDuration(long duration, TimeUnit unit) {
+        if (duration <= 0) {
+            throw new IllegalArgumentException("Retention duration must be positive: " + duration);
+        }
+        return new RetentionPolicy(unit.toMillis(duration), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a policy that keeps the given number of newest readings.
+     *
+     * @param readings the number of readings to keep
+     * @return the policy
+     */
+    public static RetentionPolicy ofCount(int readings) {
+        if (readings <= 0) {
+            throw new IllegalArgumentException("Retention count must be positive: " + readings);
+        }
+        return new RetentionPolicy(Long.MAX_VALUE, readings);
+    }
+
+    /**
+     * Returns the maximum age of a kept reading.
+     *
+     * @return the age in milliseconds, or {@link Long#MAX_VALUE} if the age is not limited
+     */
+    public long getMaxAgeMillis() {
+        return maxAgeMillis;
+    }
+
+    /**
+     * Returns the maximum number of kept readings.
+     *
+     * @return the number of readings, or {@link Integer#MAX_VALUE} if the number is not limited
+     */
+    public int getMaxReadings() {
+        return maxReadings;
+    }
+
+    /**
+     * Returns the oldest timestamp a reading may have to be kept.
+     *
+     * @param now the reference time, in milliseconds since the Unix epoch
+     * @return the cutoff; readings older than it may be dropped
+     */
+    long cutoff(long now) {
+        return maxAgeMillis == Long.MAX_VALUE || now < Long.MIN_VALUE + maxAgeMillis
+                ? Long.MIN_VALUE : now - maxAgeMillis;
+    }
+
+    @Override
+    public String toString() {
+        if (maxAgeMillis != Long.MAX_VALUE) {
+            return "RetentionPolicy[" + maxAgeMillis + " ms]";
+        }
+        if (maxReadings != Integer.MAX_VALUE) {
+            return "RetentionPolicy[" + maxReadings + " readings]";
+        }
+        return "RetentionPolicy[unlimited]";
+    }
+}
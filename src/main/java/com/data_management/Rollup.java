@@ -0,0 +1,319 @@
+package com.data_management;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps per-second, per-minute and per-hour aggregates of one series, updated as readings arrive.
+ * <p>
+ * Each tier is a ring of buckets holding count, minimum, maximum and sum in primitive arrays. A tier
+ * only keeps buckets for a limited time, counted back from its newest bucket, and the coarser tiers
+ * keep theirs longer, so trend queries over days stay cheap after the raw readings have been dropped.
+ * Buckets are only created for time that has readings.
+ * <p>
+ * A tier only pays off when its buckets hold several readings; a per-second tier of a signal sampled
+ * once a second would just be a more expensive copy of the raw readings. Tiers therefore start out
+ * disabled, and every {@link #CHECK_INTERVAL} readings the rollup checks which tiers would average
+ * at least two readings per bucket. The series then fills a newly enabled tier from its raw readings.
+ * <p>
+ * Updates come from the series' writer; queries may come from any thread. Both lock the rollup.
+ */
+class Rollup {
+
+    /** Bucket lengths of the tiers, finest first. */
+    static final long[] RESOLUTIONS = {
+            TimeUnit.SECONDS.toMillis(1), TimeUnit.MINUTES.toMillis(1), TimeUnit.HOURS.toMillis(1)};
+    /** How long each tier keeps its buckets. */
+    static final long[] RETENTIONS = {
+            TimeUnit.MINUTES.toMillis(15), TimeUnit.DAYS.toMillis(1), TimeUnit.DAYS.toMillis(30)};
+
+    /** Number of readings between checks for tiers worth enabling. */
+    static final int CHECK_INTERVAL = 1024;
+
+    // null while disabled
+    private final Tier[] tiers = new Tier[RESOLUTIONS.length];
+    private long readings;
+    private long firstTimestamp = Long.MAX_VALUE;
+    private long lastTimestamp = Long.MIN_VALUE;
+
+    /**
+     * Adds a reading to every enabled tier.
+     *
+     * @param timestamp the time of the reading
+     * @param value     the value of the reading
+     * @return a bit set of the disabled tiers that are now worth enabling
+     */
+    synchronized int add(long timestamp, double value) {
+        for (Tier tier : tiers) {
+            if (tier != null) {
+                tier.add(timestamp, value);
+            }
+        }
+        firstTimestamp = Math.min(firstTimestamp, timestamp);
+        lastTimestamp = Math.max(lastTimestamp, timestamp);
+        if (++readings % CHECK_INTERVAL != 0) {
+            return 0;
+        }
+        long span = Math.max(1, lastTimestamp - firstTimestamp);
+        int worthwhile = 0;
+        for (int i = 0; i < tiers.length; i++) {
+            // at least two readings per bucket on average
+            if (tiers[i] == null && readings * RESOLUTIONS[i] >= 2 * span) {
+                worthwhile |= 1 << i;
+            }
+        }
+        return worthwhile;
+    }
+
+    /**
+     * Enables tiers and fills them with the given readings.
+     *
+     * @param enable   a bit set of the tiers to enable
+     * @param existing the readings stored so far, in timestamp order
+     */
+    synchronized void enable(int enable, TimeSeries.View existing) {
+        for (int tier = 0; tier < tiers.length; tier++) {
+            if ((enable & (1 << tier)) == 0 || tiers[tier] != null) {
+                continue;
+            }
+            Tier enabled = new Tier(RESOLUTIONS[tier], RETENTIONS[tier]);
+            for (int i = 0; i < existing.size(); i++) {
+                enabled.add(existing.timestampAt(i), existing.valueAt(i));
+            }
+            tiers[tier] = enabled;
+        }
+    }
+
+    /**
+     * Aggregates the readings in a time range into buckets of the given length, using the coarsest
+     * enabled tier whose resolution divides it and which still holds every bucket of the range.
+     *
+     * @param startTime  the start of the range, inclusive
+     * @param endTime    the end of the range, inclusive
+     * @param resolution the bucket length of the result, in milliseconds
+     * @return the non-empty buckets that start within the range, in order, or {@code null} if no tier
+     *         is fine enough or reaches back far enough
+     */
+    synchronized List<Aggregate> query(long startTime, long endTime, long resolution) {
+        for (int i = tiers.length - 1; i >= 0; i--) {
+            if (tiers[i] != null && resolution % RESOLUTIONS[i] == 0 && tiers[i].covers(startTime)) {
+                return tiers[i].query(startTime, endTime, resolution);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Estimates the heap used by the tiers.
+     *
+     * @return the estimated size in bytes
+     */
+    synchronized long estimateMemoryBytes() {
+        long bytes = 0;
+        for (Tier tier : tiers) {
+            if (tier != null) {
+                // a long, an int and three doubles per bucket, plus five array headers
+                bytes += 5 * 16 + 36L * tier.starts.length;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Combines consecutive buckets that fall into the same result bucket.
+     */
+    static final class Accumulator {
+        private final long resolution;
+        private final List<Aggregate> into;
+        private long bucket = Long.MIN_VALUE;
+        private int count;
+        private double min;
+        private double max;
+        private double sum;
+
+        Accumulator(long resolution, List<Aggregate> into) {
+            this.resolution = resolution;
+            this.into = into;
+        }
+
+        void add(long timestamp, int count, double min, double max, double sum) {
+            long target = Math.floorDiv(timestamp, resolution) * resolution;
+            if (target != bucket || this.count == 0) {
+                flush();
+                bucket = target;
+                this.min = min;
+                this.max = max;
+            } else {
+                this.min = Math.min(this.min, min);
+                this.max = Math.max(this.max, max);
+            }
+            this.count += count;
+            this.sum += sum;
+        }
+
+        void flush() {
+            if (count > 0) {
+                into.add(new Aggregate(bucket, resolution, count, min, max, sum));
+                count = 0;
+                sum = 0;
+            }
+        }
+    }
+
+    /**
+     * One resolution: a growable ring of buckets ordered by start time.
+     */
+    private static final class Tier {
+        private final long resolution;
+        private final long retention;
+        private long[] starts = new long[4];
+        private int[] counts = new int[4];
+        private double[] mins = new double[4];
+        private double[] maxs = new double[4];
+        private double[] sums = new double[4];
+        private int head;
+        private int size;
+        // set once a bucket was dropped or a reading ignored for being older than the retention
+        private boolean truncated;
+
+        Tier(long resolution, long retention) {
+            this.resolution = resolution;
+            this.retention = retention;
+        }
+
+        private int slot(int index) {
+            return (head + index) & (starts.length - 1);
+        }
+
+        void add(long timestamp, double value) {
+            long bucket = Math.floorDiv(timestamp, resolution) * resolution;
+            if (size > 0) {
+                long newest = starts[slot(size - 1)];
+                if (bucket == newest) {
+                    update(slot(size - 1), value);
+                    return;
+                }
+                if (bucket < newest) {
+                    if (bucket >= newest - retention) {
+                        addLate(bucket, value);
+                    } else {
+                        truncated = true;
+                    }
+                    return;
+                }
+            }
+            if (size == starts.length) {
+                resize(starts.length * 2, size);
+            }
+            int slot = slot(size++);
+            starts[slot] = bucket;
+            counts[slot] = 0;
+            mins[slot] = value;
+            maxs[slot] = value;
+            sums[slot] = 0;
+            update(slot, value);
+            while (starts[head] < bucket - retention) {
+                head = slot(1);
+                size--;
+                truncated = true;
+            }
+        }
+
+        /**
+         * Returns whether the tier holds every reading from the given time on, that is, whether the
+         * time is still within the retention counted back from the newest bucket.
+         */
+        boolean covers(long startTime) {
+            if (!truncated) {
+                return true;
+            }
+            long newest = starts[slot(size - 1)];
+            return Math.floorDiv(startTime, resolution) * resolution >= newest - retention;
+        }
+
+        private void addLate(long bucket, double value) {
+            int index = lowerBound(bucket);
+            if (index < size && starts[slot(index)] == bucket) {
+                update(slot(index), value);
+                return;
+            }
+            // a bucket for a quiet stretch that now has a reading; rare, so rebuild the ring
+            resize(size == starts.length ? starts.length * 2 : starts.length, index);
+            int slot = index;
+            starts[slot] = bucket;
+            counts[slot] = 0;
+            mins[slot] = value;
+            maxs[slot] = value;
+            sums[slot] = 0;
+            update(slot, value);
+            size++;
+        }
+
+        private void update(int slot, double value) {
+            counts[slot]++;
+            sums[slot] += value;
+            if (value < mins[slot]) {
+                mins[slot] = value;
+            }
+            if (value > maxs[slot]) {
+                maxs[slot] = value;
+            }
+        }
+
+        /**
+         * Copies the ring into new arrays starting at slot 0, leaving slot {@code gap} free if it is
+         * below the size.
+         */
+        private void resize(int capacity, int gap) {
+            long[] newStarts = new long[capacity];
+            int[] newCounts = new int[capacity];
+            double[] newMins = new double[capacity];
+            double[] newMaxs = new double[capacity];
+            double[] newSums = new double[capacity];
+            for (int i = 0; i < size; i++) {
+                int from = slot(i);
+                int to = i < gap ? i : i + 1;
+                newStarts[to] = starts[from];
+                newCounts[to] = counts[from];
+                newMins[to] = mins[from];
+                newMaxs[to] = maxs[from];
+                newSums[to] = sums[from];
+            }
+            starts = newStarts;
+            counts = newCounts;
+            mins = newMins;
+            maxs = newMaxs;
+            sums = newSums;
+            head = 0;
+        }
+
+        private int lowerBound(long bucket) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (starts[slot(mid)] < bucket) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        List<Aggregate> query(long startTime, long endTime, long targetResolution) {
+            List<Aggregate> result = new ArrayList<>();
+            Accumulator accumulator = new Accumulator(targetResolution, result);
+            for (int i = lowerBound(startTime); i < size; i++) {
+                int slot = slot(i);
+                if (starts[slot] > endTime) {
+                    break;
+                }
+                accumulator.add(starts[slot], counts[slot], mins[slot], maxs[slot], sums[slot]);
+            }
+            accumulator.flush();
+            return result;
+        }
+    }
+}
@@ -0,0 +1,474 @@
+package com.data_management;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A {@link DataStorage} that splits its patients into shards, each owned by one thread.
+ * <p>
+ * A patient belongs to the shard selected by its ID. Each shard keeps its patients in a storage of
+ * its own and runs every task that touches them, writes as well as queries and alert evaluation,
+ * on its own thread in the order the tasks were submitted. Ingest threads therefore never contend
+ * with each other on a patient or a map, and shards proceed in parallel on separate cores.
+ * <p>
+ * Writes are queued and return before they are applied; a query submitted afterwards by the same
+ * thread sees them, because it runs after them on the shard's thread. Queries that span patients
+ * are sent to every shard and their results gathered. When a shard's queue is full, writers wait,
+ * so a slow shard slows down ingest instead of buffering without bound. Subscribers are notified
+ * of writes as the shards apply them, from the shard threads.
+ * <p>
+ * Journaling is not supported; use one {@link DataStorage} per process for that.
+ * <p>
+ * {@link #close()} first stops accepting tasks, waits for the writers that are already queueing one,
+ * and then lets the shards apply what is queued. Writes and queries afterwards fail with an
+ * {@link IllegalStateException}.
+ */
+public class ShardedDataStorage extends DataStorage implements Closeable {
+
+    /** Number of tasks a shard queues before writers have to wait. */
+    public static final int QUEUE_CAPACITY = 4096;
+
+    private final Shard[] shards;
+
+    /**
+     * Constructs a storage with one shard per available processor.
+     */
+    public ShardedDataStorage() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a storage with the given number of shards and starts their threads.
+     *
+     * @param shardCount the number of shards
+     */
+    public ShardedDataStorage(int shardCount) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("Shard count must be positive");
+        }
+        shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i, changeFeed);
+        }
+    }
+
+    /**
+     * Returns the number of shards.
+     *
+     * @return the shard count
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    private Shard shardOf(int patientId) {
+        return shards[Math.floorMod(patientId, shards.length)];
+    }
+
+    @Override
+    public void addPatientData(int patientId, double measurementValue, int signalId, long timestamp) {
+        Shard shard = shardOf(patientId);
+        shard.execute(() -> shard.storage.addPatientData(patientId, measurementValue, signalId, timestamp));
+    }
+
+    /**
+     * Adds a batch of readings. The batch is split by shard and each part is queued to its shard,
+     * so the batch can be cleared and reused as soon as this returns.
+     *
+     * @param batch the readings to add
+     */
+    @Override
+    public void addPatientData(DataBatch batch) {
+        addAll(batch.patientIds, batch.values, batch.signals, batch.timestamps, batch.size);
+    }
+
+    @Override
+    public void addPatientData(int[] patientIds, double[] measurementValues, String[] recordTypes,
+                               long[] timestamps, int length) {
+        int[] signals = new int[length];
+        for (int i = 0; i < length; i++) {
+            signals[i] = SignalRegistry.register(recordTypes[i]);
+        }
+        addAll(patientIds, measurementValues, signals, timestamps, length);
+    }
+
+    private void addAll(int[] patientIds, double[] measurementValues, int[] signals, long[] timestamps, int length) {
+        DataBatch[] parts = new DataBatch[shards.length];
+        for (int i = 0; i < length; i++) {
+            int shard = Math.floorMod(patientIds[i], shards.length);
+            if (parts[shard] == null) {
+                parts[shard] = new DataBatch(Math.max(16, 2 * length / shards.length));
+            }
+            parts[shard].add(patientIds[i], measurementValues[i], signals[i], timestamps[i]);
+        }
+        for (int shard = 0; shard < shards.length; shard++) {
+            DataBatch part = parts[shard];
+            if (part != null) {
+                Shard owner = shards[shard];
+                owner.execute(() -> owner.storage.addPatientData(part));
+            }
+        }
+    }
+
+    @Override
+    public List<PatientRecord> getRecords(int patientId, long startTime, long endTime) {
+        return shardOf(patientId).call(storage -> storage.getRecords(patientId, startTime, endTime));
+    }
+
+    @Override
+    public List<PatientRecord> getRecords(int patientId, String recordType, long startTime, long endTime) {
+        return shardOf(patientId).call(storage -> storage.getRecords(patientId, recordType, startTime, endTime));
+    }
+
+    @Override
+    public List<Aggregate> getAggregates(int patientId, String recordType, long startTime, long endTime,
+                                         long resolution) {
+        return shardOf(patientId).call(
+                storage -> storage.getAggregates(patientId, recordType, startTime, endTime, resolution));
+    }
+
+    @Override
+    public Patient getPatient(int patientId) {
+        return shardOf(patientId).call(storage -> storage.getPatient(patientId));
+    }
+
+    @Override
+    public WindowStats getStats(int patientId, String recordType, long startTime, long endTime) {
+        return shardOf(patientId).call(storage -> storage.getStats(patientId, recordType, startTime, endTime));
+    }
+
+    @Override
+    public SortedMap<Integer, WindowStats> getStatsByPatient(String recordType, long startTime, long endTime) {
+        SortedMap<Integer, WindowStats> stats = new TreeMap<>();
+        for (SortedMap<Integer, WindowStats> shardStats : scatterGather(
+                storage -> storage.getStatsByPatient(recordType, startTime, endTime))) {
+            stats.putAll(shardStats);
+        }
+        return stats;
+    }
+
+    @Override
+    public List<Integer> findPatients(String recordType, long startTime, long endTime,
+                                      double minValue, double maxValue) {
+        List<Integer> patients = new ArrayList<>();
+        for (List<Integer> shardPatients : scatterGather(
+                storage -> storage.findPatients(recordType, startTime, endTime, minValue, maxValue))) {
+            patients.addAll(shardPatients);
+        }
+        Collections.sort(patients);
+        return patients;
+    }
+
+    @Override
+    public List<PatientRecord> getPopulationRecords(String recordType, long startTime, long endTime,
+                                                    double minValue, double maxValue) {
+        List<PatientRecord> records = new ArrayList<>();
+        for (List<PatientRecord> shardRecords : scatterGather(
+                storage -> storage.getPopulationRecords(recordType, startTime, endTime, minValue, maxValue))) {
+            records.addAll(shardRecords);
+        }
+        records.sort(SignalIndex.recordOrder());
+        return records;
+    }
+
+    /**
+     * Reads a patient's latest reading directly, without queueing behind the shard's pending writes,
+     * so it may not reflect writes that are still queued.
+     */
+    @Override
+    public PatientRecord getLatest(int patientId, String recordType) {
+        return shardOf(patientId).storage.getLatest(patientId, recordType);
+    }
+
+    /**
+     * Reads the latest readings directly on the calling thread, without queueing behind the shards'
+     * pending writes, so they may not reflect writes that are still queued.
+     */
+    @Override
+    public void forEachLatest(LatestValues.Visitor visitor) {
+        for (Shard shard : shards) {
+            shard.storage.forEachLatest(visitor);
+        }
+    }
+
+    /**
+     * Runs a query on every shard in parallel and returns the results in shard order.
+     *
+     * @param query the query to run against each shard's storage
+     * @param <T>   the type of the result
+     * @return the result of each shard
+     */
+    public <T> List<T> scatterGather(Function<DataStorage, T> query) {
+        List<CompletableFuture<T>> futures = new ArrayList<>(shards.length);
+        for (Shard shard : shards) {
+            futures.add(shard.submit(query));
+        }
+        List<T> results = new ArrayList<>(shards.length);
+        for (CompletableFuture<T> future : futures) {
+            results.add(join(future));
+        }
+        return results;
+    }
+
+    @Override
+    public List<Patient> getAllPatients() {
+        List<Patient> patients = new ArrayList<>();
+        for (List<Patient> shardPatients : scatterGather(DataStorage::getAllPatients)) {
+            patients.addAll(shardPatients);
+        }
+        return patients;
+    }
+
+    /**
+     * Passes every patient to an action on the thread of the patient's shard, so the shards work
+     * through their patients in parallel, and waits until all are done. The action must not query
+     * this storage for other patients.
+     *
+     * @param action the action to run for each patient; called from several threads at once
+     */
+    @Override
+    public void forEachPatient(Consumer<Patient> action) {
+        scatterGather(storage -> {
+            storage.forEachPatient(action);
+            return null;
+        });
+    }
+
+    @Override
+    public void setRetentionPolicy(String recordType, RetentionPolicy policy) {
+        super.setRetentionPolicy(recordType, policy);
+        for (Shard shard : shards) {
+            shard.storage.setRetentionPolicy(recordType, policy);
+        }
+    }
+
+    @Override
+    public void setDefaultRetentionPolicy(RetentionPolicy policy) {
+        super.setDefaultRetentionPolicy(policy);
+        for (Shard shard : shards) {
+            shard.storage.setDefaultRetentionPolicy(policy);
+        }
+    }
+
+    @Override
+    public void sweepRetention() {
+        scatterGather(storage -> {
+            storage.sweepRetention();
+            return null;
+        });
+    }
+
+    /**
+     * Opens a spill directory per shard, named after the shard, so each shard writes only its own
+     * patients' blocks.
+     */
+    @Override
+    void openSpillDirectory(Path directory) throws IOException {
+        for (int i = 0; i < shards.length; i++) {
+            shards[i].storage.openSpillDirectory(directory.resolve("shard-" + i));
+        }
+    }
+
+    @Override
+    SpillCandidates spillCandidates() {
+        SpillCandidates candidates = new SpillCandidates();
+        for (SpillCandidates shardCandidates : scatterGather(DataStorage::spillCandidates)) {
+            candidates.addAll(shardCandidates);
+        }
+        return candidates;
+    }
+
+    /**
+     * Chooses and installs the blocks to spill on the shard threads, and writes them to disk on the
+     * calling thread, so the shards keep applying writes while the disk is busy.
+     */
+    @Override
+    long spillBefore(long cutoff) {
+        long readings = 0;
+        for (Shard shard : shards) {
+            List<PendingSpill> pending = shard.call(storage -> storage.collectSpill(cutoff));
+            if (pending.isEmpty()) {
+                continue;
+            }
+            for (PendingSpill patientSpill : pending) {
+                patientSpill.write();
+            }
+            readings += shard.call(storage -> storage.installSpill(pending));
+        }
+        return readings;
+    }
+
+    @Override
+    public long getSpilledBytes() {
+        long bytes = 0;
+        for (Shard shard : shards) {
+            bytes += shard.storage.getSpilledBytes();
+        }
+        return bytes;
+    }
+
+    @Override
+    public long estimateMemoryBytes() {
+        long bytes = 0;
+        for (long shardBytes : scatterGather(DataStorage::estimateMemoryBytes)) {
+            bytes += shardBytes;
+        }
+        return bytes;
+    }
+
+    @Override
+    public long getRecordCount() {
+        long count = 0;
+        for (long shardCount : scatterGather(DataStorage::getRecordCount)) {
+            count += shardCount;
+        }
+        return count;
+    }
+
+    @Override
+    public void clear() {
+        scatterGather(storage -> {
+            storage.clear();
+            return null;
+        });
+    }
+
+    /**
+     * Not supported by sharded storage.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public synchronized long openJournal(Path directory) {
+        throw new UnsupportedOperationException("Sharded storage does not support a journal");
+    }
+
+    /**
+     * Rejects new tasks, applies the queued ones and stops the shard threads. The storage cannot be
+     * used afterwards.
+     */
+    @Override
+    public void close() {
+        for (Shard shard : shards) {
+            shard.closed = true;
+        }
+        for (Shard shard : shards) {
+            // a writer that passed the check before the storage closed is still putting its task
+            while (shard.queueing.get() > 0) {
+                Thread.onSpinWait();
+            }
+            shard.running = false;
+        }
+        for (Shard shard : shards) {
+            try {
+                shard.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        } catch (ExecutionException e) {
+            throw new CompletionException(e.getCause());
+        }
+    }
+
+    /**
+     * One shard: a storage and the thread that owns it.
+     */
+    private static final class Shard implements Runnable {
+        final DataStorage storage;
+        final BlockingQueue<Runnable> tasks = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        final Thread thread;
+        // the number of callers between the closed check and the end of their put
+        final AtomicInteger queueing = new AtomicInteger();
+        volatile boolean closed;
+        volatile boolean running = true;
+
+        Shard(int index, ChangeFeed changeFeed) {
+            // the shards publish their writes to the subscribers of the sharded storage
+            storage = new DataStorage(changeFeed);
+            thread = new Thread(this, "storage-shard-" + index);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void execute(Runnable task) {
+            queueing.incrementAndGet();
+            try {
+                if (closed) {
+                    throw new IllegalStateException("Storage is closed");
+                }
+                tasks.put(task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while queueing a write", e);
+            } finally {
+                queueing.decrementAndGet();
+            }
+        }
+
+        <T> CompletableFuture<T> submit(Function<DataStorage, T> query) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            if (Thread.currentThread() == thread) {
+                // called from a task on this shard; queueing would wait for itself
+                future.complete(query.apply(storage));
+                return future;
+            }
+            execute(() -> {
+                try {
+                    future.complete(query.apply(storage));
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            });
+            return future;
+        }
+
+        <T> T call(Function<DataStorage, T> query) {
+            return join(submit(query));
+        }
+
+        @Override
+        public void run() {
+            while (running || !tasks.isEmpty()) {
+                Runnable task;
+                try {
+                    task = tasks.poll(100, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (task == null) {
+                    continue;
+                }
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    System.err.println("Storage task failed on " + thread.getName() + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.data_management;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.IntFunction;
+
+import com.util.IntObjectMap;
+
+/**
+ * A secondary index of a storage's readings by signal and time bucket, for queries across patients
+ * such as "all patients with a Saturation reading below 92 in the last 10 minutes".
+ * <p>
+ * For each signal, the index maps each time bucket to the patients with readings in it, together
+ * with the lowest and highest value each of them had there. A query visits only the buckets that
+ * overlap its time range and skips patients whose values there cannot match; the remaining ranges
+ * are read from the patients' series, found by binary search. A bucket that lies inside the range
+ * and whose values all match answers without reading the series at all.
+ * <p>
+ * Patients update the index as readings are appended, under their own lock, and remember the
+ * bucket they last wrote to per signal, so an append usually touches the index with two field writes.
+ * The index may keep patients for readings that retention has since dropped; queries then scan an
+ * empty range, so results stay exact.
+ */
+class SignalIndex {
+
+    /** Length of a time bucket by default, in milliseconds. */
+    static final long DEFAULT_BUCKET_MILLIS = 10 * 60_000L;
+
+    private final long bucketMillis;
+    // per signal, the buckets by bucket number
+    private final IntObjectMap<ConcurrentSkipListMap<Long, IntObjectMap<Entry>>> bySignal = new IntObjectMap<>();
+
+    SignalIndex() {
+        this(DEFAULT_BUCKET_MILLIS);
+    }
+
+    SignalIndex(long bucketMillis) {
+        this.bucketMillis = bucketMillis;
+    }
+
+    /**
+     * Returns a writer that adds one patient's readings to the index.
+     *
+     * @param patientId the patient
+     * @return the writer; not thread-safe, the patient serializes its use
+     */
+    Writer writer(int patientId) {
+        return new Writer(patientId);
+    }
+
+    /**
+     * Finds the patients with at least one reading of a signal in a time range whose value lies in
+     * a value range.
+     *
+     * @param signalId  the signal ID
+     * @param startTime the start of the time range, inclusive
+     * @param endTime   the end of the time range, inclusive
+     * @param minValue  the lowest matching value, inclusive
+     * @param maxValue  the highest matching value, inclusive
+     * @param patients  returns the stored patient of an ID
+     * @return the IDs of the matching patients, in ascending order
+     */
+    List<Integer> findPatients(int signalId, long startTime, long endTime, double minValue, double maxValue,
+                               IntFunction<Patient> patients) {
+        TreeSet<Integer> matched = new TreeSet<>();
+        for (Map.Entry<Long, IntObjectMap<Entry>> bucket : buckets(signalId, startTime, endTime)) {
+            long bucketStart = bucket.getKey() * bucketMillis;
+            long bucketEnd = bucketEnd(bucketStart);
+            boolean inside = bucketStart >= startTime && bucketEnd <= endTime;
+            bucket.getValue().forEach(entry -> {
+                if (matched.contains(entry.patientId) || !entry.overlaps(minValue, maxValue)) {
+                    return;
+                }
+                if (inside && entry.within(minValue, maxValue)) {
+                    matched.add(entry.patientId);
+                    return;
+                }
+                TimeSeries.View view = range(patients, entry.patientId, signalId,
+                        Math.max(startTime, bucketStart), Math.min(endTime, bucketEnd));
+                for (int i = 0; view != null && i < view.size(); i++) {
+                    double value = view.valueAt(i);
+                    if (value >= minValue && value <= maxValue) {
+                        matched.add(entry.patientId);
+                        return;
+                    }
+                }
+            });
+        }
+        return new ArrayList<>(matched);
+    }
+
+    /**
+     * Collects the readings of a signal of all patients in a time range whose value lies in a value range.
+     *
+     * @param signalId  the signal ID
+     * @param startTime the start of the time range, inclusive
+     * @param endTime   the end of the time range, inclusive
+     * @param minValue  the lowest matching value, inclusive
+     * @param maxValue  the highest matching value, inclusive
+     * @param patients  returns the stored patient of an ID
+     * @return the matching readings, ordered by time bucket, then by patient, then by timestamp
+     */
+    List<PatientRecord> getRecords(int signalId, long startTime, long endTime, double minValue, double maxValue,
+                                   IntFunction<Patient> patients) {
+        List<PatientRecord> records = new ArrayList<>();
+        for (Map.Entry<Long, IntObjectMap<Entry>> bucket : buckets(signalId, startTime, endTime)) {
+            long bucketStart = bucket.getKey() * bucketMillis;
+            long from = Math.max(startTime, bucketStart);
+            long to = Math.min(endTime, bucketEnd(bucketStart));
+            List<Entry> entries = bucket.getValue().values();
+            entries.sort((a, b) -> Integer.compare(a.patientId, b.patientId));
+            for (Entry entry : entries) {
+                if (!entry.overlaps(minValue, maxValue)) {
+                    continue;
+                }
+                TimeSeries.View view = range(patients, entry.patientId, signalId, from, to);
+                for (int i = 0; view != null && i < view.size(); i++) {
+                    double value = view.valueAt(i);
+                    if (value >= minValue && value <= maxValue) {
+                        records.add(new PatientRecord(entry.patientId, value, signalId, view.timestampAt(i)));
+                    }
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Returns the order of the records returned by {@link #getRecords}, for merging results of
+     * several storages.
+     *
+     * @return compares records by default-length time bucket, then patient, then timestamp
+     */
+    static Comparator<PatientRecord> recordOrder() {
+        return Comparator.<PatientRecord>comparingLong(record -> Math.floorDiv(record.getTimestamp(), DEFAULT_BUCKET_MILLIS))
+                .thenComparingInt(PatientRecord::getPatientId)
+                .thenComparingLong(PatientRecord::getTimestamp);
+    }
+
+    /**
+     * Drops the buckets of a signal that end before the given time.
+     *
+     * @param signalId the signal ID
+     * @param cutoff   the oldest time to keep, in milliseconds since the Unix epoch
+     */
+    void dropBefore(int signalId, long cutoff) {
+        ConcurrentSkipListMap<Long, IntObjectMap<Entry>> buckets = bySignal.get(signalId);
+        if (buckets != null) {
+            // the bucket holding the cutoff itself is kept
+            buckets.headMap(Math.floorDiv(cutoff, bucketMillis)).clear();
+        }
+    }
+
+    /**
+     * Removes all buckets.
+     */
+    void clear() {
+        bySignal.clear();
+    }
+
+    private Iterable<Map.Entry<Long, IntObjectMap<Entry>>> buckets(int signalId, long startTime, long endTime) {
+        ConcurrentSkipListMap<Long, IntObjectMap<Entry>> buckets = signalId < 0 ? null : bySignal.get(signalId);
+        if (buckets == null || startTime > endTime) {
+            return new ArrayList<>();
+        }
+        return buckets.subMap(Math.floorDiv(startTime, bucketMillis), true,
+                Math.floorDiv(endTime, bucketMillis), true).entrySet();
+    }
+
+    private long bucketEnd(long bucketStart) {
+        return bucketStart > Long.MAX_VALUE - (bucketMillis - 1) ? Long.MAX_VALUE : bucketStart + bucketMillis - 1;
+    }
+
+    private static TimeSeries.View range(IntFunction<Patient> patients, int patientId, int signalId,
+                                         long startTime, long endTime) {
+        Patient patient = patients.apply(patientId);
+        TimeSeries series = patient == null ? null : patient.getSeries(signalId);
+        // null if the patient was cleared after the query found it in the index
+        return series == null ? null : series.range(startTime, endTime);
+    }
+
+    /**
+     * The readings of one patient in one bucket of one signal.
+     */
+    private static final class Entry {
+        final int patientId;
+        final long bucket;
+        // written under the patient's lock; read without locking by queries
+        volatile double min = Double.POSITIVE_INFINITY;
+        volatile double max = Double.NEGATIVE_INFINITY;
+
+        Entry(int patientId, long bucket) {
+            this.patientId = patientId;
+            this.bucket = bucket;
+        }
+
+        boolean overlaps(double minValue, double maxValue) {
+            return min <= maxValue && max >= minValue;
+        }
+
+        boolean within(double minValue, double maxValue) {
+            return min >= minValue && max <= maxValue;
+        }
+    }
+
+    /**
+     * Adds one patient's readings to the index, remembering the entry last written per signal.
+     */
+    final class Writer {
+        private final int patientId;
+        private Entry[] last = new Entry[0];
+
+        private Writer(int patientId) {
+            this.patientId = patientId;
+        }
+
+        void add(int signalId, long timestamp, double value) {
+            long bucket = Math.floorDiv(timestamp, bucketMillis);
+            Entry entry = signalId < last.length ? last[signalId] : null;
+            if (entry == null || entry.bucket != bucket) {
+                entry = bySignal.computeIfAbsent(signalId, id -> new ConcurrentSkipListMap<>())
+                        .computeIfAbsent(bucket, b -> new IntObjectMap<>())
+                        .computeIfAbsent(patientId, id -> new Entry(id, bucket));
+                if (signalId >= last.length) {
+                    last = Arrays.copyOf(last, signalId + 1);
+                }
+                last[signalId] = entry;
+            }
+            if (value < entry.min) {
+                entry.min = value;
+            }
+            if (value > entry.max) {
+                entry.max = value;
+            }
+        }
+    }
+}
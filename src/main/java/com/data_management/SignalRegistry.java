@@ -0,0 +1,150 @@
+package com.data_management;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps the labels of record types to dense integer signal IDs.
+ * <p>
+ * Labels differ between sources: the generators send {@code SystolicPressure} and {@code Saturation},
+ * while other code uses {@code BloodPressureSystolic} or {@code Oxygen Saturation}. The registry knows
+ * the aliases of the built-in signals and resolves every label to one ID when a reading enters the
+ * system, so storage and alert dispatch can index arrays by signal instead of hashing and comparing
+ * strings. Ingest registers labels that are not known yet with {@link #register}, which hands out the
+ * next free ID, so IDs stay small and dense; queries and subscriptions only look labels up with
+ * {@link #idOf}, so asking about a label never adds a signal. At most {@link #MAX_SIGNALS} signals can
+ * be registered, so a source sending garbage labels cannot grow the registry without bound. IDs are
+ * only meaningful within one run; anything written to disk stores the names.
+ * <p>
+ * The registry is shared by the whole application and safe to use from any thread.
+ */
+public final class SignalRegistry {
+
+    /** Electrocardiogram samples. */
+    public static final int ECG = 0;
+    /** Heart rate, in beats per minute. */
+    public static final int HEART_RATE = 1;
+    /** Blood oxygen saturation, in percent. */
+    public static final int SATURATION = 2;
+    /** Systolic blood pressure, in mmHg. */
+    public static final int SYSTOLIC_PRESSURE = 3;
+    /** Diastolic blood pressure, in mmHg. */
+    public static final int DIASTOLIC_PRESSURE = 4;
+    /** Cholesterol level. */
+    public static final int CHOLESTEROL = 5;
+    /** White blood cell count. */
+    public static final int WHITE_BLOOD_CELLS = 6;
+    /** Red blood cell count. */
+    public static final int RED_BLOOD_CELLS = 7;
+
+    /** Maximum number of signals, including the built-in ones. */
+    public static final int MAX_SIGNALS = 1024;
+
+    private static final Map<String, Integer> IDS = new ConcurrentHashMap<>();
+    // indexed by ID; replaced when a signal is registered
+    private static volatile String[] names = new String[0];
+
+    static {
+        define("ECG");
+        define("HeartRate", "Heart Rate");
+        define("Saturation", "BloodSaturation", "Oxygen Saturation");
+        define("BloodPressureSystolic", "SystolicPressure", "Blood Pressure");
+        define("BloodPressureDiastolic", "DiastolicPressure");
+        define("Cholesterol");
+        define("WhiteBloodCells");
+        define("RedBloodCells");
+    }
+
+    private SignalRegistry() {
+    }
+
+    private static synchronized int define(String name, String... aliases) {
+        int id = names.length;
+        String[] grown = Arrays.copyOf(names, id + 1);
+        grown[id] = name;
+        names = grown;
+        IDS.put(name, id);
+        for (String alias : aliases) {
+            IDS.put(alias, id);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the ID of a label without registering it.
+     *
+     * @param label the name or an alias of the signal
+     * @return the signal ID, or -1 if the label is unknown
+     */
+    public static int idOf(String label) {
+        Integer id = IDS.get(label);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Returns the ID of a label, registering the label as a new signal if it is unknown.
+     * Only for labels of readings that are being stored.
+     *
+     * @param label the name or an alias of the signal
+     * @return the signal ID
+     * @throws IllegalArgumentException if the label is unknown and blank, or {@link #MAX_SIGNALS}
+     *                                  signals are registered already
+     */
+    public static int register(String label) {
+        Integer id = IDS.get(label);
+        if (id != null) {
+            return id;
+        }
+        if (label.trim().isEmpty()) {
+            throw new IllegalArgumentException("Blank signal label");
+        }
+        synchronized (SignalRegistry.class) {
+            id = IDS.get(label);
+            if (id != null) {
+                return id;
+            }
+            if (names.length >= MAX_SIGNALS) {
+                throw new IllegalArgumentException("Too many signals, cannot register '" + label + "'");
+            }
+            return define(label);
+        }
+    }
+
+    /**
+     * Adds an alias for a signal.
+     *
+     * @param alias the new label
+     * @param id    the signal ID
+     * @throws IllegalArgumentException if the ID is not registered or the alias names another signal
+     */
+    public static synchronized void addAlias(String alias, int id) {
+        if (id < 0 || id >= names.length) {
+            throw new IllegalArgumentException("Unknown signal ID " + id);
+        }
+        Integer existing = IDS.putIfAbsent(alias, id);
+        if (existing != null && existing != id) {
+            throw new IllegalArgumentException("'" + alias + "' already names " + names[existing]);
+        }
+    }
+
+    /**
+     * Returns the canonical name of a signal.
+     *
+     * @param id the signal ID
+     * @return the name
+     * @throws IndexOutOfBoundsException if the ID is not registered
+     */
+    public static String nameOf(int id) {
+        return names[id];
+    }
+
+    /**
+     * Returns the number of registered signals. IDs range from 0 to one less than this.
+     *
+     * @return the number of signals
+     */
+    public static int size() {
+        return names.length;
+    }
+}
@@ -0,0 +1,69 @@
+package com.data_management;
+
+import java.util.Arrays;
+
+/**
+ * The sealed blocks that could be spilled, by the last timestamp of their readings and their size in
+ * the heap, used to find how far back the oldest blocks reach that make up a given number of bytes.
+ */
+final class SpillCandidates {
+
+    private long[] lastTimestamps = new long[64];
+    private long[] bytes = new long[64];
+    private int size;
+
+    void add(long lastTimestamp, long blockBytes) {
+        if (size == lastTimestamps.length) {
+            lastTimestamps = Arrays.copyOf(lastTimestamps, size * 2);
+            bytes = Arrays.copyOf(bytes, size * 2);
+        }
+        lastTimestamps[size] = lastTimestamp;
+        bytes[size] = blockBytes;
+        size++;
+    }
+
+    void addAll(SpillCandidates other) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.lastTimestamps[i], other.bytes[i]);
+        }
+    }
+
+    /**
+     * Returns the cutoff that selects the oldest blocks adding up to at least the given size, or all
+     * blocks if they add up to less.
+     *
+     * @param target the number of bytes to free
+     * @return the timestamp before which blocks are spilled, or {@link Long#MIN_VALUE} if no blocks
+     *         are needed
+     */
+    long cutoffFor(long target) {
+        if (size == 0 || target <= 0) {
+            return Long.MIN_VALUE;
+        }
+        long[] sorted = Arrays.copyOf(lastTimestamps, size);
+        Arrays.sort(sorted);
+        // the first timestamp whose blocks and all older ones reach the target
+        int low = 0;
+        int high = size - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (bytesUpTo(sorted[mid]) >= target) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        long last = sorted[low];
+        return last == Long.MAX_VALUE ? Long.MAX_VALUE : last + 1;
+    }
+
+    private long bytesUpTo(long timestamp) {
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            if (lastTimestamps[i] <= timestamp) {
+                total += bytes[i];
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,167 @@
+package com.data_management;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Describes when {@link DataStorage} moves sealed blocks of readings from the heap to disk.
+ * <p>
+ * A policy spills the blocks whose readings are all older than a maximum age. It can also watch the
+ * heap: once the heap in use reaches the high watermark, the oldest sealed blocks are spilled, as
+ * many as make up the heap above the low watermark, and spilling continues until the heap is below
+ * the low watermark. The gap between the two keeps the storage from spilling a little on every check
+ * while the heap hovers around one mark. The heap is measured after garbage collections, so garbage
+ * that has not been collected yet does not count. Only sealed blocks are spilled, so the newest one
+ * to two thousand readings of each series always stay in the heap, where ingest, late readings and
+ * the alert checks touch them.
+ */
+public final class SpillPolicy {
+
+    /** How far below the high watermark the low watermark is, unless given, as a share of the heap. */
+    public static final double DEFAULT_HYSTERESIS = 0.1;
+
+    private final double heapWatermark;
+    private final double lowWatermark;
+    private final long maxHeapAgeMillis;
+
+    private SpillPolicy(double heapWatermark, double lowWatermark, long maxHeapAgeMillis) {
+        this.heapWatermark = heapWatermark;
+        this.lowWatermark = lowWatermark;
+        this.maxHeapAgeMillis = maxHeapAgeMillis;
+    }
+
+    /**
+     * Creates a policy that spills the oldest sealed blocks once the heap in use reaches a share of
+     * the maximum heap, until it is {@link #DEFAULT_HYSTERESIS} below it.
+     *
+     * @param fraction the high watermark, as a share of the maximum heap between 0 and 1
+     * @return the policy
+     */
+    public static SpillPolicy ofHeapWatermark(double fraction) {
+        return of(fraction, Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a policy that spills the blocks whose readings are all older than the given age,
+     * counted back from the current time.
+     *
+     * @param duration the age
+     * @param unit     the unit of the age
+     * @return the policy
+     */
+    public static SpillPolicy ofAge(long duration, TimeUnit unit) {
+        return of(1, duration, unit);
+    }
+
+    /**
+     * Creates a policy that spills blocks older than the given age, and the oldest sealed blocks once
+     * the heap in use reaches the watermark, until it is {@link #DEFAULT_HYSTERESIS} below it.
+     *
+     * @param fraction the high watermark, as a share of the maximum heap between 0 and 1
+     * @param duration the age
+     * @param unit     the unit of the age
+     * @return the policy
+     */
+    public static SpillPolicy of(double fraction, long duration, TimeUnit unit) {
+        return of(fraction, Math.max(0, fraction - DEFAULT_HYSTERESIS), duration, unit);
+    }
+
+    /**
+     * Creates a policy that spills blocks older than the given age, and the oldest sealed blocks once
+     * the heap in use reaches the high watermark, until it is below the low watermark.
+     *
+     * @param highWatermark the share of the maximum heap at which spilling starts, between 0 and 1
+     * @param lowWatermark  the share of the maximum heap spilling brings the heap down to, between 0
+     *                      and the high watermark
+     * @param duration      the age
+     * @param unit          the unit of the age
+     * @return the policy
+     */
+    public static SpillPolicy of(double highWatermark, double lowWatermark, long duration, TimeUnit unit) {
+        if (!(highWatermark > 0 && highWatermark <= 1)) {
+            throw new IllegalArgumentException("Heap watermark must be between 0 and 1: " + highWatermark);
+        }
+        if (!(lowWatermark >= 0 && lowWatermark <= highWatermark)) {
+            throw new IllegalArgumentException("Low heap watermark must be between 0 and " + highWatermark
+                    + ": " + lowWatermark);
+        }
+        if (duration < 0) {
+            throw new IllegalArgumentException("Spill age must not be negative: " + duration);
+        }
+        return new SpillPolicy(highWatermark, lowWatermark, unit.toMillis(duration));
+    }
+
+    /**
+     * Returns the high watermark.
+     *
+     * @return the share of the maximum heap at which the oldest sealed blocks are spilled; 1 if the
+     *         heap is not watched
+     */
+    public double getHeapWatermark() {
+        return heapWatermark;
+    }
+
+    /**
+     * Returns the low watermark.
+     *
+     * @return the share of the maximum heap that spilling brings the heap down to
+     */
+    public double getLowWatermark() {
+        return lowWatermark;
+    }
+
+    /**
+     * Returns the age after which blocks are spilled.
+     *
+     * @return the age in milliseconds, or {@link Long#MAX_VALUE} if blocks are not spilled by age
+     */
+    public long getMaxHeapAgeMillis() {
+        return maxHeapAgeMillis;
+    }
+
+    /**
+     * Returns whether the policy watches the heap.
+     */
+    boolean watchesHeap() {
+        return heapWatermark < 1;
+    }
+
+    /**
+     * Returns the timestamp before which sealed blocks are old enough to be spilled.
+     *
+     * @param now the reference time, in milliseconds since the Unix epoch
+     * @return the cutoff; blocks whose readings are all older than it are spilled, or
+     *         {@link Long#MIN_VALUE} if blocks are not spilled by age
+     */
+    long ageCutoff(long now) {
+        return maxHeapAgeMillis == Long.MAX_VALUE || now < Long.MIN_VALUE + maxHeapAgeMillis
+                ? Long.MIN_VALUE : now - maxHeapAgeMillis;
+    }
+
+    /**
+     * Returns the share of the maximum heap in use after the latest garbage collection of each heap
+     * pool. Unlike the used heap, this leaves out the garbage that has not been collected yet, which
+     * in a storage taking in readings is most of the young generation at any time.
+     *
+     * @return the heap usage, between 0 and 1
+     */
+    static double heapUsage() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                MemoryUsage afterCollection = pool.getCollectionUsage();
+                used += afterCollection != null ? afterCollection.getUsed() : pool.getUsage().getUsed();
+            }
+        }
+        return (double) used / Runtime.getRuntime().maxMemory();
+    }
+
+    @Override
+    public String toString() {
+        return "SpillPolicy[heap " + heapWatermark + " to " + lowWatermark + ", age "
+                + (maxHeapAgeMillis == Long.MAX_VALUE ? "unlimited" : maxHeapAgeMillis + " ms") + "]";
+    }
+}
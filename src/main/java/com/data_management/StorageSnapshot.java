@@ -0,0 +1,158 @@
+package com.data_management;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads and writes snapshots of the series in a {@link DataStorage}.
+ * <p>
+ * A snapshot holds every series of every patient, each as a run of {@link GorillaBlock}s of up to
+ * {@link TimeSeries#CHUNK_SIZE} readings, so it is about as compact as the sealed chunks in memory.
+ * Snapshot {@code n} holds everything logged before log segment {@code n}; recovery loads it and
+ * replays segments {@code n} and later. A snapshot is written to a temporary file and renamed when
+ * complete, so a crash while writing leaves the previous snapshot in place.
+ */
+final class StorageSnapshot {
+
+    private static final int MAGIC = 0x43534e31; // "CSN1"
+    private static final Pattern SNAPSHOT_NAME = Pattern.compile("snapshot-(\\d+)\\.dat");
+
+    private StorageSnapshot() {
+    }
+
+    static Path snapshotFile(Path directory, long number) {
+        return directory.resolve(String.format("snapshot-%016d.dat", number));
+    }
+
+    /**
+     * Lists the numbers of the snapshots in a directory, in ascending order.
+     *
+     * @param directory the journal directory
+     * @return the snapshot numbers
+     * @throws IOException if the directory cannot be read
+     */
+    static List<Long> snapshots(Path directory) throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return numbers;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "snapshot-*.dat")) {
+            for (Path file : files) {
+                Matcher matcher = SNAPSHOT_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    numbers.add(Long.parseLong(matcher.group(1)));
+                }
+            }
+        }
+        numbers.sort(null);
+        return numbers;
+    }
+
+    /**
+     * Writes a snapshot.
+     *
+     * @param directory the journal directory
+     * @param number    the number of the first log segment the snapshot does not cover
+     * @param series    the readings of each patient, one non-empty view per series
+     * @throws IOException if the snapshot cannot be written
+     */
+    static void write(Path directory, long number, Map<Integer, List<TimeSeries.View>> series) throws IOException {
+        Path target = snapshotFile(directory, number);
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        long[] timestamps = new long[TimeSeries.CHUNK_SIZE];
+        double[] values = new double[TimeSeries.CHUNK_SIZE];
+        try (FileOutputStream file = new FileOutputStream(temporary.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(series.size());
+            for (Map.Entry<Integer, List<TimeSeries.View>> patient : series.entrySet()) {
+                out.writeInt(patient.getKey());
+                out.writeInt(patient.getValue().size());
+                for (TimeSeries.View view : patient.getValue()) {
+                    out.writeUTF(view.get(0).getRecordType());
+                    int size = view.size();
+                    out.writeInt((size + TimeSeries.CHUNK_SIZE - 1) / TimeSeries.CHUNK_SIZE);
+                    for (int from = 0; from < size; from += TimeSeries.CHUNK_SIZE) {
+                        int count = Math.min(TimeSeries.CHUNK_SIZE, size - from);
+                        for (int i = 0; i < count; i++) {
+                            timestamps[i] = view.timestampAt(from + i);
+                            values[i] = view.valueAt(from + i);
+                        }
+                        GorillaBlock.encode(timestamps, values, 0, count).writeTo(out);
+                    }
+                }
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the readings of a snapshot, one series after another.
+     *
+     * @param file     the snapshot file
+     * @param consumer receives the readings
+     * @return the number of readings read
+     * @throws IOException if the file cannot be read or is not a complete snapshot
+     */
+    static long read(Path file, WriteAheadLog.ReadingConsumer consumer) throws IOException {
+        long readings = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a snapshot: " + file);
+            }
+            int patients = in.readInt();
+            GorillaBlock.Cursor cursor = null;
+            for (int p = 0; p < patients; p++) {
+                int patientId = in.readInt();
+                int seriesCount = in.readInt();
+                for (int s = 0; s < seriesCount; s++) {
+                    String recordType = in.readUTF();
+                    int blocks = in.readInt();
+                    for (int b = 0; b < blocks; b++) {
+                        GorillaBlock block = GorillaBlock.readFrom(in);
+                        if (cursor == null) {
+                            cursor = new GorillaBlock.Cursor(block);
+                        } else {
+                            cursor.reset(block);
+                        }
+                        while (cursor.next()) {
+                            consumer.accept(patientId, cursor.value(), recordType, cursor.timestamp());
+                        }
+                        readings += block.size();
+                    }
+                }
+            }
+        }
+        return readings;
+    }
+
+    /**
+     * Deletes the snapshots numbered below the given one.
+     *
+     * @param directory the journal directory
+     * @param number    the first snapshot to keep
+     * @throws IOException if a snapshot cannot be deleted
+     */
+    static void deleteSnapshotsBefore(Path directory, long number) throws IOException {
+        for (long existing : snapshots(directory)) {
+            if (existing < number) {
+                Files.deleteIfExists(snapshotFile(directory, existing));
+            }
+        }
+    }
+}
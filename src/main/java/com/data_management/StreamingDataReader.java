@@ -0,0 +1,59 @@
+package com.data_management;
+
+import java.io.IOException;
+import java.util.concurrent.Flow;
+
+/**
+ * A {@link DataReader} that exposes the readings it receives as an asynchronous stream of
+ * {@link DataBatch}es instead of writing them into one storage.
+ * <p>
+ * Consumers such as storage, alerting or archiving subscribe to {@link #getPublisher()} independently
+ * before calling {@link #start()}. Delivery follows the {@link Flow} contract: each subscriber signals
+ * its demand and a subscriber that falls behind throttles the reader.
+ */
+public interface StreamingDataReader extends DataReader {
+
+    /**
+     * Returns the publisher of the batches read from the source.
+     *
+     * @return the batch publisher
+     */
+    Flow.Publisher<DataBatch> getPublisher();
+
+    /**
+     * Connects to the source and starts publishing batches in the background.
+     *
+     * @throws IOException if the source cannot be opened
+     */
+    void start() throws IOException;
+
+    /**
+     * Stops reading and completes the stream.
+     */
+    void close();
+
+    /**
+     * Subscribes the storage to the stream and starts reading.
+     *
+     * @param dataStorage the storage where data will be stored
+     * @throws IOException if the source cannot be opened
+     */
+    @Override
+    default void readData(DataStorage dataStorage) throws IOException {
+        getPublisher().subscribe(new DataStorageSubscriber(dataStorage));
+        start();
+    }
+
+    /**
+     * Subscribes the storage to the stream so that readings are stored in timestamp order, and
+     * starts reading.
+     *
+     * @param dataStorage   the storage where data will be stored
+     * @param reorderBuffer the buffer that orders the readings of this stream
+     * @throws IOException if the source cannot be opened
+     */
+    default void readData(DataStorage dataStorage, ReorderBuffer reorderBuffer) throws IOException {
+        getPublisher().subscribe(new DataStorageSubscriber(dataStorage, reorderBuffer));
+        start();
+    }
+}
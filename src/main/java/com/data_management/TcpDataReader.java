@@ -0,0 +1,357 @@
+package com.data_management;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Flow;
+
+/**
+ * Reads real-time patient data from a {@link com.cardio_generator.outputs.TcpOutputStrategy} and publishes
+ * it as a stream of batches, e.g. into a {@link DataStorage} through {@link #readData(DataStorage)}.
+ * <p>
+ * The reader connects with a non-blocking {@link SocketChannel} and runs a selector loop on a background
+ * thread. Incoming bytes land in one reusable direct buffer and each line is parsed in place, without
+ * creating intermediate strings, in the format written by the TCP output strategy:
+ * <pre>
+ * patientId,timestamp,label,data
+ * </pre>
+ * The readings of each network read are collected in a reusable {@link DataBatch} and published to the
+ * reader's subscribers in one go. A subscriber that falls behind blocks the reader thread, which leaves
+ * the data in the socket and lets TCP flow control slow down the sender. Lines whose data is not numeric
+ * (e.g. alert states) or that are malformed are skipped and counted.
+ */
+public class TcpDataReader implements StreamingDataReader {
+
+    /** Size of the receive buffer; a single line must fit into it. */
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final String host;
+    private final int port;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final LabelCache labels = new LabelCache();
+    private final DataBatch batch = new DataBatch(1024);
+    private final BatchPublisher publisher = new BatchPublisher();
+    private volatile boolean running;
+    private volatile long recordsRead;
+    private volatile long linesSkipped;
+    private Selector selector;
+    private SocketChannel channel;
+    private Thread readerThread;
+
+    /**
+     * Constructs a new TcpDataReader for the given server.
+     *
+     * @param host the host the TCP output strategy runs on
+     * @param port the port the TCP output strategy listens on
+     */
+    public TcpDataReader(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    @Override
+    public Flow.Publisher<DataBatch> getPublisher() {
+        return publisher;
+    }
+
+    /**
+     * Connects to the TCP server and starts reading in the background.
+     *
+     * @throws IOException if the connection cannot be established
+     */
+    @Override
+    public void start() throws IOException {
+        channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.configureBlocking(false);
+        selector = Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
+        running = true;
+        readerThread = new Thread(this::readLoop, "tcp-data-reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    /**
+     * Stops the reader thread, closes the connection and completes the stream.
+     */
+    @Override
+    public void close() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+        try {
+            if (readerThread != null) {
+                readerThread.join(1000);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the number of records parsed and published so far. Readings read while no subscriber was
+     * registered are discarded and not counted.
+     *
+     * @return the number of records read
+     */
+    public long getRecordsRead() {
+        return recordsRead;
+    }
+
+    /**
+     * Returns the number of lines that were skipped because they could not be parsed.
+     *
+     * @return the number of skipped lines
+     */
+    public long getLinesSkipped() {
+        return linesSkipped;
+    }
+
+    private void readLoop() {
+        try {
+            while (running) {
+                selector.select();
+                selector.selectedKeys().clear();
+                int read;
+                // drain everything that is available before going back to the selector
+                while ((read = channel.read(buffer)) > 0) {
+                    buffer.flip();
+                    parseLines();
+                    buffer.compact();
+                    if (publisher.publish(batch)) {
+                        recordsRead += batch.size();
+                    }
+                    batch.clear();
+                    if (!buffer.hasRemaining()) {
+                        // a single line larger than the buffer, drop it
+                        System.err.println("Line exceeds TCP buffer size, discarding");
+                        buffer.clear();
+                        linesSkipped++;
+                    }
+                }
+                if (read < 0) {
+                    System.out.println("TCP server closed the connection");
+                    running = false;
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading from TCP server: " + e.getMessage());
+        } finally {
+            publisher.close();
+            try {
+                selector.close();
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Parses every complete line between the buffer's position and limit into the batch. On return
+     * the position points at the start of the first incomplete line.
+     */
+    private void parseLines() {
+        int start = buffer.position();
+        int limit = buffer.limit();
+        for (int i = start; i < limit; i++) {
+            if (buffer.get(i) == '\n') {
+                parseLine(start, i);
+                start = i + 1;
+            }
+        }
+        buffer.position(start);
+    }
+
+    private void parseLine(int start, int end) {
+        if (end > start && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        int c1 = indexOf(',', start, end);
+        int c2 = c1 < 0 ? -1 : indexOf(',', c1 + 1, end);
+        int c3 = c2 < 0 ? -1 : indexOf(',', c2 + 1, end);
+        if (c3 < 0) {
+            linesSkipped++;
+            return;
+        }
+        long patientId = parseLong(start, c1);
+        long timestamp = parseLong(c1 + 1, c2);
+        double value = parseDouble(c3 + 1, end);
+        if (patientId == Long.MIN_VALUE || patientId != (int) patientId
+                || timestamp == Long.MIN_VALUE || Double.isNaN(value)) {
+            linesSkipped++;
+            return;
+        }
+        try {
+            batch.add((int) patientId, value, labels.get(buffer, c2 + 1, c3), timestamp);
+        } catch (IllegalArgumentException e) {
+            // a blank label, or a new one after the signal registry is full
+            linesSkipped++;
+        }
+    }
+
+    private int indexOf(char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parses a decimal integer from the buffer.
+     *
+     * @return the value, or {@link Long#MIN_VALUE} if the bytes are not a number
+     */
+    private long parseLong(int from, int to) {
+        boolean negative = from < to && buffer.get(from) == '-';
+        int i = negative ? from + 1 : from;
+        if (i >= to || to - i > 18) {
+            return Long.MIN_VALUE;
+        }
+        long result = 0;
+        for (; i < to; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return Long.MIN_VALUE;
+            }
+            result = result * 10 + digit;
+        }
+        return negative ? -result : result;
+    }
+
+    /**
+     * Parses a decimal number such as {@code 98.0%} or {@code -1.5E-4} from the buffer.
+     * Values with at most 15 significant digits and a small exponent are computed exactly from
+     * the digits; anything else falls back to {@link Double#parseDouble(String)}.
+     *
+     * @return the value, or {@link Double#NaN} if the bytes are not a number
+     */
+    private double parseDouble(int from, int to) {
+        if (to > from && buffer.get(to - 1) == '%') {
+            to--;
+        }
+        int i = from;
+        boolean negative = false;
+        if (i < to && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean seenDot = false;
+        boolean seenDigit = false;
+        for (; i < to; i++) {
+            byte b = buffer.get(i);
+            if (b >= '0' && b <= '9') {
+                seenDigit = true;
+                if (mantissa == 0 && b == '0') {
+                    // leading zeros are not significant
+                    if (seenDot) {
+                        scale--;
+                    }
+                    continue;
+                }
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    digits++;
+                    if (seenDot) {
+                        scale--;
+                    }
+                } else if (!seenDot) {
+                    scale++;
+                }
+            } else if (b == '.' && !seenDot) {
+                seenDot = true;
+            } else if (b == 'e' || b == 'E') {
+                break;
+            } else {
+                return Double.NaN;
+            }
+        }
+        if (!seenDigit) {
+            return Double.NaN;
+        }
+        if (i < to) {
+            if (i + 1 >= to) {
+                return Double.NaN;
+            }
+            long exponent = parseLong(buffer.get(i + 1) == '+' ? i + 2 : i + 1, to);
+            if (exponent == Long.MIN_VALUE) {
+                return Double.NaN;
+            }
+            scale += (int) Math.max(-1000, Math.min(1000, exponent));
+        }
+        double value;
+        if (digits <= 15 && scale >= -22 && scale <= 22) {
+            value = scale < 0 ? mantissa / POWERS_OF_TEN[-scale] : mantissa * POWERS_OF_TEN[scale];
+        } else {
+            value = fallbackParse(from, to);
+        }
+        return negative && value > 0 ? -value : value;
+    }
+
+    private double fallbackParse(int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(from + i);
+        }
+        try {
+            return Math.abs(Double.parseDouble(new String(bytes, StandardCharsets.US_ASCII)));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Maps label bytes to shared {@code String} instances so the common labels are only decoded once.
+     */
+    private static class LabelCache {
+        private static final int MAX_LABELS = 64;
+        private final byte[][] keys = new byte[MAX_LABELS][];
+        private final String[] values = new String[MAX_LABELS];
+        private int size;
+
+        String get(ByteBuffer buffer, int from, int to) {
+            int length = to - from;
+            for (int k = 0; k < size; k++) {
+                byte[] key = keys[k];
+                if (key.length == length && matches(key, buffer, from)) {
+                    return values[k];
+                }
+            }
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = buffer.get(from + i);
+            }
+            String label = new String(bytes, StandardCharsets.UTF_8).trim();
+            if (size < MAX_LABELS) {
+                keys[size] = bytes;
+                values[size] = label;
+                size++;
+            }
+            return label;
+        }
+
+        private static boolean matches(byte[] key, ByteBuffer buffer, int from) {
+            for (int i = 0; i < key.length; i++) {
+                if (key[i] != buffer.get(from + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,1118 @@
+package com.data_management;
+
+import java.lang.ref.WeakReference;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Stores the readings of one signal (record type) of one patient in columnar form, ordered by timestamp.
+ * <p>
+ * Timestamps and values are kept in separate primitive arrays that are split into chunks of
+ * {@link #CHUNK_SIZE} entries, so a reading costs 16 bytes of heap and growing the series never copies
+ * more than one chunk. The first chunk starts small and doubles until it reaches the full chunk size,
+ * which keeps rarely sampled signals cheap. {@link PatientRecord} objects are only created when a
+ * caller asks for them.
+ * <p>
+ * Readings normally arrive in timestamp order and are appended. A reading older than the newest one is
+ * held in a small sorted buffer of late readings, which is merged into the chunks once it holds
+ * {@link #MAX_LATE_READINGS} readings. Queries see the late readings in their place right away.
+ * Range queries find their bounds by binary search and return a {@link View} over the chunks, without
+ * copying.
+ * <p>
+ * A {@link RetentionPolicy} bounds the series. Whenever a new chunk is started, the oldest chunks that
+ * fall entirely outside the policy are dropped, and {@link DataStorage}'s retention sweeper does the same
+ * for series that stopped receiving readings. Dropped chunks are left to the garbage collector rather than
+ * reused, because views handed out earlier may still read them.
+ * <p>
+ * Full chunks are sealed into compressed {@link GorillaBlock}s once a newer full chunk exists, so
+ * only the newest couple of thousand readings stay in plain arrays. Reading a sealed chunk decodes
+ * it as a whole into a scratch buffer of the reading thread, which keeps it until that thread reads
+ * another chunk, so concurrent readers do not evict each other's chunks. Cursors decode into buffers
+ * of their own. Range queries locate the chunk from the blocks' first timestamps, so they decode at
+ * most one or two blocks.
+ * <p>
+ * Sealed blocks can be moved to disk by {@link DataStorage#enableSpill}, see {@link SpillPolicy}. A
+ * spilled chunk keeps its first and last timestamp in the heap, so queries locate it as before and read
+ * the block back from disk only when their range reaches into it; views therefore span both tiers
+ * without merging anything.
+ * <p>
+ * Every reading also updates the series' per-second, per-minute and per-hour rollups, which
+ * {@link #aggregate(long, long, long)} uses instead of the raw readings whenever it can. A rollup tier
+ * is only kept once it holds several readings per bucket. {@link #stats(long, long)} likewise keeps a
+ * summary with a percentile sketch per full chunk once it has been asked for one.
+ * <p>
+ * A series has a single writer and any number of lock-free readers. Appends must be serialized by the
+ * caller ({@link Patient} does this per patient). A reading is published by the volatile write of the
+ * size after it has been stored, and a reader that reads the size first sees every reading below it.
+ * Arrays are never modified below the published size: when the chunk directory or the first chunk has
+ * to grow, or late readings are merged, the writer builds copies and publishes them through the
+ * volatile {@code columns} reference. A merge replaces the columns, size and late buffer together, so
+ * readers check the merge counter and retry if a merge happened while they took their snapshot.
+ */
+public class TimeSeries {
+
+    static final int CHUNK_SHIFT = 10;
+    /** Number of readings per chunk. */
+    public static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    /** Number of late readings buffered before they are merged into the chunks. */
+    public static final int MAX_LATE_READINGS = 64;
+    /** Number of late arrivals whose timestamps {@link #getLateArrivals} keeps. */
+    public static final int LATE_ARRIVAL_HISTORY = 256;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final Late NO_LATE = new Late(new long[0], new double[0]);
+    // per-thread scratch for random access into sealed chunks
+    private static final ThreadLocal<Decoder> DECODER = ThreadLocal.withInitial(Decoder::new);
+
+    private final int patientId;
+    private final int signalId;
+    private volatile RetentionPolicy retention;
+    private volatile Columns columns;
+    private volatile int size;
+    private volatile Late late = NO_LATE;
+    private final Rollup rollup = new Rollup();
+    // odd while a merge is being published
+    private volatile int merges;
+    // only touched by the writer
+    private long lastTimestamp = Long.MIN_VALUE;
+    // readings below this position are sealed or dropped; only touched by the writer
+    private int sealedUpTo;
+    // readings below this position are spilled, sealed too new to spill, or dropped; only touched by the writer
+    private int spilledUpTo;
+    // the timestamps of the latest late arrivals, by arrival number modulo the history length; created
+    // with the first one and published by the write of lateArrivals
+    private long[] lateArrivalHistory;
+    private volatile long lateArrivals;
+
+    /**
+     * Constructs an empty series for the given record type.
+     *
+     * @param patientId  the patient the readings belong to
+     * @param recordType the type of the readings in this series, e.g. "ECG"
+     */
+    public TimeSeries(int patientId, String recordType) {
+        this(patientId, recordType, RetentionPolicy.UNLIMITED);
+    }
+
+    /**
+     * Constructs an empty series for the given record type that keeps its readings as long as the
+     * retention policy allows.
+     *
+     * @param patientId  the patient the readings belong to
+     * @param recordType the type of the readings in this series, e.g. "ECG"
+     * @param retention  the retention policy
+     */
+    public TimeSeries(int patientId, String recordType, RetentionPolicy retention) {
+        this.patientId = patientId;
+        this.signalId = SignalRegistry.register(recordType);
+        this.retention = retention;
+        Columns initial = new Columns(new long[1][], new double[1][], new GorillaBlock[1],
+                new BlockSpill.Ref[1], new WindowStats[1], 0);
+        initial.timestamps[0] = new long[INITIAL_CAPACITY];
+        initial.values[0] = new double[INITIAL_CAPACITY];
+        columns = initial;
+    }
+
+    /**
+     * Adds a reading to the series.
+     * Must not be called by more than one thread at a time.
+     *
+     * @param timestamp the time of the reading, in milliseconds since the Unix epoch
+     * @param value     the measured value
+     */
+    public void append(long timestamp, double value) {
+        if (timestamp < lastTimestamp) {
+            addLate(timestamp, value);
+            return;
+        }
+        int index = size;
+        int offset = index & CHUNK_MASK;
+        Columns current = columns;
+        if (offset == 0 && index > current.base) {
+            current = dropExpired(current, index, timestamp);
+            current = seal(current, index);
+        }
+        int chunk = (index - current.base) >>> CHUNK_SHIFT;
+        if (chunk == current.timestamps.length) {
+            current = current.withDirectory(chunk * 2);
+            columns = current;
+        }
+        if (current.timestamps[chunk] == null) {
+            // nobody reads this slot until the size covers it, so it can be filled in place
+            current.timestamps[chunk] = new long[CHUNK_SIZE];
+            current.values[chunk] = new double[CHUNK_SIZE];
+        } else if (offset == current.timestamps[chunk].length) {
+            // only the first chunk grows, into a copy so readers of the old one are unaffected
+            current = current.withFirstChunk(Math.min(CHUNK_SIZE, offset * 2));
+            columns = current;
+        }
+        current.timestamps[chunk][offset] = timestamp;
+        current.values[chunk][offset] = value;
+        lastTimestamp = timestamp;
+        size = index + 1;
+        updateRollup(timestamp, value);
+    }
+
+    private void updateRollup(long timestamp, double value) {
+        int enable = rollup.add(timestamp, value);
+        if (enable != 0) {
+            // includes the reading just added
+            rollup.enable(enable, snapshot());
+        }
+    }
+
+    private void addLate(long timestamp, double value) {
+        if (timestamp < retention.cutoff(lastTimestamp)) {
+            // already outside the retention window
+            return;
+        }
+        Late buffered = late;
+        int length = buffered.timestamps.length;
+        // after readings with the same timestamp, so equal readings keep their arrival order
+        int at = upperBound(buffered.timestamps, length, timestamp);
+        long[] timestamps = new long[length + 1];
+        double[] values = new double[length + 1];
+        System.arraycopy(buffered.timestamps, 0, timestamps, 0, at);
+        System.arraycopy(buffered.values, 0, values, 0, at);
+        timestamps[at] = timestamp;
+        values[at] = value;
+        System.arraycopy(buffered.timestamps, at, timestamps, at + 1, length - at);
+        System.arraycopy(buffered.values, at, values, at + 1, length - at);
+        Late grown = new Late(timestamps, values);
+        if (timestamps.length >= MAX_LATE_READINGS) {
+            merge(grown);
+        } else {
+            late = grown;
+        }
+        recordLateArrival(timestamp);
+        updateRollup(timestamp, value);
+    }
+
+    private void recordLateArrival(long timestamp) {
+        if (lateArrivalHistory == null) {
+            lateArrivalHistory = new long[LATE_ARRIVAL_HISTORY];
+        }
+        long arrival = lateArrivals;
+        lateArrivalHistory[(int) (arrival % LATE_ARRIVAL_HISTORY)] = timestamp;
+        lateArrivals = arrival + 1;
+    }
+
+    /**
+     * Merges late readings into the chunks. The chunks from the first affected one onwards are rebuilt
+     * into new arrays, so readers holding the old ones are not disturbed.
+     */
+    private void merge(Late buffered) {
+        int count = size;
+        Columns current = columns;
+        int lateCount = buffered.timestamps.length;
+        int total = count + lateCount;
+        // late readings go after stored readings with the same timestamp
+        int first = upperBound(current, current.base, count, buffered.timestamps[0]);
+        int firstChunk = (first - current.base) >>> CHUNK_SHIFT;
+        int chunks = ((total - current.base - 1) >>> CHUNK_SHIFT) + 1;
+
+        int directory = current.timestamps.length;
+        while (directory < chunks) {
+            directory *= 2;
+        }
+        Columns merged = current.withDirectory(directory);
+        for (int chunk = firstChunk; chunk < chunks; chunk++) {
+            // a first chunk that is not full yet is never sealed; total counts from the start of the
+            // series, so the readings it holds are total - base
+            int capacity = total - current.base < CHUNK_SIZE
+                    ? Math.min(CHUNK_SIZE, Math.max(current.timestamps[0].length, total - current.base)) : CHUNK_SIZE;
+            merged.timestamps[chunk] = new long[capacity];
+            merged.values[chunk] = new double[capacity];
+            merged.blocks[chunk] = null;
+            merged.spilled[chunk] = null;
+            merged.summaries[chunk] = null;
+        }
+        // rebuilt chunks are plain arrays again and get sealed later
+        sealedUpTo = Math.min(sealedUpTo, current.base + (firstChunk << CHUNK_SHIFT));
+        spilledUpTo = Math.min(spilledUpTo, sealedUpTo);
+        for (int prefix = first & ~CHUNK_MASK; prefix < first; prefix++) {
+            merged.set(prefix, current.timestampAt(prefix), current.valueAt(prefix));
+        }
+
+        int stored = first;
+        int lateIndex = 0;
+        for (int out = first; out < total; out++) {
+            long timestamp;
+            double value;
+            if (lateIndex < lateCount
+                    && (stored == count || buffered.timestamps[lateIndex] < current.timestampAt(stored))) {
+                timestamp = buffered.timestamps[lateIndex];
+                value = buffered.values[lateIndex];
+                lateIndex++;
+            } else {
+                timestamp = current.timestampAt(stored);
+                value = current.valueAt(stored);
+                stored++;
+            }
+            merged.set(out, timestamp, value);
+        }
+
+        merges++;
+        columns = merged;
+        size = total;
+        late = NO_LATE;
+        merges++;
+        current.releaseSpilled(firstChunk, current.spilled.length);
+    }
+
+    /**
+     * Drops the chunks that fall entirely outside the retention policy. Only full chunks below
+     * {@code count} are considered, so the chunk being written is always kept.
+     *
+     * @return the columns in use afterwards
+     */
+    private Columns dropExpired(Columns current, int count, long now) {
+        RetentionPolicy policy = retention;
+        long cutoff = policy.cutoff(now);
+        int dropped = 0;
+        while (true) {
+            int chunkEnd = current.base + (dropped + 1) * CHUNK_SIZE;
+            if (chunkEnd > count) {
+                break;
+            }
+            boolean expired = current.lastTimestampOf(dropped) < cutoff;
+            boolean surplus = count - chunkEnd >= policy.getMaxReadings();
+            if (!expired && !surplus) {
+                break;
+            }
+            dropped++;
+        }
+        if (dropped == 0) {
+            return current;
+        }
+        Columns trimmed = current.withoutFirstChunks(dropped);
+        columns = trimmed;
+        current.releaseSpilled(0, dropped);
+        return trimmed;
+    }
+
+    /**
+     * Compresses the full chunks below the newest full one.
+     *
+     * @return the columns in use afterwards
+     */
+    private Columns seal(Columns current, int count) {
+        int from = Math.max(sealedUpTo, current.base);
+        // the newest full chunk stays plain, late readings most likely land there
+        int limit = count - CHUNK_SIZE;
+        if (from + CHUNK_SIZE > limit) {
+            return current;
+        }
+        Columns sealed = current.withDirectory(current.timestamps.length);
+        for (int start = from; start + CHUNK_SIZE <= limit; start += CHUNK_SIZE) {
+            int chunk = (start - sealed.base) >>> CHUNK_SHIFT;
+            if (sealed.blocks[chunk] == null) {
+                sealed.blocks[chunk] = GorillaBlock.encode(sealed.timestamps[chunk], sealed.values[chunk], 0, CHUNK_SIZE);
+                sealed.timestamps[chunk] = null;
+                sealed.values[chunk] = null;
+            }
+            sealedUpTo = start + CHUNK_SIZE;
+        }
+        columns = sealed;
+        return sealed;
+    }
+
+    /**
+     * Returns the sealed blocks that are not spilled yet and whose readings are all older than the
+     * cutoff. Chunks are taken oldest first and the first one that is too new ends the list, so later
+     * passes start where this one stopped. Must be called by the writer; the blocks are written to
+     * disk afterwards, without holding the writer's lock, and put in place with {@link #spilled}.
+     *
+     * @param cutoff the timestamp before which chunks are spilled
+     * @return the blocks to spill, oldest first
+     */
+    List<GorillaBlock> spillable(long cutoff) {
+        Columns current = columns;
+        List<GorillaBlock> spillable = new ArrayList<>();
+        for (int start = Math.max(spilledUpTo, current.base); start + CHUNK_SIZE <= sealedUpTo; start += CHUNK_SIZE) {
+            GorillaBlock block = current.blocks[(start - current.base) >>> CHUNK_SHIFT];
+            if (block != null) {
+                if (block.getLastTimestamp() >= cutoff) {
+                    break;
+                }
+                spillable.add(block);
+            }
+        }
+        return spillable;
+    }
+
+    /**
+     * Adds the sealed blocks that are not spilled yet, with their size in the heap, to the candidates.
+     * Must be called by the writer.
+     *
+     * @param candidates receives the blocks
+     */
+    void addSpillCandidates(SpillCandidates candidates) {
+        final int arrayHeader = 16;
+        Columns current = columns;
+        for (int start = Math.max(spilledUpTo, current.base); start + CHUNK_SIZE <= sealedUpTo; start += CHUNK_SIZE) {
+            GorillaBlock block = current.blocks[(start - current.base) >>> CHUNK_SHIFT];
+            if (block != null) {
+                candidates.add(block.getLastTimestamp(), arrayHeader + block.getCompressedBytes());
+            }
+        }
+    }
+
+    /**
+     * Puts spilled blocks in place of the blocks they were written from. A block that late readings
+     * rebuilt or retention dropped while it was written is no longer there; its reference is released
+     * instead. Must be called by the writer.
+     *
+     * @param blocks the blocks returned by {@link #spillable}
+     * @param refs   the reference of each block on disk
+     * @return the number of readings spilled
+     */
+    int spilled(List<GorillaBlock> blocks, BlockSpill.Ref[] refs) {
+        Columns current = columns;
+        Columns spilled = null;
+        int readings = 0;
+        int chunk = 0;
+        for (int i = 0; i < refs.length; i++) {
+            int found = chunk;
+            while (found < current.blocks.length && current.blocks[found] != blocks.get(i)) {
+                found++;
+            }
+            if (found == current.blocks.length) {
+                refs[i].release();
+                continue;
+            }
+            if (spilled == null) {
+                spilled = current.withDirectory(current.timestamps.length);
+            }
+            spilled.spilled[found] = refs[i];
+            spilled.blocks[found] = null;
+            readings += CHUNK_SIZE;
+            chunk = found + 1;
+        }
+        if (spilled == null) {
+            return 0;
+        }
+        columns = spilled;
+        // later passes start after the chunks spilled so far
+        int start = Math.max(spilledUpTo, spilled.base);
+        while (start + CHUNK_SIZE <= sealedUpTo && spilled.blocks[(start - spilled.base) >>> CHUNK_SHIFT] == null) {
+            start += CHUNK_SIZE;
+        }
+        spilledUpTo = start;
+        return readings;
+    }
+
+    /**
+     * Drops the readings that fall outside the retention policy, measuring their age from the given
+     * time. Must be called by the writer.
+     *
+     * @param now the reference time, in milliseconds since the Unix epoch
+     */
+    void applyRetention(long now) {
+        int count = size;
+        Columns current = columns;
+        if (count > current.base) {
+            dropExpired(current, count, now);
+        }
+    }
+
+    /**
+     * Returns the retention policy of this series.
+     *
+     * @return the retention policy
+     */
+    public RetentionPolicy getRetentionPolicy() {
+        return retention;
+    }
+
+    /**
+     * Sets the retention policy of this series. It takes effect when the next chunk is started or the
+     * retention sweeper runs.
+     *
+     * @param retention the retention policy
+     */
+    public void setRetentionPolicy(RetentionPolicy retention) {
+        this.retention = retention;
+    }
+
+    /**
+     * Estimates the heap used by the series' arrays, including unused capacity.
+     *
+     * @return the estimated size in bytes
+     */
+    public long estimateMemoryBytes() {
+        final int arrayHeader = 16;
+        Columns current = columns;
+        // five directories of references, then one long[] and one double[], one block or one spilled
+        // block's reference per chunk
+        long bytes = 5L * (arrayHeader + 4L * current.timestamps.length);
+        for (int chunk = 0; chunk < current.timestamps.length; chunk++) {
+            if (current.timestamps[chunk] != null) {
+                bytes += 2L * arrayHeader + 16L * current.timestamps[chunk].length;
+            } else if (current.blocks[chunk] != null) {
+                bytes += arrayHeader + current.blocks[chunk].getCompressedBytes();
+            } else if (current.spilled[chunk] != null) {
+                bytes += 56;
+            }
+            if (current.summaries[chunk] != null) {
+                bytes += current.summaries[chunk].estimateMemoryBytes();
+            }
+        }
+        return bytes + 2L * arrayHeader + 16L * late.timestamps.length + rollup.estimateMemoryBytes();
+    }
+
+    /**
+     * Returns how many times smaller the sealed chunks are than the same readings in plain arrays.
+     *
+     * @return the compression ratio, or 1 if no chunk has been sealed yet
+     */
+    public double getCompressionRatio() {
+        long plain = 0;
+        long compressed = 0;
+        for (GorillaBlock block : columns.blocks) {
+            if (block != null) {
+                plain += 16L * block.size();
+                compressed += block.getCompressedBytes();
+            }
+        }
+        return compressed == 0 ? 1 : (double) plain / compressed;
+    }
+
+    /**
+     * Returns the patient the readings belong to.
+     *
+     * @return the patient ID
+     */
+    public int getPatientId() {
+        return patientId;
+    }
+
+    /**
+     * Returns the record type of this series.
+     *
+     * @return the record type
+     */
+    public String getRecordType() {
+        return SignalRegistry.nameOf(signalId);
+    }
+
+    /**
+     * Returns the signal ID of the readings in this series.
+     *
+     * @return the signal ID, see {@link SignalRegistry}
+     */
+    public int getSignalId() {
+        return signalId;
+    }
+
+    /**
+     * Returns the number of readings in the series.
+     *
+     * @return the series size
+     */
+    public int size() {
+        return snapshot().size();
+    }
+
+    /**
+     * Returns the number of late readings the series has taken in: readings older than the newest one
+     * when they arrived and still inside the retention window. A late reading is counted once it can
+     * be read.
+     *
+     * @return the number of late arrivals so far
+     */
+    public long getLateArrivalCount() {
+        return lateArrivals;
+    }
+
+    /**
+     * Returns the timestamps of a range of late arrivals, numbered from 0 in arrival order, so that a
+     * reader can tell which readings were inserted among the ones it has already seen. Only the latest
+     * {@link #LATE_ARRIVAL_HISTORY} are kept; older arrivals in the range are left out.
+     *
+     * @param from the number of the first arrival
+     * @param to   the number after the last arrival, at most {@link #getLateArrivalCount()}
+     * @return the timestamps, in arrival order
+     */
+    public long[] getLateArrivals(long from, long to) {
+        long start = Math.max(from, to - LATE_ARRIVAL_HISTORY);
+        if (start >= to) {
+            return new long[0];
+        }
+        long[] history = lateArrivalHistory;
+        long[] timestamps = new long[(int) (to - start)];
+        for (long arrival = start; arrival < to; arrival++) {
+            timestamps[(int) (arrival - start)] = history[(int) (arrival % LATE_ARRIVAL_HISTORY)];
+        }
+        // arrivals overwritten by newer ones while they were copied
+        long overwritten = Math.min(to, lateArrivals - LATE_ARRIVAL_HISTORY) - start;
+        return overwritten <= 0 ? timestamps : Arrays.copyOfRange(timestamps, (int) overwritten, timestamps.length);
+    }
+
+    /**
+     * Returns a view of all readings, ordered by timestamp.
+     *
+     * @return the readings
+     */
+    public View snapshot() {
+        return range(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns a view of the readings in the given time range, ordered by timestamp.
+     * The bounds are found by binary search and the view reads the stored columns directly; readings
+     * added afterwards are not part of it.
+     *
+     * @param startTime the start of the range, inclusive
+     * @param endTime   the end of the range, inclusive
+     * @return the readings in the range
+     */
+    public View range(long startTime, long endTime) {
+        while (true) {
+            int version = merges;
+            if ((version & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            // read the size before the columns; everything below it is published
+            int count = size;
+            Columns current = columns;
+            Late buffered = late;
+            if (merges == version) {
+                return new View(this, current, count, buffered, startTime, endTime);
+            }
+        }
+    }
+
+    /**
+     * Computes the count, minimum, maximum, mean, standard deviation and percentiles of the readings
+     * in a time range. Full chunks inside the range contribute a summary that is computed once and
+     * kept with the chunk, including a mergeable percentile sketch, so only the readings in the
+     * partly covered chunks at the ends of the range and late readings are visited.
+     *
+     * @param startTime the start of the range, inclusive
+     * @param endTime   the end of the range, inclusive
+     * @return the statistics of the readings in the range
+     */
+    public WindowStats stats(long startTime, long endTime) {
+        int count;
+        Columns current;
+        Late buffered;
+        while (true) {
+            int version = merges;
+            if ((version & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            count = size;
+            current = columns;
+            buffered = late;
+            if (merges == version) {
+                break;
+            }
+        }
+        WindowStats.Accumulator accumulator = new WindowStats.Accumulator();
+        int from = lowerBound(current, current.base, count, startTime);
+        int to = Math.max(from, upperBound(current, from, count, endTime));
+        int index = from;
+        while (index < to) {
+            int chunkEnd = (index & ~CHUNK_MASK) + CHUNK_SIZE;
+            if ((index & CHUNK_MASK) == 0 && chunkEnd <= to) {
+                accumulator.add(current.summaryOf((index - current.base) >>> CHUNK_SHIFT));
+                index = chunkEnd;
+            } else {
+                for (int end = Math.min(chunkEnd, to); index < end; index++) {
+                    accumulator.add(current.valueAt(index));
+                }
+            }
+        }
+        int lateFrom = lowerBound(buffered.timestamps, buffered.timestamps.length, startTime);
+        int lateTo = upperBound(buffered.timestamps, buffered.timestamps.length, endTime);
+        for (int i = lateFrom; i < lateTo; i++) {
+            accumulator.add(buffered.values[i]);
+        }
+        return accumulator.toStats();
+    }
+
+    /**
+     * Summarizes the readings in a time range in buckets of the given length.
+     * The coarsest rollup tier whose resolution divides the requested one is used, so hourly
+     * trends over days read a few hundred buckets instead of every reading. Resolutions no tier
+     * divides, ranges reaching further back than the tiers keep their buckets, and signals too
+     * sparse for any tier, are computed from the raw readings.
+     * <p>
+     * Rollups are kept longer than raw readings usually are: per-second buckets for 15 minutes,
+     * per-minute buckets for a day and per-hour buckets for 30 days.
+     *
+     * @param startTime  the start of the range, inclusive
+     * @param endTime    the end of the range, inclusive
+     * @param resolution the length of a bucket, in milliseconds
+     * @return the non-empty buckets that start within the range, ordered by time
+     */
+    public List<Aggregate> aggregate(long startTime, long endTime, long resolution) {
+        if (resolution <= 0) {
+            throw new IllegalArgumentException("Resolution must be positive: " + resolution);
+        }
+        List<Aggregate> result = rollup.query(startTime, endTime, resolution);
+        if (result != null) {
+            return result;
+        }
+        result = new ArrayList<>();
+        Rollup.Accumulator accumulator = new Rollup.Accumulator(resolution, result);
+        View view = range(startTime, endTime);
+        for (int i = 0; i < view.size(); i++) {
+            double value = view.valueAt(i);
+            accumulator.add(view.timestampAt(i), 1, value, value, value);
+        }
+        accumulator.flush();
+        return result;
+    }
+
+    private static int lowerBound(long[] timestamps, int length, long timestamp) {
+        int low = 0;
+        int high = length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[mid] < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int upperBound(long[] timestamps, int length, long timestamp) {
+        return timestamp == Long.MAX_VALUE ? length : lowerBound(timestamps, length, timestamp + 1);
+    }
+
+    private static int lowerBound(Columns columns, int from, int to, long timestamp) {
+        int low = from;
+        int high = to;
+        // narrow the range down to one chunk using the chunks' first timestamps, so at most one
+        // sealed chunk has to be decoded
+        while (low < high && ((low - columns.base) >>> CHUNK_SHIFT) != ((high - 1 - columns.base) >>> CHUNK_SHIFT)) {
+            int chunk = (((low - columns.base) >>> CHUNK_SHIFT) + ((high - 1 - columns.base) >>> CHUNK_SHIFT) + 1) >>> 1;
+            int chunkStart = columns.base + (chunk << CHUNK_SHIFT);
+            if (columns.firstTimestampOf(chunk) < timestamp) {
+                low = chunkStart + 1;
+            } else {
+                high = chunkStart;
+            }
+        }
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (columns.timestampAt(mid) < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int upperBound(Columns columns, int from, int to, long timestamp) {
+        return timestamp == Long.MAX_VALUE ? to : lowerBound(columns, from, to, timestamp + 1);
+    }
+
+    /**
+     * A read-only, ordered view of a range of readings of one series.
+     * Records are created when {@link #get(int)} is called; {@link #timestampAt(int)} and
+     * {@link #valueAt(int)} read the columns without creating any.
+     */
+    public static final class View extends AbstractList<PatientRecord> implements RandomAccess {
+        private final TimeSeries series;
+        private final Columns columns;
+        private final int from;
+        private final int size;
+        private final long[] lateTimestamps;
+        private final double[] lateValues;
+        private final int lateFrom;
+        // position of each late reading in this view, ascending
+        private final int[] latePositions;
+
+        private View(TimeSeries series, Columns columns, int count, Late buffered, long startTime, long endTime) {
+            this.series = series;
+            this.columns = columns;
+            this.from = lowerBound(columns, columns.base, count, startTime);
+            int to = Math.max(from, upperBound(columns, from, count, endTime));
+            this.lateTimestamps = buffered.timestamps;
+            this.lateValues = buffered.values;
+            this.lateFrom = lowerBound(lateTimestamps, lateTimestamps.length, startTime);
+            int lateTo = Math.max(lateFrom, upperBound(lateTimestamps, lateTimestamps.length, endTime));
+            this.latePositions = new int[lateTo - lateFrom];
+            for (int j = 0; j < latePositions.length; j++) {
+                // a late reading follows the stored readings with the same timestamp
+                int insertion = upperBound(columns, from, count, lateTimestamps[lateFrom + j]);
+                latePositions[j] = insertion - from + j;
+            }
+            this.size = to - from + latePositions.length;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Returns the timestamp of the reading at the given position in the view.
+         *
+         * @param index the position, from 0 to {@code size() - 1}
+         * @return the timestamp
+         */
+        public long timestampAt(int index) {
+            checkIndex(index);
+            int late = Arrays.binarySearch(latePositions, index);
+            // otherwise -late - 1 late readings come before this position
+            return late >= 0 ? lateTimestamps[lateFrom + late] : columns.timestampAt(from + index + late + 1);
+        }
+
+        /**
+         * Returns the value of the reading at the given position in the view.
+         *
+         * @param index the position, from 0 to {@code size() - 1}
+         * @return the value
+         */
+        public double valueAt(int index) {
+            checkIndex(index);
+            int late = Arrays.binarySearch(latePositions, index);
+            return late >= 0 ? lateValues[lateFrom + late] : columns.valueAt(from + index + late + 1);
+        }
+
+        @Override
+        public PatientRecord get(int index) {
+            return new PatientRecord(series.patientId, valueAt(index), series.signalId, timestampAt(index));
+        }
+
+        /**
+         * Returns a cursor over the readings of this view, in order. The cursor walks the columns chunk
+         * by chunk instead of locating each position, and decodes each sealed chunk at most once.
+         *
+         * @return a new cursor positioned before the first reading
+         */
+        public RecordCursor cursor() {
+            return new Cursor(this, 0, size);
+        }
+
+        /**
+         * Returns a cursor over the readings at a range of positions of this view, in order.
+         *
+         * @param from the position of the first reading, from 0 to {@code size()}
+         * @param to   the position after the last reading, from {@code from} to {@code size()}
+         * @return a new cursor positioned before the first reading of the range
+         */
+        public RecordCursor cursor(int from, int to) {
+            if (from < 0 || to > size || from > to) {
+                throw new IndexOutOfBoundsException("Range " + from + " to " + to + " out of bounds for view of size " + size);
+            }
+            return new Cursor(this, from, to);
+        }
+
+        /**
+         * Returns the readings of this view as compressed blocks of up to {@link #CHUNK_SIZE} readings,
+         * in order. A sealed chunk the view holds whole, with no late reading among its readings, is
+         * returned as its block, read back from disk if it was spilled; the other readings are encoded.
+         *
+         * @return the blocks, together holding every reading of the view
+         */
+        List<GorillaBlock> blocks() {
+            List<GorillaBlock> blocks = new ArrayList<>();
+            long[] pendingTimestamps = new long[CHUNK_SIZE];
+            double[] pendingValues = new double[CHUNK_SIZE];
+            int pending = 0;
+            int to = from + size - latePositions.length;
+            int stored = from;
+            int late = 0;
+            while (stored < to || late < latePositions.length) {
+                // the position in the view of the next stored reading
+                int position = stored - from + late;
+                if (late < latePositions.length && latePositions[late] == position) {
+                    pendingTimestamps[pending] = lateTimestamps[lateFrom + late];
+                    pendingValues[pending++] = lateValues[lateFrom + late];
+                    late++;
+                } else if (isWholeSealedChunk(stored, to)
+                        && (late == latePositions.length || latePositions[late] >= position + CHUNK_SIZE)) {
+                    if (pending > 0) {
+                        blocks.add(GorillaBlock.encode(pendingTimestamps, pendingValues, 0, pending));
+                        pending = 0;
+                    }
+                    blocks.add(columns.blockOf((stored - columns.base) >>> CHUNK_SHIFT));
+                    stored += CHUNK_SIZE;
+                } else {
+                    pendingTimestamps[pending] = columns.timestampAt(stored);
+                    pendingValues[pending++] = columns.valueAt(stored);
+                    stored++;
+                }
+                if (pending == CHUNK_SIZE) {
+                    blocks.add(GorillaBlock.encode(pendingTimestamps, pendingValues, 0, pending));
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                blocks.add(GorillaBlock.encode(pendingTimestamps, pendingValues, 0, pending));
+            }
+            return blocks;
+        }
+
+        private boolean isWholeSealedChunk(int start, int to) {
+            return (start & CHUNK_MASK) == 0 && start + CHUNK_SIZE <= to
+                    && columns.timestamps[(start - columns.base) >>> CHUNK_SHIFT] == null;
+        }
+
+        private void checkIndex(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for view of size " + size);
+            }
+        }
+    }
+
+    /**
+     * The chunk directories of a series. A new instance is published whenever a directory or the first
+     * chunk is replaced, chunks are sealed or chunks are dropped. Readings are addressed by their
+     * position in the whole series; {@code base} is the position of the first reading in chunk 0 and is
+     * a multiple of the chunk size. A chunk is either a pair of plain arrays or a sealed block.
+     */
+    private static final class Columns {
+        final long[][] timestamps;
+        final double[][] values;
+        final GorillaBlock[] blocks;
+        // blocks moved to disk; a chunk is plain, sealed or spilled
+        final BlockSpill.Ref[] spilled;
+        // summaries of full chunks, computed when first needed; racy but safe, a WindowStats is immutable
+        final WindowStats[] summaries;
+        final int base;
+
+        Columns(long[][] timestamps, double[][] values, GorillaBlock[] blocks, BlockSpill.Ref[] spilled,
+                WindowStats[] summaries, int base) {
+            this.timestamps = timestamps;
+            this.values = values;
+            this.blocks = blocks;
+            this.spilled = spilled;
+            this.summaries = summaries;
+            this.base = base;
+        }
+
+        long timestampAt(int index) {
+            int chunk = (index - base) >>> CHUNK_SHIFT;
+            long[] plain = timestamps[chunk];
+            if (plain != null) {
+                return plain[index & CHUNK_MASK];
+            }
+            return DECODER.get().decode(this, chunk).timestamps[index & CHUNK_MASK];
+        }
+
+        double valueAt(int index) {
+            int chunk = (index - base) >>> CHUNK_SHIFT;
+            double[] plain = values[chunk];
+            if (plain != null) {
+                return plain[index & CHUNK_MASK];
+            }
+            return DECODER.get().decode(this, chunk).values[index & CHUNK_MASK];
+        }
+
+        long firstTimestampOf(int chunk) {
+            long[] plain = timestamps[chunk];
+            if (plain != null) {
+                return plain[0];
+            }
+            GorillaBlock block = blocks[chunk];
+            return block != null ? block.getFirstTimestamp() : spilled[chunk].getFirstTimestamp();
+        }
+
+        /** Only valid for full chunks. */
+        long lastTimestampOf(int chunk) {
+            long[] plain = timestamps[chunk];
+            if (plain != null) {
+                return plain[CHUNK_MASK];
+            }
+            GorillaBlock block = blocks[chunk];
+            return block != null ? block.getLastTimestamp() : spilled[chunk].getLastTimestamp();
+        }
+
+        /** The sealed block of a chunk, read back from disk if it was spilled. */
+        GorillaBlock blockOf(int chunk) {
+            GorillaBlock block = blocks[chunk];
+            return block != null ? block : spilled[chunk].load();
+        }
+
+        /** Identifies the contents of a sealed chunk: its block or, for a spilled chunk, its reference. */
+        Object sourceOf(int chunk) {
+            GorillaBlock block = blocks[chunk];
+            return block != null ? block : spilled[chunk];
+        }
+
+        void releaseSpilled(int from, int to) {
+            for (int chunk = from; chunk < to; chunk++) {
+                if (spilled[chunk] != null) {
+                    spilled[chunk].release();
+                }
+            }
+        }
+
+        /** Only valid for full chunks. */
+        WindowStats summaryOf(int chunk) {
+            WindowStats summary = summaries[chunk];
+            if (summary == null) {
+                double[] plain = values[chunk];
+                double[] chunkValues = plain != null ? plain : DECODER.get().decode(this, chunk).values;
+                WindowStats.Accumulator accumulator = new WindowStats.Accumulator();
+                for (int i = 0; i < CHUNK_SIZE; i++) {
+                    accumulator.add(chunkValues[i]);
+                }
+                summary = accumulator.toStats();
+                summaries[chunk] = summary;
+            }
+            return summary;
+        }
+
+        /** Only for plain chunks of columns that are not published yet. */
+        void set(int index, long timestamp, double value) {
+            timestamps[(index - base) >>> CHUNK_SHIFT][index & CHUNK_MASK] = timestamp;
+            values[(index - base) >>> CHUNK_SHIFT][index & CHUNK_MASK] = value;
+        }
+
+        Columns withDirectory(int length) {
+            return new Columns(Arrays.copyOf(timestamps, length), Arrays.copyOf(values, length),
+                    Arrays.copyOf(blocks, length), Arrays.copyOf(spilled, length), Arrays.copyOf(summaries, length),
+                    base);
+        }
+
+        Columns withoutFirstChunks(int chunks) {
+            int length = timestamps.length;
+            return new Columns(Arrays.copyOfRange(timestamps, chunks, chunks + length),
+                    Arrays.copyOfRange(values, chunks, chunks + length),
+                    Arrays.copyOfRange(blocks, chunks, chunks + length),
+                    Arrays.copyOfRange(spilled, chunks, chunks + length),
+                    Arrays.copyOfRange(summaries, chunks, chunks + length), base + chunks * CHUNK_SIZE);
+        }
+
+        Columns withFirstChunk(int capacity) {
+            Columns grown = withDirectory(timestamps.length);
+            grown.timestamps[0] = Arrays.copyOf(timestamps[0], capacity);
+            grown.values[0] = Arrays.copyOf(values[0], capacity);
+            return grown;
+        }
+    }
+
+    /**
+     * A cursor over a view. Keeps the arrays of the chunk it is in, so moving within a chunk is an
+     * increment and a comparison with the position of the next late reading. Sealed chunks are decoded
+     * into the cursor's own buffer, so several cursors can be walked side by side on one thread.
+     */
+    private static final class Cursor implements RecordCursor {
+        private final View view;
+        private final int end;
+        private int position;
+        // late readings already passed
+        private int lateSeen;
+        private int chunk = -1;
+        private long[] chunkTimestamps;
+        private double[] chunkValues;
+        // created when the cursor reaches its first sealed chunk
+        private Decoder decoder;
+        private long timestamp;
+        private double value;
+
+        Cursor(View view, int from, int to) {
+            this.view = view;
+            this.end = to;
+            this.position = from - 1;
+            int late = Arrays.binarySearch(view.latePositions, from);
+            this.lateSeen = late >= 0 ? late : -late - 1;
+        }
+
+        @Override
+        public boolean next() {
+            if (position + 1 >= end) {
+                position = end;
+                return false;
+            }
+            position++;
+            int[] latePositions = view.latePositions;
+            if (lateSeen < latePositions.length && latePositions[lateSeen] == position) {
+                timestamp = view.lateTimestamps[view.lateFrom + lateSeen];
+                value = view.lateValues[view.lateFrom + lateSeen];
+                lateSeen++;
+                return true;
+            }
+            Columns columns = view.columns;
+            int index = view.from + position - lateSeen;
+            int indexChunk = (index - columns.base) >>> CHUNK_SHIFT;
+            if (indexChunk != chunk) {
+                chunk = indexChunk;
+                chunkTimestamps = columns.timestamps[chunk];
+                chunkValues = columns.values[chunk];
+                if (chunkTimestamps == null) {
+                    if (decoder == null) {
+                        decoder = new Decoder();
+                    }
+                    decoder.decode(columns, chunk);
+                    chunkTimestamps = decoder.timestamps;
+                    chunkValues = decoder.values;
+                }
+            }
+            timestamp = chunkTimestamps[index & CHUNK_MASK];
+            value = chunkValues[index & CHUNK_MASK];
+            return true;
+        }
+
+        @Override
+        public int patientId() {
+            return view.series.patientId;
+        }
+
+        @Override
+        public int signalId() {
+            return view.series.signalId;
+        }
+
+        @Override
+        public long timestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public double value() {
+            return value;
+        }
+    }
+
+    /**
+     * Reusable arrays a sealed chunk is decoded into. Remembers the last chunk decoded, so reading it
+     * again costs nothing. Belongs to one thread.
+     */
+    private static final class Decoder {
+        final long[] timestamps = new long[CHUNK_SIZE];
+        final double[] values = new double[CHUNK_SIZE];
+        // the block or, for a spilled chunk, its reference; weak, so that an idle thread's decoder
+        // does not keep a released block's spill segment on disk
+        private WeakReference<Object> source;
+
+        Decoder decode(Columns columns, int chunk) {
+            Object chunkSource = columns.sourceOf(chunk);
+            if (source == null || source.get() != chunkSource) {
+                // forget the previous chunk first, in case loading a spilled block fails
+                source = null;
+                columns.blockOf(chunk).decode(timestamps, values);
+                source = new WeakReference<>(chunkSource);
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Late readings waiting to be merged, sorted by timestamp. Replaced as a whole on every change.
+     */
+    private static final class Late {
+        final long[] timestamps;
+        final double[] values;
+
+        Late(long[] timestamps, double[] values) {
+            this.timestamps = timestamps;
+            this.values = values;
+        }
+    }
+}
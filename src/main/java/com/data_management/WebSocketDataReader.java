@@ -4,16 +4,38 @@ import com.cardio_generator.websocket.SimpleWebSocketClient;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * Reads real-time patient data from a WebSocket server and stores it in {@link DataStorage}.
+ * Reads real-time patient data from a WebSocket server and publishes it as a stream of batches,
+ * e.g. into a {@link DataStorage} through {@link #readData(DataStorage)}.
  * <p>
- * This class implements the {@link DataReader} interface and acts as a client
- * connecting to a WebSocket server to receive data updates.
+ * This class implements the {@link StreamingDataReader} interface and acts as a client
+ * connecting to a WebSocket server to receive data updates. If the connection drops or
+ * cannot be established, the reader keeps reconnecting with exponential backoff until
+ * {@link #close()} is called. On reconnect the client asks the server to replay the messages
+ * it missed, and gaps that could not be replayed are counted by the client.
  */
-public class WebSocketDataReader implements DataReader {
+public class WebSocketDataReader implements StreamingDataReader {
+
+    /** Delay before the first reconnect attempt, in milliseconds. */
+    public static final long INITIAL_BACKOFF_MILLIS = 500;
+    /** Upper bound for the delay between reconnect attempts, in milliseconds. */
+    public static final long MAX_BACKOFF_MILLIS = 30_000;
 
     private final String websocketUrl;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final BatchPublisher publisher = new BatchPublisher();
+    private final AtomicBoolean reconnectPending = new AtomicBoolean();
+    private volatile boolean closed;
+    private long backoffMillis;
+    private SimpleWebSocketClient client;
+    private ScheduledExecutorService reconnectExecutor;
 
     /**
      * Constructs a new WebSocketDataReader with the specified WebSocket server URL.
@@ -21,25 +43,119 @@ public class WebSocketDataReader implements DataReader {
      * @param websocketUrl the URL of the WebSocket server
      */
     public WebSocketDataReader(String websocketUrl) {
+        this(websocketUrl, INITIAL_BACKOFF_MILLIS, MAX_BACKOFF_MILLIS);
+    }
+
+    /**
+     * Constructs a new WebSocketDataReader with custom reconnect backoff bounds.
+     *
+     * @param websocketUrl         the URL of the WebSocket server
+     * @param initialBackoffMillis the delay before the first reconnect attempt
+     * @param maxBackoffMillis     the maximum delay between reconnect attempts
+     */
+    public WebSocketDataReader(String websocketUrl, long initialBackoffMillis, long maxBackoffMillis) {
         this.websocketUrl = websocketUrl;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.backoffMillis = initialBackoffMillis;
+    }
+
+    @Override
+    public Flow.Publisher<DataBatch> getPublisher() {
+        return publisher;
     }
 
     /**
      * Connects to the WebSocket server and starts receiving data.
-     * Received data is passed to a {@link SimpleWebSocketClient}, which adds it to the provided {@link DataStorage} instance.
+     * Received data is parsed by a {@link SimpleWebSocketClient}, which passes its batches to the publisher.
+     * A failed first attempt is not an error: the reader keeps retrying in the background.
      *
-     * @param dataStorage the {@link DataStorage} instance to populate with incoming data
-     * @throws IOException if there is a failure connecting to the WebSocket server or processing the URI
+     * @throws IOException if the URI is invalid or the client cannot be started
      */
     @Override
-    public void readData(DataStorage dataStorage) throws IOException {
+    public void start() throws IOException {
         // sets up to read data that is sent to the server
         try {
             URI uri = new URI(websocketUrl);
-            SimpleWebSocketClient client = new SimpleWebSocketClient(uri);
+            reconnectExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "websocket-reconnect");
+                thread.setDaemon(true);
+                return thread;
+            });
+            client = new SimpleWebSocketClient(uri, publisher::publish) {
+                @Override
+                public void onOpen(org.java_websocket.handshake.ServerHandshake handshake) {
+                    super.onOpen(handshake);
+                    resetBackoff();
+                }
+            };
+            client.setDisconnectHandler(this::scheduleReconnect);
             client.connectBlocking();
         } catch (Exception e) {
             throw new IOException("Failed to connect to WebSocket server", e);
         }
     }
+
+    /**
+     * Stops reconnecting, closes the current connection and completes the stream.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (reconnectExecutor != null) {
+            reconnectExecutor.shutdownNow();
+        }
+        if (client != null) {
+            client.close();
+            client.flush();
+        }
+        publisher.close();
+    }
+
+    /**
+     * Returns the client currently used by this reader, mainly for inspecting sequence statistics.
+     *
+     * @return the client, or {@code null} if {@link #start()} has not been called
+     */
+    public SimpleWebSocketClient getClient() {
+        return client;
+    }
+
+    private synchronized void resetBackoff() {
+        backoffMillis = initialBackoffMillis;
+    }
+
+    /**
+     * Schedules one reconnect attempt after the current backoff delay and doubles the delay
+     * for the next attempt. Repeated close notifications for the same outage are ignored.
+     */
+    private void scheduleReconnect() {
+        if (closed || !reconnectPending.compareAndSet(false, true)) {
+            return;
+        }
+        long delay;
+        synchronized (this) {
+            delay = backoffMillis;
+            backoffMillis = Math.min(backoffMillis * 2, maxBackoffMillis);
+        }
+        try {
+            reconnectExecutor.schedule(this::reconnect, delay, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            // executor was shut down by close()
+            reconnectPending.set(false);
+        }
+    }
+
+    private void reconnect() {
+        reconnectPending.set(false);
+        if (closed) {
+            return;
+        }
+        try {
+            // a failed attempt ends in onClose, which schedules the next one
+            client.reconnectBlocking();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 }
@@ -0,0 +1,172 @@
+package com.data_management;
+
+/**
+ * Summarizes the readings of one signal within a time window: their count, minimum, maximum, mean,
+ * standard deviation and percentiles.
+ * <p>
+ * Count, minimum, maximum, mean and standard deviation are exact. Percentiles come from a
+ * {@link QuantileSketch} and are within 1% of the true value, relative to it; they are clamped to the
+ * exact minimum and maximum. An empty window has a count of 0 and NaN for everything else.
+ */
+public class WindowStats {
+
+    private final long count;
+    private final double min;
+    private final double max;
+    private final double mean;
+    // sum of squared differences from the mean
+    private final double m2;
+    private final QuantileSketch sketch;
+
+    private WindowStats(long count, double min, double max, double mean, double m2, QuantileSketch sketch) {
+        this.count = count;
+        this.min = min;
+        this.max = max;
+        this.mean = mean;
+        this.m2 = m2;
+        this.sketch = sketch;
+    }
+
+    /**
+     * Returns the number of readings.
+     *
+     * @return the count
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the smallest reading.
+     *
+     * @return the minimum, or NaN if there are no readings
+     */
+    public double getMin() {
+        return count == 0 ? Double.NaN : min;
+    }
+
+    /**
+     * Returns the largest reading.
+     *
+     * @return the maximum, or NaN if there are no readings
+     */
+    public double getMax() {
+        return count == 0 ? Double.NaN : max;
+    }
+
+    /**
+     * Returns the average of the readings.
+     *
+     * @return the mean, or NaN if there are no readings
+     */
+    public double getMean() {
+        return count == 0 ? Double.NaN : mean;
+    }
+
+    /**
+     * Returns the population standard deviation of the readings.
+     *
+     * @return the standard deviation, or NaN if there are no readings
+     */
+    public double getStandardDeviation() {
+        return count == 0 ? Double.NaN : Math.sqrt(m2 / count);
+    }
+
+    /**
+     * Estimates the reading at a percentile.
+     *
+     * @param percentile the percentile, from 0 to 100
+     * @return the estimated reading, or NaN if there are no readings
+     */
+    public double getPercentile(double percentile) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        return Math.max(min, Math.min(max, sketch.quantile(percentile / 100)));
+    }
+
+    /**
+     * Estimates the median reading.
+     *
+     * @return the 50th percentile, or NaN if there are no readings
+     */
+    public double getP50() {
+        return getPercentile(50);
+    }
+
+    /**
+     * Estimates the 95th percentile.
+     *
+     * @return the 95th percentile, or NaN if there are no readings
+     */
+    public double getP95() {
+        return getPercentile(95);
+    }
+
+    /**
+     * Estimates the 99th percentile.
+     *
+     * @return the 99th percentile, or NaN if there are no readings
+     */
+    public double getP99() {
+        return getPercentile(99);
+    }
+
+    long estimateMemoryBytes() {
+        return 56 + sketch.estimateMemoryBytes();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("WindowStats{count=%d, min=%s, max=%s, mean=%s, stddev=%s, p50=%s, p95=%s, p99=%s}",
+                count, getMin(), getMax(), getMean(), getStandardDeviation(), getP50(), getP95(), getP99());
+    }
+
+    /**
+     * Combines readings and the summaries of blocks of readings into one summary. Means and
+     * deviations are merged with Chan's formula, so combining summaries loses no precision compared
+     * to adding their readings one by one.
+     */
+    static final class Accumulator {
+        private long count;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+        private double mean;
+        private double m2;
+        private final QuantileSketch sketch = new QuantileSketch();
+
+        void add(double value) {
+            if (value != value) {
+                return;
+            }
+            count++;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            double delta = value - mean;
+            mean += delta / count;
+            m2 += delta * (value - mean);
+            sketch.add(value);
+        }
+
+        void add(WindowStats stats) {
+            if (stats.count == 0) {
+                return;
+            }
+            long total = count + stats.count;
+            double delta = stats.mean - mean;
+            mean += delta * stats.count / total;
+            m2 += stats.m2 + delta * delta * count * stats.count / total;
+            count = total;
+            min = Math.min(min, stats.min);
+            max = Math.max(max, stats.max);
+            sketch.merge(stats.sketch);
+        }
+
+        /**
+         * Returns the summary of everything added so far. The accumulator must not be used afterwards.
+         */
+        WindowStats toStats() {
+            return new WindowStats(count, min, max, mean, m2, sketch);
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package com.data_management;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only binary log of the readings added to a {@link DataStorage}, used to rebuild the
+ * storage after a crash.
+ * <p>
+ * Readings are encoded into an in-memory buffer as they arrive. {@link #commit()} writes the buffer
+ * to the current log file and forces it to disk. Commits are grouped: a thread that finds another
+ * thread's flush already covering its readings returns without forcing the file again, so concurrent
+ * ingest threads share one disk sync. The buffer is written in frames with a length and a CRC32, and
+ * replay stops at the first frame that is cut short or damaged, which is where a crash interrupted a
+ * write.
+ * <p>
+ * The log is split into numbered segment files. {@link #rotate()} starts a new segment, so older ones
+ * can be deleted once a snapshot covers them. Each segment carries its own record type dictionary.
+ */
+public class WriteAheadLog implements Closeable {
+
+    private static final int MAGIC = 0x43574c31; // "CWL1"
+    private static final byte TYPE_RECORD = 'T';
+    private static final byte READING_RECORD = 'R';
+    private static final int READING_BYTES = 1 + Integer.BYTES + Short.BYTES + Long.BYTES + Double.BYTES;
+    private static final Pattern SEGMENT_NAME = Pattern.compile("wal-(\\d+)\\.log");
+
+    private final Path directory;
+    // guarded by this
+    private ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+    // the log's type ID of each signal plus one, indexed by signal ID; 0 until the segment defines it
+    private int[] typeIds = new int[SignalRegistry.size()];
+    private int typeCount;
+    private long appended;
+    private FileChannel channel;
+    private long segment;
+    // serializes flushes; durable is only advanced while it is held
+    private final Object flushLock = new Object();
+    private volatile long durable;
+
+    /**
+     * Opens a log that appends to a new segment after the existing ones.
+     *
+     * @param directory the directory holding the segments; created if missing
+     * @throws IOException if the segment cannot be created
+     */
+    public WriteAheadLog(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        List<Long> existing = segments(directory);
+        openSegment(existing.isEmpty() ? 0 : existing.get(existing.size() - 1) + 1);
+    }
+
+    private void openSegment(long number) throws IOException {
+        channel = FileChannel.open(segmentFile(directory, number),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES).putInt(0, MAGIC);
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        channel.force(true);
+        segment = number;
+        Arrays.fill(typeIds, 0);
+        typeCount = 0;
+    }
+
+    /**
+     * Returns the path of a segment file.
+     *
+     * @param directory the log directory
+     * @param number    the segment number
+     * @return the path of the segment
+     */
+    static Path segmentFile(Path directory, long number) {
+        return directory.resolve(String.format("wal-%016d.log", number));
+    }
+
+    /**
+     * Lists the numbers of the segments in a directory, in ascending order.
+     *
+     * @param directory the log directory
+     * @return the segment numbers
+     * @throws IOException if the directory cannot be read
+     */
+    static List<Long> segments(Path directory) throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return numbers;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "wal-*.log")) {
+            for (Path file : files) {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    numbers.add(Long.parseLong(matcher.group(1)));
+                }
+            }
+        }
+        numbers.sort(null);
+        return numbers;
+    }
+
+    /**
+     * Appends a reading to the buffer. The reading is durable after the next {@link #commit()}.
+     *
+     * @param patientId        the ID of the patient
+     * @param measurementValue the value of the reading
+     * @param recordType       the type of the reading
+     * @param timestamp        the time of the reading
+     * @return a position in the log to pass to {@link #commit(long)}
+     */
+    public long append(int patientId, double measurementValue, String recordType, long timestamp) {
+        return append(patientId, measurementValue, SignalRegistry.register(recordType), timestamp);
+    }
+
+    /**
+     * Appends a reading of an already resolved signal to the buffer.
+     *
+     * @param patientId        the ID of the patient
+     * @param measurementValue the value of the reading
+     * @param signalId         the signal ID of the reading, see {@link SignalRegistry}
+     * @param timestamp        the time of the reading
+     * @return a position in the log to pass to {@link #commit(long)}
+     */
+    public synchronized long append(int patientId, double measurementValue, int signalId, long timestamp) {
+        if (signalId >= typeIds.length) {
+            typeIds = Arrays.copyOf(typeIds, Math.max(signalId + 1, typeIds.length * 2));
+        }
+        if (typeIds[signalId] == 0) {
+            // the log stores names, as signal IDs can differ between runs
+            byte[] name = SignalRegistry.nameOf(signalId).getBytes(StandardCharsets.UTF_8);
+            reserve(1 + Short.BYTES + Short.BYTES + name.length);
+            buffer.put(TYPE_RECORD).putShort((short) typeCount).putShort((short) name.length).put(name);
+            typeIds[signalId] = ++typeCount;
+        }
+        reserve(READING_BYTES);
+        buffer.put(READING_RECORD).putInt(patientId).putShort((short) (typeIds[signalId] - 1))
+                .putLong(timestamp).putDouble(measurementValue);
+        return ++appended;
+    }
+
+    private void reserve(int bytes) {
+        if (buffer.remaining() < bytes) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+    }
+
+    /**
+     * Makes every reading appended so far durable.
+     *
+     * @throws UncheckedIOException if the log cannot be written
+     */
+    public void commit() {
+        long target;
+        synchronized (this) {
+            target = appended;
+        }
+        commit(target);
+    }
+
+    /**
+     * Makes the readings up to a position durable, sharing the disk sync with other threads
+     * committing at the same time.
+     *
+     * @param position a position returned by {@link #append}
+     * @throws UncheckedIOException if the log cannot be written
+     */
+    public void commit(long position) {
+        if (durable >= position) {
+            return;
+        }
+        synchronized (flushLock) {
+            if (durable >= position) {
+                return;
+            }
+            try {
+                flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not write the log", e);
+            }
+        }
+    }
+
+    // called with flushLock held
+    private void flush() throws IOException {
+        ByteBuffer pending;
+        long covered;
+        FileChannel target;
+        synchronized (this) {
+            covered = appended;
+            target = channel;
+            if (buffer.position() == 0) {
+                durable = Math.max(durable, covered);
+                return;
+            }
+            pending = buffer;
+            pending.flip();
+            buffer = ByteBuffer.allocate(pending.capacity());
+        }
+        CRC32 crc = new CRC32();
+        crc.update(pending.duplicate());
+        ByteBuffer frame = ByteBuffer.allocate(2 * Integer.BYTES);
+        frame.putInt(pending.remaining()).putInt((int) crc.getValue()).flip();
+        ByteBuffer[] parts = {frame, pending};
+        while (frame.hasRemaining() || pending.hasRemaining()) {
+            target.write(parts);
+        }
+        target.force(false);
+        durable = covered;
+    }
+
+    /**
+     * Commits the current segment and starts a new one. Readings appended afterwards go to the
+     * new segment.
+     *
+     * @return the number of the new segment
+     * @throws IOException if a segment cannot be written or created
+     */
+    public long rotate() throws IOException {
+        synchronized (flushLock) {
+            synchronized (this) {
+                // nothing can be appended between the flush and the switch while this is held
+                flush();
+                channel.close();
+                openSegment(segment + 1);
+                return segment;
+            }
+        }
+    }
+
+    /**
+     * Deletes the segments numbered below the given one.
+     *
+     * @param number the first segment to keep
+     * @throws IOException if a segment cannot be deleted
+     */
+    void deleteSegmentsBefore(long number) throws IOException {
+        for (long existing : segments(directory)) {
+            if (existing < number) {
+                Files.deleteIfExists(segmentFile(directory, existing));
+            }
+        }
+    }
+
+    /**
+     * Commits the pending readings and closes the current segment.
+     *
+     * @throws IOException if the log cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (flushLock) {
+            flush();
+            synchronized (this) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Receives the readings of a log segment during replay.
+     */
+    interface ReadingConsumer {
+        void accept(int patientId, double measurementValue, String recordType, long timestamp);
+    }
+
+    /**
+     * Reads the readings of a segment in the order they were appended, stopping at the first frame
+     * that is incomplete or fails its checksum.
+     *
+     * @param file     the segment file
+     * @param consumer receives the readings
+     * @return the number of readings read
+     * @throws IOException if the file cannot be read or is not a log segment
+     */
+    static long replay(Path file, ReadingConsumer consumer) throws IOException {
+        long readings = 0;
+        try (InputStream stream = Files.newInputStream(file)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 1 << 16));
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a log segment: " + file);
+            }
+            Map<Short, String> types = new HashMap<>();
+            while (true) {
+                byte[] payload;
+                try {
+                    int length = in.readInt();
+                    int checksum = in.readInt();
+                    if (length < 0) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                    CRC32 crc = new CRC32();
+                    crc.update(payload);
+                    if ((int) crc.getValue() != checksum) {
+                        System.err.println("Log segment " + file + " has a damaged frame; ignoring the rest");
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+                ByteBuffer frame = ByteBuffer.wrap(payload);
+                while (frame.hasRemaining()) {
+                    byte kind = frame.get();
+                    if (kind == TYPE_RECORD) {
+                        short id = frame.getShort();
+                        byte[] name = new byte[frame.getShort()];
+                        frame.get(name);
+                        types.put(id, new String(name, StandardCharsets.UTF_8));
+                    } else if (kind == READING_RECORD) {
+                        int patientId = frame.getInt();
+                        String type = types.get(frame.getShort());
+                        long timestamp = frame.getLong();
+                        double value = frame.getDouble();
+                        consumer.accept(patientId, value, type, timestamp);
+                        readings++;
+                    } else {
+                        throw new IOException("Unknown record kind " + kind + " in " + file);
+                    }
+                }
+            }
+        }
+        return readings;
+    }
+}
@@ -0,0 +1,208 @@
+package com.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * A concurrent hash map from primitive {@code int} keys to objects, such as patient IDs to patients.
+ * It keeps the patients of the storage as well as the per-patient state of the generators.
+ * <p>
+ * Keys are stored unboxed in an open-addressing table with linear probing, so a lookup neither
+ * allocates nor follows a chain of entry objects. Lookups do not lock; updates lock the map and
+ * publish each entry by writing its value last. When the table grows, a new one is built and
+ * published at once, so readers see either the old or the new table, both complete. Entries cannot
+ * be removed one at a time, only all at once with {@link #clear()}; per-patient state is never
+ * removed individually. {@code null} values are not allowed.
+ *
+ * @param <V> the type of the values
+ */
+public final class IntObjectMap<V> {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private volatile Table<V> table;
+    // guarded by this
+    private int size;
+
+    /**
+     * Constructs an empty map.
+     */
+    public IntObjectMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty map that holds the given number of entries before it has to grow.
+     *
+     * @param expectedSize the expected number of entries
+     */
+    public IntObjectMap(int expectedSize) {
+        table = new Table<>(capacityFor(expectedSize));
+    }
+
+    private static int capacityFor(int entries) {
+        // at most half full keeps probe sequences short
+        int capacity = MIN_CAPACITY;
+        while (capacity < 2L * entries) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int slot(int key, int mask) {
+        int hash = key * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    /**
+     * Returns the value of a key.
+     *
+     * @param key the key
+     * @return the value, or {@code null} if the key is not in the map
+     */
+    public V get(int key) {
+        Table<V> current = table;
+        int mask = current.keys.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            // reading the value first makes the key written before it visible
+            V value = current.values.get(i);
+            if (value == null) {
+                return null;
+            }
+            if (current.keys[i] == key) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Returns the value of a key, creating and adding it first if the key is not in the map.
+     * The function is called at most once per key, with the map locked.
+     *
+     * @param key      the key
+     * @param function creates the value for the key
+     * @return the existing or new value
+     */
+    public V computeIfAbsent(int key, IntFunction<? extends V> function) {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+        synchronized (this) {
+            value = get(key);
+            if (value == null) {
+                value = function.apply(key);
+                put(key, value);
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Sets the value of a key.
+     *
+     * @param key   the key
+     * @param value the new value, not {@code null}
+     * @return the previous value, or {@code null} if the key was not in the map
+     */
+    public synchronized V put(int key, V value) {
+        if (value == null) {
+            throw new NullPointerException("Null values are not allowed");
+        }
+        Table<V> current = table;
+        int mask = current.keys.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            V existing = current.values.get(i);
+            if (existing == null) {
+                break;
+            }
+            if (current.keys[i] == key) {
+                current.values.set(i, value);
+                return existing;
+            }
+        }
+        if (2 * (size + 1) > current.keys.length) {
+            Table<V> grown = new Table<>(current.keys.length * 2);
+            for (int i = 0; i < current.keys.length; i++) {
+                V existing = current.values.get(i);
+                if (existing != null) {
+                    grown.insert(current.keys[i], existing);
+                }
+            }
+            grown.insert(key, value);
+            table = grown;
+        } else {
+            current.insert(key, value);
+        }
+        size++;
+        return null;
+    }
+
+    /**
+     * Returns the number of entries.
+     *
+     * @return the number of entries
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Passes every value to an action, without copying. Values added while this runs may or may
+     * not be visited.
+     *
+     * @param action the action to run for each value
+     */
+    public void forEach(Consumer<? super V> action) {
+        Table<V> current = table;
+        for (int i = 0; i < current.keys.length; i++) {
+            V value = current.values.get(i);
+            if (value != null) {
+                action.accept(value);
+            }
+        }
+    }
+
+    /**
+     * Returns the values in a new list.
+     *
+     * @return the values, in no particular order
+     */
+    public List<V> values() {
+        List<V> values = new ArrayList<>();
+        forEach(values::add);
+        return values;
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public synchronized void clear() {
+        table = new Table<>(MIN_CAPACITY);
+        size = 0;
+    }
+
+    private static final class Table<V> {
+        final int[] keys;
+        final AtomicReferenceArray<V> values;
+
+        Table(int capacity) {
+            keys = new int[capacity];
+            values = new AtomicReferenceArray<>(capacity);
+        }
+
+        // the caller holds the map's lock and has checked that the key is absent
+        void insert(int key, V value) {
+            int mask = keys.length - 1;
+            int i = slot(key, mask);
+            while (values.get(i) != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values.set(i, value);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package benchmark;
+
+import com.data_management.DataStorage;
+import com.data_management.PatientRecord;
+
+import java.util.List;
+
+/**
+ * Measures how long reading the current value of every signal of every patient takes, by walking
+ * each patient's records as the central station used to and from the latest-value board.
+ * <p>
+ * Not a unit test; run it manually with
+ * <pre>
+ * mvn test-compile exec:java -Dexec.mainClass=benchmark.LatestValuesBenchmark -Dexec.classpathScope=test
+ * </pre>
+ * Optional arguments: the number of patients (default 10000) and readings per patient and signal
+ * (default 100).
+ */
+public class LatestValuesBenchmark {
+
+    private static final long START = 1_700_000_000_000L;
+    private static final String[] SIGNALS = {"ECG", "HeartRate", "Saturation", "BloodPressureSystolic"};
+    private static final int ROUNDS = 20;
+
+    public static void main(String[] args) {
+        int patients = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int readings = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+
+        DataStorage storage = new DataStorage();
+        for (int r = 0; r < readings; r++) {
+            for (int patient = 0; patient < patients; patient++) {
+                for (String signal : SIGNALS) {
+                    storage.addPatientData(patient, r, signal, START + r * 1000L);
+                }
+            }
+        }
+        System.out.printf("%d patients, %d signals, %d readings each%n", patients, SIGNALS.length, readings);
+
+        // one warm-up round for the JIT, then the measured round
+        for (int round = 0; round < 2; round++) {
+            double[] checksum = new double[1];
+            long begin = System.nanoTime();
+            for (int i = 0; i < ROUNDS; i++) {
+                storage.forEachPatient(patient -> {
+                    List<PatientRecord> records = patient.getRecords();
+                    for (String signal : SIGNALS) {
+                        PatientRecord latest = null;
+                        for (PatientRecord record : records) {
+                            if (record.getRecordType().equals(signal)
+                                    && (latest == null || record.getTimestamp() >= latest.getTimestamp())) {
+                                latest = record;
+                            }
+                        }
+                        checksum[0] += latest.getMeasurementValue();
+                    }
+                });
+            }
+            long elapsed = System.nanoTime() - begin;
+            if (round == 1) {
+                System.out.printf("walk records: %10.2f ms/board (%.0f)%n", elapsed / 1e6 / ROUNDS, checksum[0]);
+            }
+
+            checksum[0] = 0;
+            begin = System.nanoTime();
+            for (int i = 0; i < ROUNDS; i++) {
+                storage.forEachLatest((patientId, signalId, timestamp, value) -> checksum[0] += value);
+            }
+            elapsed = System.nanoTime() - begin;
+            if (round == 1) {
+                System.out.printf("latest board: %10.2f ms/board (%.0f)%n", elapsed / 1e6 / ROUNDS, checksum[0]);
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package benchmark;
+
+import com.data_management.DataStorage;
+import com.data_management.PatientRecord;
+
+import java.util.List;
+
+/**
+ * Measures how long a short time window query takes on a patient with a long ECG history.
+ * <p>
+ * Not a unit test; run it manually with
+ * <pre>
+ * mvn test-compile exec:java -Dexec.mainClass=benchmark.RangeQueryBenchmark -Dexec.classpathScope=test
+ * </pre>
+ * Optional argument: the days of ECG history at one reading per second (default 7).
+ */
+public class RangeQueryBenchmark {
+
+    private static final long START = 1_700_000_000_000L;
+    private static final int QUERIES = 100_000;
+
+    public static void main(String[] args) {
+        int days = args.length > 0 ? Integer.parseInt(args[0]) : 7;
+        long seconds = days * 86_400L;
+
+        DataStorage storage = new DataStorage();
+        for (long s = 0; s < seconds; s++) {
+            storage.addPatientData(1, Math.sin(s * 0.1), "ECG", START + s * 1000);
+        }
+        System.out.printf("%d ECG readings, one-minute windows%n", seconds);
+
+        // one warm-up round for the JIT, then the measured round
+        for (int round = 0; round < 2; round++) {
+            long checksum = 0;
+            long begin = System.nanoTime();
+            for (int q = 0; q < QUERIES; q++) {
+                long from = START + (q * 7919L % (seconds - 60)) * 1000;
+                List<PatientRecord> window = storage.getRecords(1, "ECG", from, from + 59_999);
+                checksum += window.size();
+            }
+            long elapsed = System.nanoTime() - begin;
+            if (round == 1) {
+                System.out.printf("typed view:   %8.2f us/query (%d records)%n", elapsed / 1e3 / QUERIES, checksum);
+            }
+
+            checksum = 0;
+            begin = System.nanoTime();
+            for (int q = 0; q < QUERIES; q++) {
+                long from = START + (q * 7919L % (seconds - 60)) * 1000;
+                checksum += storage.getRecords(1, from, from + 59_999).size();
+            }
+            elapsed = System.nanoTime() - begin;
+            if (round == 1) {
+                System.out.printf("all records:  %8.2f us/query (%d records)%n", elapsed / 1e3 / QUERIES, checksum);
+            }
+        }
+    }
+}
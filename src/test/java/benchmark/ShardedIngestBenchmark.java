@@ -0,0 +1,72 @@
+package benchmark;
+
+import com.data_management.DataBatch;
+import com.data_management.DataStorage;
+import com.data_management.ShardedDataStorage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares ingest throughput of {@link DataStorage} and {@link ShardedDataStorage} as the number of
+ * ingest threads grows. Each thread adds batches of readings for all patients, as a reader of a
+ * shared stream would, so with plain storage the threads contend on the same patients.
+ * <p>
+ * Not a unit test; run it manually with
+ * <pre>
+ * mvn test-compile exec:java -Dexec.mainClass=benchmark.ShardedIngestBenchmark -Dexec.classpathScope=test
+ * </pre>
+ * Optional arguments: the largest number of threads (default: available processors) and readings
+ * per thread (default 2000000).
+ */
+public class ShardedIngestBenchmark {
+
+    private static final int PATIENTS = 10_000;
+    private static final int BATCH_SIZE = 512;
+
+    public static void main(String[] args) throws InterruptedException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int readings = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+
+        System.out.printf("%-8s %16s %16s%n", "threads", "plain rec/s", "sharded rec/s");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            // one warm-up round for the JIT, then the measured round
+            run(new DataStorage(), threads, readings);
+            double plain = run(new DataStorage(), threads, readings);
+            double sharded;
+            try (ShardedDataStorage storage = new ShardedDataStorage(threads)) {
+                run(storage, threads, readings);
+            }
+            try (ShardedDataStorage storage = new ShardedDataStorage(threads)) {
+                sharded = run(storage, threads, readings);
+            }
+            System.out.printf("%-8d %16.0f %16.0f%n", threads, plain, sharded);
+        }
+    }
+
+    private static double run(DataStorage storage, int threads, int readings) throws InterruptedException {
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int offset = t;
+            writers.add(new Thread(() -> {
+                DataBatch batch = new DataBatch(BATCH_SIZE);
+                for (int i = 0; i < readings; i++) {
+                    batch.add((i + offset) % PATIENTS, i % 100, "ECG", 1_700_000_000_000L + i);
+                    if (batch.size() == BATCH_SIZE) {
+                        storage.addPatientData(batch);
+                        batch.clear();
+                    }
+                }
+                storage.addPatientData(batch);
+            }));
+        }
+        long start = System.nanoTime();
+        writers.forEach(Thread::start);
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        // waits for the shards to apply their queued writes
+        storage.getRecordCount();
+        return (double) threads * readings / ((System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,109 @@
+package benchmark;
+
+import com.data_management.Patient;
+import com.data_management.PatientRecord;
+import com.data_management.TimeSeries;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the heap used per stored reading by {@link Patient}, compared with the previous layout of one
+ * {@link PatientRecord} object per reading in an {@code ArrayList}.
+ * <p>
+ * The readings follow the simulator's rates: ECG and saturation every second, blood pressure every minute
+ * and the three blood levels every two minutes. The result is extrapolated to 10,000 patients over 24
+ * hours, which would not fit in a default heap in the old layout. The compression ratio of the sealed
+ * chunks is printed per signal.
+ * <p>
+ * Not a unit test; run it manually with
+ * <pre>
+ * mvn test-compile exec:java -Dexec.mainClass=benchmark.StorageMemoryBenchmark -Dexec.classpathScope=test
+ * </pre>
+ * Optional arguments: the number of patients (default 1000) and hours of data (default 1).
+ */
+public class StorageMemoryBenchmark {
+
+    private static final long START = 1_700_000_000_000L;
+    private static final long TARGET_READINGS = 10_000L * readingsPerPatient(24);
+
+    public static void main(String[] args) {
+        int patients = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int hours = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        long readings = (long) patients * readingsPerPatient(hours);
+
+        System.out.printf("%d patients x %dh = %d readings%n", patients, hours, readings);
+        System.out.printf("%-10s %12s %14s %16s%n", "layout", "heap MB", "bytes/reading", "10k x 24h GB");
+
+        long before = usedHeap();
+        List<List<PatientRecord>> legacy = new ArrayList<>();
+        for (int p = 0; p < patients; p++) {
+            List<PatientRecord> records = new ArrayList<>();
+            int patientId = p;
+            generate(hours, (type, timestamp, value) -> records.add(new PatientRecord(patientId, value, type, timestamp)));
+            legacy.add(records);
+        }
+        report("records", usedHeap() - before, readings);
+        legacy = null;
+
+        before = usedHeap();
+        List<Patient> columnar = new ArrayList<>();
+        for (int p = 0; p < patients; p++) {
+            Patient patient = new Patient(p);
+            generate(hours, (type, timestamp, value) -> patient.addRecord(value, type, timestamp));
+            columnar.add(patient);
+        }
+        report("columnar", usedHeap() - before, readings);
+        // keep the patients reachable until after the measurement
+        System.out.println(columnar.size() + " patients stored");
+        for (TimeSeries series : columnar.get(0).getAllSeries()) {
+            System.out.printf("  %-18s compression %5.1fx%n", series.getRecordType(), series.getCompressionRatio());
+        }
+    }
+
+    private static long readingsPerPatient(int hours) {
+        long seconds = hours * 3600L;
+        return seconds * 2 + seconds / 60 * 2 + seconds / 120 * 3;
+    }
+
+    private static void generate(int hours, ReadingConsumer consumer) {
+        long seconds = hours * 3600L;
+        for (long s = 0; s < seconds; s++) {
+            long timestamp = START + s * 1000;
+            consumer.accept("ECG", timestamp, Math.sin(s * 0.1));
+            consumer.accept("Saturation", timestamp, 95 + s % 5);
+            if (s % 60 == 0) {
+                consumer.accept("SystolicPressure", timestamp, 110 + s % 20);
+                consumer.accept("DiastolicPressure", timestamp, 70 + s % 10);
+            }
+            if (s % 120 == 0) {
+                consumer.accept("Cholesterol", timestamp, 180 + s % 40);
+                consumer.accept("WhiteBloodCells", timestamp, 6 + s % 4);
+                consumer.accept("RedBloodCells", timestamp, 4.5 + s % 2);
+            }
+        }
+    }
+
+    private static void report(String name, long bytes, long readings) {
+        double perReading = (double) bytes / readings;
+        System.out.printf("%-10s %12.1f %14.1f %16.1f%n", name, bytes / 1e6, perReading,
+                perReading * TARGET_READINGS / 1e9);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private interface ReadingConsumer {
+        void accept(String type, long timestamp, double value);
+    }
+}
@@ -0,0 +1,110 @@
+package benchmark;
+
+import com.cardio_generator.outputs.InMemoryOutputStrategy;
+import com.cardio_generator.outputs.OutputStrategy;
+import com.cardio_generator.outputs.TcpOutputStrategy;
+import com.cardio_generator.outputs.WebSocketOutputStrategy;
+import com.data_management.DataStorage;
+import com.data_management.InMemoryDataReader;
+import com.data_management.TcpDataReader;
+import com.data_management.WebSocketDataReader;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.function.LongSupplier;
+
+/**
+ * Compares the ingest paths from an {@link OutputStrategy} into {@link DataStorage}.
+ * Reports messages per second and process CPU time per message for each transport.
+ * <p>
+ * Not a unit test; run it manually with
+ * <pre>
+ * mvn test-compile exec:java -Dexec.mainClass=benchmark.TransportBenchmark -Dexec.classpathScope=test
+ * </pre>
+ * Optional argument: the number of messages per run (default 200000).
+ */
+public class TransportBenchmark {
+
+    private static final int PATIENTS = 100;
+    private static final PrintStream STDOUT = System.out;
+
+    public static void main(String[] args) throws Exception {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+
+        STDOUT.printf("%-10s %12s %14s%n", "transport", "msgs/sec", "cpu us/msg");
+        // one warm-up round for the JIT, then the measured round
+        for (int round = 0; round < 2; round++) {
+            boolean report = round == 1;
+            runInMemory(messages, report);
+            runTcp(messages, 9400 + round, report);
+            runWebSocket(messages, 9500 + round, report);
+        }
+    }
+
+    private static void runInMemory(int messages, boolean report) throws Exception {
+        InMemoryOutputStrategy strategy = new InMemoryOutputStrategy();
+        InMemoryDataReader reader = new InMemoryDataReader(strategy);
+        reader.readData(new DataStorage());
+        measure("inmemory", strategy, messages, reader::getRecordsRead, report);
+        reader.close();
+    }
+
+    private static void runTcp(int messages, int port, boolean report) throws Exception {
+        TcpOutputStrategy strategy = new TcpOutputStrategy(port);
+        TcpDataReader reader = new TcpDataReader("localhost", port);
+        reader.readData(new DataStorage());
+        Thread.sleep(300);
+        measure("tcp", strategy, messages, reader::getRecordsRead, report);
+        reader.close();
+    }
+
+    private static void runWebSocket(int messages, int port, boolean report) throws Exception {
+        WebSocketOutputStrategy strategy = new WebSocketOutputStrategy(port);
+        Thread.sleep(300);
+        DataStorage storage = new DataStorage();
+        WebSocketDataReader reader = new WebSocketDataReader("ws://localhost:" + port);
+        reader.readData(storage);
+        Thread.sleep(300);
+        measure("websocket", strategy, messages, () -> countRecords(storage), report);
+        reader.close();
+        strategy.getServer().stop(1000);
+    }
+
+    private static void measure(String name, OutputStrategy strategy, int messages,
+                                LongSupplier received, boolean report) throws InterruptedException {
+        // the readers log to stdout, which would otherwise dominate the measurement
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        long cpuStart = processCpuNanos();
+        long start = System.nanoTime();
+        for (int i = 0; i < messages; i++) {
+            strategy.output(i % PATIENTS, 1_700_000_000_000L + i, "ECG", i * 0.001);
+        }
+        long deadline = System.currentTimeMillis() + 120_000;
+        while (received.getAsLong() < messages && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        long elapsed = System.nanoTime() - start;
+        long cpu = processCpuNanos() - cpuStart;
+        System.setOut(STDOUT);
+
+        long count = received.getAsLong();
+        if (report) {
+            STDOUT.printf("%-10s %12.0f %14.2f%s%n", name, count * 1e9 / elapsed, cpu / 1e3 / Math.max(1, count),
+                    count < messages ? "  (only " + count + " received)" : "");
+        }
+    }
+
+    private static long countRecords(DataStorage storage) {
+        long count = 0;
+        for (int patientId = 0; patientId < PATIENTS; patientId++) {
+            count += storage.getRecords(patientId, 0, Long.MAX_VALUE).size();
+        }
+        return count;
+    }
+
+    private static long processCpuNanos() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean())
+                .getProcessCpuTime();
+    }
+}
@@ -0,0 +1,125 @@
+package data_management;
+
+import com.data_management.BatchPublisher;
+import com.data_management.DataBatch;
+import com.data_management.DataStorage;
+import com.data_management.DataStorageSubscriber;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchPublisherTest {
+
+    @Test
+    void testIndependentSubscribersReceiveEveryBatch() throws Exception {
+        BatchPublisher publisher = new BatchPublisher();
+        DataStorage storage = new DataStorage();
+        DataStorageSubscriber storageSubscriber = new DataStorageSubscriber(storage);
+        CountingSubscriber counter = new CountingSubscriber(Long.MAX_VALUE);
+        publisher.subscribe(storageSubscriber);
+        publisher.subscribe(counter);
+
+        DataBatch batch = new DataBatch();
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 100; i++) {
+                batch.add(i % 5, i, "ECG", round * 100L + i);
+            }
+            publisher.publish(batch);
+            // the publisher copies, so reusing the batch must not affect delivered data
+            batch.clear();
+        }
+        publisher.close();
+
+        assertTrue(storageSubscriber.awaitCompletion(5, TimeUnit.SECONDS));
+        assertEquals(200, storage.getRecords(3, 0, Long.MAX_VALUE).size());
+        assertTrue(waitFor(() -> counter.completed.get() > 0));
+        assertEquals(1000, counter.readings.get());
+    }
+
+    @Test
+    void testBatchWithoutSubscriberIsNotPublished() {
+        BatchPublisher publisher = new BatchPublisher();
+        DataBatch batch = new DataBatch();
+        batch.add(1, 1.0, "ECG", 1L);
+        assertFalse(publisher.publish(batch));
+
+        publisher.subscribe(new CountingSubscriber(Long.MAX_VALUE));
+        assertTrue(publisher.publish(batch));
+        assertFalse(publisher.publish(new DataBatch()));
+        publisher.close();
+    }
+
+    @Test
+    void testSlowSubscriberThrottlesPublisher() throws Exception {
+        BatchPublisher publisher = new BatchPublisher(2);
+        CountingSubscriber slow = new CountingSubscriber(0);
+        publisher.subscribe(slow);
+        assertTrue(waitFor(() -> slow.subscription != null));
+
+        AtomicInteger published = new AtomicInteger();
+        Thread source = new Thread(() -> {
+            DataBatch batch = new DataBatch();
+            batch.add(1, 1.0, "ECG", 1L);
+            for (int i = 0; i < 10; i++) {
+                publisher.publish(batch);
+                published.incrementAndGet();
+            }
+        });
+        source.start();
+
+        TimeUnit.MILLISECONDS.sleep(300);
+        // the subscriber has not requested anything, so only its buffer could be filled
+        assertTrue(published.get() <= 2, "Publisher should block once the buffer is full");
+
+        slow.subscription.request(Long.MAX_VALUE);
+        source.join(5000);
+        assertEquals(10, published.get());
+        assertTrue(waitFor(() -> slow.readings.get() == 10));
+        publisher.close();
+    }
+
+    private static boolean waitFor(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 100 && !condition.getAsBoolean(); i++) {
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+        return condition.getAsBoolean();
+    }
+
+    static class CountingSubscriber implements Flow.Subscriber<DataBatch> {
+        private final long initialDemand;
+        volatile Flow.Subscription subscription;
+        final AtomicInteger readings = new AtomicInteger();
+        final AtomicInteger completed = new AtomicInteger();
+
+        CountingSubscriber(long initialDemand) {
+            this.initialDemand = initialDemand;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (initialDemand > 0) {
+                subscription.request(initialDemand);
+            }
+        }
+
+        @Override
+        public void onNext(DataBatch batch) {
+            readings.addAndGet(batch.size());
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            throwable.printStackTrace();
+        }
+
+        @Override
+        public void onComplete() {
+            completed.incrementAndGet();
+        }
+    }
+}
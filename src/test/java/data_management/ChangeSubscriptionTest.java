@@ -0,0 +1,144 @@
+package data_management;
+
+import com.data_management.ChangeSubscription;
+import com.data_management.DataBatch;
+import com.data_management.DataStorage;
+import com.data_management.ShardedDataStorage;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChangeSubscriptionTest {
+
+    /**
+     * Collects the timestamps of the received readings.
+     */
+    private static class Collector implements Flow.Subscriber<DataBatch> {
+        final List<Long> timestamps = new CopyOnWriteArrayList<>();
+        final CountDownLatch completed = new CountDownLatch(1);
+        final CountDownLatch firstBatch = new CountDownLatch(1);
+        volatile int batches;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(DataBatch batch) {
+            batches++;
+            for (int i = 0; i < batch.size(); i++) {
+                timestamps.add(batch.getTimestamp(i));
+            }
+            firstBatch.countDown();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            completed.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+    }
+
+    @Test
+    public void testSubscribersReceiveMatchingReadingsInOrder() throws InterruptedException {
+        DataStorage storage = new DataStorage();
+        Collector all = new Collector();
+        Collector patient = new Collector();
+        Collector signal = new Collector();
+        ChangeSubscription allSubscription = storage.subscribe(all);
+        ChangeSubscription patientSubscription = storage.subscribeToPatient(2, patient);
+        ChangeSubscription signalSubscription = storage.subscribeToSignal("HeartRate", signal);
+
+        DataBatch batch = new DataBatch();
+        batch.add(1, 80, "HeartRate", 1L);
+        batch.add(2, 98, "Saturation", 2L);
+        batch.add(2, 81, "Heart Rate", 3L);
+        storage.addPatientData(batch);
+        storage.addPatientData(1, 82, "ECG", 4L);
+
+        allSubscription.close();
+        patientSubscription.close();
+        signalSubscription.close();
+        assertTrue(all.completed.await(5, TimeUnit.SECONDS));
+        assertTrue(patient.completed.await(5, TimeUnit.SECONDS));
+        assertTrue(signal.completed.await(5, TimeUnit.SECONDS));
+
+        assertEquals(List.of(1L, 2L, 3L, 4L), all.timestamps);
+        assertEquals(2, all.batches);
+        assertEquals(List.of(2L, 3L), patient.timestamps);
+        assertEquals(List.of(1L, 3L), signal.timestamps);
+    }
+
+    @Test
+    public void testClosedSubscriptionReceivesNothingMore() throws InterruptedException {
+        DataStorage storage = new DataStorage();
+        Collector collector = new Collector();
+        ChangeSubscription subscription = storage.subscribe(collector);
+        storage.addPatientData(1, 80, "HeartRate", 1L);
+        subscription.close();
+        storage.addPatientData(1, 81, "HeartRate", 2L);
+
+        assertTrue(collector.completed.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(1L), collector.timestamps);
+    }
+
+    @Test
+    public void testSlowSubscriberDoesNotBlockIngest() throws InterruptedException {
+        DataStorage storage = new DataStorage();
+        CountDownLatch release = new CountDownLatch(1);
+        Collector slow = new Collector() {
+            @Override
+            public void onNext(DataBatch batch) {
+                super.onNext(batch);
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        ChangeSubscription subscription = storage.subscribe(slow);
+        for (int i = 0; i < 10 * ChangeSubscription.DEFAULT_BUFFER_CAPACITY; i++) {
+            storage.addPatientData(1, i, "HeartRate", i);
+        }
+        assertEquals(10 * ChangeSubscription.DEFAULT_BUFFER_CAPACITY, storage.getRecordCount());
+        assertTrue(subscription.getDroppedBatches() > 0);
+
+        release.countDown();
+        subscription.close();
+        assertTrue(slow.completed.await(5, TimeUnit.SECONDS));
+        List<Long> received = slow.timestamps;
+        for (int i = 1; i < received.size(); i++) {
+            assertTrue(received.get(i - 1) < received.get(i));
+        }
+    }
+
+    @Test
+    public void testShardedStorageNotifiesSubscribers() throws InterruptedException {
+        try (ShardedDataStorage storage = new ShardedDataStorage(3)) {
+            Collector collector = new Collector();
+            ChangeSubscription subscription = storage.subscribeToPatient(4, collector);
+            DataBatch batch = new DataBatch();
+            for (int patient = 0; patient < 9; patient++) {
+                batch.add(patient, 1.0, "HeartRate", patient);
+            }
+            storage.addPatientData(batch);
+
+            assertTrue(collector.firstBatch.await(5, TimeUnit.SECONDS));
+            subscription.close();
+            assertEquals(List.of(4L), collector.timestamps);
+            assertNotNull(storage.getPatient(4));
+        }
+    }
+}
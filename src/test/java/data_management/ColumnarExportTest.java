@@ -0,0 +1,173 @@
+package data_management;
+
+import com.data_management.DataStorage;
+import com.data_management.PatientRecord;
+import com.data_management.ShardedDataStorage;
+import com.data_management.TimeSeries;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ColumnarExportTest {
+
+    private static final long START = 1_700_000_000_000L;
+    private static final int READINGS = 3 * TimeSeries.CHUNK_SIZE + 100;
+
+    @TempDir
+    Path directory;
+
+    private static void fill(DataStorage storage, int patients) {
+        for (int i = 0; i < READINGS; i++) {
+            for (int patient = 1; patient <= patients; patient++) {
+                storage.addPatientData(patient, 60 + (i * patient) % 40, "HeartRate", START + i * 1000L);
+                if (i % 10 == 0) {
+                    storage.addPatientData(patient, 90 + i % 7, "Saturation", START + i * 1000L);
+                }
+            }
+        }
+    }
+
+    private static void assertSameRecords(DataStorage expected, DataStorage actual, int patients) {
+        for (int patient = 1; patient <= patients; patient++) {
+            List<PatientRecord> before = expected.getRecords(patient, Long.MIN_VALUE, Long.MAX_VALUE);
+            List<PatientRecord> after = actual.getRecords(patient, Long.MIN_VALUE, Long.MAX_VALUE);
+            assertEquals(before.size(), after.size());
+            for (int i = 0; i < before.size(); i++) {
+                assertEquals(before.get(i).getTimestamp(), after.get(i).getTimestamp());
+                assertEquals(before.get(i).getMeasurementValue(), after.get(i).getMeasurementValue());
+                assertEquals(before.get(i).getRecordType(), after.get(i).getRecordType());
+            }
+        }
+    }
+
+    private static long parts(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".col")).count();
+        }
+    }
+
+    @Test
+    public void testExportAndImportRoundTrip() throws IOException {
+        DataStorage storage = new DataStorage();
+        fill(storage, 5);
+        // late readings are exported in timestamp order
+        storage.addPatientData(2, 150, "HeartRate", START + 500);
+
+        long written = storage.exportColumnar(directory);
+        assertEquals(storage.getRecordCount(), written);
+        assertTrue(parts(directory) >= 1);
+
+        DataStorage imported = new DataStorage();
+        assertEquals(written, imported.importColumnar(directory));
+        assertEquals(storage.getRecordCount(), imported.getRecordCount());
+        assertSameRecords(storage, imported, 5);
+        assertEquals(150, imported.getRecords(2, START + 500, START + 500).get(0).getMeasurementValue());
+    }
+
+    @Test
+    public void testBlocksCarryValueBounds() throws IOException {
+        DataStorage storage = new DataStorage();
+        for (int i = 0; i < READINGS; i++) {
+            storage.addPatientData(7, i, "HeartRate", START + i * 1000L);
+        }
+        storage.exportColumnar(directory);
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(directory.resolve("part-0000.col"))))) {
+            assertEquals(0x43435831, in.readInt());
+            assertEquals(1, in.readInt());
+            assertEquals(7, in.readInt());
+            assertEquals("HeartRate", in.readUTF());
+            assertEquals(READINGS, in.readLong());
+            assertEquals(4, in.readInt());
+            // the first block covers readings 0 to CHUNK_SIZE - 1
+            assertEquals(0, in.readDouble());
+            assertEquals(TimeSeries.CHUNK_SIZE - 1, in.readDouble());
+            assertEquals(TimeSeries.CHUNK_SIZE, in.readInt());
+            assertEquals(START, in.readLong());
+            assertEquals(START + (TimeSeries.CHUNK_SIZE - 1) * 1000L, in.readLong());
+        }
+    }
+
+    @Test
+    public void testValueBoundsSkipNaN() throws IOException {
+        DataStorage storage = new DataStorage();
+        for (int i = 0; i < READINGS; i++) {
+            storage.addPatientData(7, i % 3 == 0 ? Double.NaN : i, "HeartRate", START + i * 1000L);
+        }
+        storage.exportColumnar(directory);
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(directory.resolve("part-0000.col"))))) {
+            in.readInt();
+            in.readInt();
+            in.readInt();
+            in.readUTF();
+            in.readLong();
+            in.readInt();
+            // readings 0 and 1023 of the first block are NaN
+            assertEquals(1, in.readDouble());
+            assertEquals(TimeSeries.CHUNK_SIZE - 2, in.readDouble());
+        }
+        DataStorage imported = new DataStorage();
+        imported.importColumnar(directory);
+        assertTrue(Double.isNaN(imported.getRecords(7, START, START).get(0).getMeasurementValue()));
+    }
+
+    @Test
+    public void testExportReplacesEarlierParts() throws IOException {
+        DataStorage storage = new DataStorage();
+        fill(storage, 8);
+        storage.exportColumnar(directory);
+
+        DataStorage smaller = new DataStorage();
+        smaller.addPatientData(1, 70, "HeartRate", START);
+        assertEquals(1, smaller.exportColumnar(directory));
+        assertEquals(1, parts(directory));
+
+        DataStorage imported = new DataStorage();
+        assertEquals(1, imported.importColumnar(directory));
+    }
+
+    @Test
+    public void testExportLeavesDirectoryWithOtherFilesAlone() throws IOException {
+        DataStorage storage = new DataStorage();
+        fill(storage, 2);
+        Files.write(directory.resolve("notes.txt"), new byte[] {1});
+
+        assertThrows(IOException.class, () -> storage.exportColumnar(directory));
+        assertEquals(0, parts(directory));
+        assertTrue(Files.exists(directory.resolve("notes.txt")));
+        String staging = "." + directory.getFileName() + "-export-";
+        try (Stream<Path> siblings = Files.list(directory.getParent())) {
+            assertTrue(siblings.noneMatch(sibling -> sibling.getFileName().toString().startsWith(staging)));
+        }
+    }
+
+    @Test
+    public void testShardedStorageRoundTrip() throws IOException {
+        try (ShardedDataStorage storage = new ShardedDataStorage(4);
+             ShardedDataStorage imported = new ShardedDataStorage(3)) {
+            fill(storage, 6);
+            assertEquals(storage.getRecordCount(), storage.exportColumnar(directory));
+
+            imported.importColumnar(directory);
+            assertEquals(storage.getRecordCount(), imported.getRecordCount());
+            assertSameRecords(storage, imported, 6);
+        }
+    }
+
+    @Test
+    public void testImportWithoutExportFails() {
+        assertThrows(IOException.class, () -> new DataStorage().importColumnar(directory));
+    }
+}
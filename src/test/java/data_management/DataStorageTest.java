@@ -2,14 +2,21 @@ package data_management;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import com.data_management.DataBatch;
 import com.data_management.DataReader;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import com.data_management.DataStorage;
 import com.data_management.PatientRecord;
+import com.data_management.RetentionPolicy;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.stream.Stream;
+import java.util.concurrent.TimeUnit;
 
 class DataStorageTest {
 
@@ -24,4 +31,111 @@ class DataStorageTest {
         assertEquals(2, records.size()); // Check if two records are retrieved
         assertEquals(100.0, records.get(0).getMeasurementValue()); // Validate first record
     }
+
+    @Test
+    void testAddBatchGroupsByPatientAndKeepsOrder() {
+        DataStorage storage = new DataStorage();
+        DataBatch batch = new DataBatch(2);
+        batch.add(2, 1.0, "ECG", 1000L);
+        batch.add(1, 10.0, "ECG", 1000L);
+        batch.add(2, 2.0, "ECG", 2000L);
+        batch.add(-5, 99.0, "Cholesterol", 500L);
+        batch.add(2, 3.0, "ECG", 3000L);
+        storage.addPatientData(batch);
+        batch.clear();
+
+        List<PatientRecord> records = storage.getRecords(2, 0, Long.MAX_VALUE);
+        assertEquals(3, records.size());
+        assertEquals(1.0, records.get(0).getMeasurementValue());
+        assertEquals(3.0, records.get(2).getMeasurementValue());
+        assertEquals(1, storage.getRecords(1, 0, Long.MAX_VALUE).size());
+        assertEquals(1, storage.getRecords(-5, 0, Long.MAX_VALUE).size());
+        assertTrue(batch.isEmpty());
+
+        // the cleared batch can be reused
+        batch.add(1, 11.0, "ECG", 2000L);
+        storage.addPatientData(batch);
+        assertEquals(2, storage.getRecords(1, 0, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    void testAddParallelArrays() {
+        DataStorage storage = new DataStorage();
+        int[] ids = {7, 8, 7, 0};
+        double[] values = {1.0, 2.0, 3.0, 0.0};
+        String[] types = {"HeartRate", "HeartRate", "HeartRate", null};
+        long[] timestamps = {1L, 2L, 3L, 0L};
+        storage.addPatientData(ids, values, types, timestamps, 3);
+
+        assertEquals(2, storage.getRecords(7, 0, Long.MAX_VALUE).size());
+        assertEquals(1, storage.getRecords(8, 0, Long.MAX_VALUE).size());
+        assertTrue(storage.getRecords(0, 0, Long.MAX_VALUE).isEmpty());
+    }
+
+    @Test
+    void testRetentionSweeperDropsExpiredRecords() {
+        DataStorage storage = new DataStorage();
+        storage.setRetentionPolicy("ECG", RetentionPolicy.ofDuration(15, TimeUnit.MINUTES));
+        long now = System.currentTimeMillis();
+        // two hours of ECG that ended an hour ago, and a recent lab value
+        for (int i = 0; i < 7200; i++) {
+            storage.addPatientData(1, i, "ECG", now - TimeUnit.HOURS.toMillis(3) + i * 1000L);
+        }
+        storage.addPatientData(1, 180.0, "Cholesterol", now - 1000);
+        long before = storage.estimateMemoryBytes();
+
+        storage.sweepRetention();
+
+        assertTrue(storage.estimateMemoryBytes() < before);
+        assertTrue(storage.getRecordCount() < com.data_management.TimeSeries.CHUNK_SIZE + 1,
+                "Only the chunk being written should remain, was " + storage.getRecordCount());
+        assertEquals(1, storage.getRecords(1, "Cholesterol", 0, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    void testJournalRecoversRecordsAfterRestart(@TempDir Path directory) throws IOException {
+        DataStorage storage = new DataStorage();
+        assertEquals(0, storage.openJournal(directory));
+        storage.addPatientData(1, 98.0, "Saturation", 1000L);
+        DataBatch batch = new DataBatch();
+        for (int i = 0; i < 5000; i++) {
+            batch.add(i % 10, i, "ECG", 2000L + i);
+        }
+        storage.addPatientData(batch);
+        storage.closeJournal();
+
+        DataStorage recovered = new DataStorage();
+        assertEquals(5001, recovered.openJournal(directory));
+        assertEquals(5001, recovered.getRecordCount());
+        List<PatientRecord> records = recovered.getRecords(1, 0L, Long.MAX_VALUE);
+        assertEquals(501, records.size());
+        assertEquals("Saturation", records.get(0).getRecordType());
+        assertEquals(1.0, records.get(1).getMeasurementValue());
+        recovered.closeJournal();
+    }
+
+    @Test
+    void testCheckpointReplacesOlderLogSegments(@TempDir Path directory) throws IOException {
+        DataStorage storage = new DataStorage();
+        storage.openJournal(directory);
+        for (int i = 0; i < 3000; i++) {
+            storage.addPatientData(7, i, "HeartRate", 1000L * i);
+        }
+        storage.checkpoint();
+        // a late reading and a new series after the snapshot come from the log
+        storage.addPatientData(7, -1.0, "HeartRate", 500L);
+        storage.addPatientData(8, 120.0, "SystolicPressure", 1000L);
+        storage.closeJournal();
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(2, files.count()); // the snapshot and the segment written after it
+        }
+        DataStorage recovered = new DataStorage();
+        assertEquals(3002, recovered.openJournal(directory));
+        List<PatientRecord> heartRate = recovered.getRecords(7, "HeartRate", 0L, 2000L);
+        assertEquals(4, heartRate.size());
+        assertEquals(-1.0, heartRate.get(1).getMeasurementValue());
+        assertEquals(1, recovered.getRecords(8, 0L, Long.MAX_VALUE).size());
+        recovered.closeJournal();
+    }
 }
@@ -0,0 +1,66 @@
+package data_management;
+
+import com.data_management.GorillaBlock;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GorillaBlockTest {
+
+    @Test
+    public void testRoundTripPreservesEveryBit() {
+        Random random = new Random(7);
+        int count = 5000;
+        long[] timestamps = new long[count];
+        double[] values = new double[count];
+        long timestamp = 1_700_000_000_000L;
+        double[] specials = {0.0, -0.0, Double.NaN, Double.MAX_VALUE, Double.MIN_VALUE, -1e300};
+        for (int i = 0; i < count; i++) {
+            // steady rate, jitter, and the occasional large gap
+            int kind = random.nextInt(10);
+            timestamp += kind == 0 ? random.nextInt(10_000_000) : 1000 + (kind == 1 ? random.nextInt(200) - 100 : 0);
+            timestamps[i] = timestamp;
+            values[i] = kind == 2 ? specials[random.nextInt(specials.length)] : random.nextGaussian() * 100;
+        }
+
+        GorillaBlock block = GorillaBlock.encode(timestamps, values, 0, count);
+        assertEquals(count, block.size());
+        assertEquals(timestamps[0], block.getFirstTimestamp());
+        assertEquals(timestamps[count - 1], block.getLastTimestamp());
+
+        GorillaBlock.Cursor cursor = new GorillaBlock.Cursor(block);
+        for (int i = 0; i < count; i++) {
+            assertTrue(cursor.next());
+            assertEquals(timestamps[i], cursor.timestamp(), "Timestamp " + i);
+            assertEquals(Double.doubleToRawLongBits(values[i]), Double.doubleToRawLongBits(cursor.value()), "Value " + i);
+        }
+        assertFalse(cursor.next());
+    }
+
+    @Test
+    public void testSaturationLikeReadingsCompressWell() {
+        int count = 1024;
+        long[] timestamps = new long[count];
+        double[] values = new double[count];
+        Random random = new Random(1);
+        double saturation = 97;
+        for (int i = 0; i < count; i++) {
+            timestamps[i] = 1_700_000_000_000L + i * 1000L;
+            if (random.nextInt(5) == 0) {
+                saturation = Math.max(90, Math.min(100, saturation + random.nextInt(3) - 1));
+            }
+            values[i] = saturation;
+        }
+
+        GorillaBlock block = GorillaBlock.encode(timestamps, values, 0, count);
+        assertTrue(block.getCompressionRatio() > 20, "Ratio was " + block.getCompressionRatio());
+
+        long[] decodedTimestamps = new long[count];
+        double[] decodedValues = new double[count];
+        block.decode(decodedTimestamps, decodedValues);
+        assertArrayEquals(timestamps, decodedTimestamps);
+        assertArrayEquals(values, decodedValues);
+    }
+}
@@ -0,0 +1,69 @@
+package data_management;
+
+import com.cardio_generator.generators.BloodLevelsDataGenerator;
+import com.cardio_generator.outputs.InMemoryOutputStrategy;
+import com.data_management.DataStorage;
+import com.data_management.InMemoryDataReader;
+import com.data_management.PatientRecord;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InMemoryDataReaderTest {
+
+    @Test
+    void testConcurrentProducersReachStorage() throws Exception {
+        // small buffer so producers have to wait for the reader
+        InMemoryOutputStrategy strategy = new InMemoryOutputStrategy(64);
+        DataStorage storage = new DataStorage();
+        InMemoryDataReader reader = new InMemoryDataReader(strategy);
+        reader.readData(storage);
+
+        Thread[] producers = new Thread[4];
+        for (int t = 0; t < producers.length; t++) {
+            int patientId = t + 1;
+            producers[t] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    strategy.output(patientId, i, "ECG", i * 0.5);
+                }
+            });
+            producers[t].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        reader.close();
+        TimeUnit.MILLISECONDS.sleep(200);
+
+        assertEquals(40_000, reader.getRecordsRead());
+        List<PatientRecord> records = storage.getRecords(3, 0, Long.MAX_VALUE);
+        assertEquals(10_000, records.size());
+        // a single producer's readings stay in order
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(i, records.get(i).getTimestamp());
+            assertEquals(i * 0.5, records.get(i).getMeasurementValue());
+        }
+    }
+
+    @Test
+    void testTextReadingsAreParsedOrDropped() throws Exception {
+        InMemoryOutputStrategy strategy = new InMemoryOutputStrategy();
+        DataStorage storage = new DataStorage();
+        InMemoryDataReader reader = new InMemoryDataReader(strategy);
+        reader.readData(storage);
+
+        strategy.output(9, 1000L, "Saturation", "97.0%");
+        strategy.output(9, 2000L, "Alert", "triggered");
+        new BloodLevelsDataGenerator(9).generate(9, strategy);
+        reader.close();
+        TimeUnit.MILLISECONDS.sleep(200);
+
+        List<PatientRecord> records = storage.getRecords(9, 0, Long.MAX_VALUE);
+        assertEquals(4, records.size());
+        assertEquals(97.0, records.get(0).getMeasurementValue());
+        assertEquals(1, strategy.getDroppedCount());
+    }
+}
@@ -0,0 +1,81 @@
+package data_management;
+
+import com.cardio_generator.generators.BloodPressureDataGenerator;
+import com.cardio_generator.outputs.OutputStrategy;
+import com.util.IntObjectMap;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IntObjectMapTest {
+
+    @Test
+    public void testPutAndGetAcrossGrowth() {
+        IntObjectMap<String> map = new IntObjectMap<>();
+        for (int key = -500; key < 500; key++) {
+            assertNull(map.put(key, "v" + key));
+        }
+        map.put(Integer.MAX_VALUE, "max");
+        map.put(Integer.MIN_VALUE, "min");
+
+        assertEquals(1002, map.size());
+        assertEquals("v-500", map.get(-500));
+        assertEquals("v0", map.get(0));
+        assertEquals("max", map.get(Integer.MAX_VALUE));
+        assertEquals("min", map.get(Integer.MIN_VALUE));
+        assertNull(map.get(500));
+
+        assertEquals("v7", map.put(7, "seven"));
+        assertEquals("seven", map.get(7));
+        assertEquals(1002, map.values().size());
+
+        map.clear();
+        assertEquals(0, map.size());
+        assertNull(map.get(7));
+    }
+
+    @Test
+    public void testComputeIfAbsentCreatesOneValuePerKey() throws InterruptedException {
+        IntObjectMap<Object> map = new IntObjectMap<>();
+        AtomicInteger created = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread(() -> {
+                for (int key = 0; key < 10_000; key++) {
+                    map.computeIfAbsent(key, k -> {
+                        created.incrementAndGet();
+                        return new Object();
+                    });
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(10_000, created.get());
+        assertEquals(10_000, map.size());
+        Set<Object> distinct = new HashSet<>();
+        map.forEach(distinct::add);
+        assertEquals(10_000, distinct.size());
+    }
+
+    @Test
+    public void testGeneratorAcceptsPatientIdsBeyondCount() {
+        List<Integer> patients = new ArrayList<>();
+        OutputStrategy output = (patientId, timestamp, label, data) -> patients.add(patientId);
+        BloodPressureDataGenerator generator = new BloodPressureDataGenerator(10);
+        generator.generate(0, output);
+        generator.generate(2_000_000_000, output);
+
+        assertTrue(patients.contains(0));
+        assertTrue(patients.contains(2_000_000_000));
+    }
+}
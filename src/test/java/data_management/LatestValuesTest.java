@@ -0,0 +1,85 @@
+package data_management;
+
+import com.data_management.DataStorage;
+import com.data_management.Patient;
+import com.data_management.PatientRecord;
+import com.data_management.SignalRegistry;
+import com.data_management.ShardedDataStorage;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatestValuesTest {
+
+    @Test
+    public void testLatestReadingByTimestamp() {
+        DataStorage storage = new DataStorage();
+        storage.addPatientData(1, 80, "HeartRate", 1000L);
+        storage.addPatientData(1, 85, "HeartRate", 3000L);
+        // arrives late, so it does not replace the newer reading
+        storage.addPatientData(1, 70, "HeartRate", 2000L);
+        storage.addPatientData(1, 97, "Saturation", 1500L);
+
+        PatientRecord heartRate = storage.getLatest(1, "Heart Rate");
+        assertEquals(85, heartRate.getMeasurementValue());
+        assertEquals(3000L, heartRate.getTimestamp());
+        assertEquals("HeartRate", heartRate.getRecordType());
+        assertEquals(97, storage.getLatest(1, "Saturation").getMeasurementValue());
+        assertNull(storage.getLatest(1, "ECG"));
+        assertNull(storage.getLatest(2, "HeartRate"));
+    }
+
+    @Test
+    public void testForEachLatestVisitsEveryPatientAndSignal() {
+        try (ShardedDataStorage storage = new ShardedDataStorage(2)) {
+            for (int patient = 0; patient < 100; patient++) {
+                storage.addPatientData(patient, patient, "HeartRate", 1000L);
+                storage.addPatientData(patient, patient + 1, "HeartRate", 2000L);
+                storage.addPatientData(patient, 98, "Saturation", 2000L);
+            }
+            // waits for the queued writes
+            assertEquals(300, storage.getRecordCount());
+
+            AtomicInteger visited = new AtomicInteger();
+            storage.forEachLatest((patientId, signalId, timestamp, value) -> {
+                visited.incrementAndGet();
+                assertEquals(2000L, timestamp);
+                if (signalId == SignalRegistry.HEART_RATE) {
+                    assertEquals(patientId + 1, value);
+                }
+            });
+            assertEquals(200, visited.get());
+        }
+    }
+
+    @Test
+    public void testReadersNeverSeeTornReadings() throws InterruptedException {
+        Patient patient = new Patient(1);
+        AtomicBoolean done = new AtomicBoolean();
+        Thread writer = new Thread(() -> {
+            for (long i = 1; i <= 200_000; i++) {
+                patient.addRecord(i, SignalRegistry.ECG, i);
+            }
+            done.set(true);
+        });
+        writer.start();
+        AtomicInteger torn = new AtomicInteger();
+        while (!done.get()) {
+            PatientRecord latest = patient.getLatest(SignalRegistry.ECG);
+            if (latest != null && latest.getMeasurementValue() != latest.getTimestamp()) {
+                torn.incrementAndGet();
+            }
+            patient.forEachLatest((patientId, signalId, timestamp, value) -> {
+                if (value != timestamp) {
+                    torn.incrementAndGet();
+                }
+            });
+        }
+        writer.join();
+        assertEquals(0, torn.get());
+        assertEquals(200_000L, patient.getLatest(SignalRegistry.ECG).getTimestamp());
+    }
+}
@@ -0,0 +1,173 @@
+package data_management;
+
+import com.data_management.Aggregate;
+import com.data_management.MappedDataStorage;
+import com.data_management.MappedSegmentStore;
+import com.data_management.Patient;
+import com.data_management.PatientRecord;
+import com.data_management.SignalRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedDataStorageTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testQueriesReadMappedRecords() throws IOException {
+        try (MappedDataStorage storage = new MappedDataStorage(directory)) {
+            storage.addPatientData(1, 100.0, "HeartRate", 2000L);
+            storage.addPatientData(1, 98.0, "Saturation", 1000L);
+            storage.addPatientData(2, 120.0, "HeartRate", 1500L);
+            storage.addPatientData(1, 110.0, "HeartRate", 3000L);
+
+            List<PatientRecord> records = storage.getRecords(1, 1000L, 2000L);
+            assertEquals(2, records.size());
+            assertEquals(1000L, records.get(0).getTimestamp());
+            assertEquals("Saturation", records.get(0).getRecordType());
+            assertEquals(100.0, records.get(1).getMeasurementValue());
+
+            List<PatientRecord> heartRate = storage.getRecords(1, "HeartRate", 0L, Long.MAX_VALUE);
+            assertEquals(2, heartRate.size());
+            assertTrue(storage.getRecords(1, "ECG", 0L, Long.MAX_VALUE).isEmpty());
+            assertTrue(storage.getRecords(3, 0L, Long.MAX_VALUE).isEmpty());
+
+            List<Aggregate> aggregates = storage.getAggregates(1, "HeartRate", 0L, 10_000L, 10_000L);
+            assertEquals(1, aggregates.size());
+            assertEquals(105.0, aggregates.get(0).getAverage());
+            assertEquals(4, storage.getRecordCount());
+        }
+    }
+
+    @Test
+    public void testFullSegmentsRollOver() throws IOException {
+        MappedSegmentStore store = new MappedSegmentStore(directory, 4, 10_000L, 8);
+        try (MappedDataStorage storage = new MappedDataStorage(store)) {
+            for (int i = 0; i < 100; i++) {
+                storage.addPatientData(i % 3, i, "ECG", i * 50L);
+            }
+            // 33 or 34 readings per patient shard, in segments of 8
+            assertEquals(15, store.getSegmentCount());
+            List<PatientRecord> records = storage.getRecords(0, 0L, Long.MAX_VALUE);
+            assertEquals(34, records.size());
+            for (int i = 1; i < records.size(); i++) {
+                assertTrue(records.get(i - 1).getTimestamp() < records.get(i).getTimestamp());
+            }
+            assertEquals(2, storage.getRecords(1, 1000L, 1300L).size());
+        }
+    }
+
+    @Test
+    public void testSegmentsAreRemappedAfterRestart() throws IOException {
+        try (MappedDataStorage storage = new MappedDataStorage(new MappedSegmentStore(directory, 4, 1000L, 16))) {
+            for (int i = 0; i < 40; i++) {
+                storage.addPatientData(7, i, i % 2 == 0 ? "ECG" : "Saturation", i * 100L);
+            }
+        }
+
+        try (MappedDataStorage reopened = new MappedDataStorage(new MappedSegmentStore(directory, 4, 1000L, 16))) {
+            assertEquals(40, reopened.getRecordCount());
+            assertEquals(20, reopened.getRecords(7, "Saturation", 0L, Long.MAX_VALUE).size());
+            reopened.addPatientData(7, 99.0, "ECG", 5000L);
+
+            List<Patient> patients = reopened.getAllPatients();
+            assertEquals(1, patients.size());
+            assertEquals(7, patients.get(0).getId());
+            assertEquals(41, patients.get(0).getRecords().size());
+        }
+    }
+
+    @Test
+    public void testLatestReadingsAreKeptOnAppendAndAfterRestart() throws IOException {
+        try (MappedDataStorage storage = new MappedDataStorage(new MappedSegmentStore(directory, 4, 1000L, 16))) {
+            storage.addPatientData(1, 80.0, "HeartRate", 2000L);
+            storage.addPatientData(1, 95.0, "Saturation", 1500L);
+            // a late reading does not replace a newer one
+            storage.addPatientData(1, 70.0, "HeartRate", 1000L);
+            storage.addPatientData(2, 60.0, "HeartRate", 500L);
+
+            assertEquals(80.0, storage.getLatest(1, "HeartRate").getMeasurementValue());
+            assertEquals(2000L, storage.getLatest(1, "HeartRate").getTimestamp());
+            assertNull(storage.getLatest(2, "Saturation"));
+            assertNull(storage.getLatest(3, "HeartRate"));
+        }
+
+        try (MappedDataStorage reopened = new MappedDataStorage(new MappedSegmentStore(directory, 4, 1000L, 16))) {
+            assertEquals(80.0, reopened.getLatest(1, "HeartRate").getMeasurementValue());
+            reopened.addPatientData(1, 90.0, "HeartRate", 3000L);
+            assertEquals(3000L, reopened.getLatest(1, "HeartRate").getTimestamp());
+
+            List<String> latest = new ArrayList<>();
+            reopened.forEachLatest((patientId, signalId, timestamp, value) ->
+                    latest.add(patientId + ":" + SignalRegistry.nameOf(signalId) + "=" + value));
+            Collections.sort(latest);
+            assertEquals(List.of("1:HeartRate=90.0", "1:Saturation=95.0", "2:HeartRate=60.0"), latest);
+        }
+    }
+
+    @Test
+    public void testQueriesOnlyReturnTheRequestedPatient() throws IOException {
+        // one shard, so all patients share the segments
+        try (MappedDataStorage storage = new MappedDataStorage(new MappedSegmentStore(directory, 1, 10_000L, 64))) {
+            for (int i = 0; i < 300; i++) {
+                storage.addPatientData(i % 5, i, "HeartRate", i * 10L);
+            }
+        }
+
+        try (MappedDataStorage reopened = new MappedDataStorage(new MappedSegmentStore(directory, 1, 10_000L, 64))) {
+            assertEquals(List.of(0, 1, 2, 3, 4), reopened.findPatients("HeartRate", 0L, Long.MAX_VALUE,
+                    Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY));
+            List<PatientRecord> records = reopened.getRecords(3, 0L, Long.MAX_VALUE);
+            assertEquals(60, records.size());
+            for (PatientRecord record : records) {
+                assertEquals(3, record.getPatientId());
+                assertEquals(record.getTimestamp(), record.getMeasurementValue() * 10L);
+            }
+            // readings appended after reopening are indexed too
+            reopened.addPatientData(3, 1.0, "Saturation", 5000L);
+            assertEquals(61, reopened.getRecords(3, 0L, Long.MAX_VALUE).size());
+            assertEquals(5, reopened.getAllPatients().size());
+        }
+    }
+
+    @Test
+    public void testClearDeletesSegments() throws IOException {
+        try (MappedDataStorage storage = new MappedDataStorage(directory)) {
+            storage.addPatientData(1, 100.0, "HeartRate", 1000L);
+            storage.addPatientData(2, 90.0, "HeartRate", 1000L);
+            storage.clear();
+
+            assertEquals(0, storage.getRecordCount());
+            assertTrue(storage.getAllPatients().isEmpty());
+            assertTrue(storage.getRecords(1, 0L, Long.MAX_VALUE).isEmpty());
+            storage.addPatientData(1, 80.0, "HeartRate", 2000L);
+            assertEquals(1, storage.getRecordCount());
+        }
+
+        try (MappedDataStorage reopened = new MappedDataStorage(directory)) {
+            assertEquals(1, reopened.getRecordCount());
+            assertEquals(80.0, reopened.getRecords(1, 0L, Long.MAX_VALUE).get(0).getMeasurementValue());
+        }
+    }
+
+    @Test
+    public void testClosedStoreRejectsAppends() throws IOException {
+        MappedDataStorage storage = new MappedDataStorage(directory);
+        storage.addPatientData(1, 100.0, "HeartRate", 1000L);
+        storage.close();
+
+        assertThrows(IllegalStateException.class, () -> storage.addPatientData(1, 90.0, "HeartRate", 2000L));
+        try (MappedDataStorage reopened = new MappedDataStorage(directory)) {
+            assertEquals(1, reopened.getRecordCount());
+        }
+    }
+}
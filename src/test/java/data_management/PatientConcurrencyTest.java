@@ -0,0 +1,103 @@
+package data_management;
+
+import com.data_management.DataStorage;
+import com.data_management.Patient;
+import com.data_management.PatientRecord;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PatientConcurrencyTest {
+
+    private static final String[] TYPES = {"ECG", "Saturation", "HeartRate"};
+
+    @Test
+    public void testReadersSeeConsistentSnapshotsDuringAppend() throws Exception {
+        Patient patient = new Patient(1);
+        int readings = 200_000;
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < readings; i++) {
+                // the value encodes the timestamp so readers can spot torn or stale slots
+                patient.addRecord(i, TYPES[i % TYPES.length], i);
+            }
+            writing.set(false);
+        });
+
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < 2; r++) {
+            readers.add(new Thread(() -> {
+                try {
+                    int lastSize = 0;
+                    while (writing.get()) {
+                        List<PatientRecord> records = patient.getRecords();
+                        assertTrue(records.size() >= lastSize, "Snapshots should never shrink");
+                        lastSize = records.size();
+                        long previous = -1;
+                        for (PatientRecord record : records) {
+                            assertEquals(record.getTimestamp(), (long) record.getMeasurementValue());
+                            assertEquals(TYPES[(int) (record.getTimestamp() % TYPES.length)], record.getRecordType());
+                            assertTrue(record.getTimestamp() > previous, "Records should be ordered");
+                            previous = record.getTimestamp();
+                        }
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }));
+        }
+
+        readers.forEach(Thread::start);
+        writer.start();
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertNull(failure.get(), () -> "Reader failed: " + failure.get());
+        assertEquals(readings, patient.getRecords().size());
+    }
+
+    @Test
+    public void testParallelIngestLosesNoRecords() throws Exception {
+        DataStorage storage = new DataStorage();
+        int threads = 4;
+        int perThread = 50_000;
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            writers.add(new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    // every thread writes to the same few patients
+                    storage.addPatientData(i % 3, i, TYPES[thread % TYPES.length], (long) thread * perThread + i);
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+        start.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        int total = 0;
+        for (Patient patient : storage.getAllPatients()) {
+            total += patient.getRecords().size();
+        }
+        assertEquals(threads * perThread, total, "No record should be lost under parallel ingest");
+    }
+}
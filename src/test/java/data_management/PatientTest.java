@@ -2,6 +2,7 @@ package data_management;
 
 import com.data_management.Patient;
 import com.data_management.PatientRecord;
+import com.data_management.TimeSeries;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -50,4 +51,37 @@ public class PatientTest {
         assertEquals(1, records.size(), "Should return 1 record for exact timestamp match");
         assertEquals("BloodPressureDiastolic", records.get(0).getRecordType());
     }
+
+    @Test
+    public void testRecordsOfAllTypesAreOrderedByTimestamp() {
+        Patient interleaved = new Patient(2);
+        int readings = 3 * TimeSeries.CHUNK_SIZE;
+        for (int i = 0; i < readings; i++) {
+            interleaved.addRecord(i, i % 3 == 0 ? "ECG" : "HeartRate", 1000L + i);
+        }
+
+        List<PatientRecord> records = interleaved.getRecords();
+        assertEquals(readings, records.size());
+        for (int i = 0; i < readings; i++) {
+            PatientRecord record = records.get(i);
+            assertEquals(2, record.getPatientId());
+            assertEquals(1000L + i, record.getTimestamp());
+            assertEquals(i, record.getMeasurementValue());
+            assertEquals(i % 3 == 0 ? "ECG" : "HeartRate", record.getRecordType());
+        }
+        assertEquals(TimeSeries.CHUNK_SIZE, interleaved.getSeries("ECG").size());
+        assertEquals(2 * TimeSeries.CHUNK_SIZE, interleaved.getSeries("HeartRate").size());
+        assertNull(interleaved.getSeries("Saturation"));
+    }
+
+    @Test
+    public void testGetRecordsReturnsCopy() {
+        List<PatientRecord> records = patient.getRecords();
+        assertEquals(3, records.size());
+
+        records.clear();
+        records.add(new PatientRecord(1, 99.0, "HeartRate", now));
+        assertEquals(3, patient.getRecords().size(), "Changing the returned list must not change the patient");
+        assertEquals(70.0, patient.getRecords(now, now).get(0).getMeasurementValue());
+    }
 }
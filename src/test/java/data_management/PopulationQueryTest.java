@@ -0,0 +1,99 @@
+package data_management;
+
+import com.data_management.DataStorage;
+import com.data_management.PatientRecord;
+import com.data_management.ShardedDataStorage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PopulationQueryTest {
+
+    private static final long START = 1_700_000_000_000L;
+    private static final long MINUTE = 60_000L;
+
+    private static void fill(DataStorage storage) {
+        Random random = new Random(42);
+        // two hours of one reading per patient per minute; patients 10, 20, .. 50 drop below 92 every 30 minutes
+        for (int minute = 0; minute < 120; minute++) {
+            for (int patient = 50; patient >= 1; patient--) {
+                double saturation = patient % 10 == 0 && minute % 30 == 7 ? 88 : 93 + random.nextInt(7);
+                storage.addPatientData(patient, saturation, "Saturation", START + minute * MINUTE + patient);
+            }
+        }
+        storage.addPatientData(3, 180, "Cholesterol", START + 5 * MINUTE);
+        storage.addPatientData(4, 210, "Cholesterol", START + 65 * MINUTE);
+    }
+
+    @Test
+    public void testFindPatientsMatchesFullScan() {
+        DataStorage storage = new DataStorage();
+        fill(storage);
+
+        long from = START + 25 * MINUTE;
+        long to = START + 45 * MINUTE;
+        TreeSet<Integer> expected = new TreeSet<>();
+        for (int patient = 1; patient <= 50; patient++) {
+            for (PatientRecord record : storage.getRecords(patient, "Saturation", from, to)) {
+                if (record.getMeasurementValue() < 92) {
+                    expected.add(patient);
+                }
+            }
+        }
+        List<Integer> found = storage.findPatients("Saturation", from, to, Double.NEGATIVE_INFINITY,
+                Math.nextDown(92.0));
+        assertEquals(new ArrayList<>(expected), found);
+        assertEquals(List.of(10, 20, 30, 40, 50), found);
+
+        // the readings at minute 7 lie outside this range
+        assertTrue(storage.findPatients("Saturation", START + 8 * MINUTE, START + 36 * MINUTE,
+                Double.NEGATIVE_INFINITY, 91).isEmpty());
+        assertTrue(storage.findPatients("ECG", START, START + 120 * MINUTE, 0, 100).isEmpty());
+        assertEquals(50, storage.findPatients("Saturation", START, START + 120 * MINUTE, 0, 100).size());
+    }
+
+    @Test
+    public void testPopulationRecordsInRange() {
+        DataStorage storage = new DataStorage();
+        fill(storage);
+
+        List<PatientRecord> cholesterol = storage.getPopulationRecords("Cholesterol", START, START + 60 * MINUTE);
+        assertEquals(1, cholesterol.size());
+        assertEquals(3, cholesterol.get(0).getPatientId());
+
+        List<PatientRecord> minute = storage.getPopulationRecords("Saturation", START + 10 * MINUTE,
+                START + 11 * MINUTE - 1);
+        assertEquals(50, minute.size());
+        for (int i = 1; i < minute.size(); i++) {
+            assertTrue(minute.get(i - 1).getPatientId() < minute.get(i).getPatientId());
+        }
+        // five patients at minutes 7, 37, 67 and 97
+        assertEquals(20, storage.getPopulationRecords("Saturation", START, START + 120 * MINUTE, 0, 90).size());
+    }
+
+    @Test
+    public void testShardedStorageMergesShardResults() {
+        DataStorage plain = new DataStorage();
+        fill(plain);
+        try (ShardedDataStorage sharded = new ShardedDataStorage(3)) {
+            fill(sharded);
+            long from = START + 20 * MINUTE;
+            long to = START + 100 * MINUTE;
+            assertEquals(plain.findPatients("Saturation", from, to, 0, 91),
+                    sharded.findPatients("Saturation", from, to, 0, 91));
+
+            List<PatientRecord> expected = plain.getPopulationRecords("Saturation", from, to);
+            List<PatientRecord> actual = sharded.getPopulationRecords("Saturation", from, to);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getPatientId(), actual.get(i).getPatientId());
+                assertEquals(expected.get(i).getTimestamp(), actual.get(i).getTimestamp());
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package data_management;
+
+import com.data_management.Aggregate;
+import com.data_management.DataStorage;
+import com.data_management.PatientRecord;
+import com.data_management.QueryCache;
+import com.data_management.ShardedDataStorage;
+import com.data_management.WindowStats;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QueryCacheTest {
+
+    private static final long START = 1_700_000_000_000L;
+
+    private static void fill(DataStorage storage, int patientId, int readings) {
+        for (int i = 0; i < readings; i++) {
+            storage.addPatientData(patientId, 60 + i % 20, "HeartRate", START + i * 1000L);
+        }
+    }
+
+    @Test
+    public void testRepeatedQueriesHit() {
+        DataStorage storage = new DataStorage();
+        fill(storage, 1, 100);
+        try (QueryCache cache = new QueryCache(storage, 10_000)) {
+            List<PatientRecord> first = cache.getRecords(1, "HeartRate", START, START + 59_000);
+            List<PatientRecord> second = cache.getRecords(1, "HeartRate", START, START + 59_000);
+            assertEquals(60, first.size());
+            assertSame(first, second);
+            assertThrows(UnsupportedOperationException.class, () -> second.remove(0));
+
+            WindowStats stats = cache.getStats(1, "HeartRate", START, START + 59_000);
+            assertSame(stats, cache.getStats(1, "HeartRate", START, START + 59_000));
+            List<Aggregate> aggregates = cache.getAggregates(1, "HeartRate", START, START + 99_000, 10_000);
+            assertEquals(10, aggregates.size());
+            assertSame(aggregates, cache.getAggregates(1, "HeartRate", START, START + 99_000, 10_000));
+            // a different resolution is a different question
+            assertNotSame(aggregates, cache.getAggregates(1, "HeartRate", START, START + 99_000, 20_000));
+
+            assertEquals(3, cache.getHitCount());
+            assertEquals(4, cache.getMissCount());
+            assertEquals(3.0 / 7, cache.getHitRate(), 1e-9);
+            assertEquals(4, cache.size());
+        }
+    }
+
+    @Test
+    public void testOnlyAppendsInsideTheWindowInvalidate() {
+        DataStorage storage = new DataStorage();
+        fill(storage, 1, 100);
+        fill(storage, 2, 100);
+        try (QueryCache cache = new QueryCache(storage, 10_000)) {
+            List<PatientRecord> window = cache.getRecords(1, "HeartRate", START, START + 9_000);
+            List<PatientRecord> all = cache.getRecords(1, START, START + 9_000);
+
+            // after the window, another signal in it, another patient
+            storage.addPatientData(1, 70, "HeartRate", START + 100_000);
+            storage.addPatientData(1, 98, "Saturation", START + 5_500);
+            storage.addPatientData(2, 70, "HeartRate", START + 5_500);
+            assertSame(window, cache.getRecords(1, "HeartRate", START, START + 9_000));
+
+            // the saturation reading falls into the query over every type
+            List<PatientRecord> refreshed = cache.getRecords(1, START, START + 9_000);
+            assertNotSame(all, refreshed);
+            assertEquals(11, refreshed.size());
+            assertEquals(1, cache.getInvalidationCount());
+            assertEquals(1, cache.getHitCount());
+
+            // a late reading inside the window
+            storage.addPatientData(1, 200, "HeartRate", START + 4_500);
+            List<PatientRecord> updated = cache.getRecords(1, "HeartRate", START, START + 9_000);
+            assertEquals(11, updated.size());
+            assertEquals(200, updated.get(5).getMeasurementValue());
+            assertEquals(3, cache.getInvalidationCount());
+        }
+    }
+
+    @Test
+    public void testLeastRecentlyUsedResultsAreEvicted() {
+        DataStorage storage = new DataStorage();
+        fill(storage, 1, 100);
+        try (QueryCache cache = new QueryCache(storage, 100)) {
+            // 40 records each
+            List<PatientRecord> a = cache.getRecords(1, "HeartRate", START, START + 39_000);
+            List<PatientRecord> b = cache.getRecords(1, "HeartRate", START + 40_000, START + 79_000);
+            // touch a so that b is the eldest
+            assertSame(a, cache.getRecords(1, "HeartRate", START, START + 39_000));
+            cache.getRecords(1, "HeartRate", START + 20_000, START + 59_000);
+
+            assertEquals(80, cache.getCachedRecords());
+            assertEquals(1, cache.getEvictionCount());
+            assertSame(a, cache.getRecords(1, "HeartRate", START, START + 39_000));
+            assertNotSame(b, cache.getRecords(1, "HeartRate", START + 40_000, START + 79_000));
+
+            // larger than the whole cache: answered but not kept
+            assertEquals(100, cache.getRecords(1, START, START + 99_000).size());
+            assertTrue(cache.getCachedRecords() <= 100);
+        }
+    }
+
+    @Test
+    public void testShardedStorageInvalidates() {
+        try (ShardedDataStorage storage = new ShardedDataStorage(4);
+             QueryCache cache = new QueryCache(storage, 10_000)) {
+            for (int patient = 1; patient <= 8; patient++) {
+                fill(storage, patient, 50);
+            }
+            // waits for the shards; readings applied while a query runs keep it from being cached
+            assertEquals(400, storage.getRecordCount());
+            WindowStats before = cache.getStats(7, "HeartRate", START, START + 49_000);
+            assertEquals(50, before.getCount());
+            assertSame(before, cache.getStats(7, "HeartRate", START, START + 49_000));
+
+            storage.addPatientData(7, 300, "HeartRate", START + 20_500);
+            // waits for the shards to apply the reading
+            assertEquals(401, storage.getRecordCount());
+            WindowStats after = cache.getStats(7, "HeartRate", START, START + 49_000);
+            assertEquals(51, after.getCount());
+            assertEquals(300, after.getMax());
+        }
+    }
+
+    @Test
+    public void testClosedCacheStopsFollowingAppends() {
+        DataStorage storage = new DataStorage();
+        fill(storage, 1, 10);
+        QueryCache cache = new QueryCache(storage, 10_000);
+        cache.getRecords(1, START, START + 9_000);
+        cache.close();
+        assertEquals(0, cache.size());
+        storage.addPatientData(1, 70, "HeartRate", START + 500);
+        assertEquals(0, cache.getInvalidationCount());
+    }
+}
@@ -0,0 +1,141 @@
+package data_management;
+
+import com.data_management.DataStorage;
+import com.data_management.Patient;
+import com.data_management.PatientRecord;
+import com.data_management.RecordCursor;
+import com.data_management.ShardedDataStorage;
+import com.data_management.SignalRegistry;
+import com.data_management.TimeSeries;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RecordCursorTest {
+
+    private static final long START = 1_700_000_000_000L;
+
+    private static List<PatientRecord> drain(RecordCursor cursor) {
+        List<PatientRecord> records = new ArrayList<>();
+        while (cursor.next()) {
+            records.add(cursor.toRecord());
+        }
+        assertFalse(cursor.next());
+        return records;
+    }
+
+    private static void assertSameRecords(List<PatientRecord> expected, List<PatientRecord> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            PatientRecord e = expected.get(i);
+            PatientRecord a = actual.get(i);
+            assertEquals(e.getPatientId(), a.getPatientId(), "patient at " + i);
+            assertEquals(e.getSignalId(), a.getSignalId(), "signal at " + i);
+            assertEquals(e.getTimestamp(), a.getTimestamp(), "timestamp at " + i);
+            assertEquals(e.getMeasurementValue(), a.getMeasurementValue(), "value at " + i);
+        }
+    }
+
+    @Test
+    public void testViewCursorMatchesViewAcrossSealedChunksAndLateReadings() {
+        TimeSeries series = new TimeSeries(4, "ECG");
+        int readings = 5 * TimeSeries.CHUNK_SIZE + 100;
+        for (int i = 0; i < readings; i++) {
+            series.append(START + i * 10L, Math.sin(i * 0.1));
+        }
+        // late readings, one of them with the timestamp of a stored reading
+        series.append(START + 25, 7.0);
+        series.append(START + 20, 8.0);
+        series.append(START + 3000L * 10 + 5, 9.0);
+
+        TimeSeries.View all = series.snapshot();
+        RecordCursor cursor = all.cursor();
+        for (int i = 0; i < all.size(); i++) {
+            assertTrue(cursor.next());
+            assertEquals(all.timestampAt(i), cursor.timestamp(), "timestamp at " + i);
+            assertEquals(all.valueAt(i), cursor.value(), "value at " + i);
+            assertEquals(4, cursor.patientId());
+            assertEquals(SignalRegistry.ECG, cursor.signalId());
+        }
+        assertFalse(cursor.next());
+
+        TimeSeries.View window = series.range(START + 15, START + 2000L * 10);
+        assertSameRecords(window, drain(window.cursor()));
+        assertFalse(series.range(START - 10, START - 1).cursor().next());
+    }
+
+    @Test
+    public void testPatientCursorMergesTypesByTimestamp() {
+        Patient patient = new Patient(9);
+        for (int i = 0; i < 3000; i++) {
+            patient.addRecord(70 + i % 5, "HeartRate", START + i * 1000L);
+            if (i % 3 == 0) {
+                patient.addRecord(97, "Saturation", START + i * 1000L);
+            }
+            if (i % 7 == 0) {
+                patient.addRecord(120, "SystolicPressure", START + i * 1000L + 500);
+            }
+        }
+        assertSameRecords(patient.getRecords(), drain(patient.cursor(Long.MIN_VALUE, Long.MAX_VALUE)));
+        assertSameRecords(patient.getRecords(START + 10_000, START + 20_000),
+                drain(patient.cursor(START + 10_000, START + 20_000)));
+        assertSameRecords(patient.getRecords("Saturation", START, START + 30_000),
+                drain(patient.cursor("Saturation", START, START + 30_000)));
+        assertFalse(patient.cursor("ECG", Long.MIN_VALUE, Long.MAX_VALUE).next());
+        assertFalse(new Patient(10).cursor(Long.MIN_VALUE, Long.MAX_VALUE).next());
+    }
+
+    @Test
+    public void testMergeOrdersCursorsByTimestamp() {
+        List<PatientRecord> first = Arrays.asList(
+                new PatientRecord(1, 1, "HeartRate", 1000),
+                new PatientRecord(1, 4, "HeartRate", 3000));
+        List<PatientRecord> second = Arrays.asList(
+                new PatientRecord(1, 2, "Saturation", 1000),
+                new PatientRecord(1, 3, "Saturation", 2000),
+                new PatientRecord(1, 5, "Saturation", 4000));
+
+        List<PatientRecord> merged = drain(RecordCursor.merge(RecordCursor.of(first), RecordCursor.of(second)));
+        assertEquals(5, merged.size());
+        // the first cursor wins the tie at 1000
+        for (int i = 0; i < merged.size(); i++) {
+            assertEquals(i + 1, merged.get(i).getMeasurementValue());
+        }
+    }
+
+    @Test
+    public void testStorageCursors() {
+        DataStorage plain = new DataStorage();
+        try (ShardedDataStorage sharded = new ShardedDataStorage(3)) {
+            for (DataStorage storage : Arrays.asList(plain, sharded)) {
+                for (int i = 0; i < 500; i++) {
+                    storage.addPatientData(i % 5, i, "HeartRate", START + i);
+                    storage.addPatientData(i % 5, -i, "ECG", START + i);
+                }
+                assertSameRecords(storage.getRecords(2, START, START + 300),
+                        drain(storage.cursor(2, START, START + 300)));
+                assertSameRecords(storage.getRecords(3, "ECG", START, START + 300),
+                        drain(storage.cursor(3, "ECG", START, START + 300)));
+                assertFalse(storage.cursor(42, Long.MIN_VALUE, Long.MAX_VALUE).next());
+            }
+        }
+    }
+
+    @Test
+    public void testListCursorReturnsTheListsRecords() {
+        List<PatientRecord> records = Arrays.asList(
+                new PatientRecord(1, 90, "HeartRate", 2000),
+                new PatientRecord(1, 80, "HeartRate", 1000));
+        RecordCursor cursor = RecordCursor.of(records);
+        assertTrue(cursor.next());
+        assertSame(records.get(0), cursor.toRecord());
+        assertTrue(cursor.next());
+        assertEquals(1000, cursor.timestamp());
+        assertEquals(80, cursor.value());
+        assertFalse(cursor.next());
+    }
+}
@@ -0,0 +1,156 @@
+package data_management;
+
+import com.data_management.BatchPublisher;
+import com.data_management.DataBatch;
+import com.data_management.DataStorage;
+import com.data_management.DataStorageSubscriber;
+import com.data_management.PatientRecord;
+import com.data_management.ReorderBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReorderBufferTest {
+
+    private static DataBatch batch(long... timestamps) {
+        DataBatch batch = new DataBatch();
+        for (long timestamp : timestamps) {
+            batch.add(1, timestamp, "ECG", timestamp);
+        }
+        return batch;
+    }
+
+    private static void assertTimestamps(DataBatch batch, long... expected) {
+        assertEquals(expected.length, batch.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], batch.getTimestamp(i));
+            assertEquals(expected[i], batch.getMeasurementValue(i));
+        }
+    }
+
+    @Test
+    public void testReadingsWithinLatenessAreReleasedInOrder() {
+        List<DataBatch> late = new ArrayList<>();
+        ReorderBuffer buffer = new ReorderBuffer(100, late::add);
+        DataBatch released = new DataBatch();
+
+        buffer.add(batch(1000, 1050, 1020), released);
+        assertTimestamps(released);
+        assertEquals(950, buffer.getWatermark());
+        assertEquals(3, buffer.size());
+
+        buffer.add(batch(1130, 1010, 1200), released);
+        assertTimestamps(released, 1000, 1010, 1020, 1050);
+        assertEquals(2, buffer.getReorderedCount());
+
+        buffer.flush(released);
+        assertTimestamps(released, 1000, 1010, 1020, 1050, 1130, 1200);
+        assertTrue(late.isEmpty());
+        assertEquals(0, buffer.getLateCount());
+    }
+
+    @Test
+    public void testReadingsBeyondLatenessGoToLateChannel() {
+        List<DataBatch> late = new ArrayList<>();
+        ReorderBuffer buffer = new ReorderBuffer(100, late::add);
+        DataBatch released = new DataBatch();
+
+        buffer.add(batch(1000, 1100, 1200), released);
+        assertTimestamps(released, 1000, 1100);
+        // older than a released reading
+        buffer.add(batch(1050, 1150, 990), released);
+        assertTimestamps(released, 1000, 1100);
+
+        assertEquals(2, buffer.getLateCount());
+        assertEquals(1, late.size());
+        assertTimestamps(late.get(0), 1050, 990);
+        buffer.flush(released);
+        assertTimestamps(released, 1000, 1100, 1150, 1200);
+    }
+
+    @Test
+    public void testFullBufferReleasesOldestEarly() {
+        List<DataBatch> late = new ArrayList<>();
+        ReorderBuffer buffer = new ReorderBuffer(Long.MAX_VALUE, 3, late::add);
+        DataBatch released = new DataBatch();
+
+        buffer.add(batch(40, 10, 30, 20), released);
+        assertTimestamps(released, 10);
+        // older than the reading released to make room
+        buffer.add(batch(5), released);
+        assertEquals(1, buffer.getLateCount());
+        buffer.flush(released);
+        assertTimestamps(released, 10, 20, 30, 40);
+    }
+
+    @Test
+    public void testEqualTimestampsKeepArrivalOrder() {
+        ReorderBuffer buffer = new ReorderBuffer(0, late -> fail());
+        DataBatch in = new DataBatch();
+        for (int i = 0; i < 50; i++) {
+            in.add(1, i, "ECG", 500);
+        }
+        DataBatch released = new DataBatch();
+        buffer.add(in, released);
+        assertEquals(50, released.size());
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i, released.getMeasurementValue(i));
+        }
+    }
+
+    @Test
+    public void testSubscriberStoresHeldBackReadingsOfIdleStream() throws Exception {
+        DataStorage storage = new DataStorage();
+        ReorderBuffer buffer = new ReorderBuffer(TimeUnit.HOURS.toMillis(1), late -> fail());
+        DataStorageSubscriber subscriber = new DataStorageSubscriber(storage, buffer, 50);
+        BatchPublisher publisher = new BatchPublisher();
+        publisher.subscribe(subscriber);
+
+        // an hour of lateness would hold these back until the stream ends
+        publisher.publish(batch(1000, 3000, 2000));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (storage.getRecordCount() < 3 && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertEquals(3, storage.getRecordCount());
+        assertEquals(0, buffer.size());
+        assertEquals(2000, storage.getRecords(1, 0, Long.MAX_VALUE).get(1).getTimestamp());
+
+        publisher.close();
+        assertTrue(subscriber.awaitCompletion(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSubscriberStoresStreamInOrder() throws Exception {
+        DataStorage storage = new DataStorage();
+        List<DataBatch> late = new ArrayList<>();
+        ReorderBuffer buffer = new ReorderBuffer(2000, late::add);
+        DataStorageSubscriber subscriber = new DataStorageSubscriber(storage, buffer);
+        BatchPublisher publisher = new BatchPublisher();
+        publisher.subscribe(subscriber);
+
+        // each batch carries readings of up to a second before the previous batch
+        for (int round = 0; round < 20; round++) {
+            DataBatch batch = new DataBatch();
+            long base = 10_000 + round * 1000L;
+            for (int i = 9; i >= 0; i--) {
+                batch.add(1, base - i * 100, "ECG", base - i * 100);
+            }
+            publisher.publish(batch);
+        }
+        publisher.close();
+        assertTrue(subscriber.awaitCompletion(5, TimeUnit.SECONDS));
+
+        List<PatientRecord> records = storage.getRecords(1, 0, Long.MAX_VALUE);
+        assertEquals(200, records.size());
+        for (int i = 1; i < records.size(); i++) {
+            assertTrue(records.get(i - 1).getTimestamp() <= records.get(i).getTimestamp());
+        }
+        assertEquals(0, buffer.size());
+        assertTrue(late.isEmpty());
+    }
+}
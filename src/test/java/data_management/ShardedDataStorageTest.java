@@ -0,0 +1,114 @@
+package data_management;
+
+import com.data_management.DataBatch;
+import com.data_management.Patient;
+import com.data_management.PatientRecord;
+import com.data_management.ShardedDataStorage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShardedDataStorageTest {
+
+    @Test
+    public void testQueriesSeeEarlierWrites() {
+        try (ShardedDataStorage storage = new ShardedDataStorage(4)) {
+            storage.addPatientData(5, 98.0, "Saturation", 1000L);
+            storage.addPatientData(5, 97.0, "Saturation", 2000L);
+            storage.addPatientData(6, 80.0, "HeartRate", 1000L);
+
+            List<PatientRecord> records = storage.getRecords(5, 0L, Long.MAX_VALUE);
+            assertEquals(2, records.size());
+            assertEquals(97.0, records.get(1).getMeasurementValue());
+            assertEquals(1, storage.getRecords(6, "HeartRate", 0L, Long.MAX_VALUE).size());
+            assertEquals(3, storage.getRecordCount());
+            assertEquals(2, storage.getAllPatients().size());
+        }
+    }
+
+    @Test
+    public void testParallelIngestKeepsEveryReading() throws InterruptedException {
+        try (ShardedDataStorage storage = new ShardedDataStorage(4)) {
+            List<Thread> writers = new ArrayList<>();
+            for (int w = 0; w < 4; w++) {
+                int writer = w;
+                writers.add(new Thread(() -> {
+                    DataBatch batch = new DataBatch();
+                    for (int i = 0; i < 10_000; i++) {
+                        // each writer owns ten patients, so their readings arrive in order
+                        batch.add(writer * 10 + i % 10, i, "ECG", i);
+                        if (batch.size() == 100) {
+                            storage.addPatientData(batch);
+                            batch.clear();
+                        }
+                    }
+                }));
+            }
+            writers.forEach(Thread::start);
+            for (Thread writer : writers) {
+                writer.join();
+            }
+
+            assertEquals(40_000, storage.getRecordCount());
+            List<PatientRecord> records = storage.getRecords(13, "ECG", 0L, Long.MAX_VALUE);
+            assertEquals(1000, records.size());
+            for (int i = 1; i < records.size(); i++) {
+                assertTrue(records.get(i - 1).getTimestamp() < records.get(i).getTimestamp());
+            }
+        }
+    }
+
+    @Test
+    public void testForEachPatientRunsOnShardThreads() {
+        try (ShardedDataStorage storage = new ShardedDataStorage(3)) {
+            for (int patient = 0; patient < 30; patient++) {
+                storage.addPatientData(patient, 1.0, "HeartRate", 1000L);
+            }
+            AtomicInteger visited = new AtomicInteger();
+            Set<String> threads = ConcurrentHashMap.newKeySet();
+            storage.forEachPatient((Patient patient) -> {
+                visited.incrementAndGet();
+                threads.add(Thread.currentThread().getName());
+            });
+            assertEquals(30, visited.get());
+            assertEquals(3, threads.size());
+        }
+    }
+
+    @Test
+    public void testCloseAppliesQueuedWritesAndRejectsLaterOnes() throws InterruptedException {
+        ShardedDataStorage storage = new ShardedDataStorage(2);
+        AtomicInteger accepted = new AtomicInteger();
+        Thread writer = new Thread(() -> {
+            try {
+                for (int i = 0; ; i++) {
+                    storage.addPatientData(i % 10, 1.0, "HeartRate", i);
+                    accepted.incrementAndGet();
+                }
+            } catch (IllegalStateException e) {
+                // the storage was closed
+            }
+        });
+        writer.start();
+        while (accepted.get() < 1000) {
+            Thread.onSpinWait();
+        }
+        storage.close();
+        writer.join(5000);
+        assertFalse(writer.isAlive());
+
+        // every write that was accepted before the close was applied
+        int last = accepted.get() - 1;
+        for (int patient = 0; patient < 10; patient++) {
+            long expected = last - Math.floorMod(last - patient, 10);
+            assertEquals(expected, storage.getLatest(patient, "HeartRate").getTimestamp());
+        }
+        assertThrows(IllegalStateException.class, () -> storage.addPatientData(1, 1.0, "HeartRate", 0L));
+    }
+}
@@ -0,0 +1,108 @@
+package data_management;
+
+import com.data_management.ChangeSubscription;
+import com.data_management.DataBatch;
+import com.data_management.DataStorage;
+import com.data_management.Patient;
+import com.data_management.PatientRecord;
+import com.data_management.QueryCache;
+import com.data_management.SignalRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SignalRegistryTest {
+
+    @Test
+    public void testAliasesResolveToOneSignal() {
+        assertEquals(SignalRegistry.SATURATION, SignalRegistry.idOf("Saturation"));
+        assertEquals(SignalRegistry.SATURATION, SignalRegistry.idOf("BloodSaturation"));
+        assertEquals(SignalRegistry.SATURATION, SignalRegistry.idOf("Oxygen Saturation"));
+        assertEquals(SignalRegistry.SYSTOLIC_PRESSURE, SignalRegistry.idOf("SystolicPressure"));
+        assertEquals("BloodPressureSystolic", SignalRegistry.nameOf(SignalRegistry.SYSTOLIC_PRESSURE));
+        assertEquals("HeartRate", new PatientRecord(1, 80, "Heart Rate", 1000L).getRecordType());
+    }
+
+    @Test
+    public void testUnknownLabelsGetNewIds() {
+        assertEquals(-1, SignalRegistry.idOf("RespiratoryRateTest"));
+        int id = SignalRegistry.register("RespiratoryRateTest");
+        assertTrue(id > SignalRegistry.RED_BLOOD_CELLS);
+        assertEquals(id, SignalRegistry.register("RespiratoryRateTest"));
+        assertEquals(id, SignalRegistry.idOf("RespiratoryRateTest"));
+        assertEquals("RespiratoryRateTest", SignalRegistry.nameOf(id));
+
+        SignalRegistry.addAlias("Breaths Per Minute Test", id);
+        assertEquals(id, SignalRegistry.idOf("Breaths Per Minute Test"));
+        assertThrows(IllegalArgumentException.class, () -> SignalRegistry.addAlias("ECG", id));
+        assertThrows(IllegalArgumentException.class, () -> SignalRegistry.register(" "));
+    }
+
+    @Test
+    public void testQueriesDoNotRegisterLabels() {
+        DataStorage storage = new DataStorage();
+        int signals = SignalRegistry.size();
+        assertTrue(storage.getRecords(1, "QueriedOnlyTest", 0L, Long.MAX_VALUE).isEmpty());
+        assertTrue(new QueryCache(storage, 100).getRecords(1, "QueriedOnlyTest", 0L, Long.MAX_VALUE).isEmpty());
+        assertNull(storage.getLatest(1, "QueriedOnlyTest"));
+        storage.subscribeToSignal("QueriedOnlyTest", new CountingSubscriber()).close();
+        assertEquals(signals, SignalRegistry.size());
+        assertEquals(-1, SignalRegistry.idOf("QueriedOnlyTest"));
+    }
+
+    @Test
+    public void testSignalSubscriptionResolvesLabelOnceStored() throws Exception {
+        DataStorage storage = new DataStorage();
+        CountingSubscriber subscriber = new CountingSubscriber();
+        try (ChangeSubscription subscription = storage.subscribeToSignal("SubscribedFirstTest", subscriber)) {
+            storage.addPatientData(1, 1.0, "HeartRate", 1000L);
+            storage.addPatientData(1, 2.0, "SubscribedFirstTest", 1000L);
+            storage.addPatientData(2, 3.0, "SubscribedFirstTest", 2000L);
+        }
+        assertTrue(subscriber.completed.await(5, TimeUnit.SECONDS));
+        assertEquals(2, subscriber.readings.get());
+    }
+
+    @Test
+    public void testPatientStoresAliasesInOneSeries() {
+        Patient patient = new Patient(1);
+        patient.addRecord(120, "SystolicPressure", 1000L);
+        patient.addRecord(125, "BloodPressureSystolic", 2000L);
+        patient.addRecord(118, "Blood Pressure", 3000L);
+
+        assertEquals(1, patient.getAllSeries().size());
+        assertEquals(3, patient.getRecords("SystolicPressure", 0L, 5000L).size());
+        assertSame(patient.getSeries(SignalRegistry.SYSTOLIC_PRESSURE), patient.getSeries("Blood Pressure"));
+        assertNull(patient.getSeries("NeverSeenSignalTest"));
+    }
+
+    private static class CountingSubscriber implements Flow.Subscriber<DataBatch> {
+        final AtomicInteger readings = new AtomicInteger();
+        final CountDownLatch completed = new CountDownLatch(1);
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(DataBatch batch) {
+            readings.addAndGet(batch.size());
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            completed.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package data_management;
+
+import com.data_management.DataStorage;
+import com.data_management.PatientRecord;
+import com.data_management.RecordCursor;
+import com.data_management.RetentionPolicy;
+import com.data_management.ShardedDataStorage;
+import com.data_management.SpillPolicy;
+import com.data_management.TimeSeries;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SpillTest {
+
+    private static final long START = 1_700_000_000_000L;
+    private static final int READINGS = 20 * TimeSeries.CHUNK_SIZE;
+
+    @TempDir
+    Path directory;
+
+    private static void fill(DataStorage storage, int patients, long start) {
+        for (int i = 0; i < READINGS; i++) {
+            for (int patient = 1; patient <= patients; patient++) {
+                storage.addPatientData(patient, 60 + (i * patient) % 40, "HeartRate", start + i * 1000L);
+            }
+        }
+    }
+
+    private static long spillFiles(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("spill-")).count();
+        }
+    }
+
+    // segments are deleted once the references into them are collected
+    private static boolean awaitSegmentsDeleted(Path directory) throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (segments(directory) > 0 && System.nanoTime() < deadline) {
+            System.gc();
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        return segments(directory) == 0;
+    }
+
+    private static long segments(Path directory) throws IOException {
+        long count = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "spill-*.dat")) {
+            for (Path ignored : files) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void testOldBlocksMoveToDiskAndQueriesSpanBothTiers() throws IOException {
+        DataStorage storage = new DataStorage();
+        fill(storage, 3, START);
+        List<PatientRecord> before = storage.getRecords(2, START, START + READINGS * 1000L);
+        double meanBefore = storage.getStats(2, "HeartRate", START + 5000, START + 15_000_000).getMean();
+        long heapBefore = storage.estimateMemoryBytes();
+
+        storage.enableSpill(directory, SpillPolicy.ofAge(1, TimeUnit.HOURS));
+        storage.spillBlocks();
+        storage.stopSpilling();
+
+        // everything but the newest full chunk and the one being written
+        assertTrue(storage.getSpilledBytes() > 0);
+        assertEquals(0, storage.spillBlocks());
+        assertTrue(spillFiles(directory) > 0);
+        // the plain chunks and rollups stay; the blocks left the heap
+        assertTrue(heapBefore - storage.estimateMemoryBytes() > storage.getSpilledBytes() / 2,
+                storage.estimateMemoryBytes() + " of " + heapBefore);
+
+        List<PatientRecord> after = storage.getRecords(2, START, START + READINGS * 1000L);
+        assertEquals(before.size(), after.size());
+        for (int i = 0; i < before.size(); i += 97) {
+            assertEquals(before.get(i).getTimestamp(), after.get(i).getTimestamp());
+            assertEquals(before.get(i).getMeasurementValue(), after.get(i).getMeasurementValue());
+        }
+        assertEquals(meanBefore, storage.getStats(2, "HeartRate", START + 5000, START + 15_000_000).getMean(), 1e-9);
+
+        // a window spanning a spilled chunk and the heap
+        long from = START + (READINGS - TimeSeries.CHUNK_SIZE * 3) * 1000L;
+        RecordCursor cursor = storage.cursor(3, "HeartRate", from, Long.MAX_VALUE);
+        int count = 0;
+        while (cursor.next()) {
+            assertEquals(from + count * 1000L, cursor.timestamp());
+            count++;
+        }
+        assertEquals(3 * TimeSeries.CHUNK_SIZE, count);
+    }
+
+    @Test
+    public void testLateReadingsRebuildSpilledChunks() throws IOException {
+        DataStorage storage = new DataStorage();
+        fill(storage, 1, START);
+        storage.enableSpill(directory, SpillPolicy.ofAge(1, TimeUnit.HOURS));
+        storage.spillBlocks();
+        storage.stopSpilling();
+        long spilled = storage.getSpilledBytes();
+
+        // enough late readings in the fifth chunk to be merged
+        long late = START + 4L * TimeSeries.CHUNK_SIZE * 1000 + 500;
+        for (int i = 0; i < TimeSeries.MAX_LATE_READINGS; i++) {
+            storage.addPatientData(1, 200, "HeartRate", late + i * 1000L);
+        }
+        // the chunks from the fifth onwards are plain arrays again
+        assertTrue(storage.getSpilledBytes() < spilled);
+        List<PatientRecord> records = storage.getRecords(1, late - 500, late + 1000);
+        // stored, late, stored, late
+        assertEquals(4, records.size());
+        assertEquals(200, records.get(1).getMeasurementValue());
+        assertEquals(200, records.get(3).getMeasurementValue());
+        assertEquals(READINGS + TimeSeries.MAX_LATE_READINGS, storage.getRecordCount());
+
+        // resealed once a new chunk starts, and spilled again on the next pass
+        for (int i = 0; i < TimeSeries.CHUNK_SIZE; i++) {
+            storage.addPatientData(1, 80, "HeartRate", START + (READINGS + i) * 1000L);
+        }
+        storage.enableSpill(directory, SpillPolicy.ofAge(1, TimeUnit.HOURS));
+        assertTrue(storage.spillBlocks() > 0);
+        storage.stopSpilling();
+        assertEquals(200, storage.getRecords(1, late, late).get(0).getMeasurementValue());
+    }
+
+    @Test
+    public void testRetentionDeletesSpilledBlocks() throws IOException, InterruptedException {
+        DataStorage storage = new DataStorage();
+        fill(storage, 2, START);
+        storage.enableSpill(directory, SpillPolicy.ofAge(1, TimeUnit.HOURS));
+        storage.spillBlocks();
+        storage.stopSpilling();
+        assertTrue(storage.getSpilledBytes() > 0);
+
+        storage.setDefaultRetentionPolicy(RetentionPolicy.ofCount(TimeSeries.CHUNK_SIZE));
+        storage.sweepRetention();
+        assertEquals(0, storage.getSpilledBytes());
+        assertTrue(awaitSegmentsDeleted(directory));
+    }
+
+    @Test
+    public void testViewReadsBlocksReleasedAfterIt() throws IOException, InterruptedException {
+        DataStorage storage = new DataStorage();
+        fill(storage, 1, START);
+        storage.enableSpill(directory, SpillPolicy.ofAge(1, TimeUnit.HOURS));
+        storage.spillBlocks();
+        TimeSeries.View view = storage.getPatient(1).getSeries("HeartRate").snapshot();
+
+        // release every spilled block, then spill new readings with other values
+        storage.setDefaultRetentionPolicy(RetentionPolicy.ofCount(TimeSeries.CHUNK_SIZE));
+        storage.sweepRetention();
+        assertEquals(0, storage.getSpilledBytes());
+        storage.setDefaultRetentionPolicy(RetentionPolicy.ofCount(Integer.MAX_VALUE));
+        storage.sweepRetention();
+        for (int i = 0; i < READINGS; i++) {
+            storage.addPatientData(1, 200, "HeartRate", START + (READINGS + i) * 1000L);
+        }
+        assertTrue(storage.spillBlocks() > 0);
+        storage.stopSpilling();
+
+        // the view still reads the blocks it was taken with
+        assertEquals(READINGS, view.size());
+        for (int i = 0; i < READINGS; i += 97) {
+            assertEquals(START + i * 1000L, view.timestampAt(i));
+            assertEquals(60 + i % 40, view.valueAt(i));
+        }
+        RecordCursor cursor = view.cursor();
+        for (int i = 0; cursor.next(); i++) {
+            assertEquals(60 + i % 40, cursor.value());
+        }
+
+        // and the released blocks leave the disk once the view is gone
+        view = null;
+        cursor = null;
+        storage.setDefaultRetentionPolicy(RetentionPolicy.ofCount(TimeSeries.CHUNK_SIZE));
+        storage.sweepRetention();
+        assertTrue(awaitSegmentsDeleted(directory));
+    }
+
+    @Test
+    public void testHeapWatermarkSpillsRecentBlocks() throws IOException {
+        DataStorage storage = new DataStorage();
+        long now = System.currentTimeMillis() - READINGS * 1000L;
+        fill(storage, 1, now);
+        storage.enableSpill(directory, SpillPolicy.ofAge(1, TimeUnit.DAYS));
+        assertEquals(0, storage.spillBlocks());
+        storage.stopSpilling();
+
+        // any heap use is above this watermark, once a collection has measured it
+        System.gc();
+        storage.enableSpill(directory, SpillPolicy.ofHeapWatermark(1e-9));
+        assertEquals(READINGS - 2 * TimeSeries.CHUNK_SIZE, storage.spillBlocks());
+        storage.stopSpilling();
+        assertEquals(READINGS, storage.getRecords(1, now, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    public void testPolicyKeepsLowWatermarkBelowHighWatermark() {
+        SpillPolicy policy = SpillPolicy.of(0.8, 1, TimeUnit.HOURS);
+        assertEquals(0.8, policy.getHeapWatermark());
+        assertEquals(0.8 - SpillPolicy.DEFAULT_HYSTERESIS, policy.getLowWatermark(), 1e-12);
+        assertEquals(0, SpillPolicy.ofHeapWatermark(0.05).getLowWatermark());
+
+        assertEquals(0.5, SpillPolicy.of(0.9, 0.5, 1, TimeUnit.HOURS).getLowWatermark());
+        assertThrows(IllegalArgumentException.class, () -> SpillPolicy.of(0.5, 0.9, 1, TimeUnit.HOURS));
+        assertThrows(IllegalArgumentException.class, () -> SpillPolicy.of(0.5, -0.1, 1, TimeUnit.HOURS));
+    }
+
+    @Test
+    public void testShardsSpillToTheirOwnDirectories() throws IOException {
+        try (ShardedDataStorage storage = new ShardedDataStorage(2)) {
+            fill(storage, 4, START);
+            List<PatientRecord> before = storage.getRecords(3, START, Long.MAX_VALUE);
+            storage.enableSpill(directory, SpillPolicy.ofAge(1, TimeUnit.HOURS));
+            assertEquals(4L * (READINGS - 2 * TimeSeries.CHUNK_SIZE), storage.spillBlocks());
+            storage.stopSpilling();
+
+            assertTrue(Files.isDirectory(directory.resolve("shard-0")));
+            assertTrue(spillFiles(directory.resolve("shard-1")) > 0);
+            assertTrue(storage.getSpilledBytes() > 0);
+            List<PatientRecord> after = storage.getRecords(3, START, Long.MAX_VALUE);
+            assertEquals(before.size(), after.size());
+            assertEquals(before.get(1234).getMeasurementValue(), after.get(1234).getMeasurementValue());
+        }
+    }
+}
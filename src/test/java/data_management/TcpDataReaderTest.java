@@ -0,0 +1,70 @@
+package data_management;
+
+import com.cardio_generator.outputs.TcpOutputStrategy;
+import com.data_management.DataStorage;
+import com.data_management.PatientRecord;
+import com.data_management.TcpDataReader;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TcpDataReaderTest {
+
+    @Test
+    void testReadsLinesSplitAcrossPackets() throws Exception {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            DataStorage storage = new DataStorage();
+            TcpDataReader reader = new TcpDataReader("localhost", serverSocket.getLocalPort());
+            reader.readData(storage);
+
+            try (Socket socket = serverSocket.accept()) {
+                OutputStream out = socket.getOutputStream();
+                out.write("3,1000,Cholesterol,174.5700635321926".getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+                TimeUnit.MILLISECONDS.sleep(100);
+                out.write(("2\n3,2000,Saturation,97.0%\n3,3000,Alert,triggered\n"
+                        + "garbage\n3,4000,ECG,-1.5E-4\n").getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+                TimeUnit.MILLISECONDS.sleep(500);
+            }
+            reader.close();
+
+            List<PatientRecord> records = storage.getRecords(3, 0, Long.MAX_VALUE);
+            assertEquals(3, records.size());
+            assertEquals(174.57006353219262, records.get(0).getMeasurementValue());
+            assertEquals("Saturation", records.get(1).getRecordType());
+            assertEquals(97.0, records.get(1).getMeasurementValue());
+            assertEquals(-1.5E-4, records.get(2).getMeasurementValue());
+            assertEquals(2, reader.getLinesSkipped());
+        }
+    }
+
+    @Test
+    void testReadsFromTcpOutputStrategy() throws Exception {
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        TcpOutputStrategy strategy = new TcpOutputStrategy(port);
+        DataStorage storage = new DataStorage();
+        TcpDataReader reader = new TcpDataReader("localhost", port);
+        reader.readData(storage);
+        TimeUnit.MILLISECONDS.sleep(300);
+
+        for (int i = 0; i < 1000; i++) {
+            strategy.output(i % 10, 1000L + i, "ECG", Double.toString(i * 0.25));
+        }
+        TimeUnit.MILLISECONDS.sleep(500);
+        reader.close();
+
+        assertEquals(1000, reader.getRecordsRead());
+        assertEquals(100, storage.getRecords(4, 0, Long.MAX_VALUE).size());
+    }
+}
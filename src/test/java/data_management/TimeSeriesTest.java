@@ -0,0 +1,333 @@
+package data_management;
+
+import com.data_management.Aggregate;
+import com.data_management.PatientRecord;
+import com.data_management.RecordCursor;
+import com.data_management.RetentionPolicy;
+import com.data_management.TimeSeries;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimeSeriesTest {
+
+    @Test
+    public void testRangeUsesInclusiveBounds() {
+        TimeSeries series = new TimeSeries(1, "ECG");
+        for (int i = 0; i < 5000; i++) {
+            series.append(i * 10L, i);
+        }
+
+        TimeSeries.View view = series.range(100, 200);
+        assertEquals(11, view.size());
+        assertEquals(100, view.timestampAt(0));
+        assertEquals(200, view.timestampAt(10));
+        assertEquals(15.0, view.valueAt(5));
+
+        PatientRecord record = view.get(0);
+        assertEquals(1, record.getPatientId());
+        assertEquals("ECG", record.getRecordType());
+        assertTrue(series.range(100_000, 200_000).isEmpty());
+        assertTrue(series.range(200, 100).isEmpty());
+    }
+
+    @Test
+    public void testSparseSeriesStaysSmall() {
+        TimeSeries sparse = new TimeSeries(1, "Cholesterol");
+        sparse.append(1000, 180);
+        TimeSeries dense = new TimeSeries(1, "ECG");
+        for (int i = 0; i < TimeSeries.CHUNK_SIZE - 1; i++) {
+            dense.append(i, i);
+        }
+
+        assertEquals(1, sparse.size());
+        assertEquals(180.0, sparse.snapshot().valueAt(0));
+        // the first chunk starts small and only grows to full size as readings arrive
+        assertTrue(sparse.estimateMemoryBytes() < dense.estimateMemoryBytes() / 10);
+    }
+
+    @Test
+    public void testLateReadingsAreOrderedBeforeAndAfterMerge() {
+        TimeSeries series = new TimeSeries(1, "ECG");
+        Random random = new Random(42);
+        int readings = 10_000;
+        for (int i = 0; i < readings; i++) {
+            // mostly in order, with some readings arriving up to 50 ms late
+            long timestamp = i * 10L - (random.nextInt(10) == 0 ? random.nextInt(50) : 0);
+            series.append(timestamp, timestamp);
+
+            if (i % 997 == 0) {
+                assertOrdered(series.snapshot());
+            }
+        }
+
+        TimeSeries.View all = series.snapshot();
+        assertEquals(readings, all.size());
+        assertOrdered(all);
+        for (int i = 0; i < all.size(); i++) {
+            assertEquals(all.timestampAt(i), (long) all.valueAt(i));
+        }
+    }
+
+    @Test
+    public void testLateReadingIntoSealedChunk() {
+        TimeSeries series = new TimeSeries(1, "ECG");
+        for (int i = 0; i < 10 * TimeSeries.CHUNK_SIZE; i++) {
+            series.append(i * 10L, i);
+        }
+        assertTrue(series.getCompressionRatio() > 1, "Old chunks should be sealed");
+        // enough late readings in the first chunk to force a merge
+        for (int i = 0; i < TimeSeries.MAX_LATE_READINGS; i++) {
+            series.append(i * 10L + 5, -i);
+        }
+
+        TimeSeries.View all = series.snapshot();
+        assertEquals(10 * TimeSeries.CHUNK_SIZE + TimeSeries.MAX_LATE_READINGS, all.size());
+        assertOrdered(all);
+        assertEquals(5, all.timestampAt(1));
+        assertEquals(0.0, all.valueAt(1));
+        TimeSeries.View window = series.range(50_000, 50_020);
+        assertEquals(3, window.size());
+        assertEquals(5001.0, window.valueAt(1));
+    }
+
+    @Test
+    public void testViewIsNotAffectedByLaterAppends() {
+        TimeSeries series = new TimeSeries(1, "HeartRate");
+        series.append(100, 1);
+        series.append(200, 2);
+        List<PatientRecord> view = series.range(0, 1000);
+
+        series.append(150, 3);
+        series.append(300, 4);
+
+        assertEquals(2, view.size());
+        assertEquals(200, view.get(1).getTimestamp());
+        List<PatientRecord> after = series.range(0, 1000);
+        assertEquals(4, after.size());
+        assertEquals(150, after.get(1).getTimestamp());
+        assertThrows(UnsupportedOperationException.class, () -> view.add(view.get(0)));
+    }
+
+    @Test
+    public void testCountRetentionDropsWholeOldChunks() {
+        TimeSeries series = new TimeSeries(1, "ECG", RetentionPolicy.ofCount(2000));
+        for (int i = 0; i < 10_000; i++) {
+            series.append(i, i);
+        }
+
+        TimeSeries.View all = series.snapshot();
+        assertTrue(all.size() >= 2000 && all.size() < 2000 + TimeSeries.CHUNK_SIZE, "Kept " + all.size());
+        assertEquals(9999, all.timestampAt(all.size() - 1));
+        assertEquals(0, all.timestampAt(0) % TimeSeries.CHUNK_SIZE, "Should drop whole chunks");
+        assertTrue(series.range(0, 5000).size() < 5001);
+    }
+
+    @Test
+    public void testLateArrivalsAreNumberedInArrivalOrder() {
+        TimeSeries series = new TimeSeries(1, "ECG");
+        for (int i = 0; i < 100; i++) {
+            series.append(i * 10L, i);
+        }
+        assertEquals(0, series.getLateArrivalCount());
+        series.append(55, -1);
+        series.append(15, -2);
+        assertEquals(2, series.getLateArrivalCount());
+        assertArrayEquals(new long[] {55, 15}, series.getLateArrivals(0, 2));
+        assertArrayEquals(new long[] {15}, series.getLateArrivals(1, 2));
+
+        for (int i = 0; i < TimeSeries.LATE_ARRIVAL_HISTORY; i++) {
+            series.append(500 + i % 100, i);
+        }
+        long count = series.getLateArrivalCount();
+        // only the latest are kept
+        assertEquals(TimeSeries.LATE_ARRIVAL_HISTORY, series.getLateArrivals(0, count).length);
+
+        TimeSeries.View view = series.snapshot();
+        RecordCursor cursor = view.cursor(2, 4);
+        assertTrue(cursor.next());
+        assertEquals(15, cursor.timestamp());
+        assertEquals(-2, cursor.value());
+        assertTrue(cursor.next());
+        assertEquals(20, cursor.timestamp());
+        assertFalse(cursor.next());
+    }
+
+    @Test
+    public void testMergeAfterRetentionKeepsFirstChunkBounded() {
+        TimeSeries series = new TimeSeries(1, "ECG", RetentionPolicy.ofDuration(1, TimeUnit.MINUTES));
+        for (int i = 0; i < 20 * TimeSeries.CHUNK_SIZE; i++) {
+            series.append(i * 1000L, i);
+        }
+        // a day later, every full chunk has expired and is dropped when the next chunk starts
+        long start = TimeUnit.DAYS.toMillis(1);
+        for (int i = 0; i < 10; i++) {
+            series.append(start + i * 1000L, i);
+        }
+        assertEquals(10, series.size());
+        long before = series.estimateMemoryBytes();
+
+        for (int i = 0; i < TimeSeries.MAX_LATE_READINGS; i++) {
+            series.append(start + 1 + i, -i);
+        }
+        assertEquals(10 + TimeSeries.MAX_LATE_READINGS, series.size());
+        assertTrue(series.estimateMemoryBytes() < before + 4096,
+                before + " bytes before the merge, " + series.estimateMemoryBytes() + " after");
+    }
+
+    @Test
+    public void testTimeRetentionKeepsWindowAndSkipsExpiredLateReadings() {
+        TimeSeries series = new TimeSeries(1, "ECG", RetentionPolicy.ofDuration(1, TimeUnit.HOURS));
+        long hour = TimeUnit.HOURS.toMillis(1);
+        // one reading per second for five hours
+        for (int i = 0; i < 5 * 3600; i++) {
+            series.append(i * 1000L, i);
+        }
+        long newest = (5 * 3600 - 1) * 1000L;
+        TimeSeries.View all = series.snapshot();
+        // trimmed when a chunk is started, so up to two chunks more than the window are kept
+        assertTrue(all.timestampAt(0) > newest - hour - 2 * TimeSeries.CHUNK_SIZE * 1000L);
+        assertTrue(all.timestampAt(0) <= newest - hour);
+
+        int size = all.size();
+        series.append(1000, -1);
+        assertEquals(size, series.size(), "A reading older than the window should be dropped");
+
+        series.setRetentionPolicy(RetentionPolicy.ofDuration(1, TimeUnit.MINUTES));
+        for (int i = 1; i <= TimeSeries.CHUNK_SIZE; i++) {
+            series.append(newest + i * 1000L, 0);
+        }
+        assertTrue(series.size() <= 2 * TimeSeries.CHUNK_SIZE, "Kept " + series.size());
+        assertEquals(size, all.size(), "Views taken earlier are not affected");
+        assertEquals(newest - (size - 1) * 1000L, all.timestampAt(0));
+    }
+
+    @Test
+    public void testAggregatesMatchRawReadings() {
+        TimeSeries series = new TimeSeries(1, "HeartRate");
+        // one reading every 250 ms for ten minutes, plus a late one
+        for (int i = 0; i < 2400; i++) {
+            series.append(i * 250L, i % 100);
+        }
+        series.append(30_100, 500);
+
+        List<Aggregate> perMinute = series.aggregate(0, Long.MAX_VALUE, 60_000);
+        assertEquals(10, perMinute.size());
+        Aggregate first = perMinute.get(0);
+        assertEquals(0, first.getBucketStart());
+        assertEquals(241, first.getCount());
+        assertEquals(0.0, first.getMin());
+        assertEquals(500.0, first.getMax());
+
+        // five-minute buckets are combined from the per-minute tier
+        List<Aggregate> perFiveMinutes = series.aggregate(0, Long.MAX_VALUE, 300_000);
+        assertEquals(2, perFiveMinutes.size());
+        assertEquals(1201, perFiveMinutes.get(0).getCount());
+
+        // half-second buckets are finer than every tier and come from the raw readings
+        List<Aggregate> perHalfSecond = series.aggregate(0, 999, 500);
+        assertEquals(2, perHalfSecond.size());
+        assertEquals(0.5, perHalfSecond.get(0).getAverage());
+
+        long total = 0;
+        for (Aggregate aggregate : series.aggregate(0, Long.MAX_VALUE, 1000)) {
+            total += aggregate.getCount();
+        }
+        assertEquals(series.size(), total);
+    }
+
+    @Test
+    public void testHourlyRollupOutlivesRawRetention() {
+        TimeSeries series = new TimeSeries(1, "ECG", RetentionPolicy.ofDuration(15, TimeUnit.MINUTES));
+        // three hours at one reading per second
+        for (int i = 0; i < 3 * 3600; i++) {
+            series.append(i * 1000L, 1);
+        }
+        assertTrue(series.range(0, 3600_000).isEmpty(), "Raw readings of the first hour should be gone");
+
+        List<Aggregate> hourly = series.aggregate(0, Long.MAX_VALUE, 3600_000);
+        assertEquals(3, hourly.size());
+        assertEquals(3600, hourly.get(0).getCount());
+    }
+
+    @Test
+    public void testRangeOlderThanTierRetentionUsesRawReadings() {
+        TimeSeries series = new TimeSeries(1, "ECG");
+        // a day at two readings per second, far longer than the per-second tier keeps its buckets
+        int readings = 2 * 24 * 3600;
+        for (int i = 0; i < readings; i++) {
+            series.append(i * 500L, i % 10);
+        }
+
+        List<Aggregate> perFiveSeconds = series.aggregate(0, Long.MAX_VALUE, 5000);
+        assertEquals(readings / 10, perFiveSeconds.size());
+        assertEquals(0, perFiveSeconds.get(0).getBucketStart());
+        for (Aggregate aggregate : perFiveSeconds) {
+            assertEquals(10, aggregate.getCount());
+        }
+
+        // the last ten minutes are still within the tier's retention
+        long tenMinutesAgo = (readings - 1200) * 500L;
+        List<Aggregate> recent = series.aggregate(tenMinutesAgo, Long.MAX_VALUE, 5000);
+        assertEquals(120, recent.size());
+        assertEquals(tenMinutesAgo, recent.get(0).getBucketStart());
+    }
+
+    @Test
+    public void testInterleavedReadsOfSealedChunks() throws Exception {
+        TimeSeries series = new TimeSeries(1, "ECG");
+        int readings = 6 * TimeSeries.CHUNK_SIZE;
+        for (int i = 0; i < readings; i++) {
+            series.append(i, i);
+        }
+        TimeSeries.View view = series.snapshot();
+
+        // two cursors in different sealed chunks, advanced in turns on one thread
+        RecordCursor first = view.cursor();
+        RecordCursor second = series.range(2L * TimeSeries.CHUNK_SIZE, Long.MAX_VALUE).cursor();
+        for (int i = 0; i < 2 * TimeSeries.CHUNK_SIZE; i++) {
+            assertTrue(first.next());
+            assertTrue(second.next());
+            assertEquals(i, first.value());
+            assertEquals(2 * TimeSeries.CHUNK_SIZE + i, second.value());
+            // random access in between must not disturb either cursor
+            assertEquals(readings - 1 - i, view.valueAt(readings - 1 - i));
+        }
+
+        // threads reading random positions of different chunks at the same time
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> readers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int seed = t;
+                readers.add(executor.submit(() -> {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < 20_000; i++) {
+                        int index = random.nextInt(readings);
+                        assertEquals(index, view.timestampAt(index));
+                        assertEquals(index, view.valueAt(index));
+                    }
+                }));
+            }
+            for (Future<?> reader : readers) {
+                reader.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void assertOrdered(TimeSeries.View view) {
+        for (int i = 1; i < view.size(); i++) {
+            assertTrue(view.timestampAt(i - 1) <= view.timestampAt(i), "Readings should be ordered at " + i);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package data_management;
+
+import com.data_management.DataStorage;
+import com.data_management.TimeSeries;
+import com.data_management.WindowStats;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SortedMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WindowStatsTest {
+
+    private static final long START = 1_700_000_000_000L;
+
+    private static double exactPercentile(double[] sorted, double percentile) {
+        return sorted[(int) (percentile / 100 * (sorted.length - 1))];
+    }
+
+    @Test
+    public void testStatsMatchReadingsAcrossSealedChunks() {
+        TimeSeries series = new TimeSeries(1, "HeartRate");
+        Random random = new Random(7);
+        int readings = 10 * TimeSeries.CHUNK_SIZE + 300;
+        double[] values = new double[readings];
+        for (int i = 0; i < readings; i++) {
+            values[i] = 60 + random.nextGaussian() * 15;
+            series.append(START + i * 1000L, values[i]);
+        }
+        // a late reading waiting in the buffer
+        series.append(START + 5000L * 1000 + 1, 250);
+
+        int from = 700;
+        int to = 9 * TimeSeries.CHUNK_SIZE + 100;
+        // the late reading falls inside the window
+        double[] window = Arrays.copyOf(Arrays.copyOfRange(values, from, to + 1), to - from + 2);
+        window[window.length - 1] = 250;
+        WindowStats stats = series.stats(START + from * 1000L, START + to * 1000L);
+
+        double sum = 0;
+        for (double value : window) {
+            sum += value;
+        }
+        double mean = sum / window.length;
+        double squares = 0;
+        for (double value : window) {
+            squares += (value - mean) * (value - mean);
+        }
+        Arrays.sort(window);
+
+        assertEquals(window.length, stats.getCount());
+        assertEquals(window[0], stats.getMin());
+        assertEquals(250, stats.getMax());
+        assertEquals(mean, stats.getMean(), 1e-9);
+        assertEquals(Math.sqrt(squares / window.length), stats.getStandardDeviation(), 1e-9);
+        for (double percentile : new double[]{50, 95, 99}) {
+            double exact = exactPercentile(window, percentile);
+            assertEquals(exact, stats.getPercentile(percentile), Math.abs(exact) * 0.02, "p" + percentile);
+        }
+
+        // repeated queries reuse the chunk summaries and give the same answer
+        assertEquals(stats.getP95(), series.stats(START + from * 1000L, START + to * 1000L).getP95());
+    }
+
+    @Test
+    public void testEmptyAndNegativeWindows() {
+        TimeSeries series = new TimeSeries(1, "ECG");
+        for (int i = 0; i < 3000; i++) {
+            series.append(START + i, Math.sin(i * 0.01));
+        }
+        WindowStats empty = series.stats(START - 10, START - 1);
+        assertEquals(0, empty.getCount());
+        assertTrue(Double.isNaN(empty.getMean()));
+        assertTrue(Double.isNaN(empty.getP99()));
+
+        WindowStats all = series.stats(Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(3000, all.getCount());
+        assertTrue(all.getMin() < -0.99);
+        assertTrue(all.getP50() < 0.5 && all.getP50() > -0.5);
+        assertTrue(all.getP99() <= all.getMax());
+    }
+
+    @Test
+    public void testStatsByPatient() {
+        DataStorage storage = new DataStorage();
+        for (int patient = 1; patient <= 20; patient++) {
+            for (int i = 0; i < 100; i++) {
+                storage.addPatientData(patient, patient * 10 + i % 10, "HeartRate", START + i * 1000L);
+            }
+        }
+        storage.addPatientData(21, 80, "Saturation", START);
+
+        SortedMap<Integer, WindowStats> stats = storage.getStatsByPatient("HeartRate", START, START + 49_999);
+        assertEquals(20, stats.size());
+        assertEquals(1, (int) stats.firstKey());
+        WindowStats third = stats.get(3);
+        assertEquals(50, third.getCount());
+        assertEquals(30, third.getMin());
+        assertEquals(39, third.getMax());
+        assertEquals(34.5, third.getMean(), 1e-9);
+        assertEquals(third.getMean(), storage.getStats(3, "Heart Rate", START, START + 49_999).getMean());
+        assertEquals(0, storage.getStats(99, "HeartRate", START, START + 49_999).getCount());
+    }
+}
@@ -2,11 +2,15 @@ package design_patterns_test;
 
 import com.alerts.AlertGenerator;
 import com.alerts.Strategy.*;
+import com.data_management.DataStorage;
 import com.data_management.Patient;
 import com.data_management.PatientRecord;
+import com.data_management.TimeSeries;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
 import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -32,6 +36,110 @@ public class AlertGeneratorTest {
         alertGenerator.evaluateData(patient);
     }
 
+    @Test
+    void testEvaluateDataSince_onlyChecksNewReadingsAgainstTheirContext() {
+        Patient patient = new Patient(1);
+        // a rising trend long before the new readings
+        patient.addRecord(new PatientRecord(1, 100, "BloodPressureSystolic", 1000));
+        patient.addRecord(new PatientRecord(1, 115, "BloodPressureSystolic", 2000));
+        patient.addRecord(new PatientRecord(1, 130, "BloodPressureSystolic", 3000));
+        patient.addRecord(new PatientRecord(1, 131, "BloodPressureSystolic", 4000));
+        patient.addRecord(new PatientRecord(1, 132, "BloodPressureSystolic", 5000));
+        patient.addRecord(new PatientRecord(1, 133, "BloodPressureSystolic", 6000));
+
+        assertEquals("", alertsOf(() -> alertGenerator.evaluateData(patient, 6000)));
+
+        // completes a falling trend with the two readings before it
+        patient.addRecord(new PatientRecord(1, 120, "BloodPressureSystolic", 7000));
+        patient.addRecord(new PatientRecord(1, 105, "BloodPressureSystolic", 8000));
+        String alerts = alertsOf(() -> alertGenerator.evaluateData(patient, 8000));
+        assertTrue(alerts.contains("falling"), alerts);
+        assertFalse(alerts.contains("rising"), alerts);
+    }
+
+    @Test
+    void testEvaluateData_reportsEachConditionOnce() {
+        Patient patient = new Patient(1);
+        patient.addRecord(new PatientRecord(1, 100, "BloodPressureSystolic", 1000));
+        patient.addRecord(new PatientRecord(1, 115, "BloodPressureSystolic", 2000));
+        patient.addRecord(new PatientRecord(1, 130, "BloodPressureSystolic", 3000));
+        assertTrue(alertsOf(() -> alertGenerator.evaluateData(patient)).contains("rising"));
+
+        // the earlier trend is not reported again
+        patient.addRecord(new PatientRecord(1, 131, "BloodPressureSystolic", 4000));
+        assertEquals("", alertsOf(() -> alertGenerator.evaluateData(patient)));
+        assertEquals("", alertsOf(() -> alertGenerator.evaluateData(patient)));
+
+        patient.addRecord(new PatientRecord(1, 118, "BloodPressureSystolic", 5000));
+        patient.addRecord(new PatientRecord(1, 105, "BloodPressureSystolic", 6000));
+        String alerts = alertsOf(() -> alertGenerator.evaluateData(patient));
+        assertTrue(alerts.contains("falling"), alerts);
+        assertFalse(alerts.contains("rising"), alerts);
+    }
+
+    @Test
+    void testEvaluateData_evaluatesReadingsAtTheSameMillisecondOnce() {
+        Patient patient = new Patient(1);
+        patient.addRecord(new PatientRecord(1, 100, "BloodPressureSystolic", 1000));
+        patient.addRecord(new PatientRecord(1, 105, "BloodPressureSystolic", 2000));
+        patient.addRecord(new PatientRecord(1, 116, "BloodPressureSystolic", 3000));
+        assertEquals("", alertsOf(() -> alertGenerator.evaluateData(patient)));
+
+        // arrives after the reading at 3000 was evaluated, with the same timestamp
+        patient.addRecord(new PatientRecord(1, 127, "BloodPressureSystolic", 3000));
+        assertTrue(alertsOf(() -> alertGenerator.evaluateData(patient)).contains("rising"));
+        assertEquals("", alertsOf(() -> alertGenerator.evaluateData(patient)));
+    }
+
+    @Test
+    void testEvaluateData_evaluatesLateReadingOnceWithTheReadingsBeforeIt() {
+        Patient patient = new Patient(1);
+        patient.addRecord(new PatientRecord(1, 100, "BloodPressureSystolic", 1000));
+        patient.addRecord(new PatientRecord(1, 111, "BloodPressureSystolic", 2000));
+        patient.addRecord(new PatientRecord(1, 100, "BloodPressureSystolic", 3000));
+        patient.addRecord(new PatientRecord(1, 100, "BloodPressureSystolic", 4000));
+        assertEquals("", alertsOf(() -> alertGenerator.evaluateData(patient)));
+
+        // completes a rising trend with the two readings before it
+        patient.addRecord(new PatientRecord(1, 122, "BloodPressureSystolic", 2500));
+        assertTrue(alertsOf(() -> alertGenerator.evaluateData(patient)).contains("rising"));
+        assertEquals("", alertsOf(() -> alertGenerator.evaluateData(patient)));
+
+        // enough late readings to be merged into the series, the last completing a rising trend
+        int lateReadings = TimeSeries.MAX_LATE_READINGS;
+        for (int i = 0; i < lateReadings; i++) {
+            double value = i == lateReadings - 1 ? 122 : i == lateReadings - 2 ? 111 : 100;
+            patient.addRecord(new PatientRecord(1, value, "BloodPressureSystolic", 3100 + i));
+        }
+        String alerts = alertsOf(() -> alertGenerator.evaluateData(patient));
+        assertEquals(1, alerts.split("rising", -1).length - 1, alerts);
+        assertEquals("", alertsOf(() -> alertGenerator.evaluateData(patient)));
+    }
+
+    @Test
+    void testEvaluateData_combinesPressureAndSaturation() {
+        Patient patient = new Patient(1);
+        patient.addRecord(new PatientRecord(1, 85, "BloodPressureSystolic", 1000));
+        assertFalse(alertsOf(() -> alertGenerator.evaluateData(patient)).contains("Hypotensive"));
+
+        // the systolic reading evaluated before still counts
+        patient.addRecord(new PatientRecord(1, 89, "Saturation", 2000));
+        String alerts = alertsOf(() -> alertGenerator.evaluateData(patient));
+        assertTrue(alerts.contains("Hypotensive Hypoxemia Alert"), alerts);
+    }
+
+    private static String alertsOf(Runnable evaluation) {
+        PrintStream out = System.out;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(captured, true));
+        try {
+            evaluation.run();
+        } finally {
+            System.setOut(out);
+        }
+        return captured.toString();
+    }
+
     @Test
     void testHandleTriggeredAlert_shouldTriggerManualAlert() {
         alertGenerator.handleTriggeredAlert(99, System.currentTimeMillis());
@@ -53,6 +161,34 @@ public class AlertGeneratorTest {
         assertTrue(alert.getCondition().contains("rising"));
     }
 
+    @Test
+    void testBloodPressureStrategy_ordersUnsortedRecordsWithoutModifyingThem() {
+        AlertStrategy strategy = new BloodPressureStrategy("Systolic");
+        // read-only, like the views the storage returns
+        List<PatientRecord> records = List.of(
+                new PatientRecord(1, 120, "Blood Pressure", 3000),
+                new PatientRecord(1, 90, "Blood Pressure", 1000),
+                new PatientRecord(1, 105, "Blood Pressure", 2000)
+        );
+
+        var alert = strategy.checkAlert(records, 1);
+        assertNotNull(alert);
+        assertTrue(alert.getCondition().contains("rising"));
+        assertEquals(3000, records.get(0).getTimestamp());
+    }
+
+    @Test
+    void testBloodPressureStrategy_acceptsStoredView() {
+        DataStorage storage = new DataStorage();
+        storage.addPatientData(1, 90, "SystolicPressure", 1000);
+        storage.addPatientData(1, 105, "SystolicPressure", 2000);
+        storage.addPatientData(1, 120, "SystolicPressure", 3000);
+
+        var alert = new BloodPressureStrategy("Systolic")
+                .checkAlert(storage.getRecords(1, "SystolicPressure", 0, Long.MAX_VALUE), 1);
+        assertNotNull(alert);
+    }
+
     @Test
     void testBloodPressureStrategy_noTrendNoAlert() {
         AlertStrategy strategy = new BloodPressureStrategy("Systolic");
@@ -156,6 +292,21 @@ public class AlertGeneratorTest {
         assertNull(alert);
     }
 
+    @Test
+    void testECGStrategy_readsStoredSeriesThroughCursor() {
+        AlertStrategy strategy = new ECGStrategy();
+        Patient patient = new Patient(1);
+        for (int i = 0; i < 5000; i++) {
+            patient.addRecord(1.0, "ECG", 1000L * i);
+        }
+        assertNull(strategy.checkAlert(patient.cursor("ECG", Long.MIN_VALUE, Long.MAX_VALUE), 1));
+
+        patient.addRecord(2.0, "ECG", 5_000_000L); // Spike
+        var alert = strategy.checkAlert(patient.cursor("ECG", Long.MIN_VALUE, Long.MAX_VALUE), 1);
+        assertNotNull(alert);
+        assertEquals(5_000_000L, alert.getTimestamp());
+    }
+
     // === HypotensiveHypoxemiaStrategy Tests ===
 
     @Test
@@ -17,14 +17,13 @@ import static org.junit.jupiter.api.Assertions.*;
 
 class SimpleWebSocketClientTest {
 
-    private static final int TEST_PORT = 8889;
     private static TestWebSocketServer server;
     private SimpleWebSocketClient client;
     private DataStorage dataStorage;
 
     @BeforeAll
     static void startServer() throws Exception {
-        server = new TestWebSocketServer(new InetSocketAddress(TEST_PORT));
+        server = new TestWebSocketServer(new InetSocketAddress(0));
         server.start();
         Thread.sleep(500);
     }
@@ -37,7 +36,9 @@ class SimpleWebSocketClientTest {
     @BeforeEach
     void setUp() throws Exception {
         dataStorage = DataStorage.getInstance();
-        URI uri = new URI("ws://localhost:" + TEST_PORT);
+        // other test classes write to the shared instance too
+        dataStorage.clear();
+        URI uri = new URI("ws://localhost:" + server.getPort());
         client = new SimpleWebSocketClient(uri);
         client.connectBlocking();
     }
@@ -16,13 +16,12 @@ import static org.junit.jupiter.api.Assertions.*;
 
 public class WebSocketDataReaderTest {
 
-    private static final int TEST_PORT = 9999;
     private static TestWebSocketServer server;
     private DataStorage dataStorage;
 
     @BeforeAll
     static void startServer() {
-        server = new TestWebSocketServer(new InetSocketAddress(TEST_PORT));
+        server = new TestWebSocketServer(new InetSocketAddress(0));
         server.start();
         try {
             Thread.sleep(500);  // Allow time for server to start
@@ -39,11 +38,13 @@ public class WebSocketDataReaderTest {
     @BeforeEach
     void setup() {
         dataStorage = DataStorage.getInstance();
+        // other test classes write to the shared instance too
+        dataStorage.clear();
     }
 
     @Test
     void testWebSocketDataReaderReceivesAndStoresData() throws IOException {
-        WebSocketDataReader reader = new WebSocketDataReader("ws://localhost:" + TEST_PORT);
+        WebSocketDataReader reader = new WebSocketDataReader("ws://localhost:" + server.getPort());
         new Thread(() -> {
             try {
                 reader.readData(dataStorage);
@@ -69,6 +70,7 @@ public class WebSocketDataReaderTest {
 
         assertFalse(dataStorage.getRecords(0, 0, Long.MAX_VALUE).isEmpty(),
                 "DataStorage should contain at least one record for patient 0");
+        reader.close();
     }
 
     // test server
@@ -18,13 +18,16 @@ import static org.junit.jupiter.api.Assertions.*;
 
 public class WebSocketErrorHandlingTest {
 
-    private static final String WS_URI = "ws://localhost:8887";
+    private String wsUri;
     private WebSocketOutputStrategy strategy;
     private DataStorage dataStorage;
 
     @BeforeEach
-    public void setUp() {
-        strategy = new WebSocketOutputStrategy(8887);
+    public void setUp() throws InterruptedException {
+        // port 0 binds any free port, so a server of an earlier test cannot be in the way
+        strategy = new WebSocketOutputStrategy(0);
+        assertTrue(strategy.awaitStarted(5, TimeUnit.SECONDS));
+        wsUri = "ws://localhost:" + strategy.getPort();
         dataStorage = DataStorage.getInstance();
         dataStorage.clear();
     }
@@ -44,7 +47,7 @@ public class WebSocketErrorHandlingTest {
     // Test 1: Simulate a client disconnect and reconnect
     @Test
     public void testClientDisconnectAndReconnect() throws Exception {
-        URI uri = new URI(WS_URI);
+        URI uri = new URI(wsUri);
 
         SimpleWebSocketClient client = new SimpleWebSocketClient(uri);
         client.connectBlocking();
@@ -63,7 +66,7 @@ public class WebSocketErrorHandlingTest {
     // Test 2: Send malformed data (Server to Client)
     @Test
     public void testMalformedMessageHandling() throws Exception {
-        URI uri = new URI(WS_URI);
+        URI uri = new URI(wsUri);
 
         SimpleWebSocketClient client = new SimpleWebSocketClient(uri);
         client.connectBlocking();
@@ -81,11 +84,15 @@ public class WebSocketErrorHandlingTest {
     // Test 3: Stress testing with multiple rapid messages
     @Test
     public void testStressWithMultipleMessages() throws Exception {
-        URI uri = new URI(WS_URI);
+        URI uri = new URI(wsUri);
 
         // Create a client and connect
         SimpleWebSocketClient client = new SimpleWebSocketClient(uri);
         client.connectBlocking();
+        // the server only broadcasts to a connection once it has been registered
+        while (strategy.getLiveConnectionCount() == 0) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
 
         // Stress the WebSocket server with multiple messages
         for (int i = 0; i < 100; i++) {
@@ -102,7 +109,7 @@ public class WebSocketErrorHandlingTest {
     // Test 4: Simulate network error during message receiving (client side)
     @Test
     public void testClientSideErrorHandling() throws Exception {
-        URI uri = new URI(WS_URI);
+        URI uri = new URI(wsUri);
 
         SimpleWebSocketClient client = new SimpleWebSocketClient(uri) {
             @Override
@@ -10,6 +10,7 @@ import org.java_websocket.WebSocket;
 import org.java_websocket.handshake.ClientHandshake;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayOutputStream;
@@ -61,7 +62,8 @@ public class WebSocketIntegrationTest {
 
     @BeforeAll
     public static void startServer() throws InterruptedException {
-        server = new TestWebSocketServer(8887);
+        // port 0 binds any free port, so a server of an earlier test cannot be in the way
+        server = new TestWebSocketServer(0);
         server.start();
         Thread.sleep(1000);
     }
@@ -71,10 +73,16 @@ public class WebSocketIntegrationTest {
         server.stopServer();
     }
 
+    @BeforeEach
+    public void clearStorage() {
+        // other test classes write to the shared instance too
+        DataStorage.getInstance().clear();
+    }
+
     @Test
     public void testWebSocketClientIntegration() throws IOException, InterruptedException {
         DataStorage storage = DataStorage.getInstance();
-        WebSocketDataReader reader = new WebSocketDataReader("ws://localhost:8887");
+        WebSocketDataReader reader = new WebSocketDataReader("ws://localhost:" + server.getPort());
         reader.readData(storage);
 
         Thread.sleep(2000);
@@ -87,12 +95,13 @@ public class WebSocketIntegrationTest {
         assertEquals("HeartRate", record.getRecordType());
         assertEquals(85.0, record.getMeasurementValue());
         assertEquals(1700000000000L, record.getTimestamp());
+        reader.close();
     }
 
     @Test
     public void testAlertEvaluation_afterWebSocketData() throws IOException, InterruptedException {
         DataStorage storage = DataStorage.getInstance();
-        WebSocketDataReader reader = new WebSocketDataReader("ws://localhost:8887");
+        WebSocketDataReader reader = new WebSocketDataReader("ws://localhost:" + server.getPort());
         reader.readData(storage);
         Thread.sleep(2000);
 
@@ -118,6 +127,7 @@ public class WebSocketIntegrationTest {
 
         // Restore System.out
         System.setOut(System.out);
+        reader.close();
 
         String output = outContent.toString();
         assertTrue(output.contains("ALERT:"), "Expected alert output.");
@@ -0,0 +1,125 @@
+package websocket;
+
+import com.cardio_generator.outputs.WebSocketOutputStrategy;
+import com.cardio_generator.websocket.SimpleWebSocketClient;
+import com.data_management.DataStorage;
+import com.data_management.PatientRecord;
+import com.data_management.WebSocketDataReader;
+import org.java_websocket.WebSocket;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WebSocketReconnectTest {
+
+    private WebSocketOutputStrategy strategy;
+    private WebSocketDataReader reader;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (reader != null) {
+            reader.close();
+        }
+        if (strategy != null) {
+            strategy.getServer().stop(1000);
+        }
+    }
+
+    private static boolean waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        return condition.getAsBoolean();
+    }
+
+    private void connect(DataStorage storage, int replayCapacity) throws Exception {
+        // port 0 binds any free port, so the test does not depend on other tests' servers
+        strategy = new WebSocketOutputStrategy(0, replayCapacity);
+        assertTrue(strategy.awaitStarted(5, TimeUnit.SECONDS));
+        reader = new WebSocketDataReader("ws://localhost:" + strategy.getPort(), 200, 1000);
+        reader.readData(storage);
+        assertTrue(waitFor(() -> strategy.getLiveConnectionCount() == 1));
+    }
+
+    private void dropConnections() throws InterruptedException {
+        for (WebSocket conn : strategy.getServer().getConnections()) {
+            conn.closeConnection(1006, "Simulated network failure");
+        }
+        assertTrue(waitFor(() -> strategy.getLiveConnectionCount() == 0));
+    }
+
+    @Test
+    void testReconnectReplaysMissedMessages() throws Exception {
+        DataStorage storage = new DataStorage();
+        connect(storage, WebSocketOutputStrategy.DEFAULT_REPLAY_CAPACITY);
+
+        strategy.output(601, 1000L, "HeartRate", "80");
+        assertTrue(waitFor(() -> storage.getRecordCount() == 1));
+
+        dropConnections();
+        // sent while the client is disconnected, must arrive through the replay
+        strategy.output(601, 2000L, "HeartRate", "81");
+        strategy.output(601, 3000L, "HeartRate", "82");
+
+        assertTrue(waitFor(() -> storage.getRecordCount() == 3), "Reader should have reconnected");
+        SimpleWebSocketClient client = reader.getClient();
+        assertEquals(strategy.getLastSequence(), client.getLastSequence());
+        assertEquals(0, client.getGapCount());
+    }
+
+    @Test
+    void testLiveMessagesDuringReconnectDoNotOvertakeReplay() throws Exception {
+        DataStorage storage = new DataStorage();
+        connect(storage, WebSocketOutputStrategy.DEFAULT_REPLAY_CAPACITY);
+        strategy.output(603, 0L, "HeartRate", "80");
+        assertTrue(waitFor(() -> storage.getRecordCount() == 1));
+
+        dropConnections();
+        // keep sending while the client is away and while it reconnects
+        int total = 2000;
+        Thread source = new Thread(() -> {
+            for (int i = 1; i < total; i++) {
+                strategy.output(603, i * 1000L, "HeartRate", "80");
+                LockSupport.parkNanos(200_000);
+            }
+        });
+        source.start();
+        source.join();
+
+        assertTrue(waitFor(() -> storage.getRecordCount() == total),
+                storage.getRecordCount() + " of " + total + " readings stored");
+        SimpleWebSocketClient client = reader.getClient();
+        assertEquals(0, client.getGapCount());
+        assertEquals(total, client.getLastSequence());
+        List<PatientRecord> records = storage.getRecords(603, 0, Long.MAX_VALUE);
+        for (int i = 0; i < total; i++) {
+            assertEquals(i * 1000L, records.get(i).getTimestamp());
+        }
+    }
+
+    @Test
+    void testGapIsCountedWhenReplayBufferIsTooSmall() throws Exception {
+        DataStorage storage = new DataStorage();
+        connect(storage, 2);
+
+        strategy.output(602, 1000L, "HeartRate", "80");
+        assertTrue(waitFor(() -> storage.getRecordCount() == 1));
+
+        dropConnections();
+        for (int i = 1; i <= 5; i++) {
+            strategy.output(602, 1000L + i, "HeartRate", "80");
+        }
+
+        SimpleWebSocketClient client = reader.getClient();
+        assertTrue(waitFor(() -> client.getLastSequence() == 6));
+        assertEquals(1, client.getGapCount());
+        assertEquals(3, client.getMissedMessages());
+    }
+}